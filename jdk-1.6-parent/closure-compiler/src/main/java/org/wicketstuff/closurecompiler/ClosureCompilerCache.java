@@ -0,0 +1,219 @@
+package org.wicketstuff.closurecompiler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.wicket.util.lang.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * cache for compiled javascript, keyed by a hash of the uncompressed source.
+ * </p>
+ * the most recently used results are kept in memory. when a directory is given the results are
+ * also stored there, so they survive restarts and don't have to be compiled again on a cold start.
+ * delete the directory when upgrading closure compiler or changing the compiler configuration.
+ */
+public class ClosureCompilerCache
+{
+	private static final Logger log = LoggerFactory.getLogger(ClosureCompilerCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private static final String ENCODING = "UTF-8";
+
+	private final Map<String, String> entries;
+
+	private final File directory;
+
+	/**
+	 * in-memory cache with the default size
+	 */
+	public ClosureCompilerCache()
+	{
+		this(DEFAULT_MAX_ENTRIES, null);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            number of compiled scripts kept in memory
+	 * @param directory
+	 *            directory the compiled scripts are stored in, or <code>null</code> to keep them in
+	 *            memory only
+	 */
+	public ClosureCompilerCache(final int maxEntries, File directory)
+	{
+		Args.isTrue(maxEntries > 0, "maxEntries must be positive");
+
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IllegalArgumentException("can not create cache directory " + directory);
+		}
+		this.directory = directory;
+
+		entries = new LinkedHashMap<String, String>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param key
+	 *            hash of the uncompressed source
+	 * @return compiled script or <code>null</code> if it is not cached
+	 */
+	public String get(String key)
+	{
+		synchronized (entries)
+		{
+			final String compiled = entries.get(key);
+			if (compiled != null)
+			{
+				return compiled;
+			}
+		}
+		if (directory == null)
+		{
+			return null;
+		}
+		final File file = getFile(key);
+		if (file.isFile() == false)
+		{
+			return null;
+		}
+		try
+		{
+			final String compiled = read(file);
+			synchronized (entries)
+			{
+				entries.put(key, compiled);
+			}
+			return compiled;
+		}
+		catch (IOException e)
+		{
+			log.warn("can not read compiled script " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param key
+	 *            hash of the uncompressed source
+	 * @param compiled
+	 *            compiled script
+	 */
+	public void put(String key, String compiled)
+	{
+		put(key, compiled, true);
+	}
+
+	/**
+	 * @param persistent
+	 *            <code>false</code> to keep the script in memory only
+	 */
+	void put(String key, String compiled, boolean persistent)
+	{
+		synchronized (entries)
+		{
+			entries.put(key, compiled);
+		}
+		if (persistent && directory != null)
+		{
+			final File file = getFile(key);
+			try
+			{
+				write(file, compiled);
+			}
+			catch (IOException e)
+			{
+				log.warn("can not store compiled script " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * remove all scripts from memory (the stored ones are kept)
+	 */
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	private File getFile(String key)
+	{
+		return new File(directory, key + ".js");
+	}
+
+	private static String read(File file) throws IOException
+	{
+		final Reader reader = new InputStreamReader(new FileInputStream(file), ENCODING);
+		try
+		{
+			final StringBuilder sb = new StringBuilder((int)file.length());
+			final char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1)
+			{
+				sb.append(buffer, 0, read);
+			}
+			return sb.toString();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private void write(File file, String compiled) throws IOException
+	{
+		// write next to the target and rename so concurrent readers never see a partial file
+		final File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+		try
+		{
+			final Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+			try
+			{
+				writer.write(compiled);
+			}
+			finally
+			{
+				writer.close();
+			}
+			if (tmp.renameTo(file) == false && (file.delete() == false || tmp.renameTo(file) == false))
+			{
+				throw new IOException("can not rename " + tmp + " to " + file);
+			}
+		}
+		finally
+		{
+			if (tmp.exists())
+			{
+				tmp.delete();
+			}
+		}
+	}
+}
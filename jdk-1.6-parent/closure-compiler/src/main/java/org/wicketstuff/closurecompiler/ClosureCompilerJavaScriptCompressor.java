@@ -1,8 +1,21 @@
 package org.wicketstuff.closurecompiler;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.javascript.IJavaScriptCompressor;
 import org.apache.wicket.util.lang.Args;
@@ -22,6 +35,14 @@ import com.google.javascript.jscomp.Result;
  * </p>
  * due to the amount of cpu used by closure compiler the generated javascript should definitely be
  * cached, e.g. using resource caching in wicket 1.5.
+ * </p>
+ * <p>
+ * by default every script is compiled when it is requested and wicket's resource caching keeps the
+ * result. when a {@link ClosureCompilerCache} is set the compiled scripts are also kept there, keyed
+ * by a hash of the source, which is mostly useful with a cache directory so they survive restarts.
+ * when an executor is set as well (see {@link #newCompilerExecutor(int, int)}) scripts are compiled
+ * in the background and the uncompressed source is returned until the compiled one is cached.
+ * </p>
  * 
  * @author Peter Ertl
  */
@@ -29,8 +50,22 @@ public class ClosureCompilerJavaScriptCompressor implements IJavaScriptCompresso
 {
 	private static final Logger log = LoggerFactory.getLogger(ClosureCompilerJavaScriptCompressor.class);
 
+	/**
+	 * name and code of the default externs, they are read from the closure compiler jar only once
+	 */
+	private static volatile List<String[]> defaultExterns;
+
 	private CompilationLevel level;
 
+	private ClosureCompilerCache cache;
+
+	private ExecutorService executor;
+
+	/**
+	 * keys of the scripts that are being compiled in the background
+	 */
+	private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+
 	public ClosureCompilerJavaScriptCompressor()
 	{
 		level = CompilationLevel.SIMPLE_OPTIMIZATIONS;
@@ -46,23 +81,186 @@ public class ClosureCompilerJavaScriptCompressor implements IJavaScriptCompresso
 		this.level = Args.notNull(level, "level");
 	}
 
+	public ClosureCompilerCache getCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            cache for the compiled scripts, <code>null</code> (the default) to compile every
+	 *            script each time
+	 */
+	public void setCache(ClosureCompilerCache cache)
+	{
+		this.cache = cache;
+	}
+
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * @param executor
+	 *            executor that compiles the scripts in the background, <code>null</code> to compile
+	 *            them while the request waits. background compilation needs a cache. the executor
+	 *            is not shut down by the compressor.
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * create an executor for background compilation that rejects scripts when all threads are busy
+	 * and the queue is full, those are compiled on a later request.
+	 * 
+	 * @param threads
+	 *            number of scripts compiled in parallel
+	 * @param queueCapacity
+	 *            number of scripts waiting for a thread
+	 * @return executor with daemon threads
+	 */
+	public static ExecutorService newCompilerExecutor(int threads, int queueCapacity)
+	{
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r)
+				{
+					final Thread thread = new Thread(r, "closure-compiler-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
 	public String compress(String uncompressed)
+	{
+		final ClosureCompilerCache cache = this.cache;
+		if (cache == null)
+		{
+			return compile(uncompressed, null, null);
+		}
+		final String key = getCacheKey(uncompressed);
+		final String compiled = cache.get(key);
+		if (compiled != null)
+		{
+			return compiled;
+		}
+		if (executor != null)
+		{
+			compileInBackground(uncompressed, key, cache);
+			return uncompressed;
+		}
+		return compile(uncompressed, key, cache);
+	}
+
+	private String compile(String uncompressed, String key, ClosureCompilerCache cache)
 	{
 		try
 		{
-			return compressSource(uncompressed);
+			final String compiled = compressSource(uncompressed);
+			if (cache != null)
+			{
+				cache.put(key, compiled);
+			}
+			return compiled;
 		}
 		catch (Exception e)
 		{
 			log.error(e.getMessage(), e);
+			if (cache != null)
+			{
+				// don't try again for every request, but do after a restart
+				cache.put(key, uncompressed, false);
+			}
 			return uncompressed;
 		}
 	}
 
+	private void compileInBackground(final String uncompressed, final String key,
+		final ClosureCompilerCache cache)
+	{
+		if (pending.putIfAbsent(key, Boolean.TRUE) != null)
+		{
+			// already being compiled
+			return;
+		}
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						compile(uncompressed, key, cache);
+					}
+					finally
+					{
+						pending.remove(key);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// compiler is busy, try again on a later request
+			pending.remove(key);
+			log.debug("compilation queue is full, serving uncompressed script");
+		}
+	}
+
+	/**
+	 * @return hash of the source and everything that changes the compiled output
+	 */
+	protected String getCacheKey(String uncompressed)
+	{
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(level.name().getBytes("UTF-8"));
+			digest.update((byte)0);
+			digest.update(getConfigurationKey().getBytes("UTF-8"));
+			digest.update((byte)0);
+			final byte[] hash = digest.digest(uncompressed.getBytes("UTF-8"));
+
+			final StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (byte b : hash)
+			{
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return identifies the options set by {@link #configure(Compiler, CompilerOptions, List)},
+	 *         override together with it so differently configured compressors don't share
+	 *         cached scripts
+	 */
+	protected String getConfigurationKey()
+	{
+		return getClass().getName();
+	}
+
 	public final String compressSource(String uncompressed) throws Exception
 	{
 		// environment for compilation
-		final List<JSSourceFile> externs = CommandLineRunner.getDefaultExterns();
+		final List<JSSourceFile> externs = newDefaultExterns();
 
 		// create compiler + options
 		final Compiler compiler = new Compiler();
@@ -100,4 +298,36 @@ public class ClosureCompilerJavaScriptCompressor implements IJavaScriptCompresso
 	{
 		// for overriding + configuring
 	}
+
+	/**
+	 * @return new list of the default externs, without reading them from the jar again
+	 */
+	private static List<JSSourceFile> newDefaultExterns() throws IOException
+	{
+		List<String[]> loaded = defaultExterns;
+		if (loaded == null)
+		{
+			synchronized (ClosureCompilerJavaScriptCompressor.class)
+			{
+				loaded = defaultExterns;
+				if (loaded == null)
+				{
+					loaded = new ArrayList<String[]>();
+					for (JSSourceFile extern : CommandLineRunner.getDefaultExterns())
+					{
+						loaded.add(new String[] { extern.getName(), extern.getCode() });
+					}
+					defaultExterns = loaded;
+				}
+			}
+		}
+
+		// every compilation gets its own source files, configure() may add to the list
+		final List<JSSourceFile> externs = new ArrayList<JSSourceFile>(loaded.size());
+		for (String[] extern : loaded)
+		{
+			externs.add(JSSourceFile.fromCode(extern[0], extern[1]));
+		}
+		return externs;
+	}
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.closurecompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.JSSourceFile;
+
+public class ClosureCompilerJavaScriptCompressorTest
+{
+	private static final String SCRIPT = "function hello(name) {\n  var greeting = 'hello ' + name;\n  alert(greeting);\n}\n";
+
+	private static final String INVALID_SCRIPT = "function hello( {";
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = File.createTempFile("closure-compiler", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void deleteDirectory()
+	{
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void compilesEveryTimeWithoutCache()
+	{
+		CountingCompressor compressor = new CountingCompressor();
+		Assert.assertNull(compressor.getCache());
+
+		String compiled = compressor.compress(SCRIPT);
+		Assert.assertFalse(SCRIPT.equals(compiled));
+		Assert.assertEquals(compiled, compressor.compress(SCRIPT));
+		Assert.assertEquals(2, compressor.compilations.get());
+	}
+
+	@Test
+	public void cachedScriptIsNotCompiledAgain()
+	{
+		CountingCompressor compressor = new CountingCompressor();
+		compressor.setCache(new ClosureCompilerCache());
+
+		String compiled = compressor.compress(SCRIPT);
+		Assert.assertEquals(compiled, compressor.compress(SCRIPT));
+		Assert.assertEquals(1, compressor.compilations.get());
+	}
+
+	@Test
+	public void storedScriptIsReadByNewInstance()
+	{
+		CountingCompressor first = new CountingCompressor();
+		first.setCache(new ClosureCompilerCache(ClosureCompilerCache.DEFAULT_MAX_ENTRIES, directory));
+		String compiled = first.compress(SCRIPT);
+
+		CountingCompressor second = new CountingCompressor();
+		second.setCache(new ClosureCompilerCache(ClosureCompilerCache.DEFAULT_MAX_ENTRIES, directory));
+		Assert.assertEquals(compiled, second.compress(SCRIPT));
+		Assert.assertEquals(0, second.compilations.get());
+	}
+
+	@Test
+	public void failedScriptIsServedUncompressedAndNotStored()
+	{
+		CountingCompressor compressor = new CountingCompressor();
+		compressor.setCache(new ClosureCompilerCache(ClosureCompilerCache.DEFAULT_MAX_ENTRIES,
+			directory));
+
+		Assert.assertEquals(INVALID_SCRIPT, compressor.compress(INVALID_SCRIPT));
+		Assert.assertEquals(INVALID_SCRIPT, compressor.compress(INVALID_SCRIPT));
+		Assert.assertEquals(1, compressor.compilations.get());
+		Assert.assertEquals(0, directory.listFiles().length);
+
+		// a restart tries again
+		CountingCompressor restarted = new CountingCompressor();
+		restarted.setCache(new ClosureCompilerCache(ClosureCompilerCache.DEFAULT_MAX_ENTRIES,
+			directory));
+		Assert.assertEquals(INVALID_SCRIPT, restarted.compress(INVALID_SCRIPT));
+		Assert.assertEquals(1, restarted.compilations.get());
+	}
+
+	@Test
+	public void rejectedScriptIsCompiledOnLaterRequest() throws InterruptedException
+	{
+		ExecutorService executor = ClosureCompilerJavaScriptCompressor.newCompilerExecutor(1, 1);
+		try
+		{
+			// occupy the only thread and the only queue slot
+			final CountDownLatch release = new CountDownLatch(1);
+			Runnable blocker = new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						release.await();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			executor.execute(blocker);
+			executor.execute(blocker);
+
+			CountingCompressor compressor = new CountingCompressor();
+			ClosureCompilerCache cache = new ClosureCompilerCache();
+			compressor.setCache(cache);
+			compressor.setExecutor(executor);
+
+			Assert.assertEquals(SCRIPT, compressor.compress(SCRIPT));
+			release.countDown();
+
+			// the rejected script was not left pending, the next request submits it again (until the
+			// blockers are done it may be rejected again, so keep requesting it)
+			String key = compressor.getCacheKey(SCRIPT);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (cache.get(key) == null && System.currentTimeMillis() < deadline)
+			{
+				compressor.compress(SCRIPT);
+				Thread.sleep(10);
+			}
+			String compiled = cache.get(key);
+			Assert.assertNotNull(compiled);
+			Assert.assertFalse(SCRIPT.equals(compiled));
+			Assert.assertEquals(compiled, compressor.compress(SCRIPT));
+			Assert.assertEquals(1, compressor.compilations.get());
+		}
+		finally
+		{
+			executor.shutdownNow();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	private static class CountingCompressor extends ClosureCompilerJavaScriptCompressor
+	{
+		private final AtomicInteger compilations = new AtomicInteger();
+
+		@Override
+		protected void configure(Compiler compiler, CompilerOptions options,
+			List<JSSourceFile> externs)
+		{
+			compilations.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.List;
+
+/**
+ * A trie that can return the best scoring matches of a prefix.
+ * 
+ * @see IRankedTrieConfiguration
+ */
+public interface IRankedTrie<C> extends Trie<C>
+{
+
+	/**
+	 * Get the best scoring values reachable from the prefix given, the highest score first.
+	 * 
+	 * @param prefix
+	 * @param filter
+	 *            can be null to include every value.
+	 * @param limit
+	 *            the maximum number of values to return, -1 for all of them.
+	 * @return the ranked list of values.
+	 */
+	public List<C> getRankedWordList(String prefix, ITrieFilter<C> filter, int limit);
+
+}
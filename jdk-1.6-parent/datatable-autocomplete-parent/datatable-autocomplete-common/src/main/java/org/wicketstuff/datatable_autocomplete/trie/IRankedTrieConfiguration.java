@@ -0,0 +1,43 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.trie;
+
+/**
+ * A trie configuration that gives each indexed value a score.
+ * 
+ *         When a {@link PatriciaTrie} is simplified with a ranked configuration each node keeps the
+ *         best {@link #getTopK()} values of its subtree, so that the best results for a prefix
+ *         can be returned without traversing the subtree (see {@link IRankedTrie}).
+ * 
+ */
+public interface IRankedTrieConfiguration<C> extends ITrieConfiguration<C>
+{
+
+	/**
+	 * 
+	 * @param ctx
+	 * @return the score of the value, higher scores are ranked first.
+	 */
+	public double getScore(C ctx);
+
+	/**
+	 * 
+	 * @return the number of best values that are kept on each node. Queries with a larger limit
+	 *         have to traverse the subtree.
+	 */
+	public int getTopK();
+
+}
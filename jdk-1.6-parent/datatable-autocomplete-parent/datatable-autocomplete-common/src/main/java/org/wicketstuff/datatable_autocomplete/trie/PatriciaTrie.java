@@ -15,8 +15,12 @@
  */
 package org.wicketstuff.datatable_autocomplete.trie;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -46,8 +50,16 @@ import org.apache.wicket.IClusterable;
  *      This implementation will index an object C based on the word (String) that is extracted
  *      using the ITrieNodeConfiguration.getWord (C c) method.
  * 
+ *      A large trie can be built in parallel with the {@link PatriciaTrieBuilder}, the tries it
+ *      builds are read only snapshots that can be shared by many concurrent readers.
+ * 
+ *      If the configuration is an {@link IRankedTrieConfiguration} each node keeps the best values
+ *      of its subtree once the index is simplified, which lets
+ *      {@link #getRankedWordList(String, ITrieFilter, int)} return the best results of a short
+ *      prefix without materializing the whole subtree.
+ * 
  */
-public class PatriciaTrie<C> implements IClusterable, Trie<C>
+public class PatriciaTrie<C> implements IClusterable, IRankedTrie<C>
 {
 
 	/**
@@ -59,6 +71,9 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 
 	private ITrieConfiguration<C> configuration = null;
 
+	// set once a snapshot has been built, no more indexing is allowed after that.
+	private volatile boolean readOnly = false;
+
 	/**
 	 * 
 	 */
@@ -83,6 +98,43 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 
 	}
 
+	/**
+	 * Used by the {@link PatriciaTrieBuilder} to wrap a root node that has been built elsewhere.
+	 */
+	PatriciaTrie(ITrieConfiguration<C> configuration, TrieNode<C> root)
+	{
+
+		this.configuration = configuration;
+		this.configuration.setTrie(this);
+
+		this.root = root;
+	}
+
+	/**
+	 * Prevent any further changes to the index.
+	 */
+	void markReadOnly()
+	{
+
+		this.readOnly = true;
+	}
+
+	/**
+	 * @return true if this trie is a read only snapshot.
+	 */
+	public boolean isReadOnly()
+	{
+
+		return readOnly;
+	}
+
+	private void checkWritable()
+	{
+
+		if (readOnly)
+			throw new IllegalStateException("this trie is a read only snapshot");
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -91,6 +143,8 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 	public void index(C value)
 	{
 
+		checkWritable();
+
 		// traverse to the point where no match is found and then insert at that
 		// point.
 
@@ -177,10 +231,16 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 	/**
 	 * Compresses the sparse nodes with only 1 branch; makes the Trie into a Patricia Trie which
 	 * uses less space.
+	 * 
+	 * With an {@link IRankedTrieConfiguration} the best values of each subtree are computed as
+	 * well.
 	 */
+	@SuppressWarnings("unchecked")
 	public void simplifyIndex()
 	{
 
+		checkWritable();
+
 		// the first simplification is to remove nodes that have only 1 branch.
 		// we will basically have nodes that represent more than a single
 		// character
@@ -241,6 +301,99 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 
 		}
 
+		if (configuration instanceof IRankedTrieConfiguration<?>)
+		{
+			IRankedTrieConfiguration<C> ranking = (IRankedTrieConfiguration<C>)configuration;
+
+			this.root.rank(ranking, ranking.getTopK());
+		}
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.wicketstuff.datatable_autocomplete.trie.IRankedTrie#getRankedWordList(java.lang.String,
+	 * org.wicketstuff.datatable_autocomplete.trie.ITrieFilter, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<C> getRankedWordList(String prefix, ITrieFilter<C> filter, int limit)
+	{
+
+		if (!(configuration instanceof IRankedTrieConfiguration<?>))
+			throw new IllegalStateException("the trie configuration does not rank the values");
+
+		final IRankedTrieConfiguration<C> ranking = (IRankedTrieConfiguration<C>)configuration;
+
+		PrefixTrieMatch<C> prefixNodeMatch = this.root.find(prefix, filter);
+
+		if (prefixNodeMatch == null || limit == 0)
+			return new LinkedList<C>();
+
+		TrieNode<C> node = prefixNodeMatch.getNode();
+
+		int k = ranking.getTopK();
+
+		if (limit >= 0 && limit <= k || node.isRankedMatchListComplete(k))
+		{
+			// try to answer from the precomputed values of the node.
+			List<C> wordList = new ArrayList<C>();
+
+			for (C value : node.getRankedMatchList())
+			{
+				if (filter == null || filter.isVisible(value))
+				{
+					wordList.add(value);
+
+					if (wordList.size() == limit)
+						return wordList;
+				}
+			}
+
+			if (node.isRankedMatchListComplete(k))
+				return wordList;
+		}
+
+		/*
+		 * The limit is larger than the precomputed values or the filter hides too many of them,
+		 * rank the whole subtree.
+		 */
+		List<C> subtreeList = new ArrayList<C>();
+
+		node.buildWordList(subtreeList, filter, -1);
+
+		Comparator<C> comparator = new Comparator<C>()
+		{
+
+			public int compare(C o1, C o2)
+			{
+				return Double.compare(ranking.getScore(o2), ranking.getScore(o1));
+			}
+		};
+
+		if (limit < 0 || limit >= subtreeList.size())
+		{
+			Collections.sort(subtreeList, comparator);
+
+			return subtreeList;
+		}
+
+		// keep the best 'limit' values, the worst of them at the head of the queue.
+		PriorityQueue<C> best = new PriorityQueue<C>(limit, Collections.reverseOrder(comparator));
+
+		for (C value : subtreeList)
+		{
+			best.add(value);
+
+			if (best.size() > limit)
+				best.poll();
+		}
+
+		List<C> wordList = new ArrayList<C>(best);
+
+		Collections.sort(wordList, comparator);
+
+		return wordList;
 	}
 
 
@@ -380,4 +533,13 @@ public class PatriciaTrie<C> implements IClusterable, Trie<C>
 	}
 
 
+	/**
+	 * @return the configuration this trie was indexed with.
+	 */
+	public ITrieConfiguration<C> getConfiguration()
+	{
+		return configuration;
+	}
+
+
 }
@@ -0,0 +1,279 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a {@link PatriciaTrie} from a collection of values in parallel.
+ * 
+ * The words are partitioned on their first character and each partition is indexed, simplified,
+ * measured and (for an {@link IRankedTrieConfiguration}) ranked into its own subtrie by the
+ * executor. The subtries are then attached to a single root, only the root itself is completed on
+ * the calling thread and the result is returned as a read only snapshot.
+ * 
+ * Because nothing can be read before the build has completed the snapshot can be published (f.i.
+ * through a {@link TrieSnapshotHolder}) while the previous trie is still being used.
+ * 
+ * The {@link ITrieConfiguration} is used from several threads at the same time so its getWord(C)
+ * and createTrieNode(...) methods need to be thread safe (the {@link AbstractTrieConfiguration}
+ * ones are).
+ * 
+ */
+public class PatriciaTrieBuilder<C>
+{
+
+	private static final Logger log = LoggerFactory.getLogger(PatriciaTrieBuilder.class);
+
+	private final ITrieConfiguration<C> configuration;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Uses a temporary thread pool with one thread per available processor for each build.
+	 * 
+	 * @param configuration
+	 */
+	public PatriciaTrieBuilder(ITrieConfiguration<C> configuration)
+	{
+
+		this(configuration, null);
+	}
+
+	/**
+	 * @param configuration
+	 * @param executor
+	 *            executes the partition builds, it is not shut down by the builder.
+	 */
+	public PatriciaTrieBuilder(ITrieConfiguration<C> configuration, ExecutorService executor)
+	{
+
+		if (configuration == null)
+			throw new IllegalArgumentException("configuration can not be null");
+
+		this.configuration = configuration;
+		this.executor = executor;
+	}
+
+	/**
+	 * Index the values into a new trie.
+	 * 
+	 * @param values
+	 * @return a simplified, read only trie containing all of the values.
+	 */
+	public PatriciaTrie<C> build(Collection<? extends C> values)
+	{
+
+		long start = System.currentTimeMillis();
+
+		TrieNode<C> root = configuration.createTrieNode(null, "", "");
+
+		Map<Character, List<Entry<C>>> partitions = partition(values, root);
+
+		ExecutorService buildExecutor = executor;
+
+		if (buildExecutor == null)
+			buildExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors());
+
+		try
+		{
+			List<Future<TrieNode<C>>> futures = new ArrayList<Future<TrieNode<C>>>(
+				partitions.size());
+
+			for (final List<Entry<C>> partition : partitions.values())
+			{
+				futures.add(buildExecutor.submit(new Callable<TrieNode<C>>()
+				{
+
+					public TrieNode<C> call() throws Exception
+					{
+						return buildPartition(partition);
+					}
+				}));
+			}
+
+			for (Future<TrieNode<C>> future : futures)
+			{
+				for (TrieNode<C> child : future.get().getOrderedNodeList())
+				{
+					root.adoptChild(child);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while building the trie", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("failed to build the trie", e.getCause());
+		}
+		finally
+		{
+			if (buildExecutor != executor)
+				buildExecutor.shutdown();
+		}
+
+		// the subtries are complete, only the root is left to do (what simplifyIndex() would do for
+		// the whole trie).
+		root.simplifyNode();
+
+		root.updateMaxChildStringLength();
+
+		IRankedTrieConfiguration<C> ranking = getRanking();
+
+		if (ranking != null)
+			root.rankFromChildren(ranking, ranking.getTopK());
+
+		PatriciaTrie<C> trie = new PatriciaTrie<C>(configuration, root);
+
+		trie.markReadOnly();
+
+		if (log.isDebugEnabled())
+			log.debug("built trie for " + values.size() + " values in " + partitions.size() +
+				" partitions in " + (System.currentTimeMillis() - start) + " ms");
+
+		return trie;
+	}
+
+	/**
+	 * Group the words to index on their first character. Empty words are indexed directly into
+	 * the root.
+	 */
+	private Map<Character, List<Entry<C>>> partition(Collection<? extends C> values,
+		TrieNode<C> root)
+	{
+
+		Map<Character, List<Entry<C>>> partitions = new LinkedHashMap<Character, List<Entry<C>>>();
+
+		for (C value : values)
+		{
+
+			String word = configuration.getWord(value);
+
+			if (!configuration.isIndexCaseSensitive())
+				word = word.toLowerCase();
+
+			if (configuration.isSuffixTree())
+			{
+				// index each substring of the word from the initial full word through to the
+				// last character.
+				for (int i = 0; i < word.length(); i++)
+				{
+					addEntry(partitions, word.substring(i), value);
+				}
+			}
+			else if (word.length() == 0)
+			{
+				root.index(word, value);
+			}
+			else
+			{
+				addEntry(partitions, word, value);
+			}
+
+		}
+
+		return partitions;
+	}
+
+	private void addEntry(Map<Character, List<Entry<C>>> partitions, String word, C value)
+	{
+
+		Character key = Character.valueOf(word.charAt(0));
+
+		List<Entry<C>> partition = partitions.get(key);
+
+		if (partition == null)
+		{
+			partition = new ArrayList<Entry<C>>();
+			partitions.put(key, partition);
+		}
+
+		partition.add(new Entry<C>(word, value));
+	}
+
+	/**
+	 * @return the configuration if it ranks the values, null otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	private IRankedTrieConfiguration<C> getRanking()
+	{
+
+		if (configuration instanceof IRankedTrieConfiguration<?>)
+			return (IRankedTrieConfiguration<C>)configuration;
+
+		return null;
+	}
+
+	/**
+	 * @return a root node with a single simplified, measured and ranked child that holds all of
+	 *         the entries.
+	 */
+	private TrieNode<C> buildPartition(List<Entry<C>> partition)
+	{
+
+		TrieNode<C> partitionRoot = configuration.createTrieNode(null, "", "");
+
+		for (Entry<C> entry : partition)
+		{
+			partitionRoot.index(entry.word, entry.value);
+		}
+
+		IRankedTrieConfiguration<C> ranking = getRanking();
+
+		// don't simplify the partition root itself or it would be merged with its only child.
+		for (TrieNode<C> child : partitionRoot.getOrderedNodeList())
+		{
+			child.simplify();
+
+			child.computeMaxChildStringLength();
+
+			if (ranking != null)
+				child.rank(ranking, ranking.getTopK());
+		}
+
+		return partitionRoot;
+	}
+
+	private static final class Entry<C>
+	{
+
+		private final String word;
+
+		private final C value;
+
+		private Entry(String word, C value)
+		{
+			this.word = word;
+			this.value = value;
+		}
+	}
+}
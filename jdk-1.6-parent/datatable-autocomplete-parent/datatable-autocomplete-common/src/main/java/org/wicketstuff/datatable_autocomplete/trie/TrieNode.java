@@ -18,13 +18,11 @@ package org.wicketstuff.datatable_autocomplete.trie;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -44,7 +42,10 @@ import org.slf4j.LoggerFactory;
  * 
  *         The configuration object that provides the string version of an C object.
  * 
- * 
+ *         The child nodes are kept in a char array sorted by the first character of each child
+ *         (binary searched on lookup) with a parallel node array, and the matches are packed into
+ *         a single array. Both are only allocated when needed and trimmed by {@link #simplify()},
+ *         which keeps large indexes small.
  * 
  */
 public class TrieNode<C> implements Serializable
@@ -57,16 +58,7 @@ public class TrieNode<C> implements Serializable
 
 	private static final Logger log = LoggerFactory.getLogger(TrieNode.class);
 
-	private static final Comparator<TrieNode<?>> trieNodeComparator = new Comparator<TrieNode<?>>()
-	{
-
-		public int compare(TrieNode<?> o1, TrieNode<?> o2)
-		{
-
-			return o1.getCharacter().compareTo(o2.getCharacter());
-
-		}
-	};
+	private static final char[] NO_KEYS = new char[0];
 
 	// the string that corresponds to what is matched between our parent node
 	// and the root node of the enire trie.
@@ -76,10 +68,14 @@ public class TrieNode<C> implements Serializable
 	// after minimization it may be a couple of characters
 	private String character;
 
-	private Map<String, TrieNode<C>> nodeMap = new HashMap<String, TrieNode<C>>();
+	// the first character of each child node (ordered a-z) so that we can binary search and
+	// traverse properly
+	private char[] childKeys = NO_KEYS;
+
+	// child nodes in the same order as the childKeys, null if there are no children
+	private TrieNode<C>[] children = null;
 
-	// child nodes (ordered a-z) so that we can traverse properly
-	private List<TrieNode<C>> orderedNodeList = new ArrayList<TrieNode<C>>();
+	private int childCount = 0;
 
 	private TrieNode<C> parentNode;
 
@@ -87,10 +83,17 @@ public class TrieNode<C> implements Serializable
 	// node
 	private int totalMatches = 0;
 
-	// contains the matches for the indexed element in the 'character'
-	// i.e. index 0 matches the character.get(0) and index 1 matches the element
-	// that matches to character.get(0) + character.get(1)
-	private Map<Integer, List<C>> matchMap = new LinkedHashMap<Integer, List<C>>();
+	// contains the matches for the indexed elements in the 'character', ordered on the length of
+	// the match (shortest match first). null if there are no matches.
+	private Object[] matches = null;
+
+	private int matchCount = 0;
+
+	// the best scoring values of the subtree (highest first) when the trie is ranked, null
+	// otherwise.
+	private Object[] rankedMatches = null;
+
+	private double[] rankedScores = null;
 
 	// if the entire tree below this node was traversed this would be the length
 	// of the longest string formed.
@@ -145,24 +148,19 @@ public class TrieNode<C> implements Serializable
 	public String toString()
 	{
 
-		StringBuffer children = new StringBuffer();
-
-		List<String> nodeList = new ArrayList<String>(this.nodeMap.keySet());
+		StringBuffer childBuffer = new StringBuffer();
 
-		for (int i = 0; i < nodeList.size() - 1; i++)
+		for (int i = 0; i < childCount; i++)
 		{
 
-			String node = nodeList.get(i);
-			children.append(node);
-			children.append(", ");
+			if (i > 0)
+				childBuffer.append(", ");
+			childBuffer.append(childKeys[i]);
 
 		}
 
-		if (nodeList.size() > 0)
-			children.append(nodeList.get(nodeList.size() - 1));
-
 		return "NODE [ matchedPrefix = '" + rootMatchedString + "', character ='" + getCharacter() +
-			"', word = '" + getWord() + "', children = (" + children.toString() + ") ]";
+			"', word = '" + getWord() + "', children = (" + childBuffer.toString() + ") ]";
 	}
 
 	/**
@@ -206,11 +204,85 @@ public class TrieNode<C> implements Serializable
 		return index(word, object, 0);
 	}
 
+	/**
+	 * @return the child nodes ordered on their character (read only)
+	 */
 	public List<TrieNode<C>> getOrderedNodeList()
 	{
 
-		return this.orderedNodeList;
+		if (childCount == 0)
+			return Collections.emptyList();
+
+		return Collections.unmodifiableList(Arrays.asList(children).subList(0, childCount));
+
+	}
+
+	/**
+	 * @param c
+	 * @return the child node whose character starts with c or null if there is none.
+	 */
+	protected TrieNode<C> getChild(char c)
+	{
+
+		int index = Arrays.binarySearch(childKeys, 0, childCount, c);
+
+		return index >= 0 ? children[index] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addChild(char c, TrieNode<C> node)
+	{
+
+		int index = -(Arrays.binarySearch(childKeys, 0, childCount, c) + 1);
+
+		if (children == null || childCount == children.length)
+		{
+			int capacity = Math.max(2, childCount * 2);
+			childKeys = Arrays.copyOf(childKeys, capacity);
+			TrieNode<C>[] grown = new TrieNode[capacity];
+			if (children != null)
+				System.arraycopy(children, 0, grown, 0, childCount);
+			children = grown;
+		}
 
+		System.arraycopy(childKeys, index, childKeys, index + 1, childCount - index);
+		System.arraycopy(children, index, children, index + 1, childCount - index);
+		childKeys[index] = c;
+		children[index] = node;
+		childCount++;
+	}
+
+	/**
+	 * Attach the child of an other root node (built in parallel for a different first character)
+	 * to this node.
+	 * 
+	 * @param child
+	 */
+	void adoptChild(TrieNode<C> child)
+	{
+
+		char c = child.getCharacter().charAt(0);
+
+		if (getChild(c) != null)
+			throw new IllegalStateException("a child node for '" + c + "' already exists");
+
+		child.parentNode = this;
+		addChild(c, child);
+	}
+
+	private void addMatches(Object[] values, int count)
+	{
+
+		if (count == 0)
+			return;
+
+		if (matches == null)
+			matches = new Object[Math.max(count, 1)];
+		else if (matchCount + count > matches.length)
+			matches = Arrays.copyOf(matches, Math.max(matchCount + count, matches.length * 2));
+
+		System.arraycopy(values, 0, matches, matchCount, count);
+		matchCount += count;
 	}
 
 	/**
@@ -228,22 +300,13 @@ public class TrieNode<C> implements Serializable
 			/*
 			 * This is the node that matches the word.
 			 * 
-			 * First: make sure that this is the first match on this node.
-			 * 
-			 * Second: insert the object into the first slot in the matchMap. Note: the index is
-			 * always zero because we build an uncompressed Trie first.
+			 * Append the object to the matches. Note: all of the matches are for the full
+			 * character because we build an uncompressed Trie first.
 			 */
 
-			List<C> matchList = this.matchMap.get(0);
-
-			if (matchList == null)
-			{
-				matchList = new ArrayList<C>();
-				this.matchMap.put(0, matchList);
-			}
 			// note the increase in matches terminating with this node.
 			this.totalMatches++;
-			matchList.add(context);
+			addMatches(new Object[] { context }, 1);
 
 			return this;
 		}
@@ -252,18 +315,17 @@ public class TrieNode<C> implements Serializable
 
 			// use the character at the starting index to get the next node
 
-			String nextCharacter = word.substring(startingIndex, startingIndex + 1);
+			char c = word.charAt(startingIndex);
 
-			TrieNode<C> nextNode = nodeMap.get(nextCharacter);
+			TrieNode<C> nextNode = getChild(c);
 
 			if (nextNode == null)
 			{
 
 				String matchedSubString = word.substring(0, startingIndex);
 
-				nextNode = newNode(this, matchedSubString, nextCharacter);
-				nodeMap.put(nextCharacter, nextNode);
-				orderedNodeList.add(nextNode);
+				nextNode = newNode(this, matchedSubString, String.valueOf(c));
+				addChild(c, nextNode);
 
 			}
 
@@ -315,10 +377,10 @@ public class TrieNode<C> implements Serializable
 			return; // not enough length in the subtree to match the string so
 		// no need to look.
 
-		for (TrieNode<C> trieNode : this.orderedNodeList)
+		for (int i = 0; i < childCount; i++)
 		{
 
-			trieNode.findMatchingNodes(matchingNodeList, nodeFilter, substring);
+			children[i].findMatchingNodes(matchingNodeList, nodeFilter, substring);
 			// match = trieNode.find(substring);
 			//
 			// if (match != null)
@@ -378,7 +440,7 @@ public class TrieNode<C> implements Serializable
 
 				newKey = key.substring(keyLength - difference);
 
-				TrieNode<C> nextNode = this.nodeMap.get(newKey.substring(0, 1));
+				TrieNode<C> nextNode = getChild(newKey.charAt(0));
 
 				if (nextNode == null)
 					return null;
@@ -466,16 +528,17 @@ public class TrieNode<C> implements Serializable
 //
 // } else {
 
-		log.debug(orderedNodeList.toString());
+		if (log.isDebugEnabled())
+			log.debug(getOrderedNodeList().toString());
 
 		addExistingContextToList(wordList, filter, limit);
 
 		if (wordList.size() == limit)
 			return;
 
-		for (TrieNode<C> node : orderedNodeList)
+		for (int i = 0; i < childCount; i++)
 		{
-			node.buildWordList(wordList, filter, limit);
+			children[i].buildWordList(wordList, filter, limit);
 
 			if (wordList.size() == limit)
 				return;
@@ -485,40 +548,28 @@ public class TrieNode<C> implements Serializable
 
 	}
 
+	@SuppressWarnings("unchecked")
 	private void addExistingContextToList(List<C> wordList, ITrieFilter<C> filter, int limit)
 	{
 
-		List<Integer> keyList = new LinkedList<Integer>();
-
-		keyList.addAll(matchMap.keySet());
-
 		/*
-		 * Sort numerically so that order is based on shortest match first.
+		 * The matches are already ordered so that the shortest match comes first.
 		 */
-		Collections.sort(keyList);
-
-		for (Integer i : keyList)
+		for (int i = 0; i < matchCount; i++)
 		{
 
-			List<C> contextList = this.matchMap.get(i);
+			C c = (C)matches[i];
 
 			// check with the filter to only include those with the proper
 
-			for (C c : contextList)
+			if (filter == null || filter.isVisible(c))
 			{
+				wordList.add(c);
 
-				if (filter.isVisible(c))
-				{
-					wordList.add(c);
-
-					if (wordList.size() == limit)
-						return;
-				}
-
-
+				if (wordList.size() == limit)
+					return;
 			}
 
-
 		}
 	}
 
@@ -532,9 +583,9 @@ public class TrieNode<C> implements Serializable
 
 		v.visit(this);
 
-		for (TrieNode<C> child : this.orderedNodeList)
+		for (int i = 0; i < childCount; i++)
 		{
-			child.visit(v);
+			children[i].visit(v);
 		}
 	}
 
@@ -550,77 +601,78 @@ public class TrieNode<C> implements Serializable
 	public void simplify()
 	{
 
-		Collections.sort(orderedNodeList, trieNodeComparator);
+		simplifyNode();
 
 		/*
-		 * simplify our children first.
+		 * then simplify our children
 		 */
-		while (this.orderedNodeList.size() == 1)
-		{
-			// consolidate with the subnode
-			// remove the sub node and set us as the parent to their
-			// children.
-			TrieNode<C> onlyChild = this.orderedNodeList.remove(0);
-
-			this.nodeMap.clear();
-
-			String childCharacter = onlyChild.getCharacter();
 
-			for (int i = 0; i < childCharacter.length(); i++)
-			{
+		for (int i = 0; i < childCount; i++)
+		{
 
-				String c = childCharacter.substring(i, i + 1);
+			children[i].simplify();
 
-				// we grow our character to represent both
-				this.character = this.character + c;
+		}
 
-				List<C> childContext = onlyChild.matchMap.get(i);
+	}
 
-				if (childContext != null && childContext.size() > 0)
-				{
-					int matchIndex = this.character.length() + i;
+	/**
+	 * Merge this node with its only child until it has none or several, the children themselves
+	 * are not simplified.
+	 */
+	void simplifyNode()
+	{
 
-					List<C> ourContext = this.matchMap.get(i);
+		while (this.childCount == 1)
+		{
+			// consolidate with the subnode
+			// remove the sub node and set us as the parent to their
+			// children.
+			TrieNode<C> onlyChild = this.children[0];
 
-					if (ourContext == null)
-					{
-						// insert the child context as our own.
-						this.matchMap.put(Integer.valueOf(matchIndex), childContext);
-					}
-					else
-					{
-						// append the child context to our own
-						ourContext.addAll(childContext);
-					}
-				}
+			// we grow our character to represent both
+			this.character = this.character + onlyChild.getCharacter();
 
-			}
+			// the child matches are longer than ours so they go after our own.
+			addMatches(onlyChild.matches, onlyChild.matchCount);
 
-			this.nodeMap = onlyChild.nodeMap;
-			this.orderedNodeList = onlyChild.orderedNodeList;
+			this.childKeys = onlyChild.childKeys;
+			this.children = onlyChild.children;
+			this.childCount = onlyChild.childCount;
 
 			this.totalMatches += onlyChild.totalMatches;
 
-			for (TrieNode<C> n : orderedNodeList)
+			for (int i = 0; i < childCount; i++)
 			{
 
 				// adjust the parent reference
-				n.parentNode = this;
+				children[i].parentNode = this;
 			}
 
 		}
 
-		/*
-		 * then simplify our children
-		 */
-
-		for (TrieNode<C> n : orderedNodeList)
-		{
+		trimToSize();
+	}
 
-			n.simplify();
+	/**
+	 * Release the unused capacity of the child and match arrays.
+	 */
+	private void trimToSize()
+	{
 
+		if (childCount == 0)
+		{
+			childKeys = NO_KEYS;
+			children = null;
+		}
+		else if (childCount < children.length)
+		{
+			childKeys = Arrays.copyOf(childKeys, childCount);
+			children = Arrays.copyOf(children, childCount);
 		}
 
+		if (matches != null && matchCount < matches.length)
+			matches = Arrays.copyOf(matches, matchCount);
 	}
 
 	/**
@@ -630,7 +682,12 @@ public class TrieNode<C> implements Serializable
 	 */
 	public Set<String> getNextNodeCharacterSet()
 	{
-		return this.nodeMap.keySet();
+		Set<String> characterSet = new LinkedHashSet<String>();
+
+		for (int i = 0; i < childCount; i++)
+			characterSet.add(String.valueOf(childKeys[i]));
+
+		return characterSet;
 	}
 
 	public void setNodeID(Long nodeID)
@@ -652,27 +709,156 @@ public class TrieNode<C> implements Serializable
 	 * 
 	 * @return the ordered list of matches for this node
 	 */
+	@SuppressWarnings("unchecked")
 	public List<C> getOrderedMatchList()
 	{
 
-		List<C> matchList = new LinkedList<C>();
+		List<C> matchList = new ArrayList<C>(matchCount);
+
+		for (int i = 0; i < matchCount; i++)
+		{
+
+			matchList.add((C)matches[i]);
+
+		}
+
+		return matchList;
+
+	}
+
+	/**
+	 * Compute the max child string length of each node of the subtree (children first).
+	 */
+	void computeMaxChildStringLength()
+	{
 
-		List<Integer> keyList = new ArrayList<Integer>();
+		for (int i = 0; i < childCount; i++)
+			children[i].computeMaxChildStringLength();
 
-		keyList.addAll(matchMap.keySet());
+		updateMaxChildStringLength();
+	}
 
-		Collections.sort(keyList);
+	/**
+	 * Compute the max child string length of this node from the ones of its children.
+	 */
+	void updateMaxChildStringLength()
+	{
 
-		for (Integer key : keyList)
+		for (int i = 0; i < childCount; i++)
 		{
+			TrieNode<C> child = children[i];
 
-			matchList.addAll(matchMap.get(key));
+			int childMax = child.maxChildStringLength + child.character.length();
 
+			if (childMax > maxChildStringLength)
+				maxChildStringLength = childMax;
 		}
+	}
 
-		return matchList;
+	/**
+	 * Compute the best scoring values of the subtree of each node (children first).
+	 * 
+	 * @param ranking
+	 * @param k
+	 *            the number of values to keep on each node.
+	 */
+	void rank(IRankedTrieConfiguration<C> ranking, int k)
+	{
 
+		for (int i = 0; i < childCount; i++)
+			children[i].rank(ranking, k);
+
+		rankFromChildren(ranking, k);
 	}
 
+	/**
+	 * Compute the best scoring values of this node from its own matches and the ranked matches of
+	 * its children, which need to be ranked already.
+	 * 
+	 * @param ranking
+	 * @param k
+	 *            the number of values to keep.
+	 */
+	@SuppressWarnings("unchecked")
+	void rankFromChildren(IRankedTrieConfiguration<C> ranking, int k)
+	{
+
+		int candidateCount = matchCount;
+
+		for (int i = 0; i < childCount; i++)
+			candidateCount += children[i].rankedMatches.length;
+
+		Object[] candidates = new Object[candidateCount];
+		final double[] scores = new double[candidateCount];
+
+		int index = 0;
+
+		for (int i = 0; i < matchCount; i++)
+		{
+			candidates[index] = matches[i];
+			scores[index] = ranking.getScore((C)matches[i]);
+			index++;
+		}
+
+		for (int i = 0; i < childCount; i++)
+		{
+			TrieNode<C> child = children[i];
+
+			System.arraycopy(child.rankedMatches, 0, candidates, index, child.rankedMatches.length);
+			System.arraycopy(child.rankedScores, 0, scores, index, child.rankedScores.length);
+			index += child.rankedMatches.length;
+		}
+
+		Integer[] order = new Integer[candidateCount];
+
+		for (int i = 0; i < candidateCount; i++)
+			order[i] = Integer.valueOf(i);
+
+		// stable so that equal scores keep the order of the word list.
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+
+			public int compare(Integer o1, Integer o2)
+			{
+				return Double.compare(scores[o2.intValue()], scores[o1.intValue()]);
+			}
+		});
+
+		int size = Math.min(k, candidateCount);
+
+		rankedMatches = new Object[size];
+		rankedScores = new double[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			rankedMatches[i] = candidates[order[i].intValue()];
+			rankedScores[i] = scores[order[i].intValue()];
+		}
+	}
+
+	/**
+	 * 
+	 * @return the best scoring values of the subtree, highest score first (empty if the trie is
+	 *         not ranked).
+	 */
+	@SuppressWarnings("unchecked")
+	public List<C> getRankedMatchList()
+	{
+
+		if (rankedMatches == null)
+			return Collections.emptyList();
+
+		return (List<C>)(List<?>)Collections.unmodifiableList(Arrays.asList(rankedMatches));
+	}
+
+	/**
+	 * 
+	 * @return true if the ranked matches contain every value of the subtree.
+	 */
+	boolean isRankedMatchListComplete(int k)
+	{
+
+		return rankedMatches != null && rankedMatches.length < k;
+	}
 
 }
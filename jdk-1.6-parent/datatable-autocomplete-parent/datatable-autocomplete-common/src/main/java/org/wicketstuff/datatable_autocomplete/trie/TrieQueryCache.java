@@ -0,0 +1,330 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A bounded, least recently used cache of the word lists of a trie.
+ * 
+ *         One instance is meant to be shared by all of the sessions using the same trie (keep it
+ *         next to the trie in a static or application scoped context) so that the hot short
+ *         prefixes are only computed once.
+ * 
+ *         When there is no entry for a prefix but there is a complete one for a shorter prefix of
+ *         it (the previous keystroke) the shorter list is filtered instead of walking the trie
+ *         again. This needs a {@link PatriciaTrie} that is a prefix trie: the values whose word
+ *         starts with the prefix are kept, which is the same list, in the same order, as the trie
+ *         returns. A suffix trie (match anywhere) lists a value once for each matching suffix and
+ *         the cached list does not tell which suffix an entry stands for, so its word lists are
+ *         only cached, not refined.
+ * 
+ *         The entries belong to a single trie instance, the cache is cleared as soon as it is
+ *         used with a different one (f.i. after a new snapshot has been published). Filters are
+ *         part of the key so they should implement equals and hashCode if different instances
+ *         select the same values.
+ * 
+ */
+public class TrieQueryCache<C>
+{
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	public static final int DEFAULT_MAX_VALUES = 1000000;
+
+	private final int maxEntries;
+
+	private final int maxValues;
+
+	// access ordered so that the eldest entry is the least recently used one.
+	private final LinkedHashMap<CacheKey, CacheEntry<C>> entries =
+		new LinkedHashMap<CacheKey, CacheEntry<C>>(16, 0.75f, true);
+
+	private Trie<C> trie = null;
+
+	private int cachedValues = 0;
+
+	private long hits = 0;
+
+	private long refinements = 0;
+
+	private long misses = 0;
+
+	/**
+	 * 
+	 */
+	public TrieQueryCache()
+	{
+
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of cached word lists.
+	 * @param maxValues
+	 *            the maximum number of values of all of the cached word lists together.
+	 */
+	public TrieQueryCache(int maxEntries, int maxValues)
+	{
+
+		if (maxEntries < 1 || maxValues < 1)
+			throw new IllegalArgumentException("the cache limits need to be positive");
+
+		this.maxEntries = maxEntries;
+		this.maxValues = maxValues;
+	}
+
+	/**
+	 * Get the word list from the cache or from the trie.
+	 * 
+	 * @param trie
+	 * @param prefix
+	 * @param filter
+	 * @param limit
+	 *            the maximum number of values, -1 for all of them.
+	 * @return the word list, it can be changed by the caller.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<C> getWordList(Trie<C> trie, String prefix, ITrieFilter<C> filter, int limit)
+	{
+
+		// the trie ignores the case anyway, so don't cache the same list twice.
+		if (trie instanceof PatriciaTrie<?> &&
+			!((PatriciaTrie<C>)trie).getConfiguration().isIndexCaseSensitive())
+			prefix = prefix.toLowerCase();
+
+		CacheKey key = new CacheKey(prefix, filter);
+
+		CacheEntry<C> refinable = null;
+
+		synchronized (this)
+		{
+			if (this.trie != trie)
+			{
+				clear();
+				this.trie = trie;
+			}
+
+			CacheEntry<C> entry = entries.get(key);
+
+			if (entry != null && (entry.complete || limit >= 0 && limit <= entry.values.size()))
+			{
+				hits++;
+				return copy(entry.values, limit);
+			}
+
+			if (trie instanceof PatriciaTrie<?> &&
+				!((PatriciaTrie<C>)trie).getConfiguration().isSuffixTree())
+				refinable = findRefinableEntry(prefix, filter);
+
+			if (refinable != null)
+				refinements++;
+			else
+				misses++;
+		}
+
+		List<C> values;
+		boolean complete;
+
+		if (refinable != null)
+		{
+			values = refine((PatriciaTrie<C>)trie, refinable.values, prefix);
+			complete = true;
+		}
+		else
+		{
+			values = trie.getWordList(prefix, filter, limit);
+			complete = limit < 0 || values.size() < limit;
+		}
+
+		put(trie, key, new CacheEntry<C>(Collections.unmodifiableList(new ArrayList<C>(values)),
+			complete));
+
+		return copy(values, limit);
+	}
+
+	/**
+	 * Drop all of the cached word lists.
+	 */
+	public synchronized void clear()
+	{
+
+		entries.clear();
+		cachedValues = 0;
+	}
+
+	/**
+	 * @return the number of cached word lists.
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of queries answered from a cached word list of the same prefix.
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return the number of queries answered by filtering the cached word list of a shorter
+	 *         prefix.
+	 */
+	public synchronized long getRefinements()
+	{
+		return refinements;
+	}
+
+	/**
+	 * @return the number of queries that had to use the trie.
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	private CacheEntry<C> findRefinableEntry(String prefix, ITrieFilter<C> filter)
+	{
+
+		// the longest shorter prefix is the smallest list to filter.
+		for (int length = prefix.length() - 1; length >= 0; length--)
+		{
+
+			CacheEntry<C> entry = entries.get(new CacheKey(prefix.substring(0, length), filter));
+
+			if (entry != null && entry.complete)
+				return entry;
+		}
+
+		return null;
+	}
+
+	private List<C> refine(PatriciaTrie<C> patriciaTrie, List<C> values, String prefix)
+	{
+
+		ITrieConfiguration<C> configuration = patriciaTrie.getConfiguration();
+
+		List<C> refined = new ArrayList<C>();
+
+		// the values of the longer prefix are a subtree of the shorter one, so they keep the order
+		// of the trie.
+		for (C value : values)
+		{
+
+			String word = configuration.getWord(value);
+
+			if (!configuration.isIndexCaseSensitive())
+				word = word.toLowerCase();
+
+			if (word.startsWith(prefix))
+				refined.add(value);
+		}
+
+		return refined;
+	}
+
+	private synchronized void put(Trie<C> trie, CacheKey key, CacheEntry<C> entry)
+	{
+
+		// the trie was replaced while the word list was computed.
+		if (this.trie != trie || entry.values.size() > maxValues)
+			return;
+
+		CacheEntry<C> previous = entries.put(key, entry);
+
+		if (previous != null)
+			cachedValues -= previous.values.size();
+
+		cachedValues += entry.values.size();
+
+		Iterator<CacheEntry<C>> it = entries.values().iterator();
+
+		while (it.hasNext() && (entries.size() > maxEntries || cachedValues > maxValues))
+		{
+			CacheEntry<C> eldest = it.next();
+
+			cachedValues -= eldest.values.size();
+			it.remove();
+		}
+	}
+
+	private static <C> List<C> copy(List<C> values, int limit)
+	{
+
+		if (limit >= 0 && limit < values.size())
+			return new ArrayList<C>(values.subList(0, limit));
+
+		return new ArrayList<C>(values);
+	}
+
+	private static final class CacheKey
+	{
+
+		private final String prefix;
+
+		private final ITrieFilter<?> filter;
+
+		private CacheKey(String prefix, ITrieFilter<?> filter)
+		{
+			this.prefix = prefix;
+			this.filter = filter;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * prefix.hashCode() + (filter == null ? 0 : filter.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			if (!(obj instanceof CacheKey))
+				return false;
+
+			CacheKey other = (CacheKey)obj;
+
+			return prefix.equals(other.prefix) &&
+				(filter == null ? other.filter == null : filter.equals(other.filter));
+		}
+	}
+
+	private static final class CacheEntry<C>
+	{
+
+		private final List<C> values;
+
+		// false if the list was cut off by a limit.
+		private final boolean complete;
+
+		private CacheEntry(List<C> values, boolean complete)
+		{
+			this.values = values;
+			this.complete = complete;
+		}
+	}
+}
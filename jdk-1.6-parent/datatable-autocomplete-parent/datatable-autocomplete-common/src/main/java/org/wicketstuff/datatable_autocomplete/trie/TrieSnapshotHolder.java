@@ -0,0 +1,94 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current trie of a data set that is reloaded while it is being queried.
+ * 
+ * A new trie is built off to the side (f.i. with the {@link PatriciaTrieBuilder}) and then swapped
+ * in atomically, readers either get the complete old trie or the complete new one. Keep the holder
+ * in a static or application scoped context and return {@link #getTrie()} from the ITrieProvider
+ * so that the trie itself is never serialized.
+ * 
+ */
+public class TrieSnapshotHolder<C>
+{
+
+	private final AtomicReference<Trie<C>> current = new AtomicReference<Trie<C>>();
+
+	/**
+	 * 
+	 */
+	public TrieSnapshotHolder()
+	{
+
+		super();
+	}
+
+	/**
+	 * @param initialTrie
+	 */
+	public TrieSnapshotHolder(Trie<C> initialTrie)
+	{
+
+		current.set(initialTrie);
+	}
+
+	/**
+	 * @return the current trie or null if nothing has been published yet.
+	 */
+	public Trie<C> getTrie()
+	{
+
+		return current.get();
+	}
+
+	/**
+	 * Replace the current trie. The trie must be completely built, it will be used by concurrent
+	 * readers straight away.
+	 * 
+	 * @param trie
+	 * @return the previous trie.
+	 */
+	public Trie<C> publish(Trie<C> trie)
+	{
+
+		if (trie == null)
+			throw new IllegalArgumentException("trie can not be null");
+
+		return current.getAndSet(trie);
+	}
+
+	/**
+	 * Build a new trie from the values and publish it once it is complete.
+	 * 
+	 * @param builder
+	 * @param values
+	 * @return the new trie.
+	 */
+	public PatriciaTrie<C> rebuild(PatriciaTrieBuilder<C> builder, Collection<? extends C> values)
+	{
+
+		PatriciaTrie<C> trie = builder.build(values);
+
+		publish(trie);
+
+		return trie;
+	}
+}
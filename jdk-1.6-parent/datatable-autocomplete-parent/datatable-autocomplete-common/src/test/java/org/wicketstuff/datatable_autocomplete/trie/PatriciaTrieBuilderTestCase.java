@@ -0,0 +1,249 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the tries built by the {@link PatriciaTrieBuilder} match the ones indexed one value
+ * at a time.
+ */
+public class PatriciaTrieBuilderTestCase extends TestCase
+{
+
+	private static ITrieConfiguration<String> newConfiguration(final boolean suffixTree)
+	{
+		return new AbstractTrieConfiguration<String>()
+		{
+
+			private static final long serialVersionUID = 1L;
+
+			public String getWord(String ctx)
+			{
+				return ctx;
+			}
+
+			public boolean isIndexCaseSensitive()
+			{
+				return false;
+			}
+
+			public boolean isSuffixTree()
+			{
+				return suffixTree;
+			}
+		};
+	}
+
+	/**
+	 * Scores the words by their hash code, the ties keep the word list order.
+	 */
+	private static final class RankedConfiguration extends AbstractTrieConfiguration<String>
+		implements IRankedTrieConfiguration<String>
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public String getWord(String ctx)
+		{
+			return ctx;
+		}
+
+		public double getScore(String ctx)
+		{
+			return ctx.hashCode() & 0xff;
+		}
+
+		public int getTopK()
+		{
+			return 10;
+		}
+
+		public boolean isIndexCaseSensitive()
+		{
+			return false;
+		}
+
+		public boolean isSuffixTree()
+		{
+			return false;
+		}
+	}
+
+	private static List<String> newWordList()
+	{
+
+		Random random = new Random(7);
+
+		List<String> wordList = new ArrayList<String>();
+
+		wordList.add("");
+
+		for (int i = 0; i < 2000; i++)
+		{
+			int length = 1 + random.nextInt(7);
+
+			StringBuilder word = new StringBuilder();
+
+			for (int j = 0; j < length; j++)
+				word.append("abcdeABCDE".charAt(random.nextInt(10)));
+
+			wordList.add(word.toString());
+		}
+
+		return wordList;
+	}
+
+	private void assertSameTrie(boolean suffixTree, ExecutorService executor)
+	{
+
+		List<String> wordList = newWordList();
+
+		PatriciaTrie<String> expected = new PatriciaTrie<String>(newConfiguration(suffixTree));
+
+		for (String word : wordList)
+			expected.index(word);
+
+		expected.simplifyIndex();
+
+		PatriciaTrie<String> actual = new PatriciaTrieBuilder<String>(
+			newConfiguration(suffixTree), executor).build(wordList);
+
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getChildren(), actual.getChildren());
+		assertEquals(expected.getNextNodeCharacterSet(), actual.getNextNodeCharacterSet());
+		assertSameMaxChildStringLengths(expected.getRoot(), actual.getRoot());
+
+		for (String prefix : new String[] { "", "a", "B", "ab", "cde", "eeee", "x" })
+		{
+			assertEquals(prefix, expected.getWordList(prefix), actual.getWordList(prefix));
+			assertEquals(prefix, expected.getWordList(prefix, 5), actual.getWordList(prefix, 5));
+		}
+	}
+
+	/**
+	 * The max child string lengths computed in the partitions match the ones of simplifyIndex()
+	 * on every node.
+	 */
+	private void assertSameMaxChildStringLengths(TrieNode<String> expected, TrieNode<String> actual)
+	{
+
+		assertEquals(expected.getCharacter(), actual.getCharacter());
+		assertEquals(expected.getCharacter(), expected.getMaxChildStringLength(),
+			actual.getMaxChildStringLength());
+
+		List<TrieNode<String>> expectedChildren = expected.getOrderedNodeList();
+		List<TrieNode<String>> actualChildren = actual.getOrderedNodeList();
+
+		assertEquals(expectedChildren.size(), actualChildren.size());
+
+		for (int i = 0; i < expectedChildren.size(); i++)
+			assertSameMaxChildStringLengths(expectedChildren.get(i), actualChildren.get(i));
+	}
+
+	public void testPrefixTrie()
+	{
+		assertSameTrie(false, null);
+	}
+
+	public void testSuffixTrie()
+	{
+		assertSameTrie(true, null);
+	}
+
+	public void testRankedTrie()
+	{
+
+		List<String> wordList = newWordList();
+
+		PatriciaTrie<String> expected = new PatriciaTrie<String>(new RankedConfiguration());
+
+		for (String word : wordList)
+			expected.index(word);
+
+		expected.simplifyIndex();
+
+		PatriciaTrie<String> actual = new PatriciaTrieBuilder<String>(new RankedConfiguration()).build(
+			wordList);
+
+		assertEquals(expected.getRoot().getRankedMatchList(), actual.getRoot().getRankedMatchList());
+
+		for (String prefix : new String[] { "", "a", "B", "ab", "cde", "eeee", "x" })
+		{
+			assertEquals(prefix, expected.getRankedWordList(prefix, null, 10),
+				actual.getRankedWordList(prefix, null, 10));
+			assertEquals(prefix, expected.getRankedWordList(prefix, null, 3),
+				actual.getRankedWordList(prefix, null, 3));
+		}
+	}
+
+	public void testSharedExecutor()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try
+		{
+			assertSameTrie(false, executor);
+
+			assertFalse(executor.isShutdown());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	public void testSnapshotIsReadOnly()
+	{
+
+		List<String> wordList = new ArrayList<String>();
+		wordList.add("transit");
+		wordList.add("trip");
+
+		PatriciaTrie<String> trie = new PatriciaTrieBuilder<String>(newConfiguration(false)).build(
+			wordList);
+
+		assertTrue(trie.isReadOnly());
+
+		try
+		{
+			trie.index("train");
+			fail("a snapshot can not be changed");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected
+		}
+
+		TrieSnapshotHolder<String> holder = new TrieSnapshotHolder<String>(trie);
+
+		wordList.add("train");
+
+		Trie<String> previous = holder.publish(new PatriciaTrieBuilder<String>(
+			newConfiguration(false)).build(wordList));
+
+		assertSame(trie, previous);
+		assertEquals(2, trie.getWordList("tr").size());
+		assertEquals(3, holder.getTrie().getWordList("tr").size());
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the ranked prefix queries against sorting all of the prefix matches.
+ */
+public class RankedPatriciaTrieTestCase extends TestCase
+{
+
+	private static final int TOP_K = 5;
+
+	/**
+	 * The words are "word:score".
+	 */
+	private static final class RankedConfiguration extends AbstractTrieConfiguration<String>
+		implements IRankedTrieConfiguration<String>
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public String getWord(String ctx)
+		{
+			return ctx.substring(0, ctx.indexOf(':'));
+		}
+
+		public double getScore(String ctx)
+		{
+			return Double.parseDouble(ctx.substring(ctx.indexOf(':') + 1));
+		}
+
+		public int getTopK()
+		{
+			return TOP_K;
+		}
+
+		public boolean isIndexCaseSensitive()
+		{
+			return false;
+		}
+
+		public boolean isSuffixTree()
+		{
+			return false;
+		}
+	}
+
+	private static final ITrieFilter<String> EVEN_SCORE_FILTER = new ITrieFilter<String>()
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public boolean isVisible(String word)
+		{
+			return word.endsWith("0") || word.endsWith("2") || word.endsWith("4") ||
+				word.endsWith("6") || word.endsWith("8");
+		}
+	};
+
+	private final RankedConfiguration configuration = new RankedConfiguration();
+
+	private List<String> wordList;
+
+	private PatriciaTrie<String> trie;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		Random random = new Random(11);
+
+		wordList = new ArrayList<String>();
+
+		for (int i = 0; i < 3000; i++)
+		{
+			int length = 1 + random.nextInt(6);
+
+			StringBuilder word = new StringBuilder();
+
+			for (int j = 0; j < length; j++)
+				word.append("abcd".charAt(random.nextInt(4)));
+
+			// unique scores so that the expected order is well defined.
+			word.append(':').append(i * 7919 % 3001);
+
+			wordList.add(word.toString());
+		}
+
+		trie = new PatriciaTrieBuilder<String>(configuration).build(wordList);
+	}
+
+	private List<String> expected(String prefix, ITrieFilter<String> filter, int limit)
+	{
+
+		List<String> expected = new ArrayList<String>();
+
+		for (String value : wordList)
+		{
+			if (configuration.getWord(value).startsWith(prefix) &&
+				(filter == null || filter.isVisible(value)))
+				expected.add(value);
+		}
+
+		Collections.sort(expected, new Comparator<String>()
+		{
+
+			public int compare(String o1, String o2)
+			{
+				return Double.compare(configuration.getScore(o2), configuration.getScore(o1));
+			}
+		});
+
+		if (limit >= 0 && limit < expected.size())
+			return expected.subList(0, limit);
+
+		return expected;
+	}
+
+	public void testTopKFromNodes()
+	{
+		for (String prefix : new String[] { "", "a", "ab", "bcd", "dddd", "ccccca" })
+		{
+			assertEquals(prefix, expected(prefix, null, TOP_K), trie.getRankedWordList(prefix,
+				null, TOP_K));
+			assertEquals(prefix, expected(prefix, null, 1), trie.getRankedWordList(prefix, null,
+				1));
+		}
+	}
+
+	public void testLimitLargerThanTopK()
+	{
+		for (String prefix : new String[] { "", "a", "ab", "bcd" })
+		{
+			assertEquals(prefix, expected(prefix, null, 50), trie.getRankedWordList(prefix, null,
+				50));
+			assertEquals(prefix, expected(prefix, null, -1), trie.getRankedWordList(prefix, null,
+				-1));
+		}
+	}
+
+	public void testFilter()
+	{
+		for (String prefix : new String[] { "", "a", "ab", "bcd", "dddd" })
+		{
+			assertEquals(prefix, expected(prefix, EVEN_SCORE_FILTER, TOP_K),
+				trie.getRankedWordList(prefix, EVEN_SCORE_FILTER, TOP_K));
+		}
+	}
+
+	public void testMissingPrefix()
+	{
+		assertEquals(0, trie.getRankedWordList("e", null, TOP_K).size());
+	}
+
+	public void testUnrankedConfiguration()
+	{
+
+		PatriciaTrie<String> unranked = new PatriciaTrie<String>(
+			new AbstractTrieConfiguration<String>()
+			{
+
+				private static final long serialVersionUID = 1L;
+
+				public String getWord(String ctx)
+				{
+					return ctx;
+				}
+
+				public boolean isIndexCaseSensitive()
+				{
+					return false;
+				}
+
+				public boolean isSuffixTree()
+				{
+					return false;
+				}
+			});
+
+		unranked.index("abc");
+		unranked.simplifyIndex();
+
+		try
+		{
+			unranked.getRankedWordList("a", null, 1);
+			fail("the values have no score");
+		}
+		catch (IllegalStateException e)
+		{
+			// expected
+		}
+	}
+}
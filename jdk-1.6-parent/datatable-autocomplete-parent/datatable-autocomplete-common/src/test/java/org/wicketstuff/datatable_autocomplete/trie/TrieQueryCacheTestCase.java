@@ -0,0 +1,173 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.wicketstuff.datatable_autocomplete.trie;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the cached and refined word lists against the trie.
+ */
+public class TrieQueryCacheTestCase extends TestCase
+{
+
+	private static PatriciaTrie<String> newTrie(final boolean suffixTree)
+	{
+		PatriciaTrie<String> trie = new PatriciaTrie<String>(
+			new AbstractTrieConfiguration<String>()
+			{
+
+				private static final long serialVersionUID = 1L;
+
+				public String getWord(String ctx)
+				{
+					return ctx;
+				}
+
+				public boolean isIndexCaseSensitive()
+				{
+					return false;
+				}
+
+				public boolean isSuffixTree()
+				{
+					return suffixTree;
+				}
+			});
+
+		for (int i = 1000; i < 3000; i++)
+			trie.index(String.valueOf(i));
+
+		trie.index("Transit");
+		trie.index("trip");
+
+		trie.simplifyIndex();
+
+		return trie;
+	}
+
+	public void testRefinePrefix()
+	{
+
+		PatriciaTrie<String> trie = newTrie(false);
+
+		TrieQueryCache<String> cache = new TrieQueryCache<String>();
+
+		assertEquals(trie.getWordList("1"), cache.getWordList(trie, "1", null, -1));
+		assertEquals(1, cache.getMisses());
+
+		// typing on refines the previous list.
+		assertEquals(trie.getWordList("12"), cache.getWordList(trie, "12", null, -1));
+		assertEquals(trie.getWordList("123", 5), cache.getWordList(trie, "123", null, 5));
+		assertEquals(trie.getWordList("tr"), cache.getWordList(trie, "tr", null, -1));
+		assertEquals(trie.getWordList("TRA"), cache.getWordList(trie, "TRA", null, -1));
+		assertEquals(3, cache.getRefinements());
+
+		// a limit cuts the refined list where the trie would.
+		assertEquals(trie.getWordList("1", 7), cache.getWordList(trie, "1", null, 7));
+		assertEquals(trie.getWordList("13", 7), cache.getWordList(trie, "13", null, 7));
+		assertEquals(4, cache.getRefinements());
+		assertEquals(2, cache.getMisses());
+
+		// and the same input again is a hit.
+		assertEquals(trie.getWordList("12"), cache.getWordList(trie, "12", null, -1));
+		assertEquals(2, cache.getHits());
+	}
+
+	public void testRefineSuffix()
+	{
+
+		PatriciaTrie<String> trie = newTrie(true);
+
+		TrieQueryCache<String> cache = new TrieQueryCache<String>();
+
+		assertEquals(trie.getWordList("2"), cache.getWordList(trie, "2", null, -1));
+
+		// a suffix trie lists a value once per matching suffix, the cached list of the shorter
+		// prefix can't give the same list so the trie is used.
+		List<String> cached = cache.getWordList(trie, "22", null, -1);
+		assertEquals(trie.getWordList("22", null, -1), cached);
+		assertEquals(trie.getWordList("222", null, 10), cache.getWordList(trie, "222", null, 10));
+		assertEquals(0, cache.getRefinements());
+		assertEquals(3, cache.getMisses());
+
+		// the same query gives the same list when it is cached.
+		assertEquals(cached, cache.getWordList(trie, "22", null, -1));
+		assertEquals(trie.getWordList("22", null, 7), cache.getWordList(trie, "22", null, 7));
+		assertEquals(2, cache.getHits());
+	}
+
+	public void testLimitedListIsNotRefined()
+	{
+
+		PatriciaTrie<String> trie = newTrie(false);
+
+		TrieQueryCache<String> cache = new TrieQueryCache<String>();
+
+		assertEquals(10, cache.getWordList(trie, "1", null, 10).size());
+		assertEquals(5, cache.getWordList(trie, "1", null, 5).size());
+		assertEquals(1, cache.getHits());
+
+		// the cached list is cut off so it can't answer a larger limit or a longer prefix.
+		assertEquals(trie.getWordList("1", 20), cache.getWordList(trie, "1", null, 20));
+		assertEquals(trie.getWordList("12"), cache.getWordList(trie, "12", null, -1));
+		assertEquals(0, cache.getRefinements());
+		assertEquals(3, cache.getMisses());
+	}
+
+	public void testBounded()
+	{
+
+		PatriciaTrie<String> trie = newTrie(false);
+
+		TrieQueryCache<String> cache = new TrieQueryCache<String>(2, 500);
+
+		cache.getWordList(trie, "10", null, -1);
+		cache.getWordList(trie, "11", null, -1);
+		cache.getWordList(trie, "10", null, -1);
+		cache.getWordList(trie, "12", null, -1);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHits());
+
+		// "11" was the least recently used one.
+		cache.getWordList(trie, "10", null, -1);
+		assertEquals(2, cache.getHits());
+		cache.getWordList(trie, "11", null, -1);
+		assertEquals(2, cache.getHits());
+
+		// too many values to be cached.
+		cache.getWordList(trie, "1", null, -1);
+		assertEquals(2, cache.size());
+	}
+
+	public void testNewTrieClearsCache()
+	{
+
+		TrieQueryCache<String> cache = new TrieQueryCache<String>();
+
+		cache.getWordList(newTrie(false), "1", null, -1);
+		assertEquals(1, cache.size());
+
+		PatriciaTrie<String> trie = newTrie(false);
+
+		cache.getWordList(trie, "12", null, -1);
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.getRefinements());
+	}
+}
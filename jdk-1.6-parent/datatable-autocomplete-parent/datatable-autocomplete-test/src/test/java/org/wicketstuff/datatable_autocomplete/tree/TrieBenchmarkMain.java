@@ -0,0 +1,173 @@
+package org.wicketstuff.datatable_autocomplete.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.wicketstuff.datatable_autocomplete.trie.AbstractTrieConfiguration;
+import org.wicketstuff.datatable_autocomplete.trie.PatriciaTrie;
+import org.wicketstuff.datatable_autocomplete.trie.Trie;
+import org.wicketstuff.datatable_autocomplete.tst.TernarySearchTrie;
+
+/**
+ * Rough memory and lookup comparison of the {@link PatriciaTrie} and the {@link TernarySearchTrie}.
+ *
+ * Run with a fixed heap (f.i. -Xms512m -Xmx512m) so that the used memory numbers are comparable.
+ * Arguments: [words] [lookups]
+ *
+ */
+public class TrieBenchmarkMain
+{
+
+	private static final class StringConfiguration extends AbstractTrieConfiguration<String>
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public String getWord(String ctx)
+		{
+			return ctx;
+		}
+
+		public boolean isIndexCaseSensitive()
+		{
+			return false;
+		}
+
+		public boolean isSuffixTree()
+		{
+			return false;
+		}
+	}
+
+	private interface TrieFactory
+	{
+
+		Trie<String> create();
+	}
+
+	public static void main(String[] args)
+	{
+
+		int words = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+		Random random = new Random(42);
+
+		List<String> wordList = new ArrayList<String>(words);
+
+		for (int i = 0; i < words; i++)
+			wordList.add(randomWord(random, 3, 12));
+
+		List<String> prefixList = new ArrayList<String>(lookups);
+
+		for (int i = 0; i < lookups; i++)
+			prefixList.add(randomWord(random, 1, 4));
+
+		TrieFactory patricia = new TrieFactory()
+		{
+
+			public Trie<String> create()
+			{
+				return new PatriciaTrie<String>(new StringConfiguration());
+			}
+		};
+
+		TrieFactory ternary = new TrieFactory()
+		{
+
+			public Trie<String> create()
+			{
+				return new TernarySearchTrie<String>(new StringConfiguration());
+			}
+		};
+
+		// first round warms up the jit, the second one is reported.
+		for (int round = 0; round < 2; round++)
+		{
+			boolean report = round == 1;
+
+			run("PatriciaTrie", patricia, wordList, prefixList, report);
+			run("TernarySearchTrie", ternary, wordList, prefixList, report);
+		}
+
+	}
+
+	private static void run(String name, TrieFactory factory, List<String> wordList,
+		List<String> prefixList, boolean report)
+	{
+
+		long before = usedMemory();
+
+		long start = System.nanoTime();
+
+		Trie<String> trie = factory.create();
+
+		trie.preIndexing();
+
+		for (String word : wordList)
+			trie.index(word);
+
+		trie.postIndexing();
+
+		long buildTime = System.nanoTime() - start;
+
+		long after = usedMemory();
+
+		long matches = 0;
+
+		start = System.nanoTime();
+
+		for (String prefix : prefixList)
+			matches += trie.getWordList(prefix, 20).size();
+
+		long lookupTime = System.nanoTime() - start;
+
+		if (report)
+		{
+			System.out.println(name + ": build = " + (buildTime / 1000000L) + " ms, retained = " +
+				((after - before) / 1024L) + " kb, " + prefixList.size() + " lookups = " +
+				(lookupTime / 1000000L) + " ms (" + (lookupTime / prefixList.size()) +
+				" ns/lookup, " + matches + " matches)");
+		}
+
+		// keep the trie reachable until after the memory has been measured.
+		if (trie.getWordList("", 1) == null)
+			throw new IllegalStateException();
+	}
+
+	private static long usedMemory()
+	{
+
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++)
+		{
+			System.gc();
+
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String randomWord(Random random, int minLength, int maxLength)
+	{
+
+		int length = minLength + random.nextInt(maxLength - minLength + 1);
+
+		StringBuilder word = new StringBuilder(length);
+
+		for (int i = 0; i < length; i++)
+			word.append((char)('a' + random.nextInt(26)));
+
+		return word.toString();
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * 
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.datatable_autocomplete.provider;
+
+import org.wicketstuff.datatable_autocomplete.trie.TrieQueryCache;
+
+
+/**
+ * An ITrieProvider that also supplies a query cache shared by all of the users of the trie.
+ * 
+ *         Like the trie the cache should come from a static or non-serializable context, the
+ *         {@link TrieDataProvider} uses it for all of its trie queries.
+ * 
+ */
+public interface ICachingTrieProvider<C> extends ITrieProvider<C>
+{
+
+	/**
+	 * 
+	 * @return the query cache for the trie or null to query the trie directly.
+	 */
+	public TrieQueryCache<C> provideQueryCache();
+
+}
@@ -29,8 +29,10 @@ import org.apache.wicket.model.IModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wicketstuff.datatable_autocomplete.provider.utils.DataProviderUtils;
+import org.wicketstuff.datatable_autocomplete.trie.IRankedTrie;
 import org.wicketstuff.datatable_autocomplete.trie.ITrieFilter;
 import org.wicketstuff.datatable_autocomplete.trie.Trie;
+import org.wicketstuff.datatable_autocomplete.trie.TrieQueryCache;
 
 /**
  * @author mocleiri
@@ -63,6 +65,8 @@ public class TrieDataProvider<C> extends SortableDataProvider<C>
 
 	private boolean matchAnyWhereInString = false;
 
+	private boolean rankedResults = false;
+
 	private final IModelProvider<C> modelProvider;
 
 	private Map<Integer, Integer> resultLimitMap = new LinkedHashMap<Integer, Integer>();
@@ -101,6 +105,28 @@ public class TrieDataProvider<C> extends SortableDataProvider<C>
 		return matchAnyWhereInString;
 	}
 
+	/**
+	 * If true and the trie is an {@link IRankedTrie} the limited results (see
+	 * {@link #setMaxResultMap(Map)}) are the best scoring matches instead of the first ones in
+	 * word order.
+	 * 
+	 * @param rankedResults
+	 *            the rankedResults to set
+	 */
+	public void setRankedResults(boolean rankedResults)
+	{
+
+		this.rankedResults = rankedResults;
+	}
+
+	/**
+	 * @return the rankedResults
+	 */
+	public boolean isRankedResults()
+	{
+		return rankedResults;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -180,13 +206,32 @@ public class TrieDataProvider<C> extends SortableDataProvider<C>
 
 				Integer limit = this.resultLimitMap.get(prefix.length());
 
-				if (limit == null)
+				boolean ranked = limit != null && rankedResults && trie instanceof IRankedTrie<?>;
+
+				TrieQueryCache<C> queryCache = null;
+
+				if (trieProvider instanceof ICachingTrieProvider<?>)
+					queryCache = ((ICachingTrieProvider<C>)trieProvider).provideQueryCache();
+
+				if (queryCache != null && !ranked)
+				{
+					// shared with the other sessions, refines the list of the previous input.
+					currentListData = queryCache.getWordList(trie, prefix, this.trieResultFilter,
+						limit == null ? -1 : limit.intValue());
+				}
+				else if (limit == null)
 				{
 					// no limit
 					currentListData = trie.getWordList(prefix, this.trieResultFilter);
 
 				}
 
+				else if (ranked)
+				{
+					// the best 'limit' results without materializing the whole subtree.
+					currentListData = ((IRankedTrie<C>)trie).getRankedWordList(prefix,
+						this.trieResultFilter, limit);
+				}
 				else
 				{
 					currentListData = trie.getWordList(prefix, this.trieResultFilter, limit);
@@ -0,0 +1,100 @@
+/*
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.jasperreports;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * Factory that gets the report from the shared {@link JasperReportCache}, so the report is only
+ * loaded again when its source has been modified.
+ */
+public class CachedJasperReportFactory implements IJasperReportFactory
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * the url of the report source.
+	 */
+	private final URL source;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param source
+	 *            the url of the report source
+	 */
+	public CachedJasperReportFactory(URL source)
+	{
+		this.source = Args.notNull(source, "source");
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param source
+	 *            the report source file
+	 */
+	public CachedJasperReportFactory(File source)
+	{
+		this(toURL(source));
+	}
+
+	/**
+	 * @see org.wicketstuff.jasperreports.IJasperReportFactory#newJasperReport()
+	 */
+	public JasperReport newJasperReport() throws JRException
+	{
+		return getCache().getReport(source);
+	}
+
+	/**
+	 * Gets the cache the report is kept in. Defaults to the shared cache.
+	 * 
+	 * @return the report cache
+	 */
+	protected JasperReportCache getCache()
+	{
+		return JasperReportCache.get();
+	}
+
+	/**
+	 * @return the url of the report source
+	 */
+	public final URL getSource()
+	{
+		return source;
+	}
+
+	private static URL toURL(File file)
+	{
+		Args.notNull(file, "source");
+		try
+		{
+			return file.toURI().toURL();
+		}
+		catch (MalformedURLException e)
+		{
+			throw new WicketRuntimeException(e);
+		}
+	}
+}
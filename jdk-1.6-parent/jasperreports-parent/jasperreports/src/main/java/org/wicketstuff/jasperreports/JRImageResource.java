@@ -22,10 +22,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 
 import net.sf.jasperreports.engine.JRAbstractExporter;
 import net.sf.jasperreports.engine.JRException;
@@ -119,13 +121,10 @@ public final class JRImageResource extends JRResource
 
 
 	@Override
-	protected byte[] getExporterData(JasperPrint print, JRAbstractExporter exporter)
-		throws JRException
+	protected void writeExporterData(JasperPrint print, JRAbstractExporter exporter,
+		OutputStream out) throws JRException
 	{
-		// prepare a stream to trap the exporter's output
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		exporter.setParameter(JRExporterParameter.JASPER_PRINT, print);
-		exporter.setParameter(JRExporterParameter.OUTPUT_STREAM, baos);
 
 		// create an image object
 		int width = (int)(print.getPageWidth() * getZoomRatio());
@@ -134,9 +133,9 @@ public final class JRImageResource extends JRResource
 		exporter.setParameter(JRGraphics2DExporterParameter.GRAPHICS_2D, image.getGraphics());
 		exporter.setParameter(JRGraphics2DExporterParameter.ZOOM_RATIO, new Float(zoomRatio));
 
-		// execute the export and return the trapped result
+		// execute the export and write the image
 		exporter.exportReport();
-		return toImageData(image);
+		writeImageData(image, out);
 	}
 
 	/**
@@ -146,21 +145,42 @@ public final class JRImageResource extends JRResource
 	 * @return The image data for this dynamic image
 	 */
 	protected byte[] toImageData(final BufferedImage image)
+	{
+		// Create output stream
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		writeImageData(image, out);
+
+		// Return the image data
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param image
+	 *            The image to write
+	 * @param out
+	 *            The stream the image data is written to
+	 */
+	protected void writeImageData(final BufferedImage image, final OutputStream out)
 	{
 		try
 		{
-			// Create output stream
-			final ByteArrayOutputStream out = new ByteArrayOutputStream();
-
 			// Get image writer for format
 			final ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
 
 			// Write out image
-			writer.setOutput(ImageIO.createImageOutputStream(out));
-			writer.write(image);
-
-			// Return the image data
-			return out.toByteArray();
+			final ImageOutputStream imageOut = ImageIO.createImageOutputStream(out);
+			try
+			{
+				writer.setOutput(imageOut);
+				writer.write(image);
+			}
+			finally
+			{
+				// flushes the image data, the response stream stays open
+				imageOut.close();
+				writer.dispose();
+			}
 		}
 		catch (IOException e)
 		{
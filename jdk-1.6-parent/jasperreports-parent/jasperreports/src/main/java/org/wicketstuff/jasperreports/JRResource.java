@@ -18,10 +18,20 @@
 package org.wicketstuff.jasperreports;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletResponse;
 
 import net.sf.jasperreports.engine.JRAbstractExporter;
 import net.sf.jasperreports.engine.JRDataSource;
@@ -32,10 +42,13 @@ import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.JasperReport;
 import net.sf.jasperreports.engine.util.JRLoader;
 
+import org.apache.wicket.Application;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.resource.AbstractResource;
 import org.apache.wicket.request.resource.ContentDisposition;
 import org.apache.wicket.util.io.ByteArrayOutputStream;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,6 +100,16 @@ public abstract class JRResource extends AbstractResource
 	 */
 	private String fileName;
 
+	/**
+	 * whether the report is filled by the {@link ReportFillExecutor} of the application.
+	 */
+	private boolean asyncFill;
+
+	/**
+	 * how long a request waits for an asynchronous fill.
+	 */
+	private Duration fillTimeout = Duration.ONE_MINUTE;
+
 	/**
 	 * Construct without a report. You must provide a report before you can use this resource.
 	 */
@@ -122,15 +145,7 @@ public abstract class JRResource extends AbstractResource
 	 */
 	public JRResource(final URL report)
 	{
-		this(new IJasperReportFactory()
-		{
-			public JasperReport newJasperReport() throws JRException
-			{
-				return (JasperReport)JRLoader.loadObject(report);
-			}
-
-			;
-		});
+		this(new CachedJasperReportFactory(report));
 	}
 
 	/**
@@ -141,15 +156,7 @@ public abstract class JRResource extends AbstractResource
 	 */
 	public JRResource(final File report)
 	{
-		this(new IJasperReportFactory()
-		{
-			public JasperReport newJasperReport() throws JRException
-			{
-				return (JasperReport)JRLoader.loadObject(report);
-			}
-
-			;
-		});
+		this(new CachedJasperReportFactory(report));
 	}
 
 	/**
@@ -166,13 +173,26 @@ public abstract class JRResource extends AbstractResource
 
 	/**
 	 * Gets jasperReport. This implementation uses an internal factory to lazily create the report.
-	 * After creation the report is cached (set as the jasperReport property). Override this method
-	 * in case you want to provide some alternative creation/ caching scheme.
+	 * After creation the report is cached (set as the jasperReport property), unless the factory
+	 * is a {@link CachedJasperReportFactory}: its reports are kept in the shared
+	 * {@link JasperReportCache}, which reloads them when their source is modified. Override this
+	 * method in case you want to provide some alternative creation/ caching scheme.
 	 * 
 	 * @return jasperReport
 	 */
 	public JasperReport getJasperReport()
 	{
+		if (jasperReport == null && jasperReportFactory instanceof CachedJasperReportFactory)
+		{
+			try
+			{
+				return jasperReportFactory.newJasperReport();
+			}
+			catch (JRException e)
+			{
+				throw new WicketRuntimeException(e);
+			}
+		}
 		// if the report has not yet been initialized and can be, initialize it
 		if (jasperReport == null && jasperReportFactory != null)
 		{
@@ -305,6 +325,57 @@ public abstract class JRResource extends AbstractResource
 		return this;
 	}
 
+	/**
+	 * Whether the report is filled by the {@link ReportFillExecutor} of the application.
+	 * 
+	 * @return whether the report is filled asynchronously
+	 */
+	public boolean isAsyncFill()
+	{
+		return asyncFill;
+	}
+
+	/**
+	 * Sets whether the report is filled by the {@link ReportFillExecutor} of the application.
+	 * This bounds the number of reports filled at the same time; requests beyond the capacity of
+	 * the executor are answered with a <code>503 Service Unavailable</code> instead of waiting.
+	 * The fill runs without a request cycle, so {@link #newJasperPrint()} must not depend on one.
+	 * 
+	 * @param asyncFill
+	 *            whether the report is filled asynchronously
+	 * 
+	 * @return This
+	 */
+	public final JRResource setAsyncFill(boolean asyncFill)
+	{
+		this.asyncFill = asyncFill;
+		return this;
+	}
+
+	/**
+	 * Gets how long a request waits for an asynchronous fill.
+	 * 
+	 * @return the fill timeout
+	 */
+	public Duration getFillTimeout()
+	{
+		return fillTimeout;
+	}
+
+	/**
+	 * Sets how long a request waits for an asynchronous fill, the fill is cancelled afterwards.
+	 * 
+	 * @param timeout
+	 *            the fill timeout
+	 * 
+	 * @return This
+	 */
+	public final JRResource setFillTimeout(Duration timeout)
+	{
+		fillTimeout = Args.notNull(timeout, "timeout");
+		return this;
+	}
+
 	/**
 	 * Called by getData to obtain an exporter instance.
 	 * 
@@ -390,6 +461,33 @@ public abstract class JRResource extends AbstractResource
 		resp.setContentDisposition(getContentDisposition());
 		if (resp.dataNeedsToBeWritten(attributes))
 		{
+			final Future<JasperPrint> fill;
+			if (isAsyncFill())
+			{
+				try
+				{
+					// start filling while the response headers are written
+					fill = ReportFillExecutor.get(Application.get()).submit(
+						new Callable<JasperPrint>()
+						{
+							public JasperPrint call() throws JRException
+							{
+								return newJasperPrint();
+							}
+						});
+				}
+				catch (RejectedExecutionException e)
+				{
+					log.warn("too many reports are being filled, rejecting " + getFileName());
+					resp.setError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					return resp;
+				}
+			}
+			else
+			{
+				fill = null;
+			}
+
 			resp.setWriteCallback(new WriteCallback()
 			{
 
@@ -400,43 +498,134 @@ public abstract class JRResource extends AbstractResource
 					{
 						long t1 = System.currentTimeMillis();
 						// get a print instance for exporting
-						JasperPrint print = newJasperPrint();
+						JasperPrint print = fill != null ? awaitFill(fill) : newJasperPrint();
 
 						// get a fresh instance of an exporter for this report
 						JRAbstractExporter exporter = newExporter();
 
-
-						final byte[] data = getExporterData(print, exporter);
-
-						attributes.getResponse().write(data);
+						OutputStream out = attributes.getResponse().getOutputStream();
+						if (overridesGetExporterData())
+						{
+							// subclasses written against the buffering api keep working
+							out.write(getExporterData(print, exporter));
+						}
+						else
+						{
+							writeExporterData(print, exporter, out);
+						}
 						if (log.isDebugEnabled())
 						{
 							long t2 = System.currentTimeMillis();
-							log.debug("loaded report data; bytes: " + data.length + " in " +
-								(t2 - t1) + " miliseconds");
+							log.debug("exported report data in " + (t2 - t1) + " miliseconds");
 						}
 					}
 					catch (JRException e)
 					{
 						throw new WicketRuntimeException(e);
 					}
+					catch (IOException e)
+					{
+						throw new WicketRuntimeException(e);
+					}
 				}
 			});
 		}
 		return resp;
 	}
 
-	protected byte[] getExporterData(JasperPrint print, JRAbstractExporter exporter)
-		throws JRException
+	/**
+	 * Whether a subclass still overrides the deprecated
+	 * {@link #getExporterData(JasperPrint, JRAbstractExporter)}, in which case the response is
+	 * written from its result instead of being streamed.
+	 */
+	private boolean overridesGetExporterData()
+	{
+		for (Class<?> c = getClass(); c != JRResource.class; c = c.getSuperclass())
+		{
+			try
+			{
+				c.getDeclaredMethod("getExporterData", JasperPrint.class, JRAbstractExporter.class);
+				return true;
+			}
+			catch (NoSuchMethodException e)
+			{
+				// not declared here, try the superclass
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for an asynchronous fill, cancelling it after the {@link #getFillTimeout() timeout}.
+	 */
+	private JasperPrint awaitFill(Future<JasperPrint> fill) throws JRException
+	{
+		try
+		{
+			return fill.get(getFillTimeout().getMilliseconds(), TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e)
+		{
+			fill.cancel(true);
+			throw new WicketRuntimeException("filling report " + getFileName() +
+				" took longer than " + getFillTimeout(), e);
+		}
+		catch (InterruptedException e)
+		{
+			fill.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new WicketRuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof JRException)
+			{
+				throw (JRException)e.getCause();
+			}
+			throw new WicketRuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Exports the report straight to the response.
+	 * 
+	 * @param print
+	 *            the filled report
+	 * @param exporter
+	 *            a fresh exporter instance
+	 * @param out
+	 *            the response output stream
+	 * @throws JRException
+	 */
+	protected void writeExporterData(JasperPrint print, JRAbstractExporter exporter,
+		OutputStream out) throws JRException
 	{
-		// prepare a stream to trap the exporter's output
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		exporter.setParameter(JRExporterParameter.JASPER_PRINT, print);
-		exporter.setParameter(JRExporterParameter.OUTPUT_STREAM, baos);
+		exporter.setParameter(JRExporterParameter.OUTPUT_STREAM, out);
 
-		// execute the export and return the trapped result
 		exporter.exportReport();
+	}
 
+	/**
+	 * Exports the report to a byte array.
+	 * 
+	 * @param print
+	 *            the filled report
+	 * @param exporter
+	 *            a fresh exporter instance
+	 * @return the exported report
+	 * @throws JRException
+	 * @deprecated the response is written by {@link #writeExporterData(JasperPrint,
+	 *             JRAbstractExporter, OutputStream)}, override that method instead. Overrides of
+	 *             this method are still used for the response, but buffer the whole export.
+	 */
+	@Deprecated
+	protected byte[] getExporterData(JasperPrint print, JRAbstractExporter exporter)
+		throws JRException
+	{
+		// prepare a stream to trap the exporter's output
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writeExporterData(print, exporter, baos);
 		return baos.toByteArray();
 	}
 
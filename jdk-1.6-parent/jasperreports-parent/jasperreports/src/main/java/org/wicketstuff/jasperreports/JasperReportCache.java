@@ -0,0 +1,275 @@
+/*
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.jasperreports;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+
+import org.apache.wicket.util.io.Connections;
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+import org.apache.wicket.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of compiled reports, shared by all the resources of an application. Reports are
+ * keyed by the url they are loaded from; sources ending with <code>.jrxml</code> are compiled,
+ * all others are expected to be compiled <code>.jasper</code> files.
+ * <p>
+ * The last modification time of a source is checked at most once per
+ * {@link #getModificationCheckInterval() interval}, a changed source is loaded again on the next
+ * request. Once the cache is full the least recently used report is dropped.
+ */
+public class JasperReportCache
+{
+	/**
+	 * logger.
+	 */
+	private static final Logger log = LoggerFactory.getLogger(JasperReportCache.class);
+
+	/**
+	 * The default maximum number of cached reports.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+
+	/**
+	 * the shared instance.
+	 */
+	private static final JasperReportCache INSTANCE = new JasperReportCache(DEFAULT_MAX_ENTRIES);
+
+	/**
+	 * the cached reports, in access order.
+	 */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * the minimum time between two modification checks of a source.
+	 */
+	private volatile Duration modificationCheckInterval = Duration.ONE_SECOND;
+
+	/**
+	 * Gets the cache shared by all resources.
+	 * 
+	 * @return the shared cache
+	 */
+	public static JasperReportCache get()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of cached reports
+	 */
+	public JasperReportCache(final int maxEntries)
+	{
+		Args.isTrue(maxEntries > 0, "maxEntries must be positive");
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the compiled report of a source, loading or compiling it if it is not cached yet or if
+	 * it has been modified since it was cached.
+	 * 
+	 * @param source
+	 *            the url of the report source
+	 * @return the compiled report
+	 * @throws JRException
+	 *             when the report can not be loaded or compiled
+	 */
+	public JasperReport getReport(URL source) throws JRException
+	{
+		Args.notNull(source, "source");
+
+		String key = source.toExternalForm();
+		Entry entry;
+		synchronized (entries)
+		{
+			entry = entries.get(key);
+			if (entry == null)
+			{
+				entry = new Entry();
+				entries.put(key, entry);
+			}
+		}
+
+		// only the requests for the same source wait for each other while it is loaded
+		synchronized (entry)
+		{
+			long now = System.currentTimeMillis();
+			if (entry.report == null ||
+				now - entry.lastChecked >= modificationCheckInterval.getMilliseconds())
+			{
+				long lastModified = getLastModified(source);
+				if (entry.report == null || lastModified != entry.lastModified)
+				{
+					entry.report = loadReport(source);
+					entry.lastModified = lastModified;
+				}
+				entry.lastChecked = now;
+			}
+			return entry.report;
+		}
+	}
+
+	/**
+	 * Removes the report of a source from the cache.
+	 * 
+	 * @param source
+	 *            the url of the report source
+	 */
+	public void remove(URL source)
+	{
+		synchronized (entries)
+		{
+			entries.remove(source.toExternalForm());
+		}
+	}
+
+	/**
+	 * Removes all reports from the cache.
+	 */
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return the number of cached reports
+	 */
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Gets the minimum time between two modification checks of a source.
+	 * 
+	 * @return the modification check interval
+	 */
+	public Duration getModificationCheckInterval()
+	{
+		return modificationCheckInterval;
+	}
+
+	/**
+	 * Sets the minimum time between two modification checks of a source. Use
+	 * {@link Duration#NONE} to check on every request.
+	 * 
+	 * @param interval
+	 *            the modification check interval
+	 */
+	public void setModificationCheckInterval(Duration interval)
+	{
+		modificationCheckInterval = Args.notNull(interval, "interval");
+	}
+
+	/**
+	 * Loads the report of a source. Override to support other source types.
+	 * 
+	 * @param source
+	 *            the url of the report source
+	 * @return the compiled report
+	 * @throws JRException
+	 *             when the report can not be loaded or compiled
+	 */
+	protected JasperReport loadReport(URL source) throws JRException
+	{
+		long t1 = System.currentTimeMillis();
+		final JasperReport report;
+		if (source.getPath().endsWith(".jrxml"))
+		{
+			InputStream in = null;
+			try
+			{
+				in = source.openStream();
+				report = JasperCompileManager.compileReport(in);
+			}
+			catch (IOException e)
+			{
+				throw new JRException("unable to read report " + source, e);
+			}
+			finally
+			{
+				IOUtils.closeQuietly(in);
+			}
+		}
+		else
+		{
+			report = (JasperReport)JRLoader.loadObject(source);
+		}
+		if (log.isDebugEnabled())
+		{
+			log.debug("loaded report " + source + " in " + (System.currentTimeMillis() - t1) +
+				" miliseconds");
+		}
+		return report;
+	}
+
+	/**
+	 * @return the last modification time of the source, or 0 when it is unknown
+	 */
+	private static long getLastModified(URL source) throws JRException
+	{
+		try
+		{
+			Time lastModified = Connections.getLastModified(source);
+			return lastModified != null ? lastModified.getMilliseconds() : 0;
+		}
+		catch (IOException e)
+		{
+			throw new JRException("unable to check report " + source, e);
+		}
+	}
+
+	/**
+	 * A cached report.
+	 */
+	private static final class Entry
+	{
+		private JasperReport report;
+
+		private long lastModified;
+
+		private long lastChecked;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.jasperreports;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jasperreports.engine.JasperPrint;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.Session;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * The bounded pool of threads the {@link JRResource#isAsyncFill() asynchronous} resources of an
+ * application fill their reports with. At most <code>threads</code> reports are filled at the
+ * same time and at most <code>queueCapacity</code> are waiting for a thread; further fills are
+ * rejected, which the resources answer with a <code>503 Service Unavailable</code>.
+ * <p>
+ * The pool is shut down when the application is destroyed.
+ */
+public class ReportFillExecutor
+{
+	/**
+	 * The default number of reports waiting for a thread.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	private static final MetaDataKey<ReportFillExecutor> KEY = new MetaDataKey<ReportFillExecutor>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param threads
+	 *            the maximum number of reports filled at the same time
+	 * @param queueCapacity
+	 *            the maximum number of reports waiting for a thread
+	 */
+	public ReportFillExecutor(int threads, int queueCapacity)
+	{
+		Args.isTrue(threads > 0, "threads must be positive");
+		Args.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity), new FillThreadFactory());
+	}
+
+	/**
+	 * Installs the executor the reports of an application are filled with, and shuts it down when
+	 * the application is destroyed.
+	 * 
+	 * @param application
+	 * @param executor
+	 * @return the executor
+	 */
+	public static ReportFillExecutor install(Application application,
+		final ReportFillExecutor executor)
+	{
+		Args.notNull(executor, "executor");
+		synchronized (application)
+		{
+			application.setMetaData(KEY, executor);
+		}
+		application.getApplicationListeners().add(new IApplicationListener()
+		{
+			public void onAfterInitialized(Application application)
+			{
+			}
+
+			public void onBeforeDestroyed(Application application)
+			{
+				executor.shutdown();
+			}
+		});
+		return executor;
+	}
+
+	/**
+	 * Gets the executor of an application, installing one with a thread per available processor
+	 * if none has been installed yet.
+	 * 
+	 * @param application
+	 * @return the executor of the application
+	 */
+	public static ReportFillExecutor get(Application application)
+	{
+		synchronized (application)
+		{
+			ReportFillExecutor executor = application.getMetaData(KEY);
+			if (executor == null)
+			{
+				executor = install(application, new ReportFillExecutor(Runtime.getRuntime()
+					.availableProcessors(), DEFAULT_QUEUE_CAPACITY));
+			}
+			return executor;
+		}
+	}
+
+	/**
+	 * Submits a report fill. The fill runs with the application and session of the submitting
+	 * thread, but without a request cycle.
+	 * 
+	 * @param fill
+	 *            the fill
+	 * @return the future of the filled report
+	 * @throws RejectedExecutionException
+	 *             when the queue is full
+	 */
+	public Future<JasperPrint> submit(final Callable<JasperPrint> fill)
+	{
+		final Application application = ThreadContext.getApplication();
+		final Session session = ThreadContext.getSession();
+		return executor.submit(new Callable<JasperPrint>()
+		{
+			public JasperPrint call() throws Exception
+			{
+				ThreadContext.setApplication(application);
+				ThreadContext.setSession(session);
+				try
+				{
+					return fill.call();
+				}
+				finally
+				{
+					ThreadContext.detach();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the threads once the running and waiting fills are done.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	private static final class FillThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "jasperreports-fill-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
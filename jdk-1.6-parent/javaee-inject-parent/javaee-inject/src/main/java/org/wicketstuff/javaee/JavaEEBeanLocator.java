@@ -16,7 +16,7 @@
  */
 package org.wicketstuff.javaee;
 
-import javax.naming.InitialContext;
+import javax.ejb.Stateful;
 import javax.naming.NamingException;
 
 import org.apache.wicket.proxy.IProxyTargetLocator;
@@ -41,6 +41,9 @@ import org.wicketstuff.javaee.naming.IJndiNamingStrategy;
  *                        will search in the JNDI registry for an EJB named
  *                        'java:comp/env/&lt;complete-class-name-of-the-ejb&gt;' (in the example:
  *                        'java:comp/env/com.acme.MyEjb)
+ *                        <p/>
+ *                        Unless the bean is stateful, the located reference is cached by the
+ *                        {@link JndiLookupCache}.
  */
 public class JavaEEBeanLocator implements IProxyTargetLocator
 {
@@ -49,6 +52,7 @@ public class JavaEEBeanLocator implements IProxyTargetLocator
 	private String beanName;
 	private Class<?> beanType;
 	private IJndiNamingStrategy namingStrategy;
+	private boolean cacheable;
 
 	/**
 	 * Constructor
@@ -61,6 +65,26 @@ public class JavaEEBeanLocator implements IProxyTargetLocator
 	 *            - naming strategy
 	 */
 	public JavaEEBeanLocator(String beanId, Class<?> beanType, IJndiNamingStrategy namingStrategy)
+	{
+		this(beanId, beanType, namingStrategy, beanType == null ||
+			!beanType.isAnnotationPresent(Stateful.class));
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param beanId
+	 *            bean name
+	 * @param beanType
+	 *            bean class
+	 * @param namingStrategy
+	 *            - naming strategy
+	 * @param cacheable
+	 *            - whether the reference may be cached and shared, which must be false for
+	 *            stateful beans
+	 */
+	public JavaEEBeanLocator(String beanId, Class<?> beanType, IJndiNamingStrategy namingStrategy,
+		boolean cacheable)
 	{
 		if (beanType == null)
 		{
@@ -69,6 +93,7 @@ public class JavaEEBeanLocator implements IProxyTargetLocator
 		this.beanType = beanType;
 		beanName = beanId;
 		this.namingStrategy = namingStrategy;
+		this.cacheable = cacheable;
 	}
 
 	/**
@@ -95,6 +120,11 @@ public class JavaEEBeanLocator implements IProxyTargetLocator
 		return beanType;
 	}
 
+	public boolean isCacheable()
+	{
+		return cacheable;
+	}
+
 	/**
 	 * @see java.lang.Object#hashCode()
 	 */
@@ -133,11 +163,13 @@ public class JavaEEBeanLocator implements IProxyTargetLocator
 	private Object lookupEjb(String name, Class<?> type)
 	{
 		String lookupName = calculateName(name, type);
-		InitialContext ic;
 		try
 		{
-			ic = new InitialContext();
-			return ic.lookup(lookupName);
+			if (cacheable)
+			{
+				return JndiLookupCache.get().lookup(lookupName, type);
+			}
+			return JndiLookupCache.get().lookupUncached(lookupName);
 		}
 		catch (NamingException e)
 		{
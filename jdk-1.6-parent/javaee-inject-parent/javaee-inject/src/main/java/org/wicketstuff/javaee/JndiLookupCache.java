@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.javaee;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * Cache of resolved JNDI references, used by {@link JndiObjectLocator} and
+ * {@link JavaEEBeanLocator} so that a deserialized proxy does not need a new
+ * {@link InitialContext} and a full JNDI lookup to find its target again.
+ * <p/>
+ * References are cached by lookup name and type. Cache misses are looked up through a single
+ * shared {@link Context}, which is created on first use; lookups on it are synchronized because an
+ * {@link InitialContext} is not thread safe. What happens when a lookup fails with a
+ * {@link NamingException} is configured with {@link #setInvalidation(Invalidation)}.
+ * <p/>
+ * References which must not be shared, like stateful session beans, are looked up with
+ * {@link #lookupUncached(String)}. Each of these lookups goes through a context of its own, so they
+ * run in parallel instead of queueing up behind the shared context.
+ */
+public class JndiLookupCache
+{
+
+	/**
+	 * What is invalidated when a lookup fails with a {@link NamingException}.
+	 */
+	public enum Invalidation
+	{
+		/**
+		 * Nothing, the exception is thrown straight away.
+		 */
+		NONE,
+
+		/**
+		 * The shared context is discarded and the lookup is retried once with a new one.
+		 */
+		CONTEXT,
+
+		/**
+		 * Like {@link #CONTEXT}, but all of the cached references are discarded too, for naming
+		 * services which hand out references that become stale together (f.i. after a redeploy).
+		 */
+		ALL
+	}
+
+	private static final JndiLookupCache instance = new JndiLookupCache();
+
+	private final ConcurrentMap<Key, Object> references = new ConcurrentHashMap<Key, Object>();
+
+	private Context context;
+
+	private volatile Invalidation invalidation = Invalidation.CONTEXT;
+
+	/**
+	 * @return the cache shared by the locators
+	 */
+	public static JndiLookupCache get()
+	{
+		return instance;
+	}
+
+	/**
+	 * Looks up the reference, or returns the cached one
+	 *
+	 * @param name
+	 *            - the JNDI name
+	 * @param type
+	 *            - the expected type, part of the cache key
+	 * @return the reference
+	 * @throws NamingException
+	 *             if the lookup fails
+	 */
+	public Object lookup(String name, Class<?> type) throws NamingException
+	{
+		Key key = new Key(name, type);
+		Object reference = references.get(key);
+		if (reference == null)
+		{
+			reference = lookupShared(name);
+			if (reference != null)
+			{
+				Object previous = references.putIfAbsent(key, reference);
+				if (previous != null)
+				{
+					reference = previous;
+				}
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * Looks up the reference through a new context without caching it
+	 *
+	 * @param name
+	 *            - the JNDI name
+	 * @return the reference
+	 * @throws NamingException
+	 *             if the lookup fails
+	 */
+	public Object lookupUncached(String name) throws NamingException
+	{
+		Context uncachedContext = createContext();
+		try
+		{
+			return uncachedContext.lookup(name);
+		}
+		finally
+		{
+			close(uncachedContext);
+		}
+	}
+
+	private Object lookupShared(String name) throws NamingException
+	{
+		synchronized (this)
+		{
+			try
+			{
+				return getContext().lookup(name);
+			}
+			catch (NamingException e)
+			{
+				if (invalidation == Invalidation.NONE)
+				{
+					throw e;
+				}
+				closeContext();
+				if (invalidation == Invalidation.ALL)
+				{
+					references.clear();
+				}
+				return getContext().lookup(name);
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached reference, the next lookup goes to the naming service again
+	 *
+	 * @param name
+	 *            - the JNDI name
+	 * @param type
+	 *            - the expected type
+	 */
+	public void invalidate(String name, Class<?> type)
+	{
+		references.remove(new Key(name, type));
+	}
+
+	/**
+	 * Removes all of the cached references and discards the shared context
+	 */
+	public void clear()
+	{
+		references.clear();
+		synchronized (this)
+		{
+			closeContext();
+		}
+	}
+
+	/**
+	 * @return the number of cached references
+	 */
+	public int size()
+	{
+		return references.size();
+	}
+
+	public Invalidation getInvalidation()
+	{
+		return invalidation;
+	}
+
+	/**
+	 * Sets what is invalidated when a lookup fails, {@link Invalidation#CONTEXT} by default
+	 *
+	 * @param invalidation
+	 *            - the invalidation
+	 */
+	public void setInvalidation(Invalidation invalidation)
+	{
+		if (invalidation == null)
+		{
+			throw new IllegalArgumentException("[invalidation] argument cannot be null");
+		}
+		this.invalidation = invalidation;
+	}
+
+	/**
+	 * Creates the context used for the lookups, a plain {@link InitialContext} by default
+	 *
+	 * @return the context
+	 * @throws NamingException
+	 *             if the context cannot be created
+	 */
+	protected Context createContext() throws NamingException
+	{
+		return new InitialContext();
+	}
+
+	private Context getContext() throws NamingException
+	{
+		if (context == null)
+		{
+			context = createContext();
+		}
+		return context;
+	}
+
+	private void closeContext()
+	{
+		if (context != null)
+		{
+			close(context);
+			context = null;
+		}
+	}
+
+	private static void close(Context context)
+	{
+		try
+		{
+			context.close();
+		}
+		catch (NamingException e)
+		{
+			// the context is discarded anyway
+		}
+	}
+
+	private static final class Key
+	{
+		private final String name;
+		private final Class<?> type;
+
+		private Key(String name, Class<?> type)
+		{
+			this.name = name;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj instanceof Key)
+			{
+				Key other = (Key)obj;
+				return name.equals(other.name) && type.equals(other.type);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return name.hashCode() + (127 * type.hashCode());
+		}
+	}
+}
@@ -16,7 +16,6 @@
  */
 package org.wicketstuff.javaee;
 
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
 import org.apache.wicket.proxy.IProxyTargetLocator;
@@ -31,6 +30,9 @@ import org.apache.wicket.util.lang.Objects;
  * <p/>
  * The 'referenceName' attribute is mandatory, and refers to the name of the object as declared in
  * the web.xml file
+ * <p/>
+ * The located object is cached by the {@link JndiLookupCache}, so locating it again (f.i. when a
+ * proxy is deserialized) does not go to the naming service.
  * 
  * @author Filippo Diotalevi
  */
@@ -76,11 +78,9 @@ public class JndiObjectLocator implements IProxyTargetLocator
 	private static Object lookup(String name, Class<?> type)
 	{
 		String lookupName = "java:comp/env/" + name;
-		InitialContext ic;
 		try
 		{
-			ic = new InitialContext();
-			return ic.lookup(lookupName);
+			return JndiLookupCache.get().lookup(lookupName, type);
 		}
 		catch (NamingException e)
 		{
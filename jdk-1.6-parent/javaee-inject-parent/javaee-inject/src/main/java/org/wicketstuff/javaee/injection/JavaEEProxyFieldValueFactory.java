@@ -40,6 +40,9 @@ import org.wicketstuff.javaee.naming.StandardJndiNamingStrategy;
 /**
  * {@link IFieldValueFactory} that creates proxies of EJBs based on the {@link javax.ejb.EJB}
  * annotation applied to a field.
+ * <p/>
+ * The locators of the proxies look up their targets through the {@link JndiLookupCache}, except
+ * for stateful beans.
  * 
  * @author Filippo Diotalevi
  */
@@ -107,11 +110,7 @@ public class JavaEEProxyFieldValueFactory implements IFieldValueFactory
 			return null;
 		}
 
-		// if the field contains the "stateful" description, or the field itself
-		// is a no-interfaceview Stateful bean
-		if ((field.isAnnotationPresent(EJB.class) &&
-			field.getAnnotation(EJB.class).description().equals("stateful") || field.getType()
-			.isAnnotationPresent(Stateful.class)))
+		if (isStateful(field))
 		{
 			// creates a session if there wasn't already
 
@@ -159,12 +158,25 @@ public class JavaEEProxyFieldValueFactory implements IFieldValueFactory
 		}
 	}
 
+	/**
+	 * @return whether the field contains the "stateful" description, or the field itself is a
+	 *         no-interfaceview Stateful bean
+	 */
+	private static boolean isStateful(Field field)
+	{
+		return field.isAnnotationPresent(EJB.class) &&
+			field.getAnnotation(EJB.class).description().equals("stateful") ||
+			field.getType().isAnnotationPresent(Stateful.class);
+	}
+
 	private IProxyTargetLocator getProxyTargetLocator(Field field)
 	{
 		if (field.isAnnotationPresent(EJB.class))
 		{
+			// a stateful bean is looked up again for every new proxy, it is never shared through
+			// the JndiLookupCache
 			return new JavaEEBeanLocator(field.getAnnotation(EJB.class).name(), field.getType(),
-				namingStrategy);
+				namingStrategy, !isStateful(field));
 		}
 
 		if (field.isAnnotationPresent(PersistenceUnit.class))
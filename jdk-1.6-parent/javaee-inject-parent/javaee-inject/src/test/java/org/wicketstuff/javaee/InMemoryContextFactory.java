@@ -0,0 +1,108 @@
+package org.wicketstuff.javaee;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * In-memory stand-in for the naming service of an application server. Install it with the
+ * {@link Context#INITIAL_CONTEXT_FACTORY} system property. Creating a context and looking up a
+ * name each take {@link #setLatencyNanos(long) latencyNanos}, like a call to a remote naming service.
+ */
+public class InMemoryContextFactory implements InitialContextFactory {
+
+    private static final Map<String, Object> bindings = new ConcurrentHashMap<String, Object>();
+
+    private static final AtomicInteger contexts = new AtomicInteger();
+
+    private static final AtomicInteger closedContexts = new AtomicInteger();
+
+    private static final AtomicInteger lookups = new AtomicInteger();
+
+    private static final AtomicInteger failures = new AtomicInteger();
+
+    private static volatile long latencyNanos;
+
+    public static void bind(String name, Object value) {
+        bindings.put(name, value);
+    }
+
+    public static void setLatencyNanos(long latencyNanos) {
+        InMemoryContextFactory.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * The next lookups fail with a {@link CommunicationException}, like a naming service which is
+     * being restarted.
+     */
+    public static void failNextLookups(int count) {
+        failures.set(count);
+    }
+
+    public static int getContextCount() {
+        return contexts.get();
+    }
+
+    public static int getClosedContextCount() {
+        return closedContexts.get();
+    }
+
+    public static int getLookupCount() {
+        return lookups.get();
+    }
+
+    public static void reset() {
+        bindings.clear();
+        contexts.set(0);
+        closedContexts.set(0);
+        lookups.set(0);
+        failures.set(0);
+        latencyNanos = 0;
+    }
+
+    private static void pause() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) {
+        contexts.incrementAndGet();
+        pause();
+        return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(),
+                new Class<?>[] { Context.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("lookup") && args[0] instanceof String) {
+                            lookups.incrementAndGet();
+                            pause();
+                            if (failures.get() > 0 && failures.decrementAndGet() >= 0) {
+                                throw new CommunicationException("naming service unavailable");
+                            }
+                            Object value = bindings.get(args[0]);
+                            if (value == null) {
+                                throw new NameNotFoundException((String) args[0]);
+                            }
+                            return value;
+                        }
+                        if (method.getName().equals("close")) {
+                            closedContexts.incrementAndGet();
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,107 @@
+package org.wicketstuff.javaee;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+
+/**
+ * Rough comparison of locating a resource with a new {@link InitialContext} per lookup (as every
+ * deserialized proxy used to do) and through the {@link JndiObjectLocator}, which uses the
+ * {@link JndiLookupCache}. The naming service is the {@link InMemoryContextFactory}.
+ *
+ * Arguments: [locates per thread] [threads] [latency in microseconds]
+ */
+public class JndiLookupBenchmarkMain {
+
+    private interface Locate {
+
+        Object locate() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int locates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long latencyMicros = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, InMemoryContextFactory.class.getName());
+        InMemoryContextFactory.bind("java:comp/env/jdbc/contacts", "contacts");
+        InMemoryContextFactory.setLatencyNanos(latencyMicros * 1000L);
+
+        final JndiObjectLocator locator = new JndiObjectLocator("jdbc/contacts", String.class);
+
+        Locate uncached = new Locate() {
+
+            @Override
+            public Object locate() throws Exception {
+                return new InitialContext().lookup("java:comp/env/jdbc/contacts");
+            }
+        };
+
+        Locate cached = new Locate() {
+
+            @Override
+            public Object locate() {
+                return locator.locateProxyTarget();
+            }
+        };
+
+        // first round warms up the jit, the second one is reported.
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+
+            run("new InitialContext", uncached, locates, threads, report);
+            JndiLookupCache.get().clear();
+            run("JndiLookupCache", cached, locates, threads, report);
+        }
+    }
+
+    private static void run(String name, final Locate locate, final int locates, int threads,
+            boolean report) throws Exception {
+
+        int contextsBefore = InMemoryContextFactory.getContextCount();
+        int lookupsBefore = InMemoryContextFactory.getLookupCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        Object last = null;
+                        for (int j = 0; j < locates; j++) {
+                            last = locate.locate();
+                        }
+                        return last;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long time = System.nanoTime() - start;
+
+        if (report) {
+            long total = (long) locates * threads;
+            System.out.println(name + ": " + total + " locates = " + (time / 1000000L) + " ms (" +
+                    (time / total) + " ns/locate, " +
+                    (InMemoryContextFactory.getContextCount() - contextsBefore) + " contexts, " +
+                    (InMemoryContextFactory.getLookupCount() - lookupsBefore) + " lookups)");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.wicketstuff.javaee;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Lookups through the {@link JndiLookupCache}, against the {@link InMemoryContextFactory}.
+ */
+public class JndiLookupCacheTest {
+
+    private String previousFactory;
+
+    private JndiLookupCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        previousFactory = System.setProperty(Context.INITIAL_CONTEXT_FACTORY,
+                InMemoryContextFactory.class.getName());
+        InMemoryContextFactory.reset();
+        InMemoryContextFactory.bind("java:comp/env/name", "value");
+        cache = new JndiLookupCache();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (previousFactory == null) {
+            System.clearProperty(Context.INITIAL_CONTEXT_FACTORY);
+        } else {
+            System.setProperty(Context.INITIAL_CONTEXT_FACTORY, previousFactory);
+        }
+    }
+
+    @Test
+    public void cachesByNameAndType() throws NamingException {
+        assertThat(cache.lookup("java:comp/env/name", String.class)).isEqualTo("value");
+        assertThat(cache.lookup("java:comp/env/name", String.class)).isEqualTo("value");
+        assertThat(InMemoryContextFactory.getLookupCount()).isEqualTo(1);
+
+        cache.lookup("java:comp/env/name", Object.class);
+        assertThat(InMemoryContextFactory.getLookupCount()).isEqualTo(2);
+        assertThat(InMemoryContextFactory.getContextCount()).isEqualTo(1);
+
+        cache.invalidate("java:comp/env/name", String.class);
+        cache.lookup("java:comp/env/name", String.class);
+        assertThat(InMemoryContextFactory.getLookupCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void uncachedLookupsUseContextsOfTheirOwn() throws NamingException {
+        cache.lookupUncached("java:comp/env/name");
+        cache.lookupUncached("java:comp/env/name");
+        assertThat(InMemoryContextFactory.getLookupCount()).isEqualTo(2);
+        assertThat(InMemoryContextFactory.getContextCount()).isEqualTo(2);
+        assertThat(InMemoryContextFactory.getClosedContextCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(0);
+
+        // the shared context is not affected
+        cache.lookup("java:comp/env/name", String.class);
+        cache.lookup("java:comp/env/name", Object.class);
+        assertThat(InMemoryContextFactory.getContextCount()).isEqualTo(3);
+        assertThat(InMemoryContextFactory.getClosedContextCount()).isEqualTo(2);
+    }
+
+    @Test(timeOut = 5000)
+    public void uncachedLookupDoesNotWaitForSharedContext() throws Exception {
+        final Object[] result = new Object[1];
+        Thread lookup = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = cache.lookupUncached("java:comp/env/name");
+                } catch (NamingException e) {
+                    result[0] = e;
+                }
+            }
+        };
+        // a cache miss holds the lock of the shared context
+        synchronized (cache) {
+            lookup.start();
+            lookup.join();
+        }
+        assertThat(result[0]).isEqualTo("value");
+    }
+
+    @Test
+    public void retriesWithNewContext() throws NamingException {
+        cache.lookup("java:comp/env/name", String.class);
+        InMemoryContextFactory.bind("java:comp/env/other", "other");
+        InMemoryContextFactory.failNextLookups(1);
+
+        assertThat(cache.lookup("java:comp/env/other", String.class)).isEqualTo("other");
+        assertThat(InMemoryContextFactory.getContextCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void clearsAllReferences() throws NamingException {
+        cache.setInvalidation(JndiLookupCache.Invalidation.ALL);
+        cache.lookup("java:comp/env/name", String.class);
+        InMemoryContextFactory.bind("java:comp/env/other", "other");
+        InMemoryContextFactory.failNextLookups(1);
+
+        cache.lookup("java:comp/env/other", String.class);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test(expectedExceptions = CommunicationException.class)
+    public void rethrowsWithoutInvalidation() throws NamingException {
+        cache.setInvalidation(JndiLookupCache.Invalidation.NONE);
+        InMemoryContextFactory.failNextLookups(1);
+
+        cache.lookup("java:comp/env/name", String.class);
+    }
+}
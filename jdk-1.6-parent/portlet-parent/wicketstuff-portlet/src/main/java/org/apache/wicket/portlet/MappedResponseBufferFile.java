@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Append only file a {@link ResponseState} buffer spills to once the response
+ * outgrows its in-memory buffer. The content is written through memory mapped
+ * segments and the bytes are handed to the portlet output stream with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}; characters
+ * are stored as UTF-16 so they are read back without decoding.
+ * <p>
+ * A file holds either bytes or characters, never both. The file on disk is
+ * rounded up to whole segments, {@link #size()} is the number of bytes
+ * actually written.
+ */
+final class MappedResponseBufferFile {
+	static final int SEGMENT_SIZE = 256 * 1024;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+
+	private MappedByteBuffer segment;
+	private CharBuffer charSegment;
+	private long segmentPosition = -SEGMENT_SIZE;
+	private long size;
+
+	MappedResponseBufferFile(File file) throws IOException {
+		this.file = file;
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+	}
+
+	long size() {
+		return size;
+	}
+
+	private MappedByteBuffer nextSegment() throws IOException {
+		releaseSegment();
+		segmentPosition += SEGMENT_SIZE;
+		segment = channel.map(MapMode.READ_WRITE, segmentPosition, SEGMENT_SIZE);
+		return segment;
+	}
+
+	private void releaseSegment() {
+		if (segment != null) {
+			unmap(segment);
+			segment = null;
+			charSegment = null;
+		}
+	}
+
+	void write(int b) throws IOException {
+		if ((segment == null) || !segment.hasRemaining()) {
+			nextSegment();
+		}
+		segment.put((byte) b);
+		size++;
+	}
+
+	void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if ((segment == null) || !segment.hasRemaining()) {
+				nextSegment();
+			}
+			int count = Math.min(len, segment.remaining());
+			segment.put(b, off, count);
+			off += count;
+			len -= count;
+			size += count;
+		}
+	}
+
+	void writeChar(int c) throws IOException {
+		if ((charSegment == null) || !charSegment.hasRemaining()) {
+			charSegment = nextSegment().asCharBuffer();
+		}
+		charSegment.put((char) c);
+		size += 2;
+	}
+
+	void write(char[] c, int off, int len) throws IOException {
+		while (len > 0) {
+			if ((charSegment == null) || !charSegment.hasRemaining()) {
+				charSegment = nextSegment().asCharBuffer();
+			}
+			int count = Math.min(len, charSegment.remaining());
+			charSegment.put(c, off, count);
+			off += count;
+			len -= count;
+			size += 2L * count;
+		}
+	}
+
+	/**
+	 * Transfers the bytes written so far to the output stream, without copying
+	 * them through the Java heap where the channel implementation allows it.
+	 */
+	void transferTo(OutputStream outputStream) throws IOException {
+		releaseSegment();
+		WritableByteChannel target = Channels.newChannel(outputStream);
+		long position = 0;
+		while (position < size) {
+			long count = channel.transferTo(position, size - position, target);
+			if (count <= 0) {
+				throw new IOException("Cannot transfer response buffer file " + file);
+			}
+			position += count;
+		}
+	}
+
+	/**
+	 * Transfers the characters written so far to the writer, using the given
+	 * buffer for each chunk.
+	 */
+	void transferTo(Writer writer, char[] buffer) throws IOException {
+		releaseSegment();
+		long position = 0;
+		while (position < size) {
+			long length = Math.min(SEGMENT_SIZE, size - position);
+			MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, position, length);
+			try {
+				CharBuffer chars = mapped.asCharBuffer();
+				while (chars.hasRemaining()) {
+					int count = Math.min(buffer.length, chars.remaining());
+					chars.get(buffer, 0, count);
+					writer.write(buffer, 0, count);
+				}
+			}
+			finally {
+				unmap(mapped);
+			}
+			position += length;
+		}
+	}
+
+	void delete() {
+		releaseSegment();
+		try {
+			channel.close();
+			randomAccessFile.close();
+		}
+		catch (Exception e) {
+		}
+		try {
+			file.delete();
+		}
+		catch (Exception e) {
+		}
+	}
+
+	/**
+	 * Releases the mapping straight away instead of waiting for the buffer to
+	 * be garbage collected, which would keep the file from being deleted on
+	 * some platforms.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (Exception e) {
+			// not supported by this JVM, the mapping is released by the garbage
+			// collector
+		}
+	}
+}
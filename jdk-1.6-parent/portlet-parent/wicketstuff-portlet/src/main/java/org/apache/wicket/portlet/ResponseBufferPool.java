@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the fixed size in-memory buffers used by {@link ResponseState}, so
+ * that a portlet request does not allocate (and grow) new buffers for its
+ * response. At most {@link #MAX_POOLED_BUFFERS} buffers of each kind are kept,
+ * buffers released beyond that are left to the garbage collector.
+ */
+final class ResponseBufferPool {
+	/**
+	 * Size of the pooled buffers, a response which does not fit is spilled to a
+	 * {@link MappedResponseBufferFile}.
+	 */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	static final int MAX_POOLED_BUFFERS = 32;
+
+	private static final Queue<byte[]> byteBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooledByteBuffers = new AtomicInteger();
+
+	private static final Queue<char[]> charBuffers = new ConcurrentLinkedQueue<char[]>();
+	private static final AtomicInteger pooledCharBuffers = new AtomicInteger();
+
+	private ResponseBufferPool() {
+	}
+
+	static byte[] acquireBytes() {
+		byte[] buffer = byteBuffers.poll();
+		if (buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		pooledByteBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	static void release(byte[] buffer) {
+		if (pooledByteBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			byteBuffers.offer(buffer);
+		}
+		else {
+			pooledByteBuffers.decrementAndGet();
+		}
+	}
+
+	static char[] acquireChars() {
+		char[] buffer = charBuffers.poll();
+		if (buffer == null) {
+			return new char[BUFFER_SIZE];
+		}
+		pooledCharBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	static void release(char[] buffer) {
+		if (pooledCharBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			charBuffers.offer(buffer);
+		}
+		else {
+			pooledCharBuffers.decrementAndGet();
+		}
+	}
+}
@@ -16,24 +16,10 @@
  */
 package org.apache.wicket.portlet;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.CharArrayReader;
-import java.io.CharArrayWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -55,16 +41,21 @@ import org.apache.wicket.settings.IRequestCycleSettings;
  * Temporarily holds the current state of a Wicket response when invoked from
  * WicketPortlet: buffer, headers, state and the redirect location to be
  * processed afterwards within WicketPortlet
+ * <p>
+ * The response is buffered in a pooled in-memory buffer of
+ * {@value ResponseBufferPool#BUFFER_SIZE} bytes or characters, larger
+ * responses are spilled to a memory mapped file in the response buffer folder.
+ * {@link #getSpillCount()} and {@link #getSpilledBytes()} tell how often that
+ * happens.
  * 
  * @author Ate Douma
  * @author Peter Pastrnak
  */
 public class ResponseState {
 	private static final String AJAX_LOCATION_HEADER_NAME = "Ajax-Location";
-	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
-	private static final int MEMORY_BUFFER_SIZE = 64 * 1024;
-	private static final String DEFAULT_CHARSET = "UTF-8";
 	private static final AtomicLong index = new AtomicLong();
+	private static final AtomicLong spillCount = new AtomicLong();
+	private static final AtomicLong spilledBytes = new AtomicLong();
 
 	private final boolean isActionResponse;
 	private final boolean isEventResponse;
@@ -118,6 +109,22 @@ public class ResponseState {
 		defaultLocale = isMimeResponse ? ((MimeResponse) response).getLocale() : null;
 	}
 
+	/**
+	 * @return the number of responses which did not fit in memory and were
+	 *         spilled to a file since the class was loaded
+	 */
+	public static long getSpillCount() {
+		return spillCount.get();
+	}
+
+	/**
+	 * @return the number of bytes written to (and removed from) spill files
+	 *         since the class was loaded; characters count as two bytes
+	 */
+	public static long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
 	private ArrayList<String> getHeaderList(String name, boolean create) {
 		if (headers == null) {
 			headers = new HashMap<String, ArrayList<String>>();
@@ -411,6 +418,20 @@ public class ResponseState {
 						}
 					}
 				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					if (!closed) {
+						if (contentLength > -1) {
+							len = (int) Math.min(len, contentLength - byteOutputBuffer.size());
+						}
+						byteOutputBuffer.write(b, off, len);
+						if ((contentLength) > -1 && (byteOutputBuffer.size() >= contentLength)) {
+							committed = true;
+							closed = true;
+						}
+					}
+				}
 			};
 		}
 		return outputStream;
@@ -569,7 +590,7 @@ public class ResponseState {
 	public void clear() {
 		if (printWriter != null) {
 			printWriter.close();
-			charOutputBuffer.reset();
+			charOutputBuffer.release();
 			printWriter = null;
 		}
 
@@ -580,7 +601,7 @@ public class ResponseState {
 			catch (IOException e) {
 			}
 			outputStream = null;
-			byteOutputBuffer.reset();
+			byteOutputBuffer.release();
 		}
 
 		headers = null;
@@ -688,10 +709,12 @@ public class ResponseState {
 		if (outputStream != null) {
 			outputStream.close();
 			outputStream = null;
+			byteOutputBuffer.release();
 		}
 		if (printWriter != null) {
 			printWriter.close();
 			printWriter = null;
+			charOutputBuffer.release();
 		}
 	}
 
@@ -722,260 +745,232 @@ public class ResponseState {
 		return new File(getResponseBufferFolder(), "response-buffer" + index.getAndIncrement());
 	}
 
-	private class CharOutputBuffer extends CharArrayWriter {
-		private File file;
+	private class CharOutputBuffer extends Writer {
+		private char[] buf;
 
-		private Writer fileWriter;
+		private int count;
 
-		public CharOutputBuffer() {
-			super(INITIAL_BUFFER_SIZE);
-		}
+		private MappedResponseBufferFile file;
 
-		private boolean useFile(int pos) {
-			return (fileWriter != null) || (pos > MEMORY_BUFFER_SIZE);
+		private char[] buffer() {
+			if (buf == null) {
+				buf = ResponseBufferPool.acquireChars();
+			}
+			return buf;
 		}
 
-		private Writer getFileWriter() throws IOException {
-			if (fileWriter == null) {
-				file = getResponseBufferFile();
-				fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), DEFAULT_CHARSET));
-				fileWriter.write(buf, 0, count);
-			}
-			return fileWriter;
+		private MappedResponseBufferFile spill() throws IOException {
+			file = new MappedResponseBufferFile(getResponseBufferFile());
+			file.write(buffer(), 0, count);
+			spillCount.incrementAndGet();
+			return file;
 		}
 
 		@Override
 		public void write(int c) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(c);
-					count++;
+			try {
+				if (file != null) {
+					file.writeChar(c);
 				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
+				else if (count < buffer().length) {
+					buf[count++] = (char) c;
+				}
+				else {
+					spill().writeChar(c);
 				}
 			}
-			else {
-				super.write(c);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write cache file.", e);
 			}
 		}
 
 		@Override
 		public void write(char[] c, int off, int len) {
-			if (useFile(count + len)) {
-				try {
-					getFileWriter().write(c, off, len);
+			try {
+				if (file == null && count + len <= buffer().length) {
+					System.arraycopy(c, off, buf, count, len);
 					count += len;
 				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
+				else {
+					(file != null ? file : spill()).write(c, off, len);
 				}
 			}
-			else {
-				super.write(c, off, len);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write cache file.", e);
 			}
 		}
 
 		@Override
 		public void write(String str, int off, int len) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(str, off, len);
+			try {
+				if (file == null && count + len <= buffer().length) {
+					str.getChars(off, off + len, buf, count);
 					count += len;
 				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
+				else {
+					if (file == null) {
+						spill();
+					}
+					// the in-memory buffer is no longer used, copy through it
+					while (len > 0) {
+						int chunk = Math.min(len, buf.length);
+						str.getChars(off, off + chunk, buf, 0);
+						file.write(buf, 0, chunk);
+						off += chunk;
+						len -= chunk;
+					}
 				}
 			}
-			else {
-				super.write(str, off, len);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write cache file.", e);
 			}
 		}
 
-		public void writeToAndClose(Writer writer) throws IOException {
-			try {
-				Reader reader;
-
-				if (fileWriter != null) {
-					try {
-						fileWriter.close();
-					}
-					catch (Exception e) {
-					}
+		@Override
+		public void flush() {
+		}
 
-					reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), DEFAULT_CHARSET));
-				}
-				else {
-					reader = new CharArrayReader(buf, 0, count);
-				}
+		@Override
+		public void close() {
+		}
 
-				try {
-					int count;
-					while ((count = reader.read(buf)) > 0) {
-						writer.write(buf, 0, count);
-					}
+		public void writeToAndClose(Writer writer) throws IOException {
+			try {
+				if (file != null) {
+					file.transferTo(writer, buf);
 				}
-				finally {
-					if (reader != null) {
-						try {
-							reader.close();
-						}
-						catch (Exception e) {
-						}
-					}
+				else if (count > 0) {
+					writer.write(buf, 0, count);
 				}
 			}
 			finally {
-				buf = null;
-				reset();
+				release();
 			}
 		}
 
-		@Override
 		public void reset() {
-			super.reset();
+			count = 0;
 
-			if (fileWriter != null) {
-				try {
-					fileWriter.close();
-					fileWriter = null;
-				}
-				catch (Exception e) {
-				}
+			if (file != null) {
+				spilledBytes.addAndGet(file.size());
+				file.delete();
+				file = null;
 			}
+		}
 
-			if (file != null) {
-				try {
-					file.delete();
-					file = null;
-				}
-				catch (Exception e) {
-				}
+		/**
+		 * Resets the buffer and returns its memory to the pool.
+		 */
+		public void release() {
+			reset();
+
+			if (buf != null) {
+				ResponseBufferPool.release(buf);
+				buf = null;
 			}
 		}
-		
+
 		@Override
 		protected void finalize() throws Throwable {
 			reset();
 		}
 	}
 
-	private class ByteOutputBuffer extends ByteArrayOutputStream {
-		private File file;
+	private class ByteOutputBuffer extends OutputStream {
+		private byte[] buf;
 
-		private OutputStream fileOutputStream;
+		private int count;
 
-		public ByteOutputBuffer() {
-			super(INITIAL_BUFFER_SIZE);
-		}
+		private MappedResponseBufferFile file;
 
-		private boolean useFile(int pos) {
-			return (fileOutputStream != null) || (pos > MEMORY_BUFFER_SIZE);
+		public long size() {
+			return file != null ? file.size() : count;
 		}
 
-		private OutputStream getFileWriter() throws IOException {
-			if (fileOutputStream == null) {
-				file = getResponseBufferFile();
-				fileOutputStream = new BufferedOutputStream(new FileOutputStream(file));
-				fileOutputStream.write(buf, 0, count);
+		private byte[] buffer() {
+			if (buf == null) {
+				buf = ResponseBufferPool.acquireBytes();
 			}
-			return fileOutputStream;
+			return buf;
+		}
+
+		private MappedResponseBufferFile spill() throws IOException {
+			file = new MappedResponseBufferFile(getResponseBufferFile());
+			file.write(buffer(), 0, count);
+			spillCount.incrementAndGet();
+			return file;
 		}
 
 		@Override
 		public void write(int b) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(b);
-					count++;
+			try {
+				if (file != null) {
+					file.write(b);
 				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
+				else if (count < buffer().length) {
+					buf[count++] = (byte) b;
+				}
+				else {
+					spill().write(b);
 				}
 			}
-			else {
-				super.write(b);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write cache file.", e);
 			}
 		}
 
 		@Override
 		public void write(byte[] b, int off, int len) {
-			if (useFile(count + len)) {
-				try {
-					getFileWriter().write(b, off, len);
+			try {
+				if (file == null && count + len <= buffer().length) {
+					System.arraycopy(b, off, buf, count, len);
 					count += len;
 				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
+				else {
+					(file != null ? file : spill()).write(b, off, len);
 				}
 			}
-			else {
-				super.write(b, off, len);
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write cache file.", e);
 			}
 		}
 
 		public void writeToAndClose(OutputStream outputStream) throws IOException {
 			try {
-				InputStream inputStream;
-
-				if (fileOutputStream != null) {
-					try {
-						fileOutputStream.close();
-					}
-					catch (Exception e) {
-					}
-
-					inputStream = new BufferedInputStream(new FileInputStream(file));
+				if (file != null) {
+					file.transferTo(outputStream);
 				}
-				else {
-					inputStream = new ByteArrayInputStream(buf, 0, count);
-				}
-
-				try {
-					int count;
-					while ((count = inputStream.read(buf)) > 0) {
-						outputStream.write(buf, 0, count);
-					}
-				}
-				finally {
-					if (inputStream != null) {
-						try {
-							inputStream.close();
-						}
-						catch (Exception e) {
-						}
-					}
+				else if (count > 0) {
+					outputStream.write(buf, 0, count);
 				}
 			}
 			finally {
-				buf = null;
-				reset();
+				release();
 			}
 		}
 
-		@Override
 		public void reset() {
-			super.reset();
+			count = 0;
 
-			if (fileOutputStream != null) {
-				try {
-					fileOutputStream.close();
-					fileOutputStream = null;
-				}
-				catch (Exception e) {
-				}
+			if (file != null) {
+				spilledBytes.addAndGet(file.size());
+				file.delete();
+				file = null;
 			}
+		}
 
-			if (file != null) {
-				try {
-					file.delete();
-					file = null;
-				}
-				catch (Exception e) {
-				}
+		/**
+		 * Resets the buffer and returns its memory to the pool.
+		 */
+		public void release() {
+			reset();
+
+			if (buf != null) {
+				ResponseBufferPool.release(buf);
+				buf = null;
 			}
 		}
-		
+
 		@Override
 		protected void finalize() throws Throwable {
 			reset();
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedResponseBufferFileTest {
+	private File file;
+
+	private MappedResponseBufferFile buffer;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("response-buffer", null);
+		buffer = new MappedResponseBufferFile(file);
+	}
+
+	@After
+	public void deleteFile() {
+		buffer.delete();
+		file.delete();
+	}
+
+	@Test
+	public void bytesAreReadBackAcrossSegments() throws IOException {
+		byte[] expected = new byte[2 * MappedResponseBufferFile.SEGMENT_SIZE + 1000];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (byte) (i * 31);
+		}
+
+		// single bytes up to just before the first segment boundary, then an
+		// array which crosses two boundaries, then single bytes again
+		int off = MappedResponseBufferFile.SEGMENT_SIZE - 10;
+		for (int i = 0; i < off; i++) {
+			buffer.write(expected[i]);
+		}
+		int len = MappedResponseBufferFile.SEGMENT_SIZE + 20;
+		buffer.write(expected, off, len);
+		for (int i = off + len; i < expected.length; i++) {
+			buffer.write(expected[i]);
+		}
+		Assert.assertEquals(expected.length, buffer.size());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.transferTo(out);
+		Assert.assertArrayEquals(expected, out.toByteArray());
+	}
+
+	@Test
+	public void charsAreReadBackAcrossSegments() throws IOException {
+		// a segment holds half as many chars as bytes
+		int charsPerSegment = MappedResponseBufferFile.SEGMENT_SIZE / 2;
+		char[] expected = new char[2 * charsPerSegment + 1000];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (char) ('a' + i % 26 + (i % 3 == 0 ? 0x400 : 0));
+		}
+
+		int off = charsPerSegment - 10;
+		for (int i = 0; i < off; i++) {
+			buffer.writeChar(expected[i]);
+		}
+		int len = charsPerSegment + 20;
+		buffer.write(expected, off, len);
+		for (int i = off + len; i < expected.length; i++) {
+			buffer.writeChar(expected[i]);
+		}
+		Assert.assertEquals(2L * expected.length, buffer.size());
+
+		// a transfer buffer which does not divide the segments evenly
+		StringWriter out = new StringWriter();
+		buffer.transferTo(out, new char[1000]);
+		Assert.assertEquals(new String(expected), out.toString());
+	}
+
+	@Test
+	public void emptyFileTransfersNothing() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		buffer.transferTo(bytes);
+		Assert.assertEquals(0, bytes.size());
+
+		StringWriter chars = new StringWriter();
+		buffer.transferTo(chars, new char[16]);
+		Assert.assertEquals("", chars.toString());
+	}
+
+	@Test
+	public void fileIsDeleted() throws IOException {
+		buffer.write(new byte[100], 0, 100);
+		Assert.assertTrue(file.exists());
+
+		buffer.delete();
+		Assert.assertFalse(file.exists());
+	}
+}
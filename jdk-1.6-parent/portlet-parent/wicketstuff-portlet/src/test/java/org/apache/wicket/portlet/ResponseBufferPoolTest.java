@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseBufferPoolTest {
+	private static final int RELEASED = ResponseBufferPool.MAX_POOLED_BUFFERS + 8;
+
+	@Test
+	public void releasedBytesAreReusedUpToTheBound() {
+		// the pool is static, drain what other tests left in it
+		for (int i = 0; i < ResponseBufferPool.MAX_POOLED_BUFFERS; i++) {
+			ResponseBufferPool.acquireBytes();
+		}
+
+		Map<byte[], Boolean> released = new IdentityHashMap<byte[], Boolean>();
+		for (int i = 0; i < RELEASED; i++) {
+			byte[] buffer = new byte[ResponseBufferPool.BUFFER_SIZE];
+			released.put(buffer, Boolean.TRUE);
+			ResponseBufferPool.release(buffer);
+		}
+
+		List<byte[]> acquired = new ArrayList<byte[]>();
+		int reused = 0;
+		for (int i = 0; i < RELEASED; i++) {
+			byte[] buffer = ResponseBufferPool.acquireBytes();
+			Assert.assertEquals(ResponseBufferPool.BUFFER_SIZE, buffer.length);
+			if (released.containsKey(buffer)) {
+				reused++;
+			}
+			acquired.add(buffer);
+		}
+		Assert.assertEquals(ResponseBufferPool.MAX_POOLED_BUFFERS, reused);
+
+		for (byte[] buffer : acquired) {
+			ResponseBufferPool.release(buffer);
+		}
+	}
+
+	@Test
+	public void releasedCharsAreReusedUpToTheBound() {
+		for (int i = 0; i < ResponseBufferPool.MAX_POOLED_BUFFERS; i++) {
+			ResponseBufferPool.acquireChars();
+		}
+
+		Map<char[], Boolean> released = new IdentityHashMap<char[], Boolean>();
+		for (int i = 0; i < RELEASED; i++) {
+			char[] buffer = new char[ResponseBufferPool.BUFFER_SIZE];
+			released.put(buffer, Boolean.TRUE);
+			ResponseBufferPool.release(buffer);
+		}
+
+		List<char[]> acquired = new ArrayList<char[]>();
+		int reused = 0;
+		for (int i = 0; i < RELEASED; i++) {
+			char[] buffer = ResponseBufferPool.acquireChars();
+			Assert.assertEquals(ResponseBufferPool.BUFFER_SIZE, buffer.length);
+			if (released.containsKey(buffer)) {
+				reused++;
+			}
+			acquired.add(buffer);
+		}
+		Assert.assertEquals(ResponseBufferPool.MAX_POOLED_BUFFERS, reused);
+
+		for (char[] buffer : acquired) {
+			ResponseBufferPool.release(buffer);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.PortletResponse;
+import javax.portlet.ResourceResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseStateTest {
+	private File folder;
+
+	private ByteArrayOutputStream portletOutputStream;
+
+	private StringWriter portletWriter;
+
+	private ResponseState state;
+
+	@Before
+	public void createState() throws IOException {
+		folder = File.createTempFile("response-buffers", "");
+		folder.delete();
+		folder.mkdirs();
+
+		portletOutputStream = new ByteArrayOutputStream();
+		portletWriter = new StringWriter();
+		state = new ResponseState(newResourceRequest(), newResourceResponse(), folder);
+	}
+
+	@After
+	public void deleteFolder() {
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	@Test
+	public void smallResponseIsNotSpilled() throws IOException {
+		long spillCount = ResponseState.getSpillCount();
+		OutputStream out = state.getOutputStream();
+		out.write(new byte[100]);
+		state.flushAndClose();
+
+		Assert.assertEquals(100, portletOutputStream.size());
+		Assert.assertEquals(spillCount, ResponseState.getSpillCount());
+		Assert.assertEquals(0, folder.listFiles().length);
+	}
+
+	@Test
+	public void spilledBytesAreWrittenAndTheFileDeleted() throws IOException {
+		long spillCount = ResponseState.getSpillCount();
+		byte[] expected = new byte[3 * ResponseBufferPool.BUFFER_SIZE];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (byte) i;
+		}
+		OutputStream out = state.getOutputStream();
+		out.write(expected, 0, 1000);
+		out.write(expected, 1000, expected.length - 1000);
+		Assert.assertEquals(spillCount + 1, ResponseState.getSpillCount());
+		Assert.assertEquals(1, folder.listFiles().length);
+
+		state.flushAndClose();
+		Assert.assertArrayEquals(expected, portletOutputStream.toByteArray());
+		Assert.assertEquals(0, folder.listFiles().length);
+	}
+
+	@Test
+	public void spilledCharsAreWrittenAndTheFileDeleted() throws IOException {
+		StringBuilder expected = new StringBuilder();
+		while (expected.length() < 3 * ResponseBufferPool.BUFFER_SIZE) {
+			expected.append("line ").append(expected.length()).append('\n');
+		}
+		PrintWriter writer = state.getWriter();
+		writer.write(expected.toString());
+		Assert.assertEquals(1, folder.listFiles().length);
+
+		state.flushAndClose();
+		Assert.assertEquals(expected.toString(), portletWriter.toString());
+		Assert.assertEquals(0, folder.listFiles().length);
+	}
+
+	@Test
+	public void resetDeletesTheSpilledFile() throws IOException {
+		OutputStream out = state.getOutputStream();
+		out.write(new byte[2 * ResponseBufferPool.BUFFER_SIZE]);
+		Assert.assertEquals(1, folder.listFiles().length);
+
+		state.reset();
+		Assert.assertEquals(0, folder.listFiles().length);
+
+		// the response is written from memory again
+		out.write(new byte[100]);
+		Assert.assertEquals(0, folder.listFiles().length);
+		state.flushAndClose();
+		Assert.assertEquals(100, portletOutputStream.size());
+	}
+
+	@Test
+	public void clearDeletesTheSpilledFile() throws IOException {
+		PrintWriter writer = state.getWriter();
+		writer.write(new char[2 * ResponseBufferPool.BUFFER_SIZE]);
+		Assert.assertEquals(1, folder.listFiles().length);
+
+		state.clear();
+		Assert.assertEquals(0, folder.listFiles().length);
+	}
+
+	private PortletRequest newResourceRequest() {
+		return (PortletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { PortletRequest.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getAttribute")
+								&& PortletRequest.LIFECYCLE_PHASE.equals(args[0])) {
+							return PortletRequest.RESOURCE_PHASE;
+						}
+						return null;
+					}
+				});
+	}
+
+	private PortletResponse newResourceResponse() {
+		return (PortletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ResourceResponse.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getPortletOutputStream")) {
+							return portletOutputStream;
+						}
+						else if (method.getName().equals("getWriter")) {
+							return new PrintWriter(portletWriter);
+						}
+						return null;
+					}
+				});
+	}
+}
@@ -23,11 +23,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.behavior.Behavior;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.BayeuxServer.ChannelListener;
 import org.cometd.bayeux.server.BayeuxServer.SessionListener;
@@ -46,6 +52,7 @@ import org.wicketstuff.push.IPushNodeDisconnectedListener;
 import org.wicketstuff.push.IPushService;
 import org.wicketstuff.push.IPushServiceRef;
 import org.wicketstuff.push.PushChannel;
+import org.wicketstuff.push.QueueOverflowPolicy;
 
 /**
  * Cometd based implementation of {@link IPushService}.
@@ -55,7 +62,9 @@ import org.wicketstuff.push.PushChannel;
  * Wicket AJAX mechanisms.
  * <p>
  * This mean that each time an event is published, a new connection is made to the server to get the
- * actual page update performed by the {@link IPushEventHandler}.
+ * actual page update performed by the {@link IPushEventHandler}. Events published while the client
+ * has not yet polled a previous notification are queued without notifying the client again, it
+ * gets all of them with its next poll.
  * 
  * @author Xavier Hanin
  * @author Rodolfo Hansen
@@ -67,9 +76,18 @@ public class CometdPushService extends AbstractPushService
 	{
 		protected final CometdPushNode<EventType> node;
 
-		protected List<CometdPushEventContext<EventType>> queuedEvents = new ArrayList<CometdPushEventContext<EventType>>(
-			2);
-		protected final Object queuedEventsLock = new Object();
+		/**
+		 * written by any publishing thread, drained by the polling request
+		 */
+		protected final ConcurrentLinkedQueue<CometdPushEventContext<EventType>> queuedEvents = new ConcurrentLinkedQueue<CometdPushEventContext<EventType>>();
+		protected final AtomicInteger queuedEventCount = new AtomicInteger();
+
+		/**
+		 * true from the time a pollEvents notification is sent to the client until the client
+		 * polls
+		 */
+		protected final AtomicBoolean notificationPending = new AtomicBoolean();
+		protected volatile long notifiedAt;
 
 		protected PushNodeState(final CometdPushNode<EventType> node)
 		{
@@ -124,11 +142,33 @@ public class CometdPushService extends AbstractPushService
 
 	private final WebApplication _application;
 
-	private BayeuxServer _bayeux;
+	private volatile BayeuxServer _bayeux;
+
+	// the settings may be changed while events are published from any thread
+	private volatile int _maxQueuedEvents = 1000;
+
+	private volatile QueueOverflowPolicy _queueOverflowPolicy = QueueOverflowPolicy.DROP_OLDEST;
+
+	private volatile Duration _renotificationInterval = Duration.seconds(10);
+
+	private final AtomicLong _droppedEventCount = new AtomicLong();
+
+	private final AtomicLong _notificationCount = new AtomicLong();
 
 	private CometdPushService(final WebApplication application)
+	{
+		this(application, null);
+	}
+
+	/**
+	 * @param bayeux
+	 *            the bayeux server to use, if null it is looked up in the servlet context of the
+	 *            application
+	 */
+	CometdPushService(final WebApplication application, final BayeuxServer bayeux)
 	{
 		_application = application;
+		_bayeux = bayeux;
 
 		_getBayeuxServer().addListener(new ChannelListener()
 		{
@@ -195,13 +235,19 @@ public class CometdPushService extends AbstractPushService
 		return null;
 	}
 
-	private synchronized final BayeuxServer _getBayeuxServer()
+	private final BayeuxServer _getBayeuxServer()
 	{
-		if (_bayeux == null)
-			_bayeux = (BayeuxServer)_application.getServletContext().getAttribute(
-				BayeuxServer.ATTRIBUTE);
-
-		return _bayeux;
+		// looked up for every node an event is published to, so only lock until it is found
+		BayeuxServer bayeux = _bayeux;
+		if (bayeux == null)
+			synchronized (this)
+			{
+				if (_bayeux == null)
+					_bayeux = (BayeuxServer)_application.getServletContext().getAttribute(
+						BayeuxServer.ATTRIBUTE);
+				bayeux = _bayeux;
+			}
+		return bayeux;
 	}
 
 	private ServerChannel _getBayeuxServerChannel(final CometdPushNode<?> node)
@@ -209,6 +255,51 @@ public class CometdPushService extends AbstractPushService
 		return _getBayeuxServer().getChannel(node.getCometdChannelId());
 	}
 
+	private <EventType> void _enqueue(final ServerChannel cchannel,
+		final PushNodeState<EventType> state, final CometdPushEventContext<EventType> ctx)
+	{
+		if (state.queuedEventCount.incrementAndGet() > _maxQueuedEvents)
+		{
+			_droppedEventCount.incrementAndGet();
+			switch (_queueOverflowPolicy)
+			{
+				case DROP_NEWEST :
+					state.queuedEventCount.decrementAndGet();
+					_notify(cchannel, state);
+					return;
+				case DROP_OLDEST :
+					if (state.queuedEvents.poll() != null)
+						state.queuedEventCount.decrementAndGet();
+					break;
+				case DISCONNECT :
+					state.queuedEventCount.decrementAndGet();
+					LOG.debug("Event queue of cometd push node {} is full.", state.node);
+					_onDisconnect(state.node);
+					return;
+			}
+		}
+		state.queuedEvents.offer(ctx);
+		_notify(cchannel, state);
+	}
+
+	/**
+	 * Tells the client to poll, unless it has been told already and did not poll yet.
+	 */
+	private void _notify(final ServerChannel cchannel, final PushNodeState<?> state)
+	{
+		final long now = System.currentTimeMillis();
+		if (!state.notificationPending.compareAndSet(false, true))
+		{
+			// the notification may have been lost, e.g. while the client was reconnecting
+			final long notifiedAt = state.notifiedAt;
+			if (now - notifiedAt < _renotificationInterval.getMilliseconds())
+				return;
+		}
+		state.notifiedAt = now;
+		_notificationCount.incrementAndGet();
+		cchannel.publish(null, "pollEvents", state.node.getCometdChannelEventId());
+	}
+
 	private <EventType> void _onConnect(final CometdPushNode<EventType> node)
 	{
 		_nodeStates.put(node, new PushNodeState<EventType>(node));
@@ -279,6 +370,79 @@ public class CometdPushService extends AbstractPushService
 		return false;
 	}
 
+	/**
+	 * @return the max number of events queued per push node
+	 */
+	public int getMaxQueuedEvents()
+	{
+		return _maxQueuedEvents;
+	}
+
+	/**
+	 * Sets the max number of events queued per push node. Default is 1000.
+	 */
+	public void setMaxQueuedEvents(final int maxQueuedEvents)
+	{
+		if (maxQueuedEvents < 1)
+			throw new IllegalArgumentException("maxQueuedEvents must be positive");
+
+		_maxQueuedEvents = maxQueuedEvents;
+	}
+
+	/**
+	 * @return what happens if an event is published to a node whose queue is full
+	 */
+	public QueueOverflowPolicy getQueueOverflowPolicy()
+	{
+		return _queueOverflowPolicy;
+	}
+
+	/**
+	 * Sets what happens if an event is published to a node whose queue is full. Default is
+	 * {@link QueueOverflowPolicy#DROP_OLDEST}.
+	 */
+	public void setQueueOverflowPolicy(final QueueOverflowPolicy queueOverflowPolicy)
+	{
+		Args.notNull(queueOverflowPolicy, "queueOverflowPolicy");
+
+		_queueOverflowPolicy = queueOverflowPolicy;
+	}
+
+	/**
+	 * @return the time after which a client that did not poll is notified again
+	 */
+	public Duration getRenotificationInterval()
+	{
+		return _renotificationInterval;
+	}
+
+	/**
+	 * Sets the time after which a client that did not poll since it was notified is notified again
+	 * by the next event. Default is 10 seconds.
+	 */
+	public void setRenotificationInterval(final Duration renotificationInterval)
+	{
+		Args.notNull(renotificationInterval, "renotificationInterval");
+
+		_renotificationInterval = renotificationInterval;
+	}
+
+	/**
+	 * @return the number of events that were dropped because a queue was full
+	 */
+	public long getDroppedEventCount()
+	{
+		return _droppedEventCount.get();
+	}
+
+	/**
+	 * @return the number of pollEvents notifications sent to clients
+	 */
+	public long getNotificationCount()
+	{
+		return _notificationCount.get();
+	}
+
 	boolean isWebSocketTransportAvailable()
 	{
 		return CometdPushService.get()
@@ -299,22 +463,30 @@ public class CometdPushService extends AbstractPushService
 			return Collections.EMPTY_LIST;
 		}
 
-		if (state.queuedEvents.size() == 0)
+		// reset the flag before draining, events queued from now on notify the client again
+		state.notificationPending.set(false);
+
+		CometdPushEventContext<EventType> ctx = state.queuedEvents.poll();
+		if (ctx == null)
 			return Collections.EMPTY_LIST;
 
-		synchronized (state.queuedEventsLock)
+		final List<CometdPushEventContext<EventType>> events = new ArrayList<CometdPushEventContext<EventType>>(
+			Math.max(2, state.queuedEventCount.get()));
+		do
 		{
-			final List<CometdPushEventContext<EventType>> events = state.queuedEvents;
-			state.queuedEvents = new ArrayList<CometdPushEventContext<EventType>>(2);
-			return events;
+			events.add(ctx);
+			state.queuedEventCount.decrementAndGet();
 		}
+		while ((ctx = state.queuedEvents.poll()) != null);
+		return events;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public <EventType> void publish(final IPushChannel<EventType> channel, final EventType event)
+	protected <EventType> void publishLocally(final IPushChannel<EventType> channel,
+		final EventType event)
 	{
 		if (channel == null)
 			throw new IllegalArgumentException("Argument [channel] must not be null");
@@ -342,13 +514,7 @@ public class CometdPushService extends AbstractPushService
 			@SuppressWarnings("unchecked")
 			final PushNodeState<EventType> state = (PushNodeState<EventType>)_nodeStates.get(node);
 			if (state != null)
-			{
-				synchronized (state.queuedEventsLock)
-				{
-					state.queuedEvents.add(ctx);
-				}
-				cchannel.publish(null, "pollEvents", state.node.getCometdChannelEventId());
-			}
+				_enqueue(cchannel, state, ctx);
 		}
 	}
 
@@ -368,14 +534,8 @@ public class CometdPushService extends AbstractPushService
 				@SuppressWarnings("unchecked")
 				final PushNodeState<EventType> state = (PushNodeState<EventType>)_nodeStates.get(node);
 				if (state != null)
-				{
-					synchronized (state.queuedEventsLock)
-					{
-						state.queuedEvents.add(new CometdPushEventContext<EventType>(event, null,
-							this));
-					}
-					cchannel.publish(null, "pollEvents", state.node.getCometdChannelEventId());
-				}
+					_enqueue(cchannel, state, new CometdPushEventContext<EventType>(event, null,
+						this));
 			}
 		}
 		else
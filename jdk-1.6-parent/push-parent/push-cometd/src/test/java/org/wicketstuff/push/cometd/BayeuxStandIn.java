@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cometd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cometd.bayeux.server.BayeuxServer;
+import org.cometd.bayeux.server.ServerChannel;
+
+/**
+ * Local stand-in for the bayeux server of the {@link CometdPushService}: every cometd channel is
+ * the same {@link #channel}, and the pollEvents notifications published on it are only counted.
+ */
+final class BayeuxStandIn implements InvocationHandler
+{
+	final AtomicLong publishCount = new AtomicLong();
+
+	final ServerChannel channel = (ServerChannel)Proxy.newProxyInstance(
+		ServerChannel.class.getClassLoader(), new Class<?>[] { ServerChannel.class }, this);
+
+	final BayeuxServer server = (BayeuxServer)Proxy.newProxyInstance(
+		BayeuxServer.class.getClassLoader(), new Class<?>[] { BayeuxServer.class }, this);
+
+	public Object invoke(final Object proxy, final Method method, final Object[] args)
+	{
+		final String name = method.getName();
+		if ("publish".equals(name))
+		{
+			publishCount.incrementAndGet();
+			return null;
+		}
+		if ("getChannel".equals(name))
+			return channel;
+		if ("getAllowedTransports".equals(name))
+			return Collections.emptyList();
+		if ("hashCode".equals(name))
+			return System.identityHashCode(proxy);
+		if ("equals".equals(name))
+			return proxy == args[0];
+		if ("toString".equals(name))
+			return "BayeuxStandIn";
+		if (method.getReturnType() == boolean.class)
+			return false;
+		return null;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cometd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.wicketstuff.push.IPushChannel;
+
+/**
+ * Measures the publish throughput of the {@link CometdPushService} with many subscribed nodes.
+ * <p>
+ * The bayeux server is replaced by a {@link BayeuxStandIn} that only counts the pollEvents
+ * notifications. Poller threads play the clients and drain the queues of their nodes while the
+ * events are published, pausing between two sweeps like the ajax round trip of a real client.
+ * Arguments: [nodes] [events] [pollers] [poll interval ms]
+ * 
+ * @see CometdPushService#getNotificationCount()
+ */
+public class CometdPushServiceLoadMain
+{
+	private static final class Poller extends Thread
+	{
+		private final CometdPushService service;
+		private final List<CometdPushNode<Integer>> nodes;
+		private final long pollInterval;
+		private volatile boolean stopped;
+		long polledEvents;
+
+		Poller(final CometdPushService service, final List<CometdPushNode<Integer>> nodes,
+			final long pollInterval)
+		{
+			this.service = service;
+			this.nodes = nodes;
+			this.pollInterval = pollInterval;
+		}
+
+		@Override
+		public void run()
+		{
+			while (!stopped)
+			{
+				pollAll();
+				try
+				{
+					Thread.sleep(pollInterval);
+				}
+				catch (final InterruptedException e)
+				{
+					return;
+				}
+			}
+		}
+
+		void pollAll()
+		{
+			for (final CometdPushNode<Integer> node : nodes)
+				polledEvents += service.pollEvents(node).size();
+		}
+
+		void stopAndDrain() throws InterruptedException
+		{
+			stopped = true;
+			join();
+			pollAll();
+		}
+	}
+
+	public static void main(final String[] args) throws InterruptedException
+	{
+		final int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		final int eventCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		final int pollerCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		final long pollInterval = args.length > 3 ? Long.parseLong(args[3]) : 50;
+
+		// first round warms up the jit, the second one is reported.
+		for (int round = 0; round < 2; round++)
+			run(nodeCount, eventCount, pollerCount, pollInterval, round == 1);
+	}
+
+	private static void run(final int nodeCount, final int eventCount, final int pollerCount,
+		final long pollInterval, final boolean report) throws InterruptedException
+	{
+		final BayeuxStandIn bayeux = new BayeuxStandIn();
+		final CometdPushService service = new CometdPushService(null, bayeux.server);
+		final IPushChannel<Integer> channel = service.createChannel("load");
+
+		final List<List<CometdPushNode<Integer>>> partitions = new ArrayList<List<CometdPushNode<Integer>>>();
+		for (int i = 0; i < pollerCount; i++)
+			partitions.add(new ArrayList<CometdPushNode<Integer>>());
+
+		for (int i = 0; i < nodeCount; i++)
+		{
+			// every page has its own cometd channel
+			final CometdPushNode<Integer> node = new CometdPushNode<Integer>("/load" + i);
+			// polling an unknown node connects it
+			service.pollEvents(node);
+			service.connectToChannel(node, channel);
+			partitions.get(i % pollerCount).add(node);
+		}
+
+		final List<Poller> pollers = new ArrayList<Poller>();
+		for (final List<CometdPushNode<Integer>> nodes : partitions)
+		{
+			final Poller poller = new Poller(service, nodes, pollInterval);
+			pollers.add(poller);
+			poller.start();
+		}
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < eventCount; i++)
+			service.publish(channel, i);
+		final long publishTime = System.nanoTime() - start;
+
+		long polledEvents = 0;
+		for (final Poller poller : pollers)
+		{
+			poller.stopAndDrain();
+			polledEvents += poller.polledEvents;
+		}
+
+		if (report)
+		{
+			final long deliveries = (long)eventCount * nodeCount;
+			System.out.println(nodeCount + " nodes, " + eventCount + " events, " + pollerCount +
+				" pollers: publish = " + publishTime / 1000000L + " ms (" +
+				deliveries * 1000000000L / Math.max(1, publishTime) + " queued events/s), " +
+				bayeux.publishCount.get() + " notifications, " + polledEvents + " polled, " +
+				service.getDroppedEventCount() + " dropped");
+		}
+	}
+}
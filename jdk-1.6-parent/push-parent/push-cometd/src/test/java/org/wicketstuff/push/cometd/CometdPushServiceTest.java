@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cometd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.util.time.Duration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.push.IPushChannel;
+import org.wicketstuff.push.IPushNode;
+import org.wicketstuff.push.IPushNodeDisconnectedListener;
+import org.wicketstuff.push.QueueOverflowPolicy;
+
+/**
+ * Queueing and notification of the {@link CometdPushService}, against a {@link BayeuxStandIn}.
+ */
+public class CometdPushServiceTest
+{
+	private BayeuxStandIn bayeux;
+
+	private CometdPushService service;
+
+	private IPushChannel<Integer> channel;
+
+	private CometdPushNode<Integer> node;
+
+	@Before
+	public void connectNode()
+	{
+		bayeux = new BayeuxStandIn();
+		service = new CometdPushService(null, bayeux.server);
+		channel = service.createChannel("test");
+		node = new CometdPushNode<Integer>("/test");
+		// polling an unknown node connects it
+		service.pollEvents(node);
+		service.connectToChannel(node, channel);
+	}
+
+	@Test
+	public void clientIsNotifiedOnceUntilItPolls()
+	{
+		service.publish(channel, 1);
+		service.publish(channel, 2);
+		service.publish(channel, 3);
+		Assert.assertEquals(1, bayeux.publishCount.get());
+		Assert.assertEquals(1, service.getNotificationCount());
+
+		Assert.assertEquals(events(1, 2, 3), poll());
+
+		service.publish(channel, 4);
+		Assert.assertEquals(2, bayeux.publishCount.get());
+		Assert.assertEquals(events(4), poll());
+	}
+
+	@Test
+	public void clientIsNotifiedAgainAfterRenotificationInterval() throws InterruptedException
+	{
+		service.setRenotificationInterval(Duration.milliseconds(100));
+
+		service.publish(channel, 1);
+		service.publish(channel, 2);
+		Assert.assertEquals(1, bayeux.publishCount.get());
+
+		// the notification may have been lost, the next event repeats it
+		Thread.sleep(150);
+		service.publish(channel, 3);
+		Assert.assertEquals(2, bayeux.publishCount.get());
+		service.publish(channel, 4);
+		Assert.assertEquals(2, bayeux.publishCount.get());
+
+		Assert.assertEquals(events(1, 2, 3, 4), poll());
+	}
+
+	@Test
+	public void dropOldestKeepsNewestEvents()
+	{
+		service.setMaxQueuedEvents(2);
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DROP_OLDEST);
+
+		service.publish(channel, 1);
+		service.publish(channel, 2);
+		service.publish(channel, 3);
+
+		Assert.assertEquals(1, service.getDroppedEventCount());
+		Assert.assertEquals(events(2, 3), poll());
+	}
+
+	@Test
+	public void dropNewestKeepsOldestEvents()
+	{
+		service.setMaxQueuedEvents(2);
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DROP_NEWEST);
+
+		service.publish(channel, 1);
+		service.publish(channel, 2);
+		service.publish(channel, 3);
+
+		Assert.assertEquals(1, service.getDroppedEventCount());
+		Assert.assertEquals(1, bayeux.publishCount.get());
+		Assert.assertEquals(events(1, 2), poll());
+	}
+
+	@Test
+	public void disconnectDropsNode()
+	{
+		final List<IPushNode<?>> disconnected = new ArrayList<IPushNode<?>>();
+		service.addNodeDisconnectedListener(new IPushNodeDisconnectedListener()
+		{
+			public void onDisconnect(final IPushNode<?> node)
+			{
+				disconnected.add(node);
+			}
+		});
+		service.setMaxQueuedEvents(2);
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DISCONNECT);
+
+		service.publish(channel, 1);
+		service.publish(channel, 2);
+		Assert.assertTrue(disconnected.isEmpty());
+
+		service.publish(channel, 3);
+		Assert.assertEquals(1, service.getDroppedEventCount());
+		Assert.assertEquals(1, disconnected.size());
+		Assert.assertEquals(node, disconnected.get(0));
+
+		// the queued events are gone with the node, polling connects it again
+		Assert.assertEquals(events(), poll());
+		service.publish(channel, 4);
+		Assert.assertEquals(events(), poll());
+	}
+
+	private List<Integer> poll()
+	{
+		final List<Integer> events = new ArrayList<Integer>();
+		for (final CometdPushEventContext<Integer> ctx : service.pollEvents(node))
+			events.add(ctx.getEvent());
+		return events;
+	}
+
+	private static List<Integer> events(final Integer... events)
+	{
+		final List<Integer> list = new ArrayList<Integer>();
+		for (final Integer event : events)
+			list.add(event);
+		return list;
+	}
+}
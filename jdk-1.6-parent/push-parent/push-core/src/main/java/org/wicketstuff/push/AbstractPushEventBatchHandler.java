@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push;
+
+import java.util.Collections;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * Base class for {@link IPushEventBatchHandler}s. By default events are not merged, override
+ * {@link #getCoalescingKey(Object)} to merge them.
+ */
+public abstract class AbstractPushEventBatchHandler<EventType> extends
+	AbstractPushEventHandler<EventType> implements IPushEventBatchHandler<EventType>
+{
+	private static final long serialVersionUID = 1L;
+
+	private final Duration coalescingWindow;
+
+	protected AbstractPushEventBatchHandler()
+	{
+		this(Duration.MAXIMUM);
+	}
+
+	/**
+	 * @param coalescingWindow
+	 *            max time between the first and the last event with the same key that are merged
+	 */
+	protected AbstractPushEventBatchHandler(final Duration coalescingWindow)
+	{
+		this.coalescingWindow = Args.notNull(coalescingWindow, "coalescingWindow");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getCoalescingKey(final EventType event)
+	{
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Duration getCoalescingWindow()
+	{
+		return coalescingWindow;
+	}
+
+	/**
+	 * Delegates to {@link #onEvents(AjaxRequestTarget, java.util.List, IPushNode)}.
+	 */
+	public void onEvent(final AjaxRequestTarget target, final EventType event,
+		final IPushNode<EventType> node, final IPushEventContext<EventType> ctx)
+	{
+		onEvents(target, Collections.singletonList(ctx), node);
+	}
+}
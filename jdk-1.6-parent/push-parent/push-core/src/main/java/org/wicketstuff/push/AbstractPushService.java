@@ -21,15 +21,43 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.wicket.util.lang.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wicketstuff.push.cluster.IPushClusterBus;
+import org.wicketstuff.push.cluster.IPushClusterListener;
 
 /**
  * @author <a href="http://sebthom.de/">Sebastian Thomschke</a>
  */
 public abstract class AbstractPushService implements IPushService
 {
+	private static final Logger LOG = LoggerFactory.getLogger(AbstractPushService.class);
+
 	protected final ConcurrentHashMap<IPushChannel<?>, CopyOnWriteArraySet<IPushNode<?>>> nodesByChannels = new ConcurrentHashMap<IPushChannel<?>, CopyOnWriteArraySet<IPushNode<?>>>();
 	protected final Set<IPushNodeDisconnectedListener> disconnectListeners = new CopyOnWriteArraySet<IPushNodeDisconnectedListener>();
 
+	private final IPushClusterListener clusterListener = new IPushClusterListener()
+	{
+		public void onClusterEvent(final String channelLabel, final Object event)
+		{
+			for (final IPushChannel<?> channel : nodesByChannels.keySet())
+				if (channelLabel.equals(channel.getLabel()))
+					try
+					{
+						@SuppressWarnings("unchecked")
+						final IPushChannel<Object> c = (IPushChannel<Object>)channel;
+						publishLocally(c, event);
+					}
+					catch (final RuntimeException ex)
+					{
+						LOG.error("Failed to publish cluster event on " + channel, ex);
+					}
+		}
+	};
+
+	// written under the lock by setClusterBus() only, read without it for every published event
+	private volatile IPushClusterBus clusterBus;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -66,6 +94,66 @@ public abstract class AbstractPushService implements IPushService
 		return channel;
 	}
 
+	/**
+	 * @return the bus events are sent to the other nodes of the cluster with, may be null
+	 */
+	public IPushClusterBus getClusterBus()
+	{
+		return clusterBus;
+	}
+
+	/**
+	 * Connects this service to the other nodes of a cluster. Events published on a channel are then
+	 * also published on the channels with the same label on all other nodes.
+	 * 
+	 * @param clusterBus
+	 *            the bus to use or null to leave the cluster
+	 */
+	public synchronized void setClusterBus(final IPushClusterBus clusterBus)
+	{
+		if (this.clusterBus != null)
+			this.clusterBus.disconnect();
+		this.clusterBus = clusterBus;
+		if (clusterBus != null)
+			clusterBus.connect(clusterListener);
+	}
+
+	/**
+	 * Publishes the event to the nodes of this JVM and sends it to the other nodes of the cluster.
+	 * 
+	 * {@inheritDoc}
+	 */
+	public <EventType> void publish(final IPushChannel<EventType> channel, final EventType event)
+	{
+		publishLocally(channel, event);
+
+		final IPushClusterBus bus = clusterBus;
+		if (bus != null && channel.getLabel() != null)
+			bus.send(channel.getLabel(), event);
+	}
+
+	/**
+	 * Publishes the event to all nodes of the channel in this JVM. By default the event is
+	 * published to each node with {@link #publish(IPushNode, Object)}, implementations should
+	 * override this to publish more efficiently.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>channel</code> is unknown
+	 */
+	@SuppressWarnings("unchecked")
+	protected <EventType> void publishLocally(final IPushChannel<EventType> channel,
+		final EventType event)
+	{
+		Args.notNull(channel, "channel");
+
+		final Set<IPushNode<?>> pnodes = nodesByChannels.get(channel);
+		if (pnodes == null)
+			throw new IllegalArgumentException("Unknown channel " + channel);
+
+		for (final IPushNode<?> pnode : pnodes)
+			publish((IPushNode<EventType>)pnode, event);
+	}
+
 	protected void disconnectFromAllChannels(final IPushNode<?> node)
 	{
 		Args.notNull(node, "node");
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push;
+
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * A push event handler that receives all events which are delivered to a node in one go. Events
+ * with the same coalescing key that were published within the coalescing window after the first of
+ * them are merged, only the latest of them is delivered. Useful for high frequency feeds like tickers or progress
+ * updates.
+ */
+public interface IPushEventBatchHandler<EventType> extends IPushEventHandler<EventType>
+{
+	/**
+	 * @return the key events are merged by, <code>null</code> if the event must not be merged
+	 */
+	Object getCoalescingKey(EventType event);
+
+	/**
+	 * @return max time between the first and the last event with the same key that are merged
+	 */
+	Duration getCoalescingWindow();
+
+	/**
+	 * Called once per delivery with all (coalesced) events in the order they were published.
+	 */
+	void onEvents(AjaxRequestTarget target, List<IPushEventContext<EventType>> events,
+		IPushNode<EventType> node);
+}
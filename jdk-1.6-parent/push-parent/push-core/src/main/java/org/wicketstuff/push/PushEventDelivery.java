@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the events polled for a push node over to its {@link IPushEventHandler}. Used by the push
+ * behaviors of the different {@link IPushService} implementations.
+ */
+public final class PushEventDelivery
+{
+	private static final Logger LOG = LoggerFactory.getLogger(PushEventDelivery.class);
+
+	/**
+	 * Merges events with the same coalescing key that were published within the coalescing window
+	 * after the first event of the key. The latest of the merged events takes the place of the
+	 * first one, an event published after the window starts a new window.
+	 * 
+	 * @return the coalesced events in the order they were published
+	 */
+	public static <EventType> List<IPushEventContext<EventType>> coalesce(
+		final List<? extends IPushEventContext<EventType>> events,
+		final IPushEventBatchHandler<EventType> handler)
+	{
+		final List<IPushEventContext<EventType>> result = new ArrayList<IPushEventContext<EventType>>(
+			events.size());
+		final Map<Object, Run> runsByKey = new HashMap<Object, Run>();
+		final long window = handler.getCoalescingWindow().getMilliseconds();
+
+		for (final IPushEventContext<EventType> ctx : events)
+		{
+			final Object key = handler.getCoalescingKey(ctx.getEvent());
+			if (key != null)
+			{
+				final Run run = runsByKey.get(key);
+				// the window starts with the first event, not with the last merged one
+				if (run != null && ctx.getTimestamp() - run.firstTimestamp <= window)
+				{
+					result.set(run.position, ctx);
+					continue;
+				}
+				runsByKey.put(key, new Run(result.size(), ctx.getTimestamp()));
+			}
+			result.add(ctx);
+		}
+		return result;
+	}
+
+	/**
+	 * Delivers the events to the handler, a {@link IPushEventBatchHandler} gets all (coalesced)
+	 * events in one invocation, any other handler one invocation per event.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <EventType> void deliver(final AjaxRequestTarget target,
+		final IPushEventHandler<EventType> handler, final IPushNode<EventType> node,
+		final List<? extends IPushEventContext<EventType>> events)
+	{
+		if (events.isEmpty())
+			return;
+
+		if (handler instanceof IPushEventBatchHandler)
+		{
+			final IPushEventBatchHandler<EventType> batchHandler = (IPushEventBatchHandler<EventType>)handler;
+			try
+			{
+				batchHandler.onEvents(target, coalesce(events, batchHandler), node);
+			}
+			catch (final RuntimeException ex)
+			{
+				LOG.error("Failed while processing events", ex);
+			}
+		}
+		else
+			for (final IPushEventContext<EventType> ctx : events)
+				try
+				{
+					handler.onEvent(target, ctx.getEvent(), node, ctx);
+				}
+				catch (final RuntimeException ex)
+				{
+					LOG.error("Failed while processing event", ex);
+				}
+	}
+
+	private PushEventDelivery()
+	{
+		// utility class
+	}
+
+	/**
+	 * Events of one coalescing key which are merged.
+	 */
+	private static final class Run
+	{
+		final int position;
+		final long firstTimestamp;
+
+		Run(final int position, final long firstTimestamp)
+		{
+			this.position = position;
+			this.firstTimestamp = firstTimestamp;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push;
+
+/**
+ * Defines what happens if an event is published to a push node whose event queue is full.
+ */
+public enum QueueOverflowPolicy
+{
+	/**
+	 * the oldest queued event is dropped to make room for the new one
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * the new event is dropped
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * the node is considered too slow and gets disconnected
+	 */
+	DISCONNECT
+}
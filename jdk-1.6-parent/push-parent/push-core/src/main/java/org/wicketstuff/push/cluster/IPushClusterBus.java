@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cluster;
+
+/**
+ * Transports push events between the push services of the nodes of a cluster. Events published on
+ * a channel of one node are delivered to the channels with the same label on all other nodes.
+ * 
+ * @see org.wicketstuff.push.AbstractPushService#setClusterBus(IPushClusterBus)
+ */
+public interface IPushClusterBus
+{
+	/**
+	 * Starts receiving events from the other nodes.
+	 */
+	void connect(IPushClusterListener listener);
+
+	/**
+	 * Stops sending and receiving events.
+	 */
+	void disconnect();
+
+	/**
+	 * Sends the event to all other nodes. Implementations may send asynchronously and in batches.
+	 * 
+	 * @param channelLabel
+	 *            the label of the channel the event was published on
+	 */
+	void send(String channelLabel, Object event);
+}
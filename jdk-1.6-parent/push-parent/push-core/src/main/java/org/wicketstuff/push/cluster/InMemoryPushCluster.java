@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cluster;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cluster of push services inside one JVM, f.i. several applications or tests. Each member gets
+ * its own bus from {@link #newBus()}, events are delivered synchronously to all other members.
+ */
+public class InMemoryPushCluster
+{
+	private static final Logger LOG = LoggerFactory.getLogger(InMemoryPushCluster.class);
+
+	private final class Bus implements IPushClusterBus
+	{
+		private volatile IPushClusterListener _listener;
+
+		public void connect(final IPushClusterListener listener)
+		{
+			_listener = listener;
+			_members.add(this);
+		}
+
+		public void disconnect()
+		{
+			_members.remove(this);
+			_listener = null;
+		}
+
+		public void send(final String channelLabel, final Object event)
+		{
+			for (final Bus member : _members)
+			{
+				final IPushClusterListener listener = member._listener;
+				if (member != this && listener != null)
+					try
+					{
+						listener.onClusterEvent(channelLabel, event);
+					}
+					catch (final RuntimeException ex)
+					{
+						LOG.error("Failed to deliver cluster event to " + listener, ex);
+					}
+			}
+		}
+	}
+
+	private final Set<Bus> _members = new CopyOnWriteArraySet<Bus>();
+
+	/**
+	 * @return a new, not yet connected, bus for one member of the cluster
+	 */
+	public IPushClusterBus newBus()
+	{
+		return new Bus();
+	}
+}
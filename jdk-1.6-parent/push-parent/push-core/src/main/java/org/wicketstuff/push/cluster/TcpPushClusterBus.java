@@ -0,0 +1,761 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UTFDataFormatException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simple TCP based {@link IPushClusterBus}. Every node listens on a port and sends its events to a
+ * fixed list of peers. Events are collected for a short interval and sent as one batch. Every peer
+ * has its own queue and sender thread, so a slow or unreachable peer does not delay the others.
+ * <p>
+ * Delivery is best effort: events are dropped if a queue is full or a peer is not reachable. A
+ * peer that could not be reached is skipped for a retry delay which doubles with every failure
+ * (from 100 milliseconds up to 30 seconds).
+ * <p>
+ * Only connections from the hosts of the peers are accepted and frames bigger than the max frame
+ * size are rejected. The events are transported with Java serialization by default, restricted to
+ * the classes of the packages <code>java.lang</code>, <code>java.util</code> and
+ * <code>java.math</code> and the classes allowed with {@link #allowEventClasses(String...)}. Another
+ * {@link ISerializer}, f.i. the one of the application, can be set with
+ * {@link #setSerializer(ISerializer)}, it is then responsible for the classes it deserializes.
+ */
+public class TcpPushClusterBus implements IPushClusterBus
+{
+	private static final Logger LOG = LoggerFactory.getLogger(TcpPushClusterBus.class);
+
+	private static final List<String> DEFAULT_ALLOWED_CLASSES = Arrays.asList("java.lang.",
+		"java.util.", "java.math.");
+
+	private static final int MAX_QUEUED_FRAMES_PER_PEER = 64;
+	private static final long MIN_RETRY_DELAY = 100;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	private static final class QueuedEvent
+	{
+		final String channelLabel;
+		final Object event;
+
+		QueuedEvent(final String channelLabel, final Object event)
+		{
+			this.channelLabel = channelLabel;
+			this.event = event;
+		}
+	}
+
+	private static final class Frame
+	{
+		final byte[] data;
+		final int eventCount;
+
+		Frame(final byte[] data, final int eventCount)
+		{
+			this.data = data;
+			this.eventCount = eventCount;
+		}
+	}
+
+	private final class Peer implements Runnable
+	{
+		final InetSocketAddress address;
+		final BlockingQueue<Frame> frames = new ArrayBlockingQueue<Frame>(
+			MAX_QUEUED_FRAMES_PER_PEER);
+		volatile long retryAt;
+		volatile Socket socket;
+		DataOutputStream out;
+		long retryDelay;
+		Thread thread;
+
+		Peer(final InetSocketAddress address)
+		{
+			this.address = address;
+		}
+
+		void offer(final Frame frame)
+		{
+			if (System.currentTimeMillis() < retryAt || !frames.offer(frame))
+				_droppedEventCount.addAndGet(frame.eventCount);
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (_running)
+					write(frames.take());
+			}
+			catch (final InterruptedException ex)
+			{
+				LOG.debug("Push cluster sender for {} interrupted", address);
+			}
+			finally
+			{
+				close();
+			}
+		}
+
+		private void write(final Frame frame)
+		{
+			try
+			{
+				if (out == null)
+				{
+					final Socket socket = new Socket();
+					this.socket = socket;
+					socket.connect(address, (int)_connectTimeout.getMilliseconds());
+					socket.setTcpNoDelay(true);
+					out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				}
+				out.writeInt(frame.data.length);
+				out.write(frame.data);
+				out.flush();
+				retryDelay = 0;
+			}
+			catch (final IOException ex)
+			{
+				close();
+				retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY), MAX_RETRY_DELAY);
+				retryAt = System.currentTimeMillis() + retryDelay;
+
+				// the queued events are outdated once the peer can be reached again
+				long dropped = frame.eventCount;
+				Frame queued;
+				while ((queued = frames.poll()) != null)
+					dropped += queued.eventCount;
+				_droppedEventCount.addAndGet(dropped);
+
+				if (_running)
+					LOG.warn("Failed to send push events to {}, retrying in {} ms: {}",
+						new Object[] { address, retryDelay, ex.toString() });
+			}
+		}
+
+		void start()
+		{
+			frames.clear();
+			retryAt = 0;
+			retryDelay = 0;
+			thread = new Thread(this, "push-cluster-sender-" + address);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop()
+		{
+			thread.interrupt();
+			// unblocks a write to a peer that does not read
+			_closeQuietly(socket);
+		}
+
+		private void close()
+		{
+			IOUtils.closeQuietly(out);
+			_closeQuietly(socket);
+			out = null;
+			socket = null;
+		}
+	}
+
+	private final class JavaEventSerializer implements ISerializer
+	{
+		public byte[] serialize(final Object object)
+		{
+			try
+			{
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				final ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(object);
+				out.close();
+				return bytes.toByteArray();
+			}
+			catch (final IOException ex)
+			{
+				throw new WicketRuntimeException("Failed to serialize push event " + object, ex);
+			}
+		}
+
+		public Object deserialize(final byte[] data)
+		{
+			try
+			{
+				final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))
+				{
+					@Override
+					protected Class<?> resolveClass(final ObjectStreamClass desc)
+						throws IOException, ClassNotFoundException
+					{
+						if (!_isAllowedClass(desc.getName()))
+							throw new InvalidClassException(desc.getName(),
+								"not allowed in push cluster events");
+						try
+						{
+							return Class.forName(desc.getName(), false, _classLoader);
+						}
+						catch (final ClassNotFoundException ex)
+						{
+							return super.resolveClass(desc);
+						}
+					}
+
+					@Override
+					protected Class<?> resolveProxyClass(final String[] interfaces)
+						throws IOException
+					{
+						throw new InvalidClassException("Proxies are not allowed in push cluster events");
+					}
+				};
+				return in.readObject();
+			}
+			catch (final IOException ex)
+			{
+				throw new WicketRuntimeException("Failed to deserialize push event", ex);
+			}
+			catch (final ClassNotFoundException ex)
+			{
+				throw new WicketRuntimeException("Unknown push event class", ex);
+			}
+		}
+	}
+
+	private final InetSocketAddress _bindAddress;
+	private final List<Peer> _peers = new ArrayList<Peer>();
+	private final BlockingQueue<QueuedEvent> _queue;
+	private final List<Socket> _inboundSockets = new CopyOnWriteArrayList<Socket>();
+	private final AtomicLong _droppedEventCount = new AtomicLong();
+	private final Set<String> _allowedClasses = new CopyOnWriteArraySet<String>(
+		DEFAULT_ALLOWED_CLASSES);
+	private final ISerializer _javaSerializer = new JavaEventSerializer();
+
+	private volatile Duration _batchInterval = Duration.milliseconds(50);
+	private volatile Duration _connectTimeout = Duration.seconds(5);
+	private volatile int _maxBatchSize = 500;
+	private volatile int _maxFrameSize = (int)Bytes.megabytes(16).bytes();
+	private volatile ISerializer _serializer;
+
+	private volatile boolean _running;
+	private volatile IPushClusterListener _listener;
+	private volatile ClassLoader _classLoader;
+	private volatile Set<InetAddress> _peerHosts;
+	private ServerSocket _serverSocket;
+	private Thread _acceptor;
+	private Thread _sender;
+
+	/**
+	 * @param bindAddress
+	 *            the address this node listens on
+	 * @param peers
+	 *            the addresses of all other nodes
+	 */
+	public TcpPushClusterBus(final InetSocketAddress bindAddress,
+		final Collection<InetSocketAddress> peers)
+	{
+		this(bindAddress, peers, 10000);
+	}
+
+	/**
+	 * @param bindAddress
+	 *            the address this node listens on
+	 * @param peers
+	 *            the addresses of all other nodes
+	 * @param maxQueuedEvents
+	 *            max number of events waiting to be sent
+	 */
+	public TcpPushClusterBus(final InetSocketAddress bindAddress,
+		final Collection<InetSocketAddress> peers, final int maxQueuedEvents)
+	{
+		_bindAddress = Args.notNull(bindAddress, "bindAddress");
+		for (final InetSocketAddress peer : Args.notNull(peers, "peers"))
+			_peers.add(new Peer(peer));
+		_queue = new LinkedBlockingQueue<QueuedEvent>(maxQueuedEvents);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void connect(final IPushClusterListener listener)
+	{
+		Args.notNull(listener, "listener");
+
+		if (_running)
+			throw new IllegalStateException("Already connected");
+
+		_peerHosts = _resolvePeerHosts();
+		try
+		{
+			_serverSocket = new ServerSocket();
+			_serverSocket.setReuseAddress(true);
+			_serverSocket.bind(_bindAddress);
+		}
+		catch (final IOException ex)
+		{
+			throw new IllegalStateException("Cannot listen on " + _bindAddress, ex);
+		}
+
+		_listener = listener;
+		_classLoader = Thread.currentThread().getContextClassLoader();
+		_running = true;
+
+		_acceptor = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				_accept();
+			}
+		}, "push-cluster-acceptor-" + _bindAddress.getPort());
+		_acceptor.setDaemon(true);
+		_acceptor.start();
+
+		for (final Peer peer : _peers)
+			peer.start();
+
+		_sender = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				_sendBatches();
+			}
+		}, "push-cluster-batcher-" + _bindAddress.getPort());
+		_sender.setDaemon(true);
+		_sender.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void disconnect()
+	{
+		if (!_running)
+			return;
+
+		_running = false;
+		_listener = null;
+		try
+		{
+			_serverSocket.close();
+		}
+		catch (final IOException ex)
+		{
+			LOG.debug("Failed to close server socket", ex);
+		}
+		for (final Socket socket : _inboundSockets)
+			_closeQuietly(socket);
+		_sender.interrupt();
+		for (final Peer peer : _peers)
+			peer.stop();
+		_queue.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void send(final String channelLabel, final Object event)
+	{
+		if (!_running || _peers.isEmpty())
+			return;
+
+		if (!_queue.offer(new QueuedEvent(channelLabel, event)))
+		{
+			_droppedEventCount.incrementAndGet();
+			LOG.warn("Push cluster queue is full, dropping event {}", event);
+		}
+	}
+
+	/**
+	 * Allows classes in events received with the default Java serialization. The classes of the
+	 * packages <code>java.lang</code>, <code>java.util</code> and <code>java.math</code> are
+	 * allowed by default.
+	 * 
+	 * @param classNames
+	 *            names of classes or of packages, ending with a dot, whose classes (not those of
+	 *            sub packages) are allowed
+	 */
+	public void allowEventClasses(final String... classNames)
+	{
+		for (final String className : classNames)
+			_allowedClasses.add(Args.notEmpty(className, "className"));
+	}
+
+	/**
+	 * @return the number of events that were dropped because a queue was full or a peer was not
+	 *         reachable
+	 */
+	public long getDroppedEventCount()
+	{
+		return _droppedEventCount.get();
+	}
+
+	/**
+	 * Sets how long events are collected before a batch is sent. A full batch is sent right away.
+	 * Default is 50 milliseconds.
+	 */
+	public void setBatchInterval(final Duration batchInterval)
+	{
+		_batchInterval = Args.notNull(batchInterval, "batchInterval");
+	}
+
+	/**
+	 * Sets the max number of events per batch. Default is 500.
+	 */
+	public void setMaxBatchSize(final int maxBatchSize)
+	{
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("maxBatchSize must be positive");
+		_maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Sets the max size of a batch. Bigger batches are not sent, connections which receive them
+	 * are closed. Default is 16 megabytes.
+	 */
+	public void setMaxFrameSize(final Bytes maxFrameSize)
+	{
+		Args.notNull(maxFrameSize, "maxFrameSize");
+		if (maxFrameSize.bytes() < 1 || maxFrameSize.bytes() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("maxFrameSize must be between 1 byte and 2 gigabytes");
+		_maxFrameSize = (int)maxFrameSize.bytes();
+	}
+
+	/**
+	 * Sets the timeout for connecting to a peer. Default is 5 seconds.
+	 */
+	public void setConnectTimeout(final Duration connectTimeout)
+	{
+		_connectTimeout = Args.notNull(connectTimeout, "connectTimeout");
+	}
+
+	/**
+	 * Sets the serializer for the events, f.i.
+	 * <code>application.getFrameworkSettings().getSerializer()</code>. All nodes must use the
+	 * same serializer. By default Java serialization restricted to the allowed classes is used.
+	 * 
+	 * @param serializer
+	 *            the serializer or <code>null</code> for the default
+	 */
+	public void setSerializer(final ISerializer serializer)
+	{
+		_serializer = serializer;
+	}
+
+	private ISerializer _getSerializer()
+	{
+		final ISerializer serializer = _serializer;
+		return serializer == null ? _javaSerializer : serializer;
+	}
+
+	private boolean _isAllowedClass(final String name)
+	{
+		String className = name;
+		if (className.startsWith("["))
+		{
+			className = className.substring(className.lastIndexOf('[') + 1);
+			if (className.length() == 1)
+				// array of a primitive type
+				return true;
+			className = className.substring(1, className.length() - 1);
+		}
+		for (final String allowed : _allowedClasses)
+			if (allowed.endsWith("."))
+			{
+				if (className.startsWith(allowed) &&
+					className.indexOf('.', allowed.length()) < 0)
+					return true;
+			}
+			else if (className.equals(allowed))
+				return true;
+		return false;
+	}
+
+	private Set<InetAddress> _resolvePeerHosts()
+	{
+		final Set<InetAddress> hosts = new HashSet<InetAddress>();
+		for (final Peer peer : _peers)
+			if (peer.address.isUnresolved())
+				try
+				{
+					hosts.addAll(Arrays.asList(InetAddress.getAllByName(peer.address.getHostName())));
+				}
+				catch (final UnknownHostException ex)
+				{
+					LOG.warn("Cannot resolve push cluster peer {}", peer.address);
+				}
+			else
+				hosts.add(peer.address.getAddress());
+		return hosts;
+	}
+
+	private void _accept()
+	{
+		while (_running)
+			try
+			{
+				final Socket socket = _serverSocket.accept();
+				if (!_peerHosts.contains(socket.getInetAddress()))
+				{
+					LOG.warn("Rejected push cluster connection from {}, it is not a peer",
+						socket.getRemoteSocketAddress());
+					_closeQuietly(socket);
+					continue;
+				}
+				_inboundSockets.add(socket);
+				final Thread reader = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						_receive(socket);
+					}
+				}, "push-cluster-receiver-" + socket.getRemoteSocketAddress());
+				reader.setDaemon(true);
+				reader.start();
+			}
+			catch (final IOException ex)
+			{
+				if (_running)
+					LOG.error("Failed to accept push cluster connection", ex);
+			}
+	}
+
+	private void _receive(final Socket socket)
+	{
+		try
+		{
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+			while (_running)
+			{
+				final int length = in.readInt();
+				if (length < 0 || length > _maxFrameSize)
+					throw new IOException("Invalid frame size " + length);
+				final byte[] frame = new byte[length];
+				in.readFully(frame);
+				_dispatch(frame);
+			}
+		}
+		catch (final EOFException ex)
+		{
+			LOG.debug("Push cluster peer {} disconnected", socket.getRemoteSocketAddress());
+		}
+		catch (final IOException ex)
+		{
+			if (_running)
+				LOG.warn("Failed to receive push events from {}: {}",
+					socket.getRemoteSocketAddress(), ex.toString());
+		}
+		finally
+		{
+			_inboundSockets.remove(socket);
+			_closeQuietly(socket);
+		}
+	}
+
+	private void _dispatch(final byte[] frame) throws IOException
+	{
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+		final ISerializer serializer = _getSerializer();
+
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			final String channelLabel = in.readUTF();
+			final int length = in.readInt();
+			if (length < 0 || length > in.available())
+				throw new IOException("Invalid event size " + length);
+			final byte[] data = new byte[length];
+			in.readFully(data);
+
+			final Object event;
+			try
+			{
+				event = serializer.deserialize(data);
+			}
+			catch (final RuntimeException ex)
+			{
+				LOG.warn("Dropped push cluster event for channel {}: {}", channelLabel,
+					ex.toString());
+				continue;
+			}
+
+			final IPushClusterListener listener = _listener;
+			if (listener != null)
+				try
+				{
+					listener.onClusterEvent(channelLabel, event);
+				}
+				catch (final RuntimeException ex)
+				{
+					LOG.error("Failed to deliver cluster event to " + listener, ex);
+				}
+		}
+	}
+
+	private void _sendBatches()
+	{
+		final List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		try
+		{
+			while (_running)
+			{
+				final QueuedEvent first = _queue.poll(1, TimeUnit.SECONDS);
+				if (first == null)
+					continue;
+				batch.add(first);
+
+				// wait for other events to join this batch until it is full or the interval passed
+				final int maxBatchSize = _maxBatchSize;
+				final long deadline = System.nanoTime() +
+					TimeUnit.MILLISECONDS.toNanos(_batchInterval.getMilliseconds());
+				long remaining;
+				while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0)
+					if (_queue.drainTo(batch, maxBatchSize - batch.size()) == 0)
+					{
+						final QueuedEvent next = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+						if (next == null)
+							break;
+						batch.add(next);
+					}
+
+				final Frame frame = _toFrame(batch);
+				batch.clear();
+				if (frame != null)
+					for (final Peer peer : _peers)
+						peer.offer(frame);
+			}
+		}
+		catch (final InterruptedException ex)
+		{
+			LOG.debug("Push cluster sender interrupted");
+		}
+	}
+
+	private Frame _toFrame(final List<QueuedEvent> batch)
+	{
+		final ISerializer serializer = _getSerializer();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		int count = 0;
+		try
+		{
+			// the event count is written at the start once it is known
+			out.writeInt(0);
+			for (final QueuedEvent queued : batch)
+			{
+				final byte[] data;
+				try
+				{
+					data = serializer.serialize(queued.event);
+				}
+				catch (final RuntimeException ex)
+				{
+					LOG.error("Failed to serialize push event " + queued.event, ex);
+					continue;
+				}
+				if (data == null)
+				{
+					LOG.error("Failed to serialize push event {}", queued.event);
+					continue;
+				}
+				try
+				{
+					out.writeUTF(queued.channelLabel);
+				}
+				catch (final UTFDataFormatException ex)
+				{
+					LOG.error("Push channel label is too long: {}", queued.channelLabel);
+					continue;
+				}
+				out.writeInt(data.length);
+				out.write(data);
+				count++;
+			}
+			out.close();
+		}
+		catch (final IOException ex)
+		{
+			// not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(ex);
+		}
+
+		_droppedEventCount.addAndGet(batch.size() - count);
+		if (count == 0)
+			return null;
+
+		final byte[] data = bytes.toByteArray();
+		if (data.length > _maxFrameSize)
+		{
+			LOG.error("Dropping batch of {} push events, its size {} exceeds the max frame size",
+				count, data.length);
+			_droppedEventCount.addAndGet(count);
+			return null;
+		}
+		data[0] = (byte)(count >>> 24);
+		data[1] = (byte)(count >>> 16);
+		data[2] = (byte)(count >>> 8);
+		data[3] = (byte)count;
+		return new Frame(data, count);
+	}
+
+	private static void _closeQuietly(final Socket socket)
+	{
+		if (socket != null)
+			try
+			{
+				socket.close();
+			}
+			catch (final IOException ex)
+			{
+				LOG.debug("Failed to close socket", ex);
+			}
+	}
+}
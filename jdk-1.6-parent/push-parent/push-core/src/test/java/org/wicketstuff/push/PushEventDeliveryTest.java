@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.util.time.Duration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PushEventDeliveryTest
+{
+	@Test
+	public void eventsWithTheSameKeyAreMergedInPlaceOfTheFirst()
+	{
+		final List<IPushEventContext<String>> coalesced = PushEventDelivery.coalesce(
+			Arrays.asList(ctx("a:1", 0), ctx("b:1", 1), ctx("a:2", 2), ctx("c", 3), ctx("b:2", 4)),
+			new Handler(Duration.milliseconds(100)));
+
+		Assert.assertEquals(Arrays.asList("a:2", "b:2", "c"), events(coalesced));
+	}
+
+	@Test
+	public void eventsWithoutKeyAreNotMerged()
+	{
+		final List<IPushEventContext<String>> coalesced = PushEventDelivery.coalesce(
+			Arrays.asList(ctx("c", 0), ctx("c", 1)), new Handler(Duration.milliseconds(100)));
+
+		Assert.assertEquals(Arrays.asList("c", "c"), events(coalesced));
+	}
+
+	@Test
+	public void windowStartsWithTheFirstEvent()
+	{
+		// each event is within the window of its predecessor, but not of the first one
+		final List<IPushEventContext<String>> coalesced = PushEventDelivery.coalesce(
+			Arrays.asList(ctx("a:1", 0), ctx("a:2", 60), ctx("a:3", 100), ctx("a:4", 101),
+				ctx("a:5", 160)), new Handler(Duration.milliseconds(100)));
+
+		Assert.assertEquals(Arrays.asList("a:3", "a:5"), events(coalesced));
+	}
+
+	@Test
+	public void batchHandlerGetsCoalescedEvents()
+	{
+		final Handler handler = new Handler(Duration.milliseconds(100));
+		PushEventDelivery.deliver(null, handler, null,
+			Arrays.asList(ctx("a:1", 0), ctx("b:1", 1), ctx("a:2", 2)));
+
+		Assert.assertEquals(1, handler.batches.size());
+		Assert.assertEquals(Arrays.asList("a:2", "b:1"), events(handler.batches.get(0)));
+	}
+
+	@Test
+	public void plainHandlerGetsEachEvent()
+	{
+		final List<String> received = new ArrayList<String>();
+		PushEventDelivery.deliver(null, new IPushEventHandler<String>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			public void onEvent(final AjaxRequestTarget target, final String event,
+				final IPushNode<String> node, final IPushEventContext<String> ctx)
+			{
+				received.add(event);
+				if (event.equals("a:1"))
+					throw new IllegalStateException("failure of one event");
+			}
+		}, null, Arrays.asList(ctx("a:1", 0), ctx("a:2", 1)));
+
+		Assert.assertEquals(Arrays.asList("a:1", "a:2"), received);
+	}
+
+	private static List<String> events(final List<IPushEventContext<String>> contexts)
+	{
+		final List<String> events = new ArrayList<String>();
+		for (final IPushEventContext<String> ctx : contexts)
+			events.add(ctx.getEvent());
+		return events;
+	}
+
+	private static IPushEventContext<String> ctx(final String event, final long timestamp)
+	{
+		return new AbstractPushEventContext<String>(event, null)
+		{
+			@Override
+			public long getTimestamp()
+			{
+				return timestamp;
+			}
+
+			public IPushService getService()
+			{
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Merges events by the part before the colon
+	 */
+	private static class Handler extends AbstractPushEventBatchHandler<String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		final List<List<IPushEventContext<String>>> batches = new ArrayList<List<IPushEventContext<String>>>();
+
+		Handler(final Duration coalescingWindow)
+		{
+			super(coalescingWindow);
+		}
+
+		@Override
+		public Object getCoalescingKey(final String event)
+		{
+			final int colon = event.indexOf(':');
+			return colon < 0 ? null : event.substring(0, colon);
+		}
+
+		public void onEvents(final AjaxRequestTarget target,
+			final List<IPushEventContext<String>> events, final IPushNode<String> node)
+		{
+			batches.add(events);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.cluster;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.push.AbstractPushService;
+import org.wicketstuff.push.IPushChannel;
+import org.wicketstuff.push.IPushEventHandler;
+import org.wicketstuff.push.IPushNode;
+
+/**
+ * Runs several push services connected with {@link TcpPushClusterBus}es on the loopback interface.
+ */
+public class TcpPushClusterBusTest
+{
+	private static final InetAddress LOOPBACK = loopback();
+
+	private final List<TestPushService> services = new ArrayList<TestPushService>();
+	private final List<ServerSocket> serverSockets = new ArrayList<ServerSocket>();
+
+	@After
+	public void after() throws IOException
+	{
+		for (final TestPushService service : services)
+			service.setClusterBus(null);
+		for (final ServerSocket serverSocket : serverSockets)
+			serverSocket.close();
+	}
+
+	@Test
+	public void eventsArePublishedOnAllNodes() throws Exception
+	{
+		final List<InetSocketAddress> addresses = addresses(3);
+		final TestPushService service1 = service(addresses.get(0), addresses);
+		final TestPushService service2 = service(addresses.get(1), addresses);
+		final TestPushService service3 = service(addresses.get(2), addresses);
+
+		service1.publish(service1.channel, "from 1");
+		Assert.assertEquals("from 1", service1.received.poll());
+		Assert.assertEquals("from 1", service2.poll());
+		Assert.assertEquals("from 1", service3.poll());
+
+		service3.publish(service3.channel, "from 3");
+		Assert.assertEquals("from 3", service3.received.poll());
+		Assert.assertEquals("from 3", service1.poll());
+		Assert.assertEquals("from 3", service2.poll());
+	}
+
+	@Test
+	public void stalledPeerDoesNotDelayTheOthers() throws Exception
+	{
+		// accepts connections (in its backlog) but never reads
+		final ServerSocket stalled = new ServerSocket(0, 50, LOOPBACK);
+		serverSockets.add(stalled);
+
+		final List<InetSocketAddress> addresses = addresses(2);
+		final TestPushService receiver = service(addresses.get(1), addresses);
+		final TestPushService sender = service(addresses.get(0), Arrays.asList(addresses.get(1),
+			new InetSocketAddress(LOOPBACK, stalled.getLocalPort())));
+
+		final char[] chars = new char[256 * 1024];
+		Arrays.fill(chars, 'x');
+		final String big = new String(chars);
+		for (int i = 0; i < 100; i++)
+		{
+			sender.publish(sender.channel, big + i);
+			Assert.assertEquals(big + i, receiver.poll());
+		}
+		// the queue of the stalled peer overflowed
+		Assert.assertTrue(sender.bus.getDroppedEventCount() > 0);
+	}
+
+	@Test
+	public void notAllowedClassesAreDropped() throws Exception
+	{
+		final List<InetSocketAddress> addresses = addresses(2);
+		final TestPushService service1 = service(addresses.get(0), addresses);
+		final TestPushService service2 = service(addresses.get(1), addresses);
+
+		service1.publish(service1.channel, new TestEvent());
+		service1.publish(service1.channel, "allowed");
+		Assert.assertEquals("allowed", service2.poll());
+
+		service2.bus.allowEventClasses(TestEvent.class.getName());
+		service1.publish(service1.channel, new TestEvent());
+		Assert.assertTrue(service2.poll() instanceof TestEvent);
+	}
+
+	@Test
+	public void invalidFrameSizeClosesTheConnection() throws Exception
+	{
+		final List<InetSocketAddress> addresses = addresses(2);
+		final TestPushService service1 = service(addresses.get(0), addresses);
+		final TestPushService service2 = service(addresses.get(1), addresses);
+		service2.bus.setMaxFrameSize(Bytes.kilobytes(1));
+
+		for (final int length : new int[] { -1, 1025, Integer.MAX_VALUE })
+		{
+			final Socket socket = new Socket(LOOPBACK, addresses.get(1).getPort());
+			try
+			{
+				socket.setSoTimeout(5000);
+				new DataOutputStream(socket.getOutputStream()).writeInt(length);
+				Assert.assertEquals(-1, socket.getInputStream().read());
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+
+		service1.publish(service1.channel, "still connected");
+		Assert.assertEquals("still connected", service2.poll());
+	}
+
+	@Test
+	public void connectionsFromOtherHostsAreRejected() throws Exception
+	{
+		final InetSocketAddress address = addresses(1).get(0);
+		service(address, Collections.singletonList(new InetSocketAddress("127.0.0.2", 1)));
+
+		final Socket socket = new Socket(LOOPBACK, address.getPort());
+		try
+		{
+			socket.setSoTimeout(5000);
+			Assert.assertEquals(-1, socket.getInputStream().read());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	private TestPushService service(final InetSocketAddress bindAddress,
+		final List<InetSocketAddress> addresses)
+	{
+		final List<InetSocketAddress> peers = new ArrayList<InetSocketAddress>(addresses);
+		peers.remove(bindAddress);
+
+		final TestPushService service = new TestPushService(new TcpPushClusterBus(bindAddress,
+			peers));
+		services.add(service);
+		return service;
+	}
+
+	private static List<InetSocketAddress> addresses(final int count) throws IOException
+	{
+		final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (int i = 0; i < count; i++)
+		{
+			final ServerSocket socket = new ServerSocket(0, 1, LOOPBACK);
+			addresses.add(new InetSocketAddress(LOOPBACK, socket.getLocalPort()));
+			socket.close();
+		}
+		return addresses;
+	}
+
+	private static InetAddress loopback()
+	{
+		try
+		{
+			return InetAddress.getByName("127.0.0.1");
+		}
+		catch (final IOException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static class TestEvent implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Records the events published to its only node, relies on the default
+	 * {@link AbstractPushService#publishLocally(IPushChannel, Object)}.
+	 */
+	private static class TestPushService extends AbstractPushService
+	{
+		final TcpPushClusterBus bus;
+		final IPushChannel<Object> channel = createChannel("test");
+		final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+		TestPushService(final TcpPushClusterBus bus)
+		{
+			this.bus = bus;
+			bus.setBatchInterval(Duration.milliseconds(5));
+			connectToChannel(new IPushNode<Object>()
+			{
+				private static final long serialVersionUID = 1L;
+			}, channel);
+			setClusterBus(bus);
+		}
+
+		Object poll() throws InterruptedException
+		{
+			final Object event = received.poll(10, TimeUnit.SECONDS);
+			Assert.assertNotNull("no event received", event);
+			return event;
+		}
+
+		public <EventType> IPushNode<EventType> installNode(final Component component,
+			final IPushEventHandler<EventType> handler)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean isConnected(final IPushNode<?> node)
+		{
+			return true;
+		}
+
+		public <EventType> void publish(final IPushNode<EventType> node, final EventType event)
+		{
+			received.add(event);
+		}
+
+		public void uninstallNode(final Component component, final IPushNode<?> node)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel: items are put into the slot of their deadline in O(1) and only the slots
+ * whose time has come are visited when expiring. Items with a deadline beyond one revolution of the
+ * wheel stay in their slot until their round has come.
+ * <p>
+ * Scheduling is thread safe, expiring must only be done by one thread at a time.
+ */
+final class TimeoutWheel<T>
+{
+	private static final class Entry<T>
+	{
+		final T item;
+		final long deadline;
+
+		Entry(final T item, final long deadline)
+		{
+			this.item = item;
+			this.deadline = deadline;
+		}
+	}
+
+	private final long _tickMillis;
+	private final Queue<Entry<T>>[] _slots;
+	private volatile long _lastExpiredTick;
+
+	@SuppressWarnings("unchecked")
+	TimeoutWheel(final long tickMillis, final int ticksPerWheel, final long nowMillis)
+	{
+		_tickMillis = tickMillis;
+		_slots = new Queue[ticksPerWheel];
+		for (int i = 0; i < ticksPerWheel; i++)
+			_slots[i] = new ConcurrentLinkedQueue<Entry<T>>();
+		_lastExpiredTick = nowMillis / tickMillis;
+	}
+
+	/**
+	 * @return the items whose deadline passed, items which were re-scheduled in the meantime must
+	 *         be checked by the caller
+	 */
+	List<T> expire(final long nowMillis)
+	{
+		final long nowTick = nowMillis / _tickMillis;
+		final long fromTick = _lastExpiredTick + 1;
+		final long ticks = Math.min(nowTick - _lastExpiredTick, _slots.length);
+		_lastExpiredTick = nowTick;
+
+		final List<T> expired = new ArrayList<T>();
+		final List<Entry<T>> notYet = new ArrayList<Entry<T>>();
+		for (long tick = fromTick; tick < fromTick + ticks; tick++)
+		{
+			final Queue<Entry<T>> slot = _slots[slotOf(tick)];
+			Entry<T> entry;
+			while ((entry = slot.poll()) != null)
+				if (entry.deadline <= nowMillis)
+					expired.add(entry.item);
+				else
+					notYet.add(entry);
+		}
+		for (final Entry<T> entry : notYet)
+			schedule(entry.item, entry.deadline);
+		return expired;
+	}
+
+	void schedule(final T item, final long deadlineMillis)
+	{
+		// never put an item into a slot which was already visited in this round
+		final long tick = Math.max(deadlineMillis / _tickMillis, _lastExpiredTick + 1);
+		_slots[slotOf(tick)].add(new Entry<T>(item, deadlineMillis));
+	}
+
+	private int slotOf(final long tick)
+	{
+		return (int)(tick % _slots.length);
+	}
+}
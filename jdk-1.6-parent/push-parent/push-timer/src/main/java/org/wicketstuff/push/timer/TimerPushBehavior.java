@@ -17,7 +17,6 @@
 package org.wicketstuff.push.timer;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -30,11 +29,9 @@ import org.apache.wicket.markup.head.OnEventHeaderItem;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.http.WebRequest;
 import org.apache.wicket.util.time.Duration;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.wicketstuff.push.IPushEventContext;
 import org.wicketstuff.push.IPushEventHandler;
 import org.wicketstuff.push.IPushNode;
+import org.wicketstuff.push.PushEventDelivery;
 
 /**
  * @author <a href="http://sebthom.de/">Sebastian Thomschke</a>
@@ -44,8 +41,6 @@ public class TimerPushBehavior extends AbstractAjaxTimerBehavior
 {
 	private static final long serialVersionUID = 1L;
 
-	private static final Logger LOG = LoggerFactory.getLogger(TimerPushBehavior.class);
-
 	private final Map<TimerPushNode, IPushEventHandler> handlers = new HashMap<TimerPushNode, IPushEventHandler>(
 		2);
 
@@ -91,15 +86,8 @@ public class TimerPushBehavior extends AbstractAjaxTimerBehavior
 			for (final Entry<TimerPushNode, IPushEventHandler> entry : handlers.entrySet())
 			{
 				final TimerPushNode node = entry.getKey();
-				for (final IPushEventContext<?> ctx : (List<IPushEventContext<?>>)pushService.pollEvents(node))
-					try
-					{
-						entry.getValue().onEvent(target, ctx.getEvent(), node, ctx);
-					}
-					catch (final RuntimeException ex)
-					{
-						LOG.error("Failed while processing event", ex);
-					}
+				PushEventDelivery.deliver(target, entry.getValue(), node,
+					pushService.pollEvents(node));
 			}
 	}
 
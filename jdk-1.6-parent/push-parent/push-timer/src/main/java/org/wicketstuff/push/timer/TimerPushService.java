@@ -18,6 +18,7 @@ package org.wicketstuff.push.timer;
 
 import static java.util.Collections.EMPTY_LIST;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -26,6 +27,8 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.wicket.Application;
 import org.apache.wicket.Component;
@@ -34,7 +37,6 @@ import org.apache.wicket.behavior.Behavior;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.time.Duration;
-import org.apache.wicket.util.time.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wicketstuff.push.AbstractPushService;
@@ -45,6 +47,7 @@ import org.wicketstuff.push.IPushNode;
 import org.wicketstuff.push.IPushNodeDisconnectedListener;
 import org.wicketstuff.push.IPushService;
 import org.wicketstuff.push.IPushServiceRef;
+import org.wicketstuff.push.QueueOverflowPolicy;
 
 /**
  * AJAX timer based implementation of {@link IPushService}.
@@ -57,8 +60,8 @@ public class TimerPushService extends AbstractPushService
 	private final class PushNodeState<EventType>
 	{
 		final TimerPushNode<EventType> node;
-		Time lastPolledAt = Time.now();
-		List<TimerPushEventContext<EventType>> queuedEvents = new ArrayList<TimerPushEventContext<EventType>>(
+		volatile long lastPolledAt = System.currentTimeMillis();
+		final ArrayDeque<TimerPushEventContext<EventType>> queuedEvents = new ArrayDeque<TimerPushEventContext<EventType>>(
 			2);
 
 		PushNodeState(final TimerPushNode<EventType> node)
@@ -66,9 +69,14 @@ public class TimerPushService extends AbstractPushService
 			this.node = node;
 		}
 
-		boolean isTimedOut()
+		long getDeadline()
 		{
-			return Time.now().subtract(lastPolledAt).greaterThan(_maxTimeLag);
+			return lastPolledAt + _maxTimeLag.getMilliseconds();
+		}
+
+		boolean isTimedOut(final long now)
+		{
+			return now > getDeadline();
 		}
 	}
 
@@ -132,6 +140,7 @@ public class TimerPushService extends AbstractPushService
 		if (srv != null)
 		{
 			LOG.info("Shutting down {}...", srv);
+			srv.setClusterBus(null);
 			synchronized (srv._cleanupExecutor)
 			{
 				srv._cleanupFuture.cancel(false);
@@ -145,25 +154,41 @@ public class TimerPushService extends AbstractPushService
 
 	private Duration _maxTimeLag = Duration.seconds(10);
 
+	private volatile int _maxQueuedEvents = 1000;
+
+	private volatile QueueOverflowPolicy _queueOverflowPolicy = QueueOverflowPolicy.DROP_OLDEST;
+
 	private final ConcurrentMap<TimerPushNode<?>, PushNodeState<?>> _nodeStates = new ConcurrentHashMap<TimerPushNode<?>, PushNodeState<?>>();
+	private final TimeoutWheel<PushNodeState<?>> _timeouts = new TimeoutWheel<PushNodeState<?>>(
+		1000, 512, System.currentTimeMillis());
 	private final ScheduledThreadPoolExecutor _cleanupExecutor = new ScheduledThreadPoolExecutor(1);
 	private ScheduledFuture<?> _cleanupFuture = null;
 
+	private final AtomicLong _queuedEventCount = new AtomicLong();
+	private final AtomicLong _droppedEventCount = new AtomicLong();
+	private final AtomicInteger _maxQueueDepth = new AtomicInteger();
+
 	private final Runnable _cleanupTask = new Runnable()
 	{
 		public void run()
 		{
 			LOG.debug("Running timer push node cleanup task...");
+			final long now = System.currentTimeMillis();
 			int count = 0;
-			for (final PushNodeState<?> state : _nodeStates.values())
-				synchronized (state)
+			// only the nodes whose deadline passed are visited, nodes that polled in the
+			// meantime are put back into the wheel with their new deadline
+			for (final PushNodeState<?> state : _timeouts.expire(now))
+			{
+				if (_nodeStates.get(state.node) != state)
+					continue;
+				if (state.isTimedOut(now))
 				{
-					if (state.isTimedOut())
-					{
-						onDisconnect(state.node);
-						count++;
-					}
+					onDisconnect(state.node);
+					count++;
 				}
+				else
+					_timeouts.schedule(state, state.getDeadline());
+			}
 			LOG.debug("Cleaned up {} timer push nodes.", count);
 		}
 	};
@@ -181,9 +206,61 @@ public class TimerPushService extends AbstractPushService
 		return null;
 	}
 
+	private <EventType> void _enqueue(final PushNodeState<EventType> state,
+		final TimerPushEventContext<EventType> ctx)
+	{
+		// the settings may be changed concurrently, one event is handled with the same values
+		final int maxQueuedEvents = _maxQueuedEvents;
+		synchronized (state)
+		{
+			if (state.queuedEvents.size() >= maxQueuedEvents)
+			{
+				_droppedEventCount.incrementAndGet();
+				switch (_queueOverflowPolicy)
+				{
+					case DROP_NEWEST :
+						return;
+					case DROP_OLDEST :
+						while (state.queuedEvents.size() >= maxQueuedEvents)
+						{
+							state.queuedEvents.poll();
+							_queuedEventCount.decrementAndGet();
+						}
+						break;
+					case DISCONNECT :
+						LOG.debug("Event queue of timer push node {} is full.", state.node);
+						break;
+				}
+			}
+			if (state.queuedEvents.size() < maxQueuedEvents)
+			{
+				state.queuedEvents.add(ctx);
+				_queuedEventCount.incrementAndGet();
+
+				final int depth = state.queuedEvents.size();
+				int max;
+				while (depth > (max = _maxQueueDepth.get()))
+					if (_maxQueueDepth.compareAndSet(max, depth))
+						break;
+				return;
+			}
+		}
+		onDisconnect(state.node);
+	}
+
 	private <EventType> void _onConnect(final TimerPushNode<EventType> node)
 	{
-		_nodeStates.put(node, new PushNodeState<EventType>(node));
+		final PushNodeState<EventType> state = new PushNodeState<EventType>(node);
+		_nodeStates.put(node, state);
+		_timeouts.schedule(state, state.getDeadline());
+	}
+
+	/**
+	 * @return the number of push nodes currently connected
+	 */
+	public int getConnectedNodeCount()
+	{
+		return _nodeStates.size();
 	}
 
 	public Duration getDefaultPollingInterval()
@@ -196,6 +273,46 @@ public class TimerPushService extends AbstractPushService
 		return _maxTimeLag;
 	}
 
+	/**
+	 * @return the max number of events queued per push node
+	 */
+	public int getMaxQueuedEvents()
+	{
+		return _maxQueuedEvents;
+	}
+
+	/**
+	 * @return what happens if an event is published to a node whose queue is full
+	 */
+	public QueueOverflowPolicy getQueueOverflowPolicy()
+	{
+		return _queueOverflowPolicy;
+	}
+
+	/**
+	 * @return the number of events queued for all push nodes
+	 */
+	public long getQueuedEventCount()
+	{
+		return _queuedEventCount.get();
+	}
+
+	/**
+	 * @return the number of events that were dropped because a queue was full
+	 */
+	public long getDroppedEventCount()
+	{
+		return _droppedEventCount.get();
+	}
+
+	/**
+	 * @return the biggest number of events queued for a single push node so far
+	 */
+	public int getMaxQueueDepth()
+	{
+		return _maxQueueDepth.get();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -241,13 +358,10 @@ public class TimerPushService extends AbstractPushService
 			if (state == null)
 				return false;
 
-			synchronized (state)
+			if (state.isTimedOut(System.currentTimeMillis()))
 			{
-				if (state.isTimedOut())
-				{
-					onDisconnect(state.node);
-					return false;
-				}
+				onDisconnect(state.node);
+				return false;
 			}
 			return true;
 		}
@@ -257,10 +371,17 @@ public class TimerPushService extends AbstractPushService
 
 	void onDisconnect(final TimerPushNode<?> node)
 	{
-		if (_nodeStates.remove(node) != null)
+		final PushNodeState<?> state = _nodeStates.remove(node);
+		if (state != null)
 		{
 			LOG.debug("Timer push node {} disconnected.", node);
 
+			synchronized (state)
+			{
+				_queuedEventCount.addAndGet(-state.queuedEvents.size());
+				state.queuedEvents.clear();
+			}
+
 			disconnectFromAllChannels(node);
 
 			for (final IPushNodeDisconnectedListener listener : disconnectListeners)
@@ -287,15 +408,17 @@ public class TimerPushService extends AbstractPushService
 			return EMPTY_LIST;
 		}
 
+		state.lastPolledAt = System.currentTimeMillis();
+
 		synchronized (state)
 		{
-			state.lastPolledAt = Time.now();
-
 			if (state.queuedEvents.size() == 0)
 				return EMPTY_LIST;
 
-			final List<TimerPushEventContext<EventType>> events = state.queuedEvents;
-			state.queuedEvents = new ArrayList<TimerPushEventContext<EventType>>(2);
+			final List<TimerPushEventContext<EventType>> events = new ArrayList<TimerPushEventContext<EventType>>(
+				state.queuedEvents);
+			state.queuedEvents.clear();
+			_queuedEventCount.addAndGet(-events.size());
 			return events;
 		}
 	}
@@ -303,7 +426,9 @@ public class TimerPushService extends AbstractPushService
 	/**
 	 * {@inheritDoc}
 	 */
-	public <EventType> void publish(final IPushChannel<EventType> channel, final EventType event)
+	@Override
+	protected <EventType> void publishLocally(final IPushChannel<EventType> channel,
+		final EventType event)
 	{
 		Args.notNull(channel, "channel");
 
@@ -315,21 +440,18 @@ public class TimerPushService extends AbstractPushService
 			channel, this);
 
 		// publish the event to all registered nodes
+		final long now = System.currentTimeMillis();
 		for (final IPushNode<?> pnode : pnodes)
 		{
 			@SuppressWarnings("unchecked")
-			final TimerPushNode<EventType> node = (TimerPushNode<EventType>)pnode;
+			final PushNodeState<EventType> state = (PushNodeState<EventType>)_nodeStates.get(pnode);
+			if (state == null)
+				continue;
 
-			if (isConnected(node))
-			{
-				@SuppressWarnings("unchecked")
-				final PushNodeState<EventType> state = (PushNodeState<EventType>)_nodeStates.get(node);
-				if (state != null)
-					synchronized (state)
-					{
-						state.queuedEvents.add(ctx);
-					}
-			}
+			if (state.isTimedOut(now))
+				onDisconnect(state.node);
+			else
+				_enqueue(state, ctx);
 		}
 	}
 
@@ -347,11 +469,7 @@ public class TimerPushService extends AbstractPushService
 				@SuppressWarnings("unchecked")
 				final PushNodeState<EventType> state = (PushNodeState<EventType>)_nodeStates.get(node);
 				if (state != null)
-					synchronized (state)
-					{
-						state.queuedEvents.add(new TimerPushEventContext<EventType>(event, null,
-							this));
-					}
+					_enqueue(state, new TimerPushEventContext<EventType>(event, null, this));
 			}
 		}
 		else
@@ -390,6 +508,28 @@ public class TimerPushService extends AbstractPushService
 		_maxTimeLag = maxTimeLag;
 	}
 
+	/**
+	 * Sets the max number of events queued per push node. Default is 1000.
+	 */
+	public void setMaxQueuedEvents(final int maxQueuedEvents)
+	{
+		if (maxQueuedEvents < 1)
+			throw new IllegalArgumentException("maxQueuedEvents must be positive");
+
+		_maxQueuedEvents = maxQueuedEvents;
+	}
+
+	/**
+	 * Sets what happens if an event is published to a node whose queue is full. Default is
+	 * {@link QueueOverflowPolicy#DROP_OLDEST}.
+	 */
+	public void setQueueOverflowPolicy(final QueueOverflowPolicy queueOverflowPolicy)
+	{
+		Args.notNull(queueOverflowPolicy, "queueOverflowPolicy");
+
+		_queueOverflowPolicy = queueOverflowPolicy;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.timer;
+
+import static java.util.Arrays.asList;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimeoutWheelTest
+{
+	@Test
+	public void itemsExpireOnceTheirDeadlinePassed()
+	{
+		final TimeoutWheel<String> wheel = new TimeoutWheel<String>(10, 8, 0);
+		wheel.schedule("a", 25);
+		wheel.schedule("b", 45);
+
+		Assert.assertEquals(Collections.emptyList(), wheel.expire(24));
+		Assert.assertEquals(asList("a"), wheel.expire(30));
+		Assert.assertEquals(Collections.emptyList(), wheel.expire(44));
+		// not before the deadline, but at most one tick after it
+		Assert.assertEquals(asList("b"), wheel.expire(50));
+		Assert.assertEquals(Collections.emptyList(), wheel.expire(100));
+	}
+
+	@Test
+	public void itemsBeyondOneRevolutionWaitForTheirRound()
+	{
+		final TimeoutWheel<String> wheel = new TimeoutWheel<String>(10, 4, 0);
+		// 10 ticks ahead, shares its slot with the ticks 2 and 6
+		wheel.schedule("late", 100);
+
+		Assert.assertEquals(Collections.emptyList(), wheel.expire(30));
+		Assert.assertEquals(Collections.emptyList(), wheel.expire(70));
+		Assert.assertEquals(asList("late"), wheel.expire(100));
+	}
+
+	@Test
+	public void pastDeadlinesExpireOnTheNextTick()
+	{
+		final TimeoutWheel<String> wheel = new TimeoutWheel<String>(10, 4, 0);
+		wheel.expire(50);
+		wheel.schedule("overdue", 20);
+
+		final List<String> expired = wheel.expire(60);
+		Assert.assertEquals(asList("overdue"), expired);
+	}
+
+	@Test
+	public void longPauseVisitsEachSlotOnce()
+	{
+		final TimeoutWheel<Integer> wheel = new TimeoutWheel<Integer>(10, 4, 0);
+		for (int i = 1; i <= 4; i++)
+			wheel.schedule(i, i * 10);
+
+		final List<Integer> expired = wheel.expire(1000);
+		Collections.sort(expired);
+		Assert.assertEquals(asList(1, 2, 3, 4), expired);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.push.timer;
+
+import java.util.List;
+
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.push.QueueOverflowPolicy;
+
+public class TimerPushServiceTest
+{
+	private MockApplication application;
+	private TimerPushService service;
+	private TimerPushNode<Integer> node;
+
+	@Before
+	public void before()
+	{
+		application = new MockApplication();
+		service = TimerPushService.get(application);
+		service.setMaxQueuedEvents(3);
+		node = new TimerPushNode<Integer>(Duration.seconds(1));
+		// the first poll of an unknown node connects it
+		service.pollEvents(node);
+	}
+
+	@After
+	public void after()
+	{
+		TimerPushService.onApplicationShutdown(application);
+	}
+
+	@Test
+	public void dropOldest()
+	{
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DROP_OLDEST);
+		publish(1, 2, 3, 4, 5);
+
+		Assert.assertEquals(3, service.getQueuedEventCount());
+		Assert.assertEquals(2, service.getDroppedEventCount());
+		Assert.assertEquals(3, service.getMaxQueueDepth());
+		assertPolled(3, 4, 5);
+		Assert.assertEquals(0, service.getQueuedEventCount());
+	}
+
+	@Test
+	public void dropNewest()
+	{
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DROP_NEWEST);
+		publish(1, 2, 3, 4, 5);
+
+		Assert.assertEquals(2, service.getDroppedEventCount());
+		assertPolled(1, 2, 3);
+		Assert.assertTrue(service.isConnected(node));
+	}
+
+	@Test
+	public void disconnect()
+	{
+		service.setQueueOverflowPolicy(QueueOverflowPolicy.DISCONNECT);
+		publish(1, 2, 3);
+		Assert.assertTrue(service.isConnected(node));
+
+		publish(4);
+		Assert.assertFalse(service.isConnected(node));
+		Assert.assertEquals(0, service.getConnectedNodeCount());
+		Assert.assertEquals(0, service.getQueuedEventCount());
+	}
+
+	@Test
+	public void timedOutNodeIsDisconnected() throws InterruptedException
+	{
+		service.setMaxTimeLag(Duration.NONE);
+		Thread.sleep(5);
+		Assert.assertFalse(service.isConnected(node));
+		Assert.assertEquals(0, service.getConnectedNodeCount());
+	}
+
+	private void publish(final int... events)
+	{
+		for (final int event : events)
+			service.publish(node, event);
+	}
+
+	private void assertPolled(final int... expected)
+	{
+		final List<TimerPushEventContext<Integer>> polled = service.pollEvents(node);
+		Assert.assertEquals(expected.length, polled.size());
+		for (int i = 0; i < expected.length; i++)
+			Assert.assertEquals(Integer.valueOf(expected[i]), polled.get(i).getEvent());
+	}
+}
@@ -1,6 +1,9 @@
 package org.wicketstuff.pageserializer.kryo;
 
+import java.util.zip.Deflater;
+
 import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.util.lang.Bytes;
 import org.apache.wicket.util.tester.WicketTester;
 import org.junit.After;
 import org.junit.Assert;
@@ -52,4 +55,21 @@ public class KryoSerializerTest
 			object instanceof HomePage);
 
 	}
+
+	@Test
+	public void compressedPageCanBeDeserialized()
+	{
+		HomePage page = tester.startPage(HomePage.class);
+
+		ISerializer pageSerializer = new CompressingSerializer(new KryoSerializer(),
+			Bytes.bytes(0L), Deflater.BEST_SPEED);
+
+		byte[] data = pageSerializer.serialize(page);
+		Assert.assertNotNull("The produced data should not be null!", data);
+
+		Object object = pageSerializer.deserialize(data);
+		Assert.assertTrue(
+			"The deserialized page must be of type HomePage. Type: " + object.getClass(),
+			object instanceof HomePage);
+	}
 }
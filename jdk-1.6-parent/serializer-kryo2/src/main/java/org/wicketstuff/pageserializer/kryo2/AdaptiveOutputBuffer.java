@@ -0,0 +1,147 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import org.apache.wicket.util.lang.Args;
+
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A reusable {@link Output} for one thread. The buffer starts small, grows (by kryo) up to the
+ * maximum size if a page does not fit and shrinks back if the recently serialized pages got smaller
+ * again, so that a single big page does not keep a huge buffer alive forever.
+ * 
+ * Not thread safe, use one instance per thread.
+ */
+final class AdaptiveOutputBuffer
+{
+	/**
+	 * weight of the last serialized page in the moving average is 1/2^AVERAGE_SHIFT
+	 */
+	private static final int AVERAGE_SHIFT = 3;
+
+	/**
+	 * the buffer is shrunk if it is this many times bigger than needed
+	 */
+	private static final int SHRINK_FACTOR = 4;
+
+	private final int minSize;
+
+	private final int maxSize;
+
+	private final Output output;
+
+	private long averageSize;
+
+	private boolean inUse;
+
+	/**
+	 * @param minSize
+	 *            initial and minimal buffer size
+	 * @param maxSize
+	 *            max buffer size, write will fail if a page is bigger
+	 */
+	AdaptiveOutputBuffer(int minSize, int maxSize)
+	{
+		Args.withinRange(1, maxSize, minSize, "minSize");
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.output = new Output(minSize, maxSize);
+		this.averageSize = minSize;
+	}
+
+	/**
+	 * @return the cleared buffer or {@code null} if the buffer is already in use (nested
+	 *         serialization in the same thread)
+	 */
+	Output acquire()
+	{
+		if (inUse)
+		{
+			return null;
+		}
+		inUse = true;
+		output.clear();
+		return output;
+	}
+
+	/**
+	 * Gives the buffer back and adapts its size to the recently written sizes.
+	 * 
+	 * @param writtenBytes
+	 *            the number of bytes the last serialization has written, {@code 0} if it failed
+	 */
+	void release(int writtenBytes)
+	{
+		inUse = false;
+		output.clear();
+		if (writtenBytes <= 0)
+		{
+			// failed, nothing to learn from
+			return;
+		}
+
+		averageSize += (writtenBytes - averageSize) >> AVERAGE_SHIFT;
+
+		int wanted = sizeFor(Math.max(averageSize, writtenBytes));
+		if (capacity() > wanted * SHRINK_FACTOR)
+		{
+			output.setBuffer(new byte[wanted], maxSize);
+		}
+	}
+
+	/**
+	 * @param buffer
+	 *            some buffer
+	 * @return {@code true} if {@code buffer} is the reused buffer of this instance
+	 */
+	boolean owns(Output buffer)
+	{
+		return output == buffer;
+	}
+
+	/**
+	 * @return the current capacity of the buffer
+	 */
+	int capacity()
+	{
+		return output.getBuffer().length;
+	}
+
+	/**
+	 * @param size
+	 *            expected size
+	 * @return next power of two, but within min and max size
+	 */
+	private int sizeFor(long size)
+	{
+		if (size <= minSize)
+		{
+			return minSize;
+		}
+		if (size >= maxSize)
+		{
+			return maxSize;
+		}
+		long powerOfTwo = Long.highestOneBit(size - 1) << 1;
+		return (int)Math.min(powerOfTwo, maxSize);
+	}
+}
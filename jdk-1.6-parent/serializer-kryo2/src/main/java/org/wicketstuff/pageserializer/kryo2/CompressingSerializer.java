@@ -0,0 +1,254 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ISerializer} decorator which deflates the serialized pages before they are written to
+ * the page store or replicated. Pages smaller than a threshold (or which would not get smaller) are
+ * stored uncompressed, a one byte header tells which is which, so both can coexist.
+ * 
+ * <pre>
+ * getFrameworkSettings().setSerializer(new CompressingSerializer(new KryoSerializer()));
+ * </pre>
+ */
+public class CompressingSerializer implements ISerializer
+{
+	private static final Logger LOG = LoggerFactory.getLogger(CompressingSerializer.class);
+
+	/**
+	 * Pages smaller than this are not compressed
+	 */
+	private static final Bytes DEFAULT_THRESHOLD = Bytes.kilobytes(1L);
+
+	private static final byte UNCOMPRESSED = 0;
+
+	private static final byte DEFLATED = 1;
+
+	/**
+	 * header byte and original length (int)
+	 */
+	private static final int DEFLATED_HEADER_SIZE = 5;
+
+	private final ISerializer delegate;
+
+	private final int threshold;
+
+	private final int level;
+
+	/**
+	 * Constructor using default threshold and fast compression.
+	 * 
+	 * @param delegate
+	 *            the serializer which creates the bytes
+	 */
+	public CompressingSerializer(final ISerializer delegate)
+	{
+		this(delegate, DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate
+	 *            the serializer which creates the bytes
+	 * @param threshold
+	 *            pages smaller than this are not compressed
+	 * @param level
+	 *            the compression level, see {@link Deflater}
+	 */
+	public CompressingSerializer(final ISerializer delegate, final Bytes threshold, final int level)
+	{
+		this.delegate = Args.notNull(delegate, "delegate");
+		this.threshold = (int)Args.notNull(threshold, "threshold").bytes();
+		this.level = Args.withinRange(Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION,
+			level, "level");
+	}
+
+	/**
+	 * @return the decorated serializer
+	 */
+	public ISerializer getDelegate()
+	{
+		return delegate;
+	}
+
+	@Override
+	public byte[] serialize(final Object object)
+	{
+		byte[] data = delegate.serialize(object);
+		if (data == null)
+		{
+			return null;
+		}
+
+		if (data.length >= threshold)
+		{
+			byte[] compressed = deflate(data);
+			if (compressed != null)
+			{
+				LOG.debug("Compressed {} bytes to {}", data.length, compressed.length);
+				return compressed;
+			}
+		}
+
+		byte[] result = new byte[data.length + 1];
+		result[0] = UNCOMPRESSED;
+		System.arraycopy(data, 0, result, 1, data.length);
+		return result;
+	}
+
+	@Override
+	public Object deserialize(final byte[] data)
+	{
+		if (data == null || data.length == 0)
+		{
+			throw new WicketRuntimeException("Page data is empty");
+		}
+
+		byte[] raw;
+		switch (data[0])
+		{
+			case UNCOMPRESSED :
+				raw = new byte[data.length - 1];
+				System.arraycopy(data, 1, raw, 0, raw.length);
+				break;
+			case DEFLATED :
+				raw = inflate(data);
+				break;
+			default :
+				throw new WicketRuntimeException("Unknown page compression header: " + data[0]);
+		}
+		return delegate.deserialize(raw);
+	}
+
+	/**
+	 * @param data
+	 *            uncompressed data
+	 * @return header and compressed data or {@code null} if it would not be smaller
+	 */
+	private byte[] deflate(final byte[] data)
+	{
+		if (data.length <= DEFLATED_HEADER_SIZE)
+		{
+			return null;
+		}
+
+		// a Deflater holds native memory until end() is called, so it is not kept beyond the call
+		Deflater def = new Deflater(level);
+		byte[] buffer = new byte[data.length];
+		int length = DEFLATED_HEADER_SIZE;
+		try
+		{
+			def.setInput(data);
+			def.finish();
+
+			// the result is only used if it is smaller than the uncompressed data
+			while (!def.finished())
+			{
+				if (length >= buffer.length)
+				{
+					return null;
+				}
+				length += def.deflate(buffer, length, buffer.length - length);
+			}
+		}
+		finally
+		{
+			def.end();
+		}
+
+		buffer[0] = DEFLATED;
+		writeInt(buffer, 1, data.length);
+
+		byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+		return result;
+	}
+
+	private byte[] inflate(final byte[] data)
+	{
+		if (data.length < DEFLATED_HEADER_SIZE)
+		{
+			throw new WicketRuntimeException("Compressed page header is truncated");
+		}
+		int rawLength = readInt(data, 1);
+		if (rawLength < 0)
+		{
+			throw new WicketRuntimeException("Compressed page is corrupt, length " + rawLength);
+		}
+
+		byte[] raw = new byte[rawLength];
+		Inflater inf = new Inflater();
+		try
+		{
+			inf.setInput(data, DEFLATED_HEADER_SIZE, data.length - DEFLATED_HEADER_SIZE);
+			int length = 0;
+			while (length < raw.length && !inf.finished())
+			{
+				int inflated = inf.inflate(raw, length, raw.length - length);
+				if (inflated == 0 && (inf.needsInput() || inf.needsDictionary()))
+				{
+					break;
+				}
+				length += inflated;
+			}
+			if (length != raw.length)
+			{
+				throw new WicketRuntimeException("Compressed page is truncated, expected " +
+					raw.length + " bytes but got " + length);
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new WicketRuntimeException("Compressed page is corrupt", e);
+		}
+		finally
+		{
+			inf.end();
+		}
+		return raw;
+	}
+
+	private static void writeInt(final byte[] buffer, final int offset, final int value)
+	{
+		buffer[offset] = (byte)(value >>> 24);
+		buffer[offset + 1] = (byte)(value >>> 16);
+		buffer[offset + 2] = (byte)(value >>> 8);
+		buffer[offset + 3] = (byte)value;
+	}
+
+	private static int readInt(final byte[] buffer, final int offset)
+	{
+		return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16) |
+			((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+	}
+}
@@ -38,8 +38,10 @@ import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.lang.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wicketstuff.pageserializer.kryo2.registration.ClassManifest;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -76,8 +78,27 @@ public class KryoSerializer implements ISerializer
 	 */
 	private static final Bytes DEFAULT_BUFFER_SIZE = Bytes.megabytes(10L);
 
+	/**
+	 * The initial size of a reused buffer, it will grow up to the buffer size if needed
+	 */
+	private static final Bytes INITIAL_REUSED_BUFFER_SIZE = Bytes.kilobytes(16L);
+
+	/**
+	 * The id of the first class of the {@link ClassManifest}
+	 */
+	private static final int FIRST_MANIFEST_CLASS_ID = 100;
+
 	private final Bytes bufferSize;
 
+	private final boolean reuseBuffers;
+
+	private volatile ClassManifest classManifest;
+
+	/**
+	 * Store a per thread buffer if buffers should be reused.
+	 */
+	private final ThreadLocal<AdaptiveOutputBuffer> reusableBuffer = new ThreadLocal<AdaptiveOutputBuffer>();
+
 	/**
 	 * Store a per thread Kryo instance (as Kryo is 
 	 * not thread safe).
@@ -98,9 +119,51 @@ public class KryoSerializer implements ISerializer
 	 * @param bufferSize The buffer size;
 	 */
 	public KryoSerializer(final Bytes bufferSize)
+	{
+		this(bufferSize, false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param bufferSize
+	 *            The buffer size, if buffers are reused this is the max size a buffer can grow to
+	 * @param reuseBuffers
+	 *            if {@code true} every thread reuses one buffer which starts small and adapts its
+	 *            size to the serialized pages, otherwise a new buffer is allocated for every page
+	 */
+	public KryoSerializer(final Bytes bufferSize, final boolean reuseBuffers)
 	{
 		this.bufferSize = Args.notNull(bufferSize, "bufferSize");
-		LOG.debug("Buffer size: '{}'", bufferSize);
+		this.reuseBuffers = reuseBuffers;
+		LOG.debug("Buffer size: '{}', reuse buffers: {}", bufferSize, reuseBuffers);
+	}
+
+	/**
+	 * Registers all classes of the manifest with stable ids, so that kryo writes a small id instead
+	 * of the full class name. Every serialized page is prefixed with the {@link ClassManifest#checksum()}
+	 * and deserialization fails fast if the page was written with a different manifest (f.i. by
+	 * another cluster node).
+	 * 
+	 * Must be called before the first page is serialized.
+	 * 
+	 * @param classManifest
+	 *            the manifest, all nodes of a cluster must use the same
+	 * @return this
+	 */
+	public KryoSerializer setClassManifest(final ClassManifest classManifest)
+	{
+		this.classManifest = Args.notNull(classManifest, "classManifest");
+		LOG.info("Using {}", classManifest);
+		return this;
+	}
+
+	/**
+	 * @return the class manifest or {@code null}
+	 */
+	public final ClassManifest getClassManifest()
+	{
+		return classManifest;
 	}
 
 	/**
@@ -128,24 +191,43 @@ public class KryoSerializer implements ISerializer
 
 	@Override
 	public byte[] serialize(final Object object)
+	{
+		return serialize(object, getKryo());
+	}
+
+	/**
+	 * Serializes the object with the given {@link Kryo} instead of the one of {@link #getKryo()}.
+	 * 
+	 * @param object
+	 *            the object to serialize
+	 * @param kryo
+	 *            a Kryo of the current thread, configured with {@link #internalInit(Kryo)}
+	 * @return the serialized object
+	 */
+	protected final byte[] serialize(final Object object, final Kryo kryo)
 	{
 		LOG.debug("Going to serialize: '{}'", object);
 		Output buffer = getBuffer(object);
-		try {
-			getKryo().writeClassAndObject(buffer, object);
+		int written = 0;
+		try
+		{
+			ClassManifest manifest = classManifest;
+			if (manifest != null)
+			{
+				buffer.writeInt(manifest.checksum());
+			}
+			kryo.writeClassAndObject(buffer, object);
+			written = buffer.position();
 			byte[] data = buffer.toBytes();
 			if (data == null)
 			{
 				LOG.error("Kryo wasn't able to serialize: '{}'", object);
 			}
-
-			// release the memory for the buffer
-			buffer.clear();
-			buffer = null;
-
 			return data;
-		} finally {
-			System.runFinalization();
+		}
+		finally
+		{
+			releaseBuffer(buffer, written);
 		}
 	}
 
@@ -153,14 +235,18 @@ public class KryoSerializer implements ISerializer
 	public Object deserialize(byte[] data)
 	{
 		Input buffer = new Input(data);
+		ClassManifest manifest = classManifest;
+		if (manifest != null)
+		{
+			int checksum = buffer.readInt();
+			if (checksum != manifest.checksum())
+			{
+				throw new KryoException("Page was serialized with class manifest checksum " +
+					checksum + ", but this node uses " + manifest);
+			}
+		}
 		Object object = getKryo().readClassAndObject(buffer);
 		LOG.debug("Deserialized: '{}'", object);
-
-		// release the memory for the buffer
-		// buffer.clear();
-		buffer = null;
-		System.runFinalization();
-
 		return object;
 	}
 
@@ -174,9 +260,45 @@ public class KryoSerializer implements ISerializer
 	 */
 	protected Output getBuffer(Object target)
 	{
+		if (reuseBuffers)
+		{
+			AdaptiveOutputBuffer reusable = reusableBuffer.get();
+			if (reusable == null)
+			{
+				int maxSize = (int)bufferSize.bytes();
+				int initialSize = (int)Math.min(INITIAL_REUSED_BUFFER_SIZE.bytes(), maxSize);
+				reusable = new AdaptiveOutputBuffer(initialSize, maxSize);
+				reusableBuffer.set(reusable);
+			}
+			Output output = reusable.acquire();
+			if (output != null)
+			{
+				return output;
+			}
+		}
 		return new Output((int)bufferSize.bytes());
 	}
 
+	/**
+	 * Called after the {@code buffer} returned by {@link #getBuffer(Object)} was used.
+	 * 
+	 * @param buffer
+	 *            the used buffer
+	 * @param writtenBytes
+	 *            the number of bytes written into the buffer, {@code 0} if serialization failed
+	 */
+	protected void releaseBuffer(Output buffer, int writtenBytes)
+	{
+		if (reuseBuffers)
+		{
+			AdaptiveOutputBuffer reusable = reusableBuffer.get();
+			if (reusable != null && reusable.owns(buffer))
+			{
+				reusable.release(writtenBytes);
+			}
+		}
+	}
+
 	/**
 	 * Configures {@link Kryo} with some custom {@link Serializer}s and registers some known Wicket
 	 * classes which are known to be serialized sooner or later
@@ -184,7 +306,7 @@ public class KryoSerializer implements ISerializer
 	 * @param kryo
 	 *            the {@link Kryo} instance to configured
 	 */
-	private void internalInit(final Kryo kryo)
+	protected final void internalInit(final Kryo kryo)
 	{
 
 		kryo.register(Arrays.asList("").getClass(), new ArraysAsListSerializer());
@@ -216,6 +338,12 @@ public class KryoSerializer implements ISerializer
 		kryo.register(Label.class);
 		kryo.register(ListView.class);
 
+		ClassManifest manifest = classManifest;
+		if (manifest != null)
+		{
+			manifest.register(kryo, FIRST_MANIFEST_CLASS_ID, kryo.getClassLoader());
+		}
+
 		init(kryo);
 	}
 
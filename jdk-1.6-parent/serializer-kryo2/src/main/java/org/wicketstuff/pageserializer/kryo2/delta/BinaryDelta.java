@@ -0,0 +1,314 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.delta;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * rsync like binary delta of two byte arrays: the base is split into blocks, the target is scanned
+ * with a rolling hash and every run of bytes found in the base is written as copy instruction, all
+ * other bytes as literals. Unchanged parts of a serialized object graph become copy instructions.
+ */
+final class BinaryDelta
+{
+	/**
+	 * smallest run of bytes which is copied from the base
+	 */
+	static final int BLOCK_SIZE = 16;
+
+	private static final int PRIME = 31;
+
+	private static final byte LITERAL = 0;
+
+	private static final byte COPY = 1;
+
+	private BinaryDelta()
+	{
+		// no instance
+	}
+
+	/**
+	 * @param base
+	 *            the old version
+	 * @param target
+	 *            the new version
+	 * @return instructions to create target from base
+	 */
+	static byte[] diff(byte[] base, byte[] target)
+	{
+		Buffer out = new Buffer(target.length / 4 + 16);
+		out.writeVarInt(target.length);
+
+		int length = target.length;
+		if (base.length < BLOCK_SIZE || length < BLOCK_SIZE)
+		{
+			out.writeLiteral(target, 0, length);
+			return out.toBytes();
+		}
+
+		Map<Integer, Integer> blocks = index(base);
+		int highFactor = pow(PRIME, BLOCK_SIZE - 1);
+
+		int literalStart = 0;
+		int pos = 0;
+		int hash = hash(target, 0);
+		while (pos + BLOCK_SIZE <= length)
+		{
+			Integer candidate = blocks.get(hash);
+			if (candidate != null && regionEquals(base, candidate, target, pos, BLOCK_SIZE))
+			{
+				int baseStart = candidate;
+				int start = pos;
+				// extend backwards into the pending literal
+				while (start > literalStart && baseStart > 0 &&
+					base[baseStart - 1] == target[start - 1])
+				{
+					start--;
+					baseStart--;
+				}
+				// extend forwards
+				int end = pos + BLOCK_SIZE;
+				int baseEnd = candidate + BLOCK_SIZE;
+				while (end < length && baseEnd < base.length && base[baseEnd] == target[end])
+				{
+					end++;
+					baseEnd++;
+				}
+				out.writeLiteral(target, literalStart, start - literalStart);
+				out.writeCopy(baseStart, end - start);
+
+				literalStart = end;
+				pos = end;
+				if (pos + BLOCK_SIZE <= length)
+				{
+					hash = hash(target, pos);
+				}
+			}
+			else
+			{
+				if (pos + BLOCK_SIZE < length)
+				{
+					hash = (hash - target[pos] * highFactor) * PRIME + target[pos + BLOCK_SIZE];
+				}
+				pos++;
+			}
+		}
+		out.writeLiteral(target, literalStart, length - literalStart);
+		return out.toBytes();
+	}
+
+	/**
+	 * @param base
+	 *            the old version
+	 * @param delta
+	 *            result of {@link #diff(byte[], byte[])}
+	 * @return the new version
+	 */
+	static byte[] patch(byte[] base, byte[] delta)
+	{
+		Reader in = new Reader(delta);
+		byte[] target = new byte[in.readVarInt()];
+		int pos = 0;
+		while (in.hasMore())
+		{
+			byte op = in.readByte();
+			if (op == LITERAL)
+			{
+				int count = in.readVarInt();
+				in.readBytes(target, pos, count);
+				pos += count;
+			}
+			else if (op == COPY)
+			{
+				int offset = in.readVarInt();
+				int count = in.readVarInt();
+				if (offset + count > base.length)
+				{
+					throw new WicketRuntimeException("Page delta does not match its base");
+				}
+				System.arraycopy(base, offset, target, pos, count);
+				pos += count;
+			}
+			else
+			{
+				throw new WicketRuntimeException("Unknown page delta instruction: " + op);
+			}
+		}
+		if (pos != target.length)
+		{
+			throw new WicketRuntimeException("Page delta is truncated");
+		}
+		return target;
+	}
+
+	private static Map<Integer, Integer> index(byte[] base)
+	{
+		Map<Integer, Integer> blocks = new HashMap<Integer, Integer>(base.length / BLOCK_SIZE * 2);
+		for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE)
+		{
+			Integer hash = hash(base, offset);
+			if (!blocks.containsKey(hash))
+			{
+				blocks.put(hash, offset);
+			}
+		}
+		return blocks;
+	}
+
+	private static int hash(byte[] data, int offset)
+	{
+		int hash = 0;
+		for (int i = offset; i < offset + BLOCK_SIZE; i++)
+		{
+			hash = hash * PRIME + data[i];
+		}
+		return hash;
+	}
+
+	private static int pow(int value, int exponent)
+	{
+		int result = 1;
+		for (int i = 0; i < exponent; i++)
+		{
+			result *= value;
+		}
+		return result;
+	}
+
+	private static boolean regionEquals(byte[] a, int aOffset, byte[] b, int bOffset, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (a[aOffset + i] != b[bOffset + i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Buffer
+	{
+		private byte[] data;
+
+		private int size;
+
+		Buffer(int capacity)
+		{
+			data = new byte[capacity];
+		}
+
+		void writeLiteral(byte[] source, int offset, int count)
+		{
+			if (count > 0)
+			{
+				writeByte(LITERAL);
+				writeVarInt(count);
+				ensure(count);
+				System.arraycopy(source, offset, data, size, count);
+				size += count;
+			}
+		}
+
+		void writeCopy(int offset, int count)
+		{
+			writeByte(COPY);
+			writeVarInt(offset);
+			writeVarInt(count);
+		}
+
+		void writeVarInt(int value)
+		{
+			while ((value & ~0x7f) != 0)
+			{
+				writeByte((byte)((value & 0x7f) | 0x80));
+				value >>>= 7;
+			}
+			writeByte((byte)value);
+		}
+
+		private void writeByte(byte value)
+		{
+			ensure(1);
+			data[size++] = value;
+		}
+
+		private void ensure(int count)
+		{
+			if (size + count > data.length)
+			{
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+			}
+		}
+
+		byte[] toBytes()
+		{
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	private static final class Reader
+	{
+		private final byte[] data;
+
+		private int pos;
+
+		Reader(byte[] data)
+		{
+			this.data = data;
+		}
+
+		boolean hasMore()
+		{
+			return pos < data.length;
+		}
+
+		byte readByte()
+		{
+			return data[pos++];
+		}
+
+		void readBytes(byte[] target, int offset, int count)
+		{
+			System.arraycopy(data, pos, target, offset, count);
+			pos += count;
+		}
+
+		int readVarInt()
+		{
+			int result = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = readByte();
+				result |= (b & 0x7f) << shift;
+				shift += 7;
+			}
+			while ((b & 0x80) != 0);
+			return result;
+		}
+	}
+}
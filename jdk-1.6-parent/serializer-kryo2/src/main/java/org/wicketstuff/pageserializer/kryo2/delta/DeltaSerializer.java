@@ -0,0 +1,396 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.delta;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.Session;
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.page.IManageablePage;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.session.ISessionStore;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ISerializer} decorator which writes a page as binary delta against the last full
+ * snapshot of the same page (same session and page id), so that an ajax request which changes only
+ * a small part of the page writes only a few bytes. After some deltas or if a delta is not much
+ * smaller than the page a new full snapshot is written.
+ * 
+ * The snapshots are kept in memory per session until the session is unbound, so a delta can be
+ * read as long as its session lives. A session keeps at most one snapshot per page (a page store
+ * keeps only the last data of a page, which references the current snapshot). If a session has
+ * reached the max snapshot count, or the snapshots of all sessions together have reached the max
+ * snapshot bytes, further pages are written as full pages without snapshot. Snapshots are never
+ * evicted, that would make the current page of a user unreadable.
+ * 
+ * A delta whose snapshot is not available (it was written before a restart or by another node) is
+ * deserialized to {@code null}, which makes Wicket treat the page as expired. Use this with a local
+ * page store, with session replication most pages would expire after a fail over.
+ * 
+ * <pre>
+ * getFrameworkSettings().setSerializer(new DeltaSerializer(new KryoSerializer()));
+ * </pre>
+ */
+public class DeltaSerializer implements ISerializer, ISessionStore.UnboundListener
+{
+	private static final Logger LOG = LoggerFactory.getLogger(DeltaSerializer.class);
+
+	private static final int DEFAULT_FULL_SNAPSHOT_INTERVAL = 10;
+
+	private static final int DEFAULT_MAX_SNAPSHOTS_PER_SESSION = 4;
+
+	private static final Bytes DEFAULT_MAX_SNAPSHOT_BYTES = Bytes.megabytes(32);
+
+	private static final byte FULL = 0;
+
+	private static final byte DELTA = 1;
+
+	/**
+	 * header byte and snapshot id (long)
+	 */
+	private static final int HEADER_SIZE = 9;
+
+	/**
+	 * snapshot id of pages which are not used as snapshot
+	 */
+	private static final long NO_SNAPSHOT = 0L;
+
+	private final ISerializer delegate;
+
+	private final int fullSnapshotInterval;
+
+	private final int maxSnapshotsPerSession;
+
+	private final long maxSnapshotBytes;
+
+	/**
+	 * snapshots by session id
+	 */
+	private final ConcurrentMap<String, SessionSnapshots> sessions = new ConcurrentHashMap<String, SessionSnapshots>();
+
+	/**
+	 * snapshot data by id, for all sessions
+	 */
+	private final ConcurrentMap<Long, byte[]> snapshots = new ConcurrentHashMap<Long, byte[]>();
+
+	private final AtomicLong nextSnapshotId = new AtomicLong(NO_SNAPSHOT + 1);
+
+	/**
+	 * bytes of all snapshots together
+	 */
+	private final AtomicLong snapshotBytes = new AtomicLong();
+
+	private volatile boolean unboundListenerRegistered;
+
+	/**
+	 * Constructor using default snapshot interval, count (4 per session) and size (32 MB).
+	 * 
+	 * @param delegate
+	 *            the serializer which creates the bytes
+	 */
+	public DeltaSerializer(final ISerializer delegate)
+	{
+		this(delegate, DEFAULT_FULL_SNAPSHOT_INTERVAL, DEFAULT_MAX_SNAPSHOTS_PER_SESSION);
+	}
+
+	/**
+	 * Constructor using the default max snapshot size (32 MB).
+	 * 
+	 * @param delegate
+	 *            the serializer which creates the bytes
+	 * @param fullSnapshotInterval
+	 *            max number of deltas written before a full snapshot is written again
+	 * @param maxSnapshotsPerSession
+	 *            max number of snapshots kept in memory for a session
+	 */
+	public DeltaSerializer(final ISerializer delegate, final int fullSnapshotInterval,
+		final int maxSnapshotsPerSession)
+	{
+		this(delegate, fullSnapshotInterval, maxSnapshotsPerSession, DEFAULT_MAX_SNAPSHOT_BYTES);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate
+	 *            the serializer which creates the bytes
+	 * @param fullSnapshotInterval
+	 *            max number of deltas written before a full snapshot is written again
+	 * @param maxSnapshotsPerSession
+	 *            max number of snapshots kept in memory for a session
+	 * @param maxSnapshotBytes
+	 *            max size of the snapshots of all sessions together
+	 */
+	public DeltaSerializer(final ISerializer delegate, final int fullSnapshotInterval,
+		final int maxSnapshotsPerSession, final Bytes maxSnapshotBytes)
+	{
+		this.delegate = Args.notNull(delegate, "delegate");
+		this.fullSnapshotInterval = fullSnapshotInterval;
+		this.maxSnapshotsPerSession = maxSnapshotsPerSession;
+		this.maxSnapshotBytes = Args.notNull(maxSnapshotBytes, "maxSnapshotBytes").bytes();
+	}
+
+	@Override
+	public byte[] serialize(final Object object)
+	{
+		byte[] data = delegate.serialize(object);
+		if (data == null)
+		{
+			return null;
+		}
+
+		String sessionId = sessionIdOf(object);
+		if (sessionId == null)
+		{
+			return withHeader(FULL, NO_SNAPSHOT, data);
+		}
+		String pageKey = pageKeyOf(object);
+		SessionSnapshots session = sessionSnapshots(sessionId);
+
+		synchronized (session)
+		{
+			Snapshot last = session.pages.get(pageKey);
+			if (last != null && last.deltas < fullSnapshotInterval)
+			{
+				byte[] delta = BinaryDelta.diff(last.data, data);
+				if (delta.length < data.length / 2)
+				{
+					last.deltas++;
+					LOG.debug("Page {} of session {} written as delta: {} instead of {} bytes",
+						pageKey, sessionId, delta.length, data.length);
+					return withHeader(DELTA, last.id, delta);
+				}
+			}
+
+			if (last != null)
+			{
+				// the page store replaces the data of the page, nothing references the old one
+				session.pages.remove(pageKey);
+				release(last);
+			}
+
+			if (session.unbound || session.pages.size() >= maxSnapshotsPerSession ||
+				!reserve(data.length))
+			{
+				return withHeader(FULL, NO_SNAPSHOT, data);
+			}
+
+			Snapshot snapshot = new Snapshot(nextSnapshotId.getAndIncrement(), data);
+			snapshots.put(snapshot.id, data);
+			session.pages.put(pageKey, snapshot);
+			return withHeader(FULL, snapshot.id, data);
+		}
+	}
+
+	@Override
+	public Object deserialize(final byte[] data)
+	{
+		if (data == null || data.length < HEADER_SIZE)
+		{
+			throw new WicketRuntimeException("Page delta header is truncated");
+		}
+		long snapshotId = readLong(data, 1);
+		byte[] payload = new byte[data.length - HEADER_SIZE];
+		System.arraycopy(data, HEADER_SIZE, payload, 0, payload.length);
+
+		switch (data[0])
+		{
+			case FULL :
+				return delegate.deserialize(payload);
+			case DELTA :
+				byte[] base = snapshots.get(snapshotId);
+				if (base == null)
+				{
+					// written by another node or before a restart or its session is gone, the page
+					// store treats the page as not found and it expires
+					LOG.debug("Snapshot {} of page delta is not available", snapshotId);
+					return null;
+				}
+				return delegate.deserialize(BinaryDelta.patch(base, payload));
+			default :
+				throw new WicketRuntimeException("Unknown page delta header: " + data[0]);
+		}
+	}
+
+	/**
+	 * Drops the snapshots of the session. Called by the session store of the application once the
+	 * serializer has written a delta in a request.
+	 * 
+	 * @param sessionId
+	 *            the id of the unbound session
+	 */
+	@Override
+	public void sessionUnbound(final String sessionId)
+	{
+		SessionSnapshots session = sessions.remove(sessionId);
+		if (session != null)
+		{
+			synchronized (session)
+			{
+				for (Snapshot snapshot : session.pages.values())
+				{
+					release(snapshot);
+				}
+				session.pages.clear();
+				session.unbound = true;
+			}
+		}
+	}
+
+	/**
+	 * @param object
+	 *            the serialized object
+	 * @return the id of the session the page belongs to or {@code null} if no delta should be
+	 *         written
+	 */
+	protected String sessionIdOf(final Object object)
+	{
+		if (object instanceof IManageablePage && Session.exists())
+		{
+			return Session.get().getId();
+		}
+		return null;
+	}
+
+	/**
+	 * @param object
+	 *            the serialized object, with a session id
+	 * @return the key of the page within its session
+	 */
+	protected String pageKeyOf(final Object object)
+	{
+		return String.valueOf(((IManageablePage)object).getPageId());
+	}
+
+	private SessionSnapshots sessionSnapshots(final String sessionId)
+	{
+		SessionSnapshots session = sessions.get(sessionId);
+		if (session == null)
+		{
+			registerUnboundListener();
+			session = new SessionSnapshots();
+			SessionSnapshots existing = sessions.putIfAbsent(sessionId, session);
+			if (existing != null)
+			{
+				session = existing;
+			}
+		}
+		return session;
+	}
+
+	private void registerUnboundListener()
+	{
+		if (!unboundListenerRegistered && Application.exists())
+		{
+			synchronized (sessions)
+			{
+				if (!unboundListenerRegistered)
+				{
+					Application.get().getSessionStore().registerUnboundListener(this);
+					unboundListenerRegistered = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return {@code false} if the snapshot would exceed the max snapshot bytes
+	 */
+	private boolean reserve(final int length)
+	{
+		while (true)
+		{
+			long current = snapshotBytes.get();
+			if (current + length > maxSnapshotBytes)
+			{
+				return false;
+			}
+			if (snapshotBytes.compareAndSet(current, current + length))
+			{
+				return true;
+			}
+		}
+	}
+
+	private void release(final Snapshot snapshot)
+	{
+		if (snapshots.remove(snapshot.id) != null)
+		{
+			snapshotBytes.addAndGet(-snapshot.data.length);
+		}
+	}
+
+	private static byte[] withHeader(final byte type, final long snapshotId, final byte[] data)
+	{
+		byte[] result = new byte[data.length + HEADER_SIZE];
+		result[0] = type;
+		for (int i = 0; i < 8; i++)
+		{
+			result[1 + i] = (byte)(snapshotId >>> (56 - 8 * i));
+		}
+		System.arraycopy(data, 0, result, HEADER_SIZE, data.length);
+		return result;
+	}
+
+	private static long readLong(final byte[] data, final int offset)
+	{
+		long result = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			result = (result << 8) | (data[offset + i] & 0xff);
+		}
+		return result;
+	}
+
+	private static final class Snapshot
+	{
+		final long id;
+
+		final byte[] data;
+
+		int deltas;
+
+		Snapshot(long id, byte[] data)
+		{
+			this.id = id;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * last snapshot per page of a session, guarded by itself
+	 */
+	private static final class SessionSnapshots
+	{
+		final Map<String, Snapshot> pages = new HashMap<String, Snapshot>();
+
+		boolean unbound;
+	}
+}
@@ -22,6 +22,7 @@ package org.wicketstuff.pageserializer.kryo2.inspecting;
 
 import org.apache.wicket.util.lang.Bytes;
 import org.wicketstuff.pageserializer.kryo2.KryoSerializer;
+import org.wicketstuff.pageserializer.kryo2.inspecting.listener.ISamplingSerializationListener;
 import org.wicketstuff.pageserializer.kryo2.inspecting.listener.ISerializationListener;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -29,6 +30,9 @@ import com.esotericsoftware.kryo.Kryo;
 /**
  * serializer with serialization process hooks
  * 
+ * if the listener is an {@link ISamplingSerializationListener} the objects it does not sample are
+ * written by a plain kryo, without the hooks.
+ * 
  * @author mosmann
  */
 public class InspectingKryoSerializer extends KryoSerializer
@@ -36,6 +40,13 @@ public class InspectingKryoSerializer extends KryoSerializer
 
 	private final ISerializationListener serializingListener;
 
+	private final ISamplingSerializationListener samplingListener;
+
+	/**
+	 * kryo without hooks for the objects which are not sampled
+	 */
+	private final ThreadLocal<Kryo> plainKryo = new ThreadLocal<Kryo>();
+
 	/**
 	 * 
 	 * @param size
@@ -45,8 +56,25 @@ public class InspectingKryoSerializer extends KryoSerializer
 	 */
 	public InspectingKryoSerializer(Bytes size, ISerializationListener serializingListener)
 	{
-		super(size);
+		this(size, false, serializingListener);
+	}
+
+	/**
+	 * 
+	 * @param size
+	 *            max buffer size, write will fail if buffer is to small
+	 * @param reuseBuffers
+	 *            reuse one adaptive buffer per thread
+	 * @param serializingListener
+	 *            serialization listener
+	 */
+	public InspectingKryoSerializer(Bytes size, boolean reuseBuffers,
+		ISerializationListener serializingListener)
+	{
+		super(size, reuseBuffers);
 		this.serializingListener = serializingListener;
+		this.samplingListener = serializingListener instanceof ISamplingSerializationListener
+			? (ISamplingSerializationListener)serializingListener : null;
 	}
 
 	@Override
@@ -58,6 +86,11 @@ public class InspectingKryoSerializer extends KryoSerializer
 	@Override
 	public byte[] serialize(Object object)
 	{
+		if (samplingListener != null && !samplingListener.isSampled(object))
+		{
+			return serialize(object, getPlainKryo());
+		}
+
 		RuntimeException exceptionIfAny = null;
 		byte[] ret;
 		try
@@ -77,6 +110,18 @@ public class InspectingKryoSerializer extends KryoSerializer
 		return ret;
 	}
 
+	private Kryo getPlainKryo()
+	{
+		Kryo kryo = plainKryo.get();
+		if (kryo == null)
+		{
+			kryo = super.createKryo();
+			internalInit(kryo);
+			plainKryo.set(kryo);
+		}
+		return kryo;
+	}
+
 	protected final ISerializationListener serializingListener()
 	{
 		return serializingListener;
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.inspecting.listener;
+
+/**
+ * serialization listener which is only interested in some of the serialized objects. the
+ * {@link org.wicketstuff.pageserializer.kryo2.inspecting.InspectingKryoSerializer} asks it first
+ * and writes the objects it is not interested in without any hooks.
+ * 
+ * a list of listeners ({@link SerializationListeners#listOf(ISerializationListener...)}) does not
+ * sample, its listeners are called for every object.
+ */
+public interface ISamplingSerializationListener extends ISerializationListener
+{
+
+	/**
+	 * called before {@link #begin(Object)}, which is only called (like the other hooks) if this
+	 * method returns true
+	 * 
+	 * @param object
+	 *            to be serialized
+	 * @return true if the serialization of this object should be inspected
+	 */
+	boolean isSampled(Object object);
+}
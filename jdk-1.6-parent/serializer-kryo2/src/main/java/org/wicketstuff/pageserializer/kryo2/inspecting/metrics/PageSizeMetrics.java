@@ -0,0 +1,286 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.inspecting.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.Component;
+import org.wicketstuff.pageserializer.kryo2.inspecting.listener.ISamplingSerializationListener;
+
+/**
+ * cheap alternative to the
+ * {@link org.wicketstuff.pageserializer.kryo2.inspecting.analyze.AnalyzingSerializationListener}
+ * which can be used in production: only every n-th page is measured and only the size per page
+ * class and per component type is recorded into lock free histograms. Register it as MBean to
+ * watch the sizes.
+ * 
+ * pass it directly to the
+ * {@link org.wicketstuff.pageserializer.kryo2.inspecting.InspectingKryoSerializer}, which then
+ * writes the pages that are not sampled without any hooks. in a list of listeners every page it is
+ * called for is measured.
+ */
+public class PageSizeMetrics implements ISamplingSerializationListener, PageSizeMetricsMBean
+{
+	private static final int DEFAULT_SAMPLE_RATE = 100;
+
+	private static final Comparator<Entry<String, SizeHistogram>> BY_TOTAL =
+		new Comparator<Entry<String, SizeHistogram>>()
+	{
+		@Override
+		public int compare(Entry<String, SizeHistogram> o1, Entry<String, SizeHistogram> o2)
+		{
+			long t1 = o1.getValue().total();
+			long t2 = o2.getValue().total();
+			return t1 > t2 ? -1 : (t1 == t2 ? o1.getKey().compareTo(o2.getKey()) : 1);
+		}
+	};
+
+	private final ConcurrentMap<String, SizeHistogram> pageClassSizes =
+		new ConcurrentHashMap<String, SizeHistogram>();
+
+	private final ConcurrentMap<String, SizeHistogram> componentTypeSizes =
+		new ConcurrentHashMap<String, SizeHistogram>();
+
+	private final AtomicLong pages = new AtomicLong();
+
+	private final AtomicLong sampledPages = new AtomicLong();
+
+	private final ThreadLocal<Sample> sample = new ThreadLocal<Sample>()
+	{
+		@Override
+		protected Sample initialValue()
+		{
+			return new Sample();
+		}
+	};
+
+	private volatile int sampleRate;
+
+	/**
+	 * measures every 100th page
+	 */
+	public PageSizeMetrics()
+	{
+		this(DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * @param sampleRate
+	 *            every n-th page is measured, 0 disables sampling
+	 */
+	public PageSizeMetrics(int sampleRate)
+	{
+		setSampleRate(sampleRate);
+	}
+
+	@Override
+	public boolean isSampled(Object object)
+	{
+		int rate = sampleRate;
+		return rate > 0 && pages.incrementAndGet() % rate == 0;
+	}
+
+	@Override
+	public void begin(Object object)
+	{
+		Sample current = sample.get();
+		current.active = true;
+		current.depth = 0;
+	}
+
+	@Override
+	public void before(int position, Object object)
+	{
+		Sample current = sample.get();
+		if (current.active)
+		{
+			current.push(position, object instanceof Component);
+		}
+	}
+
+	@Override
+	public void after(int position, Object object)
+	{
+		Sample current = sample.get();
+		if (!current.active)
+		{
+			return;
+		}
+
+		int depth = --current.depth;
+		int size = position - current.starts[depth];
+		if (current.component[depth])
+		{
+			histogramOf(componentTypeSizes, object.getClass()).record(
+				size - current.childBytes[depth]);
+		}
+
+		if (depth > 0)
+		{
+			// a component hides its bytes from the parent component, everything else passes the
+			// component bytes through
+			current.childBytes[depth - 1] += current.component[depth] ? size
+				: current.childBytes[depth];
+		}
+		else if (object != null)
+		{
+			histogramOf(pageClassSizes, object.getClass()).record(size);
+			sampledPages.incrementAndGet();
+			current.active = false;
+		}
+	}
+
+	@Override
+	public void end(Object object, RuntimeException exceptionIfAny)
+	{
+		Sample current = sample.get();
+		current.active = false;
+		current.depth = 0;
+	}
+
+	@Override
+	public int getSampleRate()
+	{
+		return sampleRate;
+	}
+
+	@Override
+	public void setSampleRate(int sampleRate)
+	{
+		if (sampleRate < 0)
+		{
+			throw new IllegalArgumentException("sampleRate must not be negative: " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+	}
+
+	@Override
+	public long getSampledPages()
+	{
+		return sampledPages.get();
+	}
+
+	@Override
+	public String[] getPageClassSizes()
+	{
+		return report(pageClassSizes);
+	}
+
+	@Override
+	public String[] getComponentTypeSizes()
+	{
+		return report(componentTypeSizes);
+	}
+
+	/**
+	 * @return histogram per page class
+	 */
+	public Map<String, SizeHistogram> pageClassSizes()
+	{
+		return Collections.unmodifiableMap(pageClassSizes);
+	}
+
+	/**
+	 * @return histogram per component type
+	 */
+	public Map<String, SizeHistogram> componentTypeSizes()
+	{
+		return Collections.unmodifiableMap(componentTypeSizes);
+	}
+
+	@Override
+	public void reset()
+	{
+		pageClassSizes.clear();
+		componentTypeSizes.clear();
+		sampledPages.set(0);
+	}
+
+	private static SizeHistogram histogramOf(ConcurrentMap<String, SizeHistogram> map,
+		Class<?> type)
+	{
+		String name = type.getName();
+		SizeHistogram histogram = map.get(name);
+		if (histogram == null)
+		{
+			SizeHistogram created = new SizeHistogram();
+			histogram = map.putIfAbsent(name, created);
+			if (histogram == null)
+			{
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	private static String[] report(Map<String, SizeHistogram> map)
+	{
+		List<Entry<String, SizeHistogram>> entries = new ArrayList<Entry<String, SizeHistogram>>(
+			map.entrySet());
+		Collections.sort(entries, BY_TOTAL);
+		String[] ret = new String[entries.size()];
+		for (int i = 0; i < ret.length; i++)
+		{
+			Entry<String, SizeHistogram> entry = entries.get(i);
+			ret[i] = entry.getKey() + ": " + entry.getValue();
+		}
+		return ret;
+	}
+
+	/**
+	 * per thread state of the measured page
+	 */
+	private static final class Sample
+	{
+		boolean active;
+
+		int depth;
+
+		int[] starts = new int[64];
+
+		int[] childBytes = new int[64];
+
+		boolean[] component = new boolean[64];
+
+		void push(int position, boolean isComponent)
+		{
+			if (depth == starts.length)
+			{
+				starts = Arrays.copyOf(starts, depth * 2);
+				childBytes = Arrays.copyOf(childBytes, depth * 2);
+				component = Arrays.copyOf(component, depth * 2);
+			}
+			starts[depth] = position;
+			childBytes[depth] = 0;
+			component[depth] = isComponent;
+			depth++;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.inspecting.metrics;
+
+/**
+ * JMX view of {@link PageSizeMetrics}
+ */
+public interface PageSizeMetricsMBean
+{
+	/**
+	 * @return every n-th page is measured, 0 disables sampling
+	 */
+	int getSampleRate();
+
+	/**
+	 * @param sampleRate
+	 *            every n-th page is measured, 0 disables sampling
+	 */
+	void setSampleRate(int sampleRate);
+
+	/**
+	 * @return number of measured pages
+	 */
+	long getSampledPages();
+
+	/**
+	 * @return size statistics per page class
+	 */
+	String[] getPageClassSizes();
+
+	/**
+	 * @return size statistics per component type, the bytes of child components are not included
+	 */
+	String[] getComponentTypeSizes();
+
+	/**
+	 * drops all recorded sizes
+	 */
+	void reset();
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.inspecting.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock free histogram of byte sizes, the buckets are powers of two
+ */
+public final class SizeHistogram
+{
+	private static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param size
+	 *            size in bytes
+	 */
+	public void record(int size)
+	{
+		buckets.incrementAndGet(bucketOf(size));
+		count.incrementAndGet();
+		total.addAndGet(size);
+
+		long current;
+		while (size > (current = max.get()))
+		{
+			if (max.compareAndSet(current, size))
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return number of recorded sizes
+	 */
+	public long count()
+	{
+		return count.get();
+	}
+
+	/**
+	 * @return sum of all recorded sizes
+	 */
+	public long total()
+	{
+		return total.get();
+	}
+
+	/**
+	 * @return biggest recorded size
+	 */
+	public long max()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @return average size
+	 */
+	public long mean()
+	{
+		long c = count.get();
+		return c > 0 ? total.get() / c : 0;
+	}
+
+	/**
+	 * @param percent
+	 *            0..100
+	 * @return upper bound of the bucket which contains this percentile
+	 */
+	public long percentile(int percent)
+	{
+		long c = count.get();
+		if (c == 0)
+		{
+			return 0;
+		}
+		long wanted = (c * percent + 99) / 100;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += buckets.get(i);
+			if (seen >= wanted)
+			{
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "count=" + count() + ", mean=" + mean() + ", p50=" + percentile(50) + ", p95=" +
+			percentile(95) + ", max=" + max() + ", total=" + total();
+	}
+
+	private static int bucketOf(int size)
+	{
+		if (size <= 0)
+		{
+			return 0;
+		}
+		return Math.min(BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(size));
+	}
+
+	private static long upperBoundOf(int bucket)
+	{
+		return bucket == 0 ? 0 : (1L << bucket) - 1;
+	}
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import org.apache.wicket.util.io.IOUtils;
+import org.apache.wicket.util.lang.Args;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * A sorted list of class names which are registered with stable ids, so that kryo writes a small id
+ * instead of the full class name. All nodes of a cluster must use the same manifest, this can be
+ * checked with {@link #checksum()}.
+ * 
+ * A manifest can be scanned from packages, read from a file with one class name per line (lines
+ * starting with '#' are ignored) or recorded with {@link ClassManifestRecorder}.
+ */
+public final class ClassManifest
+{
+	private static final String CHARSET = "UTF-8";
+
+	private static final String CLASS_FILE_SUFFIX = ".class";
+
+	private final List<String> classNames;
+
+	private final int checksum;
+
+	private ClassManifest(Collection<String> classNames)
+	{
+		this.classNames = Collections.unmodifiableList(new ArrayList<String>(
+			new TreeSet<String>(classNames)));
+		this.checksum = checksumOf(this.classNames);
+	}
+
+	/**
+	 * @return sorted class names
+	 */
+	public List<String> classNames()
+	{
+		return classNames;
+	}
+
+	/**
+	 * @return checksum of all class names, differs if the manifest differs
+	 */
+	public int checksum()
+	{
+		return checksum;
+	}
+
+	/**
+	 * registers all classes, the n-th class gets the id {@code firstId + n}
+	 * 
+	 * @param kryo
+	 *            kryo instance
+	 * @param firstId
+	 *            id of the first class
+	 * @param classLoader
+	 *            class loader used to load the classes
+	 * @throws IllegalStateException
+	 *             if a class can not be loaded
+	 */
+	public void register(Kryo kryo, int firstId, ClassLoader classLoader)
+	{
+		int id = firstId;
+		for (String className : classNames)
+		{
+			try
+			{
+				kryo.register(Class.forName(className, false, classLoader), id);
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IllegalStateException("class manifest contains unknown class " +
+					className, e);
+			}
+			id++;
+		}
+	}
+
+	/**
+	 * writes the manifest, one class name per line
+	 * 
+	 * @param writer
+	 *            destination
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException
+	{
+		writer.write("# checksum " + checksum + "\n");
+		for (String className : classNames)
+		{
+			writer.write(className);
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @param classNames
+	 *            class names
+	 * @return manifest of these classes
+	 */
+	public static ClassManifest of(Collection<String> classNames)
+	{
+		Args.notNull(classNames, "classNames");
+		return new ClassManifest(classNames);
+	}
+
+	/**
+	 * @param classes
+	 *            classes
+	 * @return manifest of these classes
+	 */
+	public static ClassManifest ofClasses(Class<?>... classes)
+	{
+		List<String> names = new ArrayList<String>();
+		for (Class<?> type : classes)
+		{
+			names.add(type.getName());
+		}
+		return new ClassManifest(names);
+	}
+
+	/**
+	 * reads a manifest, one class name per line
+	 * 
+	 * @param reader
+	 *            source
+	 * @return manifest
+	 * @throws IOException
+	 */
+	public static ClassManifest read(Reader reader) throws IOException
+	{
+		List<String> names = new ArrayList<String>();
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		while ((line = lines.readLine()) != null)
+		{
+			line = line.trim();
+			if (line.length() > 0 && !line.startsWith("#"))
+			{
+				names.add(line);
+			}
+		}
+		return new ClassManifest(names);
+	}
+
+	/**
+	 * reads a manifest from an url (f.i. a class path resource)
+	 * 
+	 * @param url
+	 *            source
+	 * @return manifest
+	 * @throws IOException
+	 */
+	public static ClassManifest read(URL url) throws IOException
+	{
+		Args.notNull(url, "url");
+		InputStream in = url.openStream();
+		try
+		{
+			return read(new InputStreamReader(in, CHARSET));
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * collects all classes in these packages and their sub packages, directories and jar files are
+	 * supported
+	 * 
+	 * @param classLoader
+	 *            class loader to scan
+	 * @param packageNames
+	 *            packages
+	 * @return manifest of all found classes
+	 * @throws IOException
+	 */
+	public static ClassManifest scan(ClassLoader classLoader, String... packageNames)
+		throws IOException
+	{
+		List<String> names = new ArrayList<String>();
+		for (String packageName : packageNames)
+		{
+			String path = packageName.replace('.', '/');
+			Enumeration<URL> resources = classLoader.getResources(path);
+			while (resources.hasMoreElements())
+			{
+				URL url = resources.nextElement();
+				if ("file".equals(url.getProtocol()))
+				{
+					scanDirectory(new File(decode(url.getPath())), packageName, names);
+				}
+				else
+				{
+					URLConnection connection = url.openConnection();
+					if (connection instanceof JarURLConnection)
+					{
+						scanJar(((JarURLConnection)connection).getJarFile(), path, names);
+					}
+				}
+			}
+		}
+		return new ClassManifest(names);
+	}
+
+	private static void scanDirectory(File directory, String packageName, List<String> names)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			String name = file.getName();
+			if (file.isDirectory())
+			{
+				scanDirectory(file, packageName + "." + name, names);
+			}
+			else if (isClassFile(name))
+			{
+				names.add(packageName + "." +
+					name.substring(0, name.length() - CLASS_FILE_SUFFIX.length()));
+			}
+		}
+	}
+
+	private static void scanJar(JarFile jar, String path, List<String> names)
+	{
+		String prefix = path + "/";
+		Enumeration<JarEntry> entries = jar.entries();
+		while (entries.hasMoreElements())
+		{
+			String name = entries.nextElement().getName();
+			if (name.startsWith(prefix) && isClassFile(name))
+			{
+				names.add(name.substring(0, name.length() - CLASS_FILE_SUFFIX.length()).replace(
+					'/', '.'));
+			}
+		}
+	}
+
+	private static boolean isClassFile(String name)
+	{
+		return name.endsWith(CLASS_FILE_SUFFIX) && !name.endsWith("package-info.class");
+	}
+
+	private static String decode(String path) throws UnsupportedEncodingException
+	{
+		return URLDecoder.decode(path, CHARSET);
+	}
+
+	private static int checksumOf(List<String> classNames)
+	{
+		CRC32 crc = new CRC32();
+		try
+		{
+			for (String className : classNames)
+			{
+				crc.update(className.getBytes(CHARSET));
+				crc.update('\n');
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return (int)crc.getValue();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ClassManifest[" + classNames.size() + " classes, checksum " + checksum + "]";
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.wicketstuff.pageserializer.kryo2.inspecting.listener.ISerializationListener;
+
+/**
+ * records the classes of all written objects, use it together with an
+ * {@link org.wicketstuff.pageserializer.kryo2.inspecting.InspectingKryoSerializer} to create a
+ * {@link ClassManifest} from real pages
+ */
+public class ClassManifestRecorder implements ISerializationListener
+{
+	private final ConcurrentMap<String, Boolean> classNames = new ConcurrentHashMap<String, Boolean>();
+
+	@Override
+	public void begin(Object object)
+	{
+		record(object);
+	}
+
+	@Override
+	public void before(int position, Object object)
+	{
+		record(object);
+	}
+
+	@Override
+	public void after(int position, Object object)
+	{
+
+	}
+
+	@Override
+	public void end(Object object, RuntimeException exceptionIfAny)
+	{
+
+	}
+
+	/**
+	 * @return manifest of all classes recorded so far
+	 */
+	public ClassManifest manifest()
+	{
+		return ClassManifest.of(classNames.keySet());
+	}
+
+	private void record(Object object)
+	{
+		if (object == null)
+		{
+			return;
+		}
+		Class<?> type = object instanceof Class ? (Class<?>)object : object.getClass();
+		if (!type.isPrimitive())
+		{
+			classNames.putIfAbsent(type.getName(), Boolean.TRUE);
+		}
+	}
+}
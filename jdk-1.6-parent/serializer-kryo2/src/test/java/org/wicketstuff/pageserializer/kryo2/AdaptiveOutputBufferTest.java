@@ -0,0 +1,101 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.kryo2.pages.SamplePage;
+
+import com.esotericsoftware.kryo.io.Output;
+
+public class AdaptiveOutputBufferTest
+{
+	private WicketTester tester;
+
+	@Before
+	public void setUp()
+	{
+		tester = new WicketTester(new WicketApplication());
+	}
+
+	@After
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void bufferGrowsAndShrinksBack()
+	{
+		AdaptiveOutputBuffer buffer = new AdaptiveOutputBuffer(16, 1024 * 1024);
+		Assert.assertEquals(16, buffer.capacity());
+
+		Output output = buffer.acquire();
+		output.writeBytes(new byte[100000]);
+		buffer.release(output.position());
+		Assert.assertTrue("buffer should have grown", buffer.capacity() >= 100000);
+
+		for (int i = 0; i < 100; i++)
+		{
+			output = buffer.acquire();
+			Assert.assertEquals("buffer must be cleared", 0, output.position());
+			output.writeBytes(new byte[10]);
+			buffer.release(output.position());
+		}
+		Assert.assertTrue("buffer should have shrunk: " + buffer.capacity(),
+			buffer.capacity() <= 64);
+	}
+
+	@Test
+	public void nestedAcquireDoesNotShareBuffer()
+	{
+		AdaptiveOutputBuffer buffer = new AdaptiveOutputBuffer(16, 1024);
+		Output output = buffer.acquire();
+		Assert.assertNotNull(output);
+		Assert.assertNull(buffer.acquire());
+		buffer.release(0);
+		Assert.assertSame(output, buffer.acquire());
+	}
+
+	@Test
+	public void reusedBufferGivesSameResult()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+			new PageParameters().add("Test", "asString"));
+
+		KryoSerializer reusing = new KryoSerializer(Bytes.megabytes(1L), true);
+		KryoSerializer allocating = new KryoSerializer(Bytes.megabytes(1L));
+
+		byte[] expected = allocating.serialize(page);
+		Assert.assertArrayEquals(expected, reusing.serialize(page));
+		Assert.assertArrayEquals("second run reuses the buffer", expected,
+			reusing.serialize(page));
+
+		Object object = reusing.deserialize(expected);
+		Assert.assertTrue("The deserialized page must be of type SamplePage. Type: " +
+			object.getClass(), object instanceof SamplePage);
+	}
+}
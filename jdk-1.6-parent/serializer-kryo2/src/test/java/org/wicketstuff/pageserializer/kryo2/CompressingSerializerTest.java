@@ -0,0 +1,81 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.serialize.ISerializer;
+import org.apache.wicket.util.lang.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressingSerializerTest
+{
+	@Test
+	public void bigPagesAreCompressed()
+	{
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++)
+		{
+			list.add("same text again and again " + (i % 10));
+		}
+
+		ISerializer plain = new KryoSerializer(Bytes.megabytes(1L));
+		ISerializer compressing = new CompressingSerializer(new KryoSerializer(
+			Bytes.megabytes(1L)));
+
+		byte[] plainData = plain.serialize(list);
+		byte[] data = compressing.serialize(list);
+		Assert.assertTrue("compressed: " + data.length + ", plain: " + plainData.length,
+			data.length * 3 < plainData.length);
+		Assert.assertEquals(list, compressing.deserialize(data));
+	}
+
+	@Test
+	public void smallPagesAreNotCompressed()
+	{
+		List<String> list = Arrays.asList("A", "B");
+
+		ISerializer plain = new KryoSerializer(Bytes.megabytes(1L));
+		ISerializer compressing = new CompressingSerializer(new KryoSerializer(
+			Bytes.megabytes(1L)));
+
+		byte[] data = compressing.serialize(list);
+		Assert.assertEquals(plain.serialize(list).length + 1, data.length);
+		Assert.assertEquals(list, compressing.deserialize(data));
+	}
+
+	@Test(expected = WicketRuntimeException.class)
+	public void emptyDataIsRejected()
+	{
+		new CompressingSerializer(new KryoSerializer(Bytes.megabytes(1L))).deserialize(new byte[0]);
+	}
+
+	@Test(expected = WicketRuntimeException.class)
+	public void truncatedHeaderIsRejected()
+	{
+		new CompressingSerializer(new KryoSerializer(Bytes.megabytes(1L))).deserialize(new byte[] {
+				1, 0, 0 });
+	}
+}
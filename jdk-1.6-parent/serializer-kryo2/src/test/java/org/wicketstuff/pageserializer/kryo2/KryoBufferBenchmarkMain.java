@@ -0,0 +1,164 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.wicket.util.lang.Bytes;
+
+/**
+ * Rough comparison of the {@link KryoSerializer} allocating a new buffer of the full buffer size
+ * for every page with the one reusing an {@link AdaptiveOutputBuffer} per thread. The pages are
+ * plain object trees of about the size of a small Wicket page, so no application is needed.
+ * 
+ * Arguments: [pages per thread] [threads] [nodes per page] [buffer size in kilobytes]
+ */
+public class KryoBufferBenchmarkMain
+{
+	private static class Node implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String id;
+
+		private final List<Node> children = new ArrayList<Node>();
+
+		private Node(String id)
+		{
+			this.id = id;
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int nodes = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		Bytes bufferSize = Bytes.kilobytes(args.length > 3 ? Long.parseLong(args[3]) : 10240L);
+
+		// containers with up to nine children each, like a page of panels with labels
+		Node page = new Node("page");
+		Node container = page;
+		for (int i = 1; i < nodes; i++)
+		{
+			if (i % 10 == 1)
+			{
+				container = new Node("container" + i);
+				page.children.add(container);
+			}
+			else
+			{
+				container.children.add(new Node("component" + i));
+			}
+		}
+
+		KryoSerializer fixed = new KryoSerializer(bufferSize, false);
+		KryoSerializer reused = new KryoSerializer(bufferSize, true);
+
+		// first round warms up the jit, the second one is reported.
+		for (int round = 0; round < 2; round++)
+		{
+			boolean report = round == 1;
+
+			run("fixed buffer", fixed, page, pages, threads, report);
+			run("adaptive buffer", reused, page, pages, threads, report);
+		}
+	}
+
+	private static void run(String name, final KryoSerializer serializer, final Object page,
+		final int pages, int threads, boolean report) throws Exception
+	{
+		long collectionsBefore = collections();
+		long collectionTimeBefore = collectionTime();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		long start = System.nanoTime();
+
+		long bytes = 0;
+		try
+		{
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for (int i = 0; i < threads; i++)
+			{
+				futures.add(executor.submit(new Callable<Long>()
+				{
+					public Long call()
+					{
+						long written = 0;
+						for (int j = 0; j < pages; j++)
+						{
+							written += serializer.serialize(page).length;
+						}
+						return written;
+					}
+				}));
+			}
+			for (Future<Long> future : futures)
+			{
+				bytes += future.get();
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		long time = System.nanoTime() - start;
+
+		if (report)
+		{
+			long total = (long)pages * threads;
+			System.out.println(name + ": " + total + " pages of " + (bytes / total) + " bytes = " +
+				(time / 1000000L) + " ms (" + (time / total) + " ns/page, " +
+				(collections() - collectionsBefore) + " collections in " +
+				(collectionTime() - collectionTimeBefore) + " ms)");
+		}
+	}
+
+	private static long collections()
+	{
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long collectionTime()
+	{
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+}
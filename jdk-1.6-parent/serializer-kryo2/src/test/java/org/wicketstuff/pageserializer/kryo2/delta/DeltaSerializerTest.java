@@ -0,0 +1,222 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.delta;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.util.lang.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.kryo2.KryoSerializer;
+
+public class DeltaSerializerTest
+{
+	private static final byte FULL = 0;
+
+	private static final byte DELTA = 1;
+
+	@Test
+	public void smallChangeIsWrittenAsDelta()
+	{
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(10, 10);
+
+		List<String> list = listOf(100);
+		byte[] full = serializer.serialize(list);
+		list.set(50, "changed");
+		byte[] delta = serializer.serialize(list);
+
+		Assert.assertTrue("delta: " + delta.length + ", full: " + full.length,
+			delta.length * 10 < full.length);
+		Assert.assertEquals(list, serializer.deserialize(delta));
+		Assert.assertEquals(listOf(100), serializer.deserialize(full));
+	}
+
+	@Test
+	public void fullSnapshotAfterInterval()
+	{
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(2, 10);
+
+		List<String> list = listOf(100);
+		int full = serializer.serialize(list).length;
+		Assert.assertTrue(serializer.serialize(list).length < full / 2);
+		Assert.assertTrue(serializer.serialize(list).length < full / 2);
+		Assert.assertEquals(full, serializer.serialize(list).length);
+	}
+
+	@Test
+	public void binaryDeltaRestoresTarget()
+	{
+		byte[] base = new byte[1000];
+		for (int i = 0; i < base.length; i++)
+		{
+			base[i] = (byte)(i * 7);
+		}
+		byte[] target = new byte[1010];
+		System.arraycopy(base, 0, target, 0, 500);
+		System.arraycopy(base, 500, target, 510, 500);
+
+		byte[] delta = BinaryDelta.diff(base, target);
+		Assert.assertTrue(delta.length < 40);
+		Assert.assertArrayEquals(target, BinaryDelta.patch(base, delta));
+	}
+
+	@Test
+	public void deltaOfUnknownSnapshotIsExpired()
+	{
+		DeltaSerializer writer = new FixedKeyDeltaSerializer(10, 10);
+		writer.serialize(listOf(100));
+		byte[] delta = writer.serialize(listOf(100));
+
+		// like after a restart, the page store treats the page as not found
+		Assert.assertNull(new FixedKeyDeltaSerializer(10, 10).deserialize(delta));
+	}
+
+	@Test
+	public void snapshotsAreKeptBeyondMaxSnapshots()
+	{
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(10, 2);
+
+		List<String> first = listOf(100);
+		serializer.serialize(new Page("s1", "1", first));
+		byte[] firstDelta = serializer.serialize(new Page("s1", "1", first));
+		for (int i = 2; i < 10; i++)
+		{
+			serializer.serialize(new Page("s1", String.valueOf(i), listOf(100 + i)));
+		}
+
+		Assert.assertEquals(first, serializer.deserialize(firstDelta));
+		Assert.assertEquals(DELTA, serializer.serialize(new Page("s1", "1", first))[0]);
+		Assert.assertEquals(FULL, serializer.serialize(new Page("s1", "9", listOf(109)))[0]);
+		Assert.assertEquals(FULL, serializer.serialize(new Page("s1", "9", listOf(109)))[0]);
+	}
+
+	@Test
+	public void sessionsHaveTheirOwnSnapshots()
+	{
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(10, 1);
+
+		serializer.serialize(new Page("s1", "1", listOf(100)));
+		serializer.serialize(new Page("s2", "1", listOf(200)));
+
+		byte[] delta1 = serializer.serialize(new Page("s1", "1", listOf(100)));
+		byte[] delta2 = serializer.serialize(new Page("s2", "1", listOf(200)));
+		Assert.assertEquals(DELTA, delta1[0]);
+		Assert.assertEquals(DELTA, delta2[0]);
+		Assert.assertEquals(listOf(100), serializer.deserialize(delta1));
+		Assert.assertEquals(listOf(200), serializer.deserialize(delta2));
+	}
+
+	@Test
+	public void unboundSessionDropsSnapshots()
+	{
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(10, 10);
+		serializer.serialize(new Page("s1", "1", listOf(100)));
+		byte[] delta = serializer.serialize(new Page("s1", "1", listOf(100)));
+
+		serializer.sessionUnbound("s1");
+		Assert.assertEquals(FULL, serializer.serialize(new Page("s1", "1", listOf(100)))[0]);
+		Assert.assertNull(serializer.deserialize(delta));
+	}
+
+	@Test
+	public void snapshotsStayWithinMaxBytes()
+	{
+		int pageSize = new KryoSerializer(Bytes.megabytes(1L)).serialize(
+			new Page("s1", "1", listOf(100))).length;
+		DeltaSerializer serializer = new FixedKeyDeltaSerializer(10, 10,
+			Bytes.bytes(pageSize * 3 / 2));
+
+		serializer.serialize(new Page("s1", "1", listOf(100)));
+		serializer.serialize(new Page("s2", "1", listOf(100)));
+
+		// only the first snapshot fits, the other page is written without delta
+		Assert.assertEquals(DELTA, serializer.serialize(new Page("s1", "1", listOf(100)))[0]);
+		Assert.assertEquals(FULL, serializer.serialize(new Page("s2", "1", listOf(100)))[0]);
+
+		// the budget is freed when the session is unbound
+		serializer.sessionUnbound("s1");
+		serializer.serialize(new Page("s2", "1", listOf(100)));
+		Assert.assertEquals(DELTA, serializer.serialize(new Page("s2", "1", listOf(100)))[0]);
+	}
+
+	private static List<String> listOf(int size)
+	{
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < size; i++)
+		{
+			list.add("entry number " + i);
+		}
+		return list;
+	}
+
+	private static class FixedKeyDeltaSerializer extends DeltaSerializer
+	{
+		FixedKeyDeltaSerializer(int fullSnapshotInterval, int maxSnapshots)
+		{
+			this(fullSnapshotInterval, maxSnapshots, Bytes.megabytes(32L));
+		}
+
+		FixedKeyDeltaSerializer(int fullSnapshotInterval, int maxSnapshots, Bytes maxSnapshotBytes)
+		{
+			super(new KryoSerializer(Bytes.megabytes(1L)), fullSnapshotInterval, maxSnapshots,
+				maxSnapshotBytes);
+		}
+
+		@Override
+		protected String sessionIdOf(Object object)
+		{
+			return object instanceof Page ? ((Page)object).sessionId : "session";
+		}
+
+		@Override
+		protected String pageKeyOf(Object object)
+		{
+			return object instanceof Page ? ((Page)object).pageKey : "page";
+		}
+
+		@Override
+		public Object deserialize(byte[] data)
+		{
+			Object object = super.deserialize(data);
+			return object instanceof Page ? ((Page)object).entries : object;
+		}
+	}
+
+	private static class Page implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		String sessionId;
+
+		String pageKey;
+
+		List<String> entries;
+
+		Page(String sessionId, String pageKey, List<String> entries)
+		{
+			this.sessionId = sessionId;
+			this.pageKey = pageKey;
+			this.entries = entries;
+		}
+	}
+}
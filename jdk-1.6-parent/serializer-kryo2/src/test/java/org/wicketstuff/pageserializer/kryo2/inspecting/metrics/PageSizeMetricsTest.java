@@ -0,0 +1,132 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.inspecting.metrics;
+
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.kryo2.KryoSerializer;
+import org.wicketstuff.pageserializer.kryo2.WicketApplication;
+import org.wicketstuff.pageserializer.kryo2.inspecting.InspectingKryoSerializer;
+import org.wicketstuff.pageserializer.kryo2.pages.ListViewPage;
+
+public class PageSizeMetricsTest
+{
+	private WicketTester tester;
+
+	@Before
+	public void setUp()
+	{
+		tester = new WicketTester(new WicketApplication());
+	}
+
+	@After
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void everyPageIsMeasured()
+	{
+		ListViewPage page = tester.startPage(ListViewPage.class);
+
+		PageSizeMetrics metrics = new PageSizeMetrics(1);
+		byte[] data = new InspectingKryoSerializer(Bytes.megabytes(1L), metrics).serialize(page);
+
+		SizeHistogram pageSizes = metrics.pageClassSizes().get(ListViewPage.class.getName());
+		Assert.assertNotNull(pageSizes);
+		Assert.assertEquals(1, pageSizes.count());
+		Assert.assertEquals(data.length, pageSizes.max());
+
+		SizeHistogram labelSizes = metrics.componentTypeSizes().get(Label.class.getName());
+		Assert.assertNotNull(labelSizes);
+		Assert.assertEquals(3, labelSizes.count());
+		Assert.assertTrue(labelSizes.total() < data.length);
+	}
+
+	@Test
+	public void onlyEveryNthPageIsMeasured()
+	{
+		ListViewPage page = tester.startPage(ListViewPage.class);
+
+		PageSizeMetrics metrics = new PageSizeMetrics(3);
+		InspectingKryoSerializer serializer = new InspectingKryoSerializer(Bytes.megabytes(1L),
+			metrics);
+		for (int i = 0; i < 9; i++)
+		{
+			serializer.serialize(page);
+		}
+		Assert.assertEquals(3, metrics.getSampledPages());
+
+		metrics.setSampleRate(0);
+		serializer.serialize(page);
+		Assert.assertEquals(3, metrics.getSampledPages());
+	}
+
+	@Test
+	public void pagesWhichAreNotSampledAreWrittenWithoutHooks()
+	{
+		ListViewPage page = tester.startPage(ListViewPage.class);
+
+		final int[] hooks = new int[1];
+		PageSizeMetrics metrics = new PageSizeMetrics(2)
+		{
+			@Override
+			public void before(int position, Object object)
+			{
+				hooks[0]++;
+				super.before(position, object);
+			}
+		};
+		InspectingKryoSerializer serializer = new InspectingKryoSerializer(Bytes.megabytes(1L),
+			metrics);
+
+		byte[] notSampled = serializer.serialize(page);
+		Assert.assertEquals(0, hooks[0]);
+		Assert.assertEquals(0, metrics.getSampledPages());
+		Assert.assertArrayEquals(new KryoSerializer(Bytes.megabytes(1L)).serialize(page), notSampled);
+
+		byte[] sampled = serializer.serialize(page);
+		Assert.assertTrue(hooks[0] > 0);
+		Assert.assertEquals(1, metrics.getSampledPages());
+		Assert.assertArrayEquals(notSampled, sampled);
+	}
+
+	@Test
+	public void histogramPercentiles()
+	{
+		SizeHistogram histogram = new SizeHistogram();
+		for (int i = 1; i <= 100; i++)
+		{
+			histogram.record(i * 10);
+		}
+		Assert.assertEquals(100, histogram.count());
+		Assert.assertEquals(1000, histogram.max());
+		Assert.assertEquals(505, histogram.mean());
+		Assert.assertEquals(511, histogram.percentile(50));
+		Assert.assertEquals(1000, histogram.percentile(95));
+	}
+}
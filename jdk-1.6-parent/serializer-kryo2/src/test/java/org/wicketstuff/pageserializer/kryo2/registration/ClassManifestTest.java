@@ -0,0 +1,118 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.kryo2.KryoSerializer;
+import org.wicketstuff.pageserializer.kryo2.WicketApplication;
+import org.wicketstuff.pageserializer.kryo2.pages.SamplePage;
+
+import com.esotericsoftware.kryo.KryoException;
+
+public class ClassManifestTest
+{
+	private WicketTester tester;
+
+	@Before
+	public void setUp()
+	{
+		tester = new WicketTester(new WicketApplication());
+	}
+
+	@After
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void writtenManifestCanBeRead() throws IOException
+	{
+		ClassManifest manifest = ClassManifest.of(Arrays.asList("b.B", "a.A", "b.B"));
+		Assert.assertEquals(Arrays.asList("a.A", "b.B"), manifest.classNames());
+
+		StringWriter writer = new StringWriter();
+		manifest.write(writer);
+		ClassManifest read = ClassManifest.read(new StringReader(writer.toString()));
+
+		Assert.assertEquals(manifest.classNames(), read.classNames());
+		Assert.assertEquals(manifest.checksum(), read.checksum());
+		Assert.assertFalse(manifest.checksum() == ClassManifest.of(Arrays.asList("a.A"))
+			.checksum());
+	}
+
+	@Test
+	public void scanFindsPageClasses() throws IOException
+	{
+		ClassManifest manifest = ClassManifest.scan(getClass().getClassLoader(),
+			SamplePage.class.getPackage().getName());
+		Assert.assertTrue(manifest.classNames().contains(SamplePage.class.getName()));
+	}
+
+	@Test
+	public void registeredClassesMakePagesSmaller()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+			new PageParameters().add("Test", "asString"));
+
+		ClassManifestRecorder recorder = new ClassManifestRecorder();
+		recorder.before(0, page);
+		recorder.before(0, page.get("sample"));
+
+		KryoSerializer plain = new KryoSerializer(Bytes.megabytes(1L));
+		KryoSerializer registering = new KryoSerializer(Bytes.megabytes(1L));
+		registering.setClassManifest(recorder.manifest());
+
+		byte[] plainData = plain.serialize(page);
+		byte[] data = registering.serialize(page);
+		Assert.assertTrue("registered classes should be smaller: " + data.length + " >= " +
+			plainData.length, data.length < plainData.length);
+
+		Object object = registering.deserialize(data);
+		Assert.assertTrue("The deserialized page must be of type SamplePage. Type: " +
+			object.getClass(), object instanceof SamplePage);
+	}
+
+	@Test(expected = KryoException.class)
+	public void differentManifestFailsFast()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+			new PageParameters().add("Test", "asString"));
+
+		KryoSerializer nodeA = new KryoSerializer(Bytes.megabytes(1L));
+		nodeA.setClassManifest(ClassManifest.ofClasses(SamplePage.class));
+		KryoSerializer nodeB = new KryoSerializer(Bytes.megabytes(1L));
+		nodeB.setClassManifest(ClassManifest.ofClasses(SamplePage.class, String.class));
+
+		nodeB.deserialize(nodeA.serialize(page));
+	}
+}
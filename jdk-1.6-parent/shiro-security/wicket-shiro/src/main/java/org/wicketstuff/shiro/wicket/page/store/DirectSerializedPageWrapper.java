@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.shiro.wicket.page.store;
+
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the serialized page in a direct {@link ByteBuffer} outside of the java heap, so sessions
+ * with many large pages don't inflate the heap. The memory is released when this wrapper is garbage
+ * collected. When the session itself is serialized (e.g. to replicate it) a plain
+ * {@link SerializedPageWrapper} is written instead.
+ */
+public class DirectSerializedPageWrapper extends SerializedPageWrapper
+{
+	private static final long serialVersionUID = 1L;
+
+	private final transient ByteBuffer buffer;
+
+	public DirectSerializedPageWrapper(byte[] page, int pageId)
+	{
+		super(null, pageId);
+		buffer = ByteBuffer.allocateDirect(page.length);
+		buffer.put(page);
+		buffer.flip();
+	}
+
+	/**
+	 * @return a copy of the serialized page
+	 */
+	@Override
+	public byte[] getPage()
+	{
+		final byte[] page = new byte[buffer.remaining()];
+		// duplicate, so concurrent reads don't share a position
+		buffer.duplicate().get(page);
+		return page;
+	}
+
+	@Override
+	public int getSize()
+	{
+		return buffer.remaining();
+	}
+
+	protected Object writeReplace() throws ObjectStreamException
+	{
+		return new SerializedPageWrapper(getPage(), getPageId());
+	}
+}
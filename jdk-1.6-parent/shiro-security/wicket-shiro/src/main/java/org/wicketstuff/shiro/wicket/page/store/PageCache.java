@@ -17,13 +17,12 @@
 package org.wicketstuff.shiro.wicket.page.store;
 
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.wicket.util.io.IClusterable;
 import org.slf4j.Logger;
@@ -34,6 +33,12 @@ import org.slf4j.LoggerFactory;
  * href="http://www.nabble.com/file/p18280052/TerracottaPageStore.java">to support TerraCotta</a>,
  * but the architecture has been separated into multiple classes, along with other
  * architectural/stylistic changes.
+ * <p/>
+ * Pages are kept in a {@link ConcurrentHashMap}, so reads never block. The order in which pages
+ * were stored is kept in a queue of {@link StoreTicket}s. Storing a page again does not search the
+ * queue but adds a new ticket, older tickets of the same page are recognized as stale and skipped
+ * when evicting. The cache can be limited by number of pages, by the total size of the serialized
+ * pages or both. Only eviction takes a lock, and only one thread evicts at a time.
  * 
  * @author Les Hazlewood
  * @since Feb 13, 2009 10:23:43 PM
@@ -44,92 +49,136 @@ public class PageCache implements IClusterable
 
 	private static final Logger LOG = LoggerFactory.getLogger(PageCache.class);
 
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-	private final Lock read = rwl.readLock();
-	private final Lock write = rwl.writeLock();
+	/**
+	 * no limit on the total size of the stored pages
+	 */
+	public static final long UNLIMITED_BYTES = -1;
 
-	private final LinkedHashMap<Integer, SerializedPageWrapper> pages = new LinkedHashMap<Integer, SerializedPageWrapper>();
-	private final TreeMap<Integer, Integer> pageKeys = new TreeMap<Integer, Integer>();
+	private final ConcurrentHashMap<Integer, StoredPage> pages = new ConcurrentHashMap<Integer, StoredPage>();
+	private final ConcurrentLinkedQueue<StoreTicket> storeOrder = new ConcurrentLinkedQueue<StoreTicket>();
+	private final AtomicInteger tickets = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+	private final ReentrantLock evictLock = new ReentrantLock();
 
 	private final AtomicInteger id = new AtomicInteger(Integer.MIN_VALUE);
 
 	private final int MAX_SIZE;
+	private final long MAX_BYTES;
 
 	public PageCache(final int maxSize)
+	{
+		this(maxSize, UNLIMITED_BYTES);
+	}
+
+	/**
+	 * @param maxSize
+	 *            maximum number of pages, {@link SessionPageStore#DEFAULT_MAX_PAGES} for no limit
+	 * @param maxBytes
+	 *            maximum total size of all serialized pages, {@link #UNLIMITED_BYTES} for no limit
+	 */
+	public PageCache(final int maxSize, final long maxBytes)
 	{
 		MAX_SIZE = maxSize;
+		MAX_BYTES = maxBytes;
 	}
 
 	public boolean containsPage(final int pageId)
 	{
-		read.lock();
-		try
-		{
-			return pageKeys.containsKey(pageId);
-		}
-		finally
-		{
-			read.unlock();
-		}
+		return pages.containsKey(pageId);
 	}
 
 	public SerializedPageWrapper getPage(final int pageId)
 	{
-		read.lock();
-		try
-		{
-			return pages.get(pageId);
-		}
-		finally
-		{
-			read.unlock();
-		}
+		final StoredPage stored = pages.get(pageId);
+		return stored != null ? stored.wrapper : null;
 	}
 
 	public void removePage(final Integer pageId)
 	{
-		write.lock();
-		try
-		{
-			pages.remove(pageId);
-		}
-		finally
-		{
-			write.unlock();
-		}
+		final StoredPage removed = pages.remove(pageId);
+		if (removed != null)
+			bytes.addAndGet(-removed.wrapper.getSize());
 	}
 
 	public void storePages(final SerializedPageWrapper wrapper)
 	{
-		write.lock();
+		final Integer pageKey = wrapper.getPageId();
+		final StoredPage stored = new StoredPage(wrapper, id.getAndIncrement());
+		final StoredPage previous = pages.put(pageKey, stored);
+		bytes.addAndGet(wrapper.getSize() - (previous != null ? previous.wrapper.getSize() : 0));
+		storeOrder.offer(new StoreTicket(pageKey, stored.ticket));
+		tickets.incrementAndGet();
+		if (isOverLimit() || tickets.get() > 2 * pages.size() + 16)
+			evict();
+	}
+
+	/**
+	 * @return the number of stored pages
+	 */
+	public int getSize()
+	{
+		return pages.size();
+	}
+
+	/**
+	 * @return the total size of all serialized pages
+	 */
+	public long getSizeInBytes()
+	{
+		return bytes.get();
+	}
+
+	private boolean isOverLimit()
+	{
+		return (MAX_SIZE != SessionPageStore.DEFAULT_MAX_PAGES && pages.size() > MAX_SIZE) ||
+			(MAX_BYTES != UNLIMITED_BYTES && bytes.get() > MAX_BYTES && pages.size() > 1);
+	}
+
+	/**
+	 * removes the oldest pages until the cache is within its limits and drops stale tickets
+	 */
+	private void evict()
+	{
+		// another thread is already evicting, it will see our page as well
+		if (!evictLock.tryLock())
+			return;
 		try
 		{
-			// reduce size of page store to within set size if required
-			if (MAX_SIZE != SessionPageStore.DEFAULT_MAX_PAGES)
+			while (isOverLimit())
 			{
-				int numToRemove = pages.size() + 1 - MAX_SIZE;
-				if (numToRemove > 0)
+				final StoreTicket ticket = storeOrder.poll();
+				if (ticket == null)
+					break;
+				tickets.decrementAndGet();
+				final StoredPage stored = pages.get(ticket.pageId);
+				if (stored != null && stored.ticket == ticket.ticket &&
+					pages.remove(ticket.pageId, stored))
 				{
-					final Iterator<Map.Entry<Integer, SerializedPageWrapper>> iter = pages.entrySet()
-						.iterator();
-					while (iter.hasNext() && numToRemove > 0)
-					{
-						final Map.Entry<Integer, SerializedPageWrapper> entry = iter.next();
-						iter.remove();
-						pageKeys.remove(entry.getKey());
-						numToRemove--;
-					}
+					bytes.addAndGet(-stored.wrapper.getSize());
+					LOG.trace("Evicted page [{}]", ticket.pageId);
 				}
 			}
-			final Integer pageKey = wrapper.getPageId();
-			// remove to preserve access order
-			pages.remove(pageKey);
-			pages.put(pageKey, wrapper);
-			pageKeys.put(pageKey, id.getAndIncrement());
+			if (tickets.get() > 2 * pages.size() + 16)
+				dropStaleTickets();
 		}
 		finally
 		{
-			write.unlock();
+			evictLock.unlock();
+		}
+	}
+
+	private void dropStaleTickets()
+	{
+		final Iterator<StoreTicket> iter = storeOrder.iterator();
+		while (iter.hasNext())
+		{
+			final StoreTicket ticket = iter.next();
+			final StoredPage stored = pages.get(ticket.pageId);
+			if (stored == null || stored.ticket != ticket.ticket)
+			{
+				iter.remove();
+				tickets.decrementAndGet();
+			}
 		}
 	}
 
@@ -140,10 +189,50 @@ public class PageCache implements IClusterable
 	public String toString()
 	{
 		final StringBuilder sb = new StringBuilder();
-		for (final Entry<Integer, SerializedPageWrapper> entry : pages.entrySet())
+		for (final Entry<Integer, StoredPage> entry : pages.entrySet())
 			sb.append("\t").append(entry.getKey().toString()).append("\n");
 		if (LOG.isTraceEnabled())
-			sb.append("\tPageKeys TreeSet: ").append(pageKeys.toString());
+			sb.append("\tStore order: ").append(storeOrder.toString());
 		return sb.toString();
 	}
+
+	/**
+	 * a stored page and the ticket it was stored with
+	 */
+	private static final class StoredPage implements IClusterable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final SerializedPageWrapper wrapper;
+		private final int ticket;
+
+		StoredPage(final SerializedPageWrapper wrapper, final int ticket)
+		{
+			this.wrapper = wrapper;
+			this.ticket = ticket;
+		}
+	}
+
+	/**
+	 * remembers when a page was stored, stale if the page has been stored again or removed since
+	 */
+	private static final class StoreTicket implements IClusterable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Integer pageId;
+		private final int ticket;
+
+		StoreTicket(final Integer pageId, final int ticket)
+		{
+			this.pageId = pageId;
+			this.ticket = ticket;
+		}
+
+		@Override
+		public String toString()
+		{
+			return pageId + "@" + ticket;
+		}
+	}
 }
@@ -41,6 +41,14 @@ public class SerializedPageWrapper implements IClusterable
 		return page;
 	}
 
+	/**
+	 * @return the number of bytes of the serialized page
+	 */
+	public int getSize()
+	{
+		return page != null ? page.length : 0;
+	}
+
 	public int getPageId()
 	{
 		return pageId;
@@ -60,6 +60,8 @@ public class SessionPageStore implements IPageStore
 	protected static final int DEFAULT_MAX_PAGES = -1;
 
 	private final int MAX_PAGE_MAP_SIZE;
+	private final long MAX_PAGE_MAP_BYTES;
+	private final boolean DIRECT_BUFFERS;
 
 	public SessionPageStore()
 	{
@@ -68,6 +70,24 @@ public class SessionPageStore implements IPageStore
 
 	public SessionPageStore(final int maxPageMapSize)
 	{
+		this(maxPageMapSize, PageCache.UNLIMITED_BYTES, false);
+	}
+
+	/**
+	 * @param maxPageMapSize
+	 *            maximum number of pages per session, -1 for no limit
+	 * @param maxPageMapBytes
+	 *            maximum total size of the serialized pages per session,
+	 *            {@link PageCache#UNLIMITED_BYTES} for no limit
+	 * @param directBuffers
+	 *            keep the serialized pages in direct buffers outside of the java heap, see
+	 *            {@link DirectSerializedPageWrapper}
+	 */
+	public SessionPageStore(final int maxPageMapSize, final long maxPageMapBytes,
+		final boolean directBuffers)
+	{
+		MAX_PAGE_MAP_BYTES = maxPageMapBytes < 0 ? PageCache.UNLIMITED_BYTES : maxPageMapBytes;
+		DIRECT_BUFFERS = directBuffers;
 		if (maxPageMapSize < -1)
 		{
 			MAX_PAGE_MAP_SIZE = DEFAULT_MAX_PAGES;
@@ -128,6 +148,16 @@ public class SessionPageStore implements IPageStore
 		return MAX_PAGE_MAP_SIZE;
 	}
 
+	public long getMaxPageMapBytes()
+	{
+		return MAX_PAGE_MAP_BYTES;
+	}
+
+	public boolean isUsingDirectBuffers()
+	{
+		return DIRECT_BUFFERS;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -145,7 +175,7 @@ public class SessionPageStore implements IPageStore
 		PageCacheManager pcc = (PageCacheManager)session.getAttribute(PAGE_MAP_SESSION_KEY);
 		if (pcc == null)
 		{
-			pcc = new PageCacheManager(getMaxPageMapSize());
+			pcc = new PageCacheManager(getMaxPageMapSize(), getMaxPageMapBytes());
 			session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
 		}
 		return pcc;
@@ -267,7 +297,9 @@ public class SessionPageStore implements IPageStore
 
 	SerializedPageWrapper wrap(final byte[] serializedPages, final int pageId)
 	{
-		final SerializedPageWrapper wrapper = new SerializedPageWrapper(serializedPages, pageId);
+		final SerializedPageWrapper wrapper = isUsingDirectBuffers()
+			? new DirectSerializedPageWrapper(serializedPages, pageId) : new SerializedPageWrapper(
+				serializedPages, pageId);
 		return wrapper;
 	}
 }
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.shiro.wicket.page.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the limits of the {@link PageCache}.
+ */
+public class PageCacheTest extends TestCase
+{
+	private static SerializedPageWrapper page(final int pageId, final int size)
+	{
+		return new SerializedPageWrapper(new byte[size], pageId);
+	}
+
+	public void testPageLimitEvictsOldestStoredPage()
+	{
+		final PageCache cache = new PageCache(2);
+		cache.storePages(page(1, 10));
+		cache.storePages(page(2, 10));
+		// storing page 1 again makes page 2 the oldest
+		cache.storePages(page(1, 10));
+		cache.storePages(page(3, 10));
+		assertTrue(cache.containsPage(1));
+		assertFalse(cache.containsPage(2));
+		assertTrue(cache.containsPage(3));
+		assertEquals(2, cache.getSize());
+		assertEquals(20, cache.getSizeInBytes());
+	}
+
+	public void testByteLimit()
+	{
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES, 100);
+		for (int i = 0; i < 10; i++)
+			cache.storePages(page(i, 40));
+		assertEquals(2, cache.getSize());
+		assertEquals(80, cache.getSizeInBytes());
+		assertTrue(cache.containsPage(8));
+		assertTrue(cache.containsPage(9));
+
+		// a single page larger than the limit is still kept
+		cache.storePages(page(10, 200));
+		assertEquals(1, cache.getSize());
+		assertTrue(cache.containsPage(10));
+	}
+
+	public void testRemovePage()
+	{
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES);
+		cache.storePages(page(1, 10));
+		cache.removePage(1);
+		assertFalse(cache.containsPage(1));
+		assertNull(cache.getPage(1));
+		assertEquals(0, cache.getSizeInBytes());
+	}
+
+	public void testRepeatedStoresOfSamePage()
+	{
+		final PageCache cache = new PageCache(3);
+		for (int i = 0; i < 1000; i++)
+			cache.storePages(page(i % 2, 10));
+		assertEquals(2, cache.getSize());
+		assertEquals(20, cache.getSizeInBytes());
+	}
+
+	public void testDirectWrapperIsSerializedToHeap() throws Exception
+	{
+		final byte[] data = new byte[] { 1, 2, 3 };
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES);
+		cache.storePages(new DirectSerializedPageWrapper(data, 1));
+		assertTrue(Arrays.equals(data, cache.getPage(1).getPage()));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(cache);
+		oos.close();
+		final PageCache copy = (PageCache)new ObjectInputStream(new ByteArrayInputStream(
+			out.toByteArray())).readObject();
+		assertEquals(SerializedPageWrapper.class, copy.getPage(1).getClass());
+		assertTrue(Arrays.equals(data, copy.getPage(1).getPage()));
+	}
+}
@@ -0,0 +1,120 @@
+package org.apache.wicket.extensions.sitemap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * keeps generated sitemaps on disk, so a sitemap is only generated again once its data source reports a change
+ * (see {@link IOffsetSiteMapEntryIterable#changedDate()}). sitemaps of unchanged data sources keep being served
+ * from their files.
+ * <p/>
+ * return one instance per application from {@link SiteMapIndex#getFileCache()}.
+ */
+public class SiteMapFileCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SiteMapFileCache.class);
+    private final File directory;
+    private final boolean gzip;
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * @param directory where the sitemaps are kept, created if it does not exist.
+     * @param gzip      whether the sitemaps are stored gzip compressed.
+     */
+    public SiteMapFileCache(File directory, boolean gzip) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("unable to create sitemap cache directory " + directory);
+        }
+        this.directory = directory;
+        this.gzip = gzip;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * @param name        file name of the sitemap, without extension.
+     * @param changedDate last change of the data in the sitemap, null if unknown.
+     * @param feed        generates the sitemap if there is no file yet, or the file is older than changedDate.
+     * @return the up to date sitemap file.
+     */
+    File getFile(String name, Date changedDate, SiteMapFeed feed) throws IOException {
+        final File file = new File(directory, name + (gzip ? ".xml.gz" : ".xml"));
+        if (isCurrent(file, changedDate)) {
+            return file;
+        }
+        // only one request generates a given sitemap, the others wait for it and then use its file.
+        Object lock = new Object();
+        final Object existing = locks.putIfAbsent(name, lock);
+        if (existing != null) {
+            lock = existing;
+        }
+        synchronized (lock) {
+            if (!isCurrent(file, changedDate)) {
+                generate(file, feed);
+            }
+        }
+        return file;
+    }
+
+    private static boolean isCurrent(File file, Date changedDate) {
+        return file.isFile() && (changedDate == null || file.lastModified() >= changedDate.getTime());
+    }
+
+    private void generate(File file, SiteMapFeed feed) throws IOException {
+        final long start = System.currentTimeMillis();
+        // generate next to the file and swap it in, requests reading the old file are not disturbed
+        final File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                feed.writeFeed(out, gzip);
+            } finally {
+                out.close();
+            }
+            // the file is only as new as the data it was generated from, a change while generating makes it stale
+            if (!tmp.setLastModified(start)) {
+                LOGGER.warn("unable to set the modification time of {}, it may be generated again", tmp);
+            }
+            if (!tmp.renameTo(file)) {
+                // renameTo does not replace existing files on all platforms
+                if (!file.delete() || !tmp.renameTo(file)) {
+                    throw new IOException("unable to move " + tmp + " to " + file);
+                }
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                LOGGER.warn("unable to delete temporary sitemap {}", tmp);
+            }
+        }
+        LOGGER.info("generated sitemap {} with {} entries in {} ms", new Object[]{file.getName(), feed.getEntriesWritten(), System.currentTimeMillis() - start});
+    }
+
+    /**
+     * deletes all cached sitemaps, they are generated again when requested.
+     */
+    public void clear() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if ((file.getName().endsWith(".xml") || file.getName().endsWith(".xml.gz")) && !file.delete()) {
+                    LOGGER.warn("unable to delete cached sitemap {}", file);
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,8 @@ import org.apache.wicket.protocol.http.WebRequest;
 import org.apache.wicket.request.target.coding.IRequestTargetUrlCodingStrategy;
 import org.apache.wicket.request.target.component.BookmarkablePageRequestTarget;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Observable;
@@ -27,7 +29,7 @@ public abstract class SiteMapIndex extends WebPage implements Observer {
     private static final String FOOTER = "</sitemapindex>";
     private static final int MAX_BYTES_SITEMAP = 10485760; //10 megabyte
     private static final int MAX_ENTRIES_PER_SITEMAP = 50000;
-    private static final SimpleDateFormat STRIPPED_DAY_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    private static final String STRIPPED_DAY_PATTERN = "yyyy-MM-dd";
     private String domain;
 
     public SiteMapIndex(final PageParameters parameters) {
@@ -35,18 +37,28 @@ public abstract class SiteMapIndex extends WebPage implements Observer {
         if (parameters.size() > 0) {
             final Integer index = Integer.valueOf(parameters.getString(PARAM_SITEMAP_OFFSET));
             final Integer sourceIndex = Integer.valueOf(parameters.getString(PARAM_SITEMAP_SOURCEINDEX));
+            final IOffsetSiteMapEntryIterable source = getDataSources()[sourceIndex];
 
             setResponsePage(new Sitemap() {
                 @Override
                 protected SiteMapFeed getFeed() {
                     final SiteMapFeed feed = new SiteMapFeed(new IOffsetSiteMapEntryIterable.SiteMapIterable() {
                         public IOffsetSiteMapEntryIterable.SiteMapIterator iterator() {
-                            return getDataSources()[sourceIndex].getIterator(index);
+                            return source.getIterator(index);
                         }
-                    });
+                    }, getEntriesPerFile(source));
                     feed.addObserver(SiteMapIndex.this);
                     return feed;
                 }
+
+                @Override
+                protected File getFeedFile() throws IOException {
+                    final SiteMapFileCache cache = getFileCache();
+                    if (cache == null) {
+                        return null;
+                    }
+                    return cache.getFile("sitemap-" + sourceIndex + "-" + index, source.changedDate(), getFeed());
+                }
             });
         }
     }
@@ -81,22 +93,41 @@ public abstract class SiteMapIndex extends WebPage implements Observer {
 
     public abstract IRequestTargetUrlCodingStrategy mountedAt();
 
+    /**
+     * @return the cache that keeps the generated sitemaps on disk, or null to generate them for every request.
+     */
+    protected SiteMapFileCache getFileCache() {
+        return null;
+    }
+
+    /**
+     * blocks larger than the sitemap protocol allows are split over several files.
+     */
+    private static int getEntriesPerFile(IOffsetSiteMapEntryIterable dataBlock) {
+        return Math.min(dataBlock.getElementsPerSiteMap(), MAX_ENTRIES_PER_SITEMAP);
+    }
+
     @Override
     protected void onRender(final MarkupStream markupStream) {
         PrintWriter w = new PrintWriter(getResponse().getOutputStream());
         try {
             w.write(HEADER);
+            final SimpleDateFormat dayFormat = new SimpleDateFormat(STRIPPED_DAY_PATTERN);
             int sourceNumber = 0;
             for (IOffsetSiteMapEntryIterable dataBlock : getDataSources()) {
-                for (int i = 0; i < dataBlock.getUpperLimitNumblocks(); i++) {
+                final String lastmod = dayFormat.format(dataBlock.changedDate());
+                final int entriesPerFile = getEntriesPerFile(dataBlock);
+                final long numEntries = (long) dataBlock.getUpperLimitNumblocks() * dataBlock.getElementsPerSiteMap();
+                final long numFiles = (numEntries + entriesPerFile - 1) / entriesPerFile;
+                for (long i = 0; i < numFiles; i++) {
                     w.append("<sitemap>\n<loc>");
                     final PageParameters params = new PageParameters();
                     params.put(PARAM_SITEMAP_SOURCEINDEX, String.valueOf(sourceNumber));
-                    params.put(PARAM_SITEMAP_OFFSET, String.valueOf(i * dataBlock.getElementsPerSiteMap()));
+                    params.put(PARAM_SITEMAP_OFFSET, String.valueOf(i * entriesPerFile));
                     final String url = getDomain() + "/" + String.valueOf(mountedAt().encode(new BookmarkablePageRequestTarget(getClass(), params)));
                     w.append(StringEscapeUtils.escapeXml(url));
                     w.append("</loc>\n<lastmod>");
-                    w.append(STRIPPED_DAY_FORMAT.format(dataBlock.changedDate()));
+                    w.append(lastmod);
                     w.append("</lastmod>\n</sitemap>\n");
                 }
                 sourceNumber++;
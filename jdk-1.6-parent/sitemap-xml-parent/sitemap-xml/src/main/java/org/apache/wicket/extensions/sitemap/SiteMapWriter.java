@@ -0,0 +1,178 @@
+package org.apache.wicket.extensions.sitemap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * writes the entries of a sitemap one after the other, reusing the same buffer and the last formatted day for all of them.
+ * not thread safe, use one writer per sitemap.
+ */
+class SiteMapWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SiteMapWriter.class);
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String FOOTER = "</urlset>";
+    private static final int URL_MAX_LENGTH = 2048;
+    private static final String[] CHANGEFREQ_NAMES;
+
+    static {
+        final ISiteMapEntry.CHANGEFREQ[] values = ISiteMapEntry.CHANGEFREQ.values();
+        CHANGEFREQ_NAMES = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            CHANGEFREQ_NAMES[i] = values[i].toString().toLowerCase();
+        }
+    }
+
+    private final Writer writer;
+    private final StringBuilder buffer = new StringBuilder(512);
+    private final Calendar calendar = Calendar.getInstance();
+    private final char[] day = new char[10];
+    private long dayStart = Long.MAX_VALUE;
+    private long dayEnd = Long.MIN_VALUE;
+    private int entriesWritten;
+    private int bytesWritten;
+
+    SiteMapWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    void writeHeader() throws IOException {
+        writer.write(HEADER);
+        bytesWritten += HEADER.length();
+    }
+
+    void writeFooter() throws IOException {
+        writer.write(FOOTER);
+        bytesWritten += FOOTER.length();
+    }
+
+    /**
+     * @return false if the entry was skipped because it has no url.
+     */
+    boolean writeEntry(ISiteMapEntry entry) throws IOException {
+        final String urlStr = entry.getUrl();
+        if (urlStr == null) {
+            LOGGER.warn("url entry {} for sitemap was null, but this is a required attribute..", entry);
+            return false;
+        }
+        if (urlStr.length() > URL_MAX_LENGTH) {
+            LOGGER.warn("url {} was too long (>2048 bytes) in sitemap", urlStr);
+        }
+        final StringBuilder sb = buffer;
+        sb.setLength(0);
+        sb.append("<url>\n<loc>");
+        appendEscaped(sb, urlStr);
+        sb.append("</loc>\n");
+        final Date modified = entry.getModified();
+        if (modified != null) {
+            sb.append("<lastmod>");
+            appendDay(sb, modified);
+            sb.append("</lastmod>\n");
+        }
+        final ISiteMapEntry.CHANGEFREQ frequency = entry.getFrequency();
+        if (frequency != null) {
+            sb.append("<changefreq>");
+            sb.append(CHANGEFREQ_NAMES[frequency.ordinal()]);
+            sb.append("</changefreq>\n");
+        }
+        final Double prio = entry.getPriority();
+        if (prio != null) {
+            sb.append("<priority>");
+            sb.append(normalizePriority(entry, prio).doubleValue());
+            sb.append("</priority>\n");
+        }
+        sb.append("</url>\n");
+        entriesWritten++;
+        bytesWritten += sb.length();
+        writer.append(sb);
+        return true;
+    }
+
+    /**
+     * formats yyyy-MM-dd, entries of the same day share the formatted chars.
+     */
+    private void appendDay(StringBuilder sb, Date date) {
+        final long time = date.getTime();
+        if (time < dayStart || time >= dayEnd) {
+            calendar.setTimeInMillis(time);
+            final int year = calendar.get(Calendar.YEAR);
+            final int month = calendar.get(Calendar.MONTH) + 1;
+            final int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+            day[0] = (char) ('0' + year / 1000 % 10);
+            day[1] = (char) ('0' + year / 100 % 10);
+            day[2] = (char) ('0' + year / 10 % 10);
+            day[3] = (char) ('0' + year % 10);
+            day[4] = '-';
+            day[5] = (char) ('0' + month / 10);
+            day[6] = (char) ('0' + month % 10);
+            day[7] = '-';
+            day[8] = (char) ('0' + dayOfMonth / 10);
+            day[9] = (char) ('0' + dayOfMonth % 10);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            dayStart = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            dayEnd = calendar.getTimeInMillis();
+        }
+        sb.append(day);
+    }
+
+    /**
+     * same output as commons-lang StringEscapeUtils.escapeXml, without the intermediate string.
+     */
+    static void appendEscaped(StringBuilder sb, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\'':
+                    sb.append("&apos;");
+                    break;
+                default:
+                    if (c > 0x7f) {
+                        sb.append("&#").append((int) c).append(';');
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+
+    private static Double normalizePriority(ISiteMapEntry entry, Double prio) {
+        if (prio > 1.0) {
+            LOGGER.warn("priority {} was out of bounds for entry {}, setting to 1.0", prio, entry);
+            prio = 1.0;
+        }
+        if (prio < 0.0) {
+            LOGGER.warn("priority {} was out of bounds for entry {}, setting to 0.0", prio, entry);
+            prio = 0.0;
+        }
+        return prio;
+    }
+
+    int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    int getEntriesWritten() {
+        return entriesWritten;
+    }
+}
@@ -1,13 +1,20 @@
 package org.apache.wicket.extensions.sitemap;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.markup.MarkupStream;
 import org.apache.wicket.markup.MarkupType;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.util.io.Streams;
 
 abstract class Sitemap extends WebPage {
 
@@ -18,19 +25,58 @@ abstract class Sitemap extends WebPage {
 
     @Override
     protected void onRender() {
+        try {
+            final File file = getFeedFile();
+            if (file != null) {
+                writeFile(file);
+            } else {
+                writeFeed();
+            }
+        } catch (IOException e) {
+            throw new WicketRuntimeException("unable to construct sitemap.xml for request: " + ((WebRequest) getRequest()).getHttpServletRequest().getRemoteAddr(), e);
+        }
+    }
+
+    private void writeFeed() throws IOException {
         PrintWriter writer = new PrintWriter(getResponse().getOutputStream());
         try {
             getFeed().writeFeed(writer);
             writer.flush();
-        } catch (IOException e) {
-            throw new WicketRuntimeException("unable to construct sitemap.xml for request: " + ((WebRequest) getRequest()).getHttpServletRequest().getRemoteAddr(), e);
         } finally {
             writer.close();
         }
     }
 
+    private void writeFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz")) {
+                final String acceptEncoding = ((WebRequest) getRequest()).getHeader("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    // send the stored bytes as they are
+                    ((WebResponse) getResponse()).setHeader("Content-Encoding", "gzip");
+                } else {
+                    in = new GZIPInputStream(in);
+                }
+                ((WebResponse) getResponse()).setHeader("Vary", "Accept-Encoding");
+            }
+            final OutputStream out = getResponse().getOutputStream();
+            Streams.copy(in, out);
+            out.flush();
+        } finally {
+            in.close();
+        }
+    }
+
     protected abstract SiteMapFeed getFeed();
 
+    /**
+     * @return the up to date file of this sitemap, or null to generate the feed straight into the response.
+     */
+    protected File getFeedFile() throws IOException {
+        return null;
+    }
+
 }
 
 
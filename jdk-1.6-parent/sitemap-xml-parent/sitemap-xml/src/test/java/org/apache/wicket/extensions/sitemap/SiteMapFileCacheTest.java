@@ -0,0 +1,89 @@
+package org.apache.wicket.extensions.sitemap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+
+public class SiteMapFileCacheTest {
+
+    private File directory;
+    private SiteMapFileCache cache;
+    private int generated;
+    private Date changedWhileGenerating;
+
+    @Before
+    public void createCache() throws IOException {
+        directory = File.createTempFile("sitemap", "");
+        directory.delete();
+        cache = new SiteMapFileCache(directory, false);
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void unchangedSiteMapIsNotGeneratedAgain() throws Exception {
+        final File file = cache.getFile("sitemap", null, feed(false));
+        Assert.assertTrue(file.isFile());
+        Assert.assertEquals(1, generated);
+
+        Assert.assertEquals(file, cache.getFile("sitemap", null, feed(false)));
+        Assert.assertEquals(file, cache.getFile("sitemap", new Date(file.lastModified()), feed(false)));
+        Assert.assertEquals(1, generated);
+    }
+
+    @Test
+    public void changeWhileGeneratingMakesSiteMapStale() throws Exception {
+        cache.getFile("sitemap", null, feed(true));
+        Assert.assertEquals(1, generated);
+
+        // the data changed after generating started, the file must not count as containing it
+        cache.getFile("sitemap", changedWhileGenerating, feed(false));
+        Assert.assertEquals(2, generated);
+    }
+
+    private SiteMapFeed feed(final boolean changeWhileGenerating) {
+        return new SiteMapFeed(new IOffsetSiteMapEntryIterable.SiteMapIterable() {
+            public IOffsetSiteMapEntryIterable.SiteMapIterator iterator() {
+                generated++;
+                if (changeWhileGenerating) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    changedWhileGenerating = new Date();
+                }
+                final Iterator<ISiteMapEntry> it = Collections.<ISiteMapEntry>singletonList(new BasicSiteMapEntry("http://example.com/")).iterator();
+                return new IOffsetSiteMapEntryIterable.SiteMapIterator() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public ISiteMapEntry next() {
+                        return it.next();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    public void close() {
+                    }
+                };
+            }
+        });
+    }
+}
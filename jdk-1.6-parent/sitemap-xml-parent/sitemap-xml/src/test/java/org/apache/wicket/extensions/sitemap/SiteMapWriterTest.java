@@ -0,0 +1,105 @@
+package org.apache.wicket.extensions.sitemap;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+public class SiteMapWriterTest {
+
+    @Test
+    public void escapesLikeCommonsLang() {
+        final String[] urls = {
+                "http://example.com/plain",
+                "http://example.com/?a=1&b=<2>&c=\"3\"&d='4'",
+                "http://example.com/äöüß/€",
+                "http://example.com/😀",
+                "\u007f\u0080\t"
+        };
+        for (String url : urls) {
+            final StringBuilder sb = new StringBuilder();
+            SiteMapWriter.appendEscaped(sb, url);
+            Assert.assertEquals(url, StringEscapeUtils.escapeXml(url), sb.toString());
+        }
+    }
+
+    @Test
+    public void formatsDaysLikeSimpleDateFormat() throws Exception {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(1999, Calendar.DECEMBER, 31, 23, 59, 59);
+        calendar.set(Calendar.MILLISECOND, 999);
+
+        final StringWriter out = new StringWriter();
+        final SiteMapWriter writer = new SiteMapWriter(out);
+        final StringBuilder expected = new StringBuilder();
+        // around midnight, the new year and a leap day, going back and forth between days
+        final Date[] dates = {
+                calendar.getTime(),
+                new Date(calendar.getTimeInMillis() + 1),
+                new Date(calendar.getTimeInMillis() - 1000),
+                new Date(calendar.getTimeInMillis() + 60L * 24 * 3600 * 1000),
+                new Date(calendar.getTimeInMillis() + 1),
+        };
+        for (Date date : dates) {
+            writer.writeEntry(new BasicSiteMapEntry("http://example.com/", date, 0.5, ISiteMapEntry.CHANGEFREQ.DAILY));
+            expected.append("<url>\n<loc>http://example.com/</loc>\n<lastmod>").append(format.format(date))
+                    .append("</lastmod>\n<changefreq>daily</changefreq>\n<priority>0.5</priority>\n</url>\n");
+        }
+        Assert.assertEquals(expected.toString(), out.toString());
+        Assert.assertEquals(dates.length, writer.getEntriesWritten());
+        Assert.assertEquals(expected.length(), writer.getBytesWritten());
+    }
+
+    @Test
+    public void skipsUnsetElementsAndEntriesWithoutUrl() throws Exception {
+        final StringWriter out = new StringWriter();
+        final SiteMapWriter writer = new SiteMapWriter(out);
+        writer.writeHeader();
+        Assert.assertTrue(writer.writeEntry(new BasicSiteMapEntry("http://example.com/a", null, 0.5, null)));
+        Assert.assertFalse(writer.writeEntry(new BasicSiteMapEntry(null)));
+        writer.writeFooter();
+
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "<url>\n<loc>http://example.com/a</loc>\n<priority>0.5</priority>\n</url>\n"
+                + "</urlset>", out.toString());
+        Assert.assertEquals(1, writer.getEntriesWritten());
+    }
+
+    @Test
+    public void priorityIsClamped() throws Exception {
+        final StringWriter out = new StringWriter();
+        final SiteMapWriter writer = new SiteMapWriter(out);
+        writer.writeEntry(entry(1.5));
+        writer.writeEntry(entry(-0.5));
+
+        Assert.assertEquals("<url>\n<loc>http://example.com/</loc>\n<priority>1.0</priority>\n</url>\n"
+                + "<url>\n<loc>http://example.com/</loc>\n<priority>0.0</priority>\n</url>\n", out.toString());
+    }
+
+    private static ISiteMapEntry entry(final double priority) {
+        // BasicSiteMapEntry clamps on its own, other entries rely on the writer
+        return new ISiteMapEntry() {
+            public String getUrl() {
+                return "http://example.com/";
+            }
+
+            public Date getModified() {
+                return null;
+            }
+
+            public Double getPriority() {
+                return priority;
+            }
+
+            public CHANGEFREQ getFrequency() {
+                return null;
+            }
+        };
+    }
+}
@@ -33,6 +33,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A IResource that supports the response protocol of Server Side Events
+ * <p>
+ * The connection holds a container thread for as long as it is open. For many concurrent clients
+ * use {@code org.wicketstuff.servlet3.eventsource.AsyncEventSourceResource} from wicketstuff-servlet3,
+ * which uses Servlet 3 asynchronous requests and a shared broadcaster instead.
  *
  * @since 6.0
  */
@@ -68,6 +68,13 @@ public class OsgiWebApplicationFactory implements IWebApplicationFactory
 
 	public void destroy(WicketFilter filter)
 	{
-		// service reference is released automatically when the WAB is stopped
+		// service reference is released automatically when the WAB is stopped, the shared trackers
+		// of the bundle are closed then as well, but the application is gone already
+		ServletContext servletContext = filter.getFilterConfig().getServletContext();
+		BundleContext bundleContext = (BundleContext)servletContext.getAttribute("osgi-bundlecontext");
+		if (bundleContext != null)
+		{
+			OsgiServiceLookup.closeServiceTrackers(bundleContext);
+		}
 	}
 }
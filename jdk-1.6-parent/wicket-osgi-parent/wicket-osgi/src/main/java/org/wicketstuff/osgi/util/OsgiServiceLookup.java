@@ -17,14 +17,22 @@
  */
 package org.wicketstuff.osgi.util;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.lang.Objects;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.util.tracker.ServiceTracker;
 
 /**
@@ -32,6 +40,12 @@ import org.osgi.util.tracker.ServiceTracker;
  * for the service for a given timeout (default 10 seconds) and throw a
  * {@code WicketRuntimeException} when no matching service becomes available during this period.
  * <p>
+ * The service trackers are shared and stay open, there is one per bundle context, class name and
+ * service properties. A tracker remembers the service it returned until a tracked service is
+ * registered, modified or unregistered, so looking up an available service again (f.i. when an
+ * injected proxy is deserialized) does not query the registry. The trackers of a bundle context
+ * are closed when its bundle is stopping, or earlier with {@link #closeServiceTrackers(BundleContext)}.
+ * <p>
  * NOTE: Prefixing some method calls with our own class name is a workaround for a bug in the Oracle
  * Java compiler, which does not occur when compiling in Eclipse.
  * 
@@ -43,6 +57,10 @@ public class OsgiServiceLookup
 
 	public static final long DEFAULT_TIMEOUT = 10000;
 
+	private static final ConcurrentMap<TrackerKey, CachingServiceTracker> trackers = new ConcurrentHashMap<TrackerKey, CachingServiceTracker>();
+
+	private static final ConcurrentMap<BundleContext, BundleListener> stopListeners = new ConcurrentHashMap<BundleContext, BundleListener>();
+
 	public static <T> T getOsgiService(BundleContext bc, String className)
 	{
 		return OsgiServiceLookup.<T> getOsgiService(bc, className, DEFAULT_TIMEOUT, null);
@@ -89,11 +107,15 @@ public class OsgiServiceLookup
 	public static <T> T getOsgiService(BundleContext bc, String className, long timeout,
 		Map<String, String> props)
 	{
-		ServiceTracker tracker = createServiceTracker(bc, className, props);
+		CachingServiceTracker tracker = getServiceTracker(bc, className, createFilter(className,
+			props));
 		try
 		{
-			tracker.open();
-			Object svc = tracker.waitForService(timeout);
+			Object svc = tracker.getCachedService();
+			if (svc == null)
+			{
+				svc = tracker.waitForService(timeout);
+			}
 			if (svc == null)
 			{
 				throw new WicketRuntimeException("gave up waiting for service " + className);
@@ -104,19 +126,114 @@ public class OsgiServiceLookup
 		{
 			throw new WicketRuntimeException(exc);
 		}
-		finally
+	}
+
+	/**
+	 * Closes the shared service trackers opened for the given bundle context. This happens
+	 * automatically when the bundle is stopping, the tracked services must not be used afterwards.
+	 * 
+	 * @param bc
+	 *            bundle context for accessing the OSGi registry
+	 */
+	public static void closeServiceTrackers(BundleContext bc)
+	{
+		BundleListener listener = stopListeners.remove(bc);
+		if (listener != null)
+		{
+			try
+			{
+				bc.removeBundleListener(listener);
+			}
+			catch (IllegalStateException exc)
+			{
+				// the bundle context is no longer valid, neither is the listener
+			}
+		}
+		Iterator<Entry<TrackerKey, CachingServiceTracker>> it = trackers.entrySet().iterator();
+		while (it.hasNext())
 		{
-			tracker.close();
+			Entry<TrackerKey, CachingServiceTracker> entry = it.next();
+			if (entry.getKey().bundleContext == bc)
+			{
+				it.remove();
+				entry.getValue().close();
+			}
 		}
 	}
 
+	private static CachingServiceTracker getServiceTracker(BundleContext bc, String className,
+		String filter)
+	{
+		TrackerKey key = new TrackerKey(bc, className, filter);
+		CachingServiceTracker tracker = trackers.get(key);
+		if (tracker == null)
+		{
+			closeServiceTrackersOnStop(bc);
+			tracker = createServiceTracker(bc, className, filter);
+			// open the tracker before it is shared, another thread could give up waiting on a
+			// tracker that is not open yet
+			tracker.open();
+			CachingServiceTracker existing = trackers.putIfAbsent(key, tracker);
+			if (existing != null)
+			{
+				tracker.close();
+				tracker = existing;
+			}
+		}
+		return tracker;
+	}
 
-	private static ServiceTracker createServiceTracker(BundleContext bc, String className,
-		Map<String, String> props)
+	/**
+	 * Registers a listener closing the trackers of the bundle context when its bundle is stopping,
+	 * so they do not outlive the bundle if {@link #closeServiceTrackers(BundleContext)} is not
+	 * called.
+	 */
+	private static void closeServiceTrackersOnStop(final BundleContext bc)
+	{
+		if (stopListeners.containsKey(bc))
+		{
+			return;
+		}
+		final Bundle bundle = bc.getBundle();
+		BundleListener listener = new SynchronousBundleListener()
+		{
+			public void bundleChanged(BundleEvent event)
+			{
+				if (event.getType() == BundleEvent.STOPPING && bundle.equals(event.getBundle()))
+				{
+					closeServiceTrackers(bc);
+				}
+			}
+		};
+		if (stopListeners.putIfAbsent(bc, listener) == null)
+		{
+			bc.addBundleListener(listener);
+		}
+	}
+
+	private static CachingServiceTracker createServiceTracker(BundleContext bc, String className,
+		String filter)
+	{
+		if (filter == null)
+		{
+			return new CachingServiceTracker(bc, className);
+		}
+
+		try
+		{
+			return new CachingServiceTracker(bc, FrameworkUtil.createFilter(filter));
+		}
+		catch (InvalidSyntaxException exc)
+		{
+			throw new WicketRuntimeException(exc);
+		}
+	}
+
+	private static String createFilter(String className, Map<String, String> props)
 	{
 		if (props == null || props.isEmpty())
 		{
-			return new ServiceTracker(bc, className, null);
+			return null;
 		}
 
 		StringBuilder builder = new StringBuilder("(&(objectClass=");
@@ -131,16 +248,88 @@ public class OsgiServiceLookup
 			builder.append(')');
 		}
 		builder.append(')');
-		try
+		return builder.toString();
+	}
+
+	private static final class TrackerKey
+	{
+		private final BundleContext bundleContext;
+		private final String className;
+		private final String filter;
+
+		private TrackerKey(BundleContext bundleContext, String className, String filter)
 		{
-			Filter filter;
-			filter = FrameworkUtil.createFilter(builder.toString());
-			ServiceTracker tracker = new ServiceTracker(bc, filter, null);
-			return tracker;
+			this.bundleContext = bundleContext;
+			this.className = className;
+			this.filter = filter;
 		}
-		catch (InvalidSyntaxException exc)
+
+		@Override
+		public boolean equals(Object obj)
 		{
-			throw new WicketRuntimeException(exc);
+			if (obj instanceof TrackerKey)
+			{
+				TrackerKey other = (TrackerKey)obj;
+				return bundleContext == other.bundleContext && className.equals(other.className) &&
+					Objects.equal(filter, other.filter);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(bundleContext) + 31 * className.hashCode() +
+				(filter == null ? 0 : 127 * filter.hashCode());
+		}
+	}
+
+	/**
+	 * A service tracker which remembers the service it returned together with the tracking count
+	 * at that time. Every registration, modification and unregistration of a tracked service
+	 * changes the tracking count, which invalidates the remembered service.
+	 */
+	private static final class CachingServiceTracker extends ServiceTracker
+	{
+		private volatile CachedService cached;
+
+		private CachingServiceTracker(BundleContext bc, String className)
+		{
+			super(bc, className, null);
+		}
+
+		private CachingServiceTracker(BundleContext bc, Filter filter)
+		{
+			super(bc, filter, null);
+		}
+
+		private Object getCachedService()
+		{
+			// read the count first, a change during getService() then invalidates the result
+			int trackingCount = getTrackingCount();
+			CachedService c = cached;
+			if (c != null && c.trackingCount == trackingCount)
+			{
+				return c.service;
+			}
+			Object service = getService();
+			if (service != null)
+			{
+				cached = new CachedService(service, trackingCount);
+			}
+			return service;
+		}
+	}
+
+	private static final class CachedService
+	{
+		private final Object service;
+		private final int trackingCount;
+
+		private CachedService(Object service, int trackingCount)
+		{
+			this.service = service;
+			this.trackingCount = trackingCount;
 		}
 	}
 }
@@ -0,0 +1,112 @@
+package org.wicketstuff.osgi.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class OsgiServiceLookupTest
+{
+	private static final String SERVICE = "org.wicketstuff.osgi.test.Service";
+
+	private ServiceRegistryStandIn registry;
+
+	private BundleContext bc;
+
+	@Before
+	public void createRegistry()
+	{
+		registry = new ServiceRegistryStandIn();
+		bc = registry.getBundleContext();
+	}
+
+	@After
+	public void closeTrackers()
+	{
+		OsgiServiceLookup.closeServiceTrackers(bc);
+	}
+
+	@Test
+	public void lookupReturnsRegisteredService()
+	{
+		registry.register(SERVICE, "first", null);
+		Assert.assertEquals("first", OsgiServiceLookup.getOsgiService(bc, SERVICE));
+	}
+
+	@Test
+	public void repeatedLookupDoesNotQueryRegistry()
+	{
+		registry.register(SERVICE, "first", null);
+		OsgiServiceLookup.getOsgiService(bc, SERVICE);
+
+		int queries = registry.getQueryCount();
+		int gets = registry.getServiceGetCount();
+		for (int i = 0; i < 100; i++)
+		{
+			Assert.assertEquals("first", OsgiServiceLookup.getOsgiService(bc, SERVICE));
+		}
+		Assert.assertEquals(queries, registry.getQueryCount());
+		Assert.assertEquals(gets, registry.getServiceGetCount());
+		Assert.assertEquals(1, registry.getListenerCount());
+	}
+
+	@Test
+	public void unregisteredServiceIsReplaced()
+	{
+		ServiceRegistryStandIn.Registration first = registry.register(SERVICE, "first", null);
+		Assert.assertEquals("first", OsgiServiceLookup.getOsgiService(bc, SERVICE));
+
+		first.unregister();
+		registry.register(SERVICE, "second", null);
+		Assert.assertEquals("second", OsgiServiceLookup.getOsgiService(bc, SERVICE));
+	}
+
+	@Test
+	public void lookupMatchesProperties()
+	{
+		registry.register(SERVICE, "unnamed", null);
+		Map<String, String> props = Collections.singletonMap("name", "named");
+		registry.register(SERVICE, "named", props);
+
+		Assert.assertEquals("named",
+			OsgiServiceLookup.<Object> getOsgiService(bc, SERVICE, 1000, props));
+	}
+
+	@Test(expected = WicketRuntimeException.class)
+	public void missingServiceTimesOut()
+	{
+		OsgiServiceLookup.getOsgiService(bc, SERVICE, 10, null);
+	}
+
+	@Test
+	public void closeServiceTrackersRemovesListeners()
+	{
+		registry.register(SERVICE, "first", null);
+		OsgiServiceLookup.getOsgiService(bc, SERVICE);
+		Assert.assertEquals(1, registry.getListenerCount());
+		Assert.assertEquals(1, registry.getBundleListenerCount());
+
+		OsgiServiceLookup.closeServiceTrackers(bc);
+		Assert.assertEquals(0, registry.getListenerCount());
+		Assert.assertEquals(0, registry.getBundleListenerCount());
+	}
+
+	@Test
+	public void trackersAreClosedWhenBundleStops()
+	{
+		Map<String, String> props = Collections.singletonMap("name", "named");
+		registry.register(SERVICE, "named", props);
+		OsgiServiceLookup.getOsgiService(bc, SERVICE);
+		OsgiServiceLookup.getOsgiService(bc, SERVICE, 1000, props);
+		Assert.assertEquals(2, registry.getListenerCount());
+
+		registry.stopBundle();
+		Assert.assertEquals(0, registry.getListenerCount());
+		Assert.assertEquals(0, registry.getBundleListenerCount());
+	}
+}
@@ -0,0 +1,350 @@
+package org.wicketstuff.osgi.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * An in-memory service registry standing in for an embedded OSGi framework. It implements the
+ * parts of the {@link BundleContext} a ServiceTracker uses: service listeners, reference queries
+ * and getting services, and counts the registry queries and service gets. Bundle listeners are
+ * notified when the bundle of the context is stopped with {@link #stopBundle()}.
+ * 
+ */
+public class ServiceRegistryStandIn
+{
+	private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	private final Map<ServiceListener, Filter[]> listeners = new ConcurrentHashMap<ServiceListener, Filter[]>();
+
+	private final List<BundleListener> bundleListeners = new CopyOnWriteArrayList<BundleListener>();
+
+	private final AtomicLong nextServiceId = new AtomicLong(1);
+
+	private final AtomicInteger queries = new AtomicInteger();
+
+	private final AtomicInteger gets = new AtomicInteger();
+
+	private final BundleContext bundleContext;
+
+	private final Bundle bundle;
+
+	public ServiceRegistryStandIn()
+	{
+		bundle = (Bundle)Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] { Bundle.class }, new InvocationHandler()
+			{
+				public Object invoke(Object proxy, Method method, Object[] args)
+				{
+					if (method.getName().equals("equals"))
+					{
+						return Boolean.valueOf(proxy == args[0]);
+					}
+					if (method.getName().equals("hashCode"))
+					{
+						return Integer.valueOf(System.identityHashCode(proxy));
+					}
+					if (method.getName().equals("toString"))
+					{
+						return "ServiceRegistryStandIn bundle";
+					}
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		bundleContext = (BundleContext)Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] { BundleContext.class }, new InvocationHandler()
+			{
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+				{
+					return invokeBundleContext(proxy, method, args);
+				}
+			});
+	}
+
+	public BundleContext getBundleContext()
+	{
+		return bundleContext;
+	}
+
+	/**
+	 * @return the number of service reference queries so far
+	 */
+	public int getQueryCount()
+	{
+		return queries.get();
+	}
+
+	/**
+	 * @return the number of {@code getService} calls so far
+	 */
+	public int getServiceGetCount()
+	{
+		return gets.get();
+	}
+
+	/**
+	 * @return the number of registered service listeners
+	 */
+	public int getListenerCount()
+	{
+		return listeners.size();
+	}
+
+	/**
+	 * @return the number of registered bundle listeners
+	 */
+	public int getBundleListenerCount()
+	{
+		return bundleListeners.size();
+	}
+
+	/**
+	 * Notifies the bundle listeners that the bundle of the context is stopping.
+	 */
+	public void stopBundle()
+	{
+		BundleEvent event = new BundleEvent(BundleEvent.STOPPING, bundle);
+		for (BundleListener listener : bundleListeners)
+		{
+			listener.bundleChanged(event);
+		}
+	}
+
+	public Registration register(String className, Object service, Map<String, ?> props)
+	{
+		Hashtable<String, Object> properties = new Hashtable<String, Object>();
+		if (props != null)
+		{
+			properties.putAll(props);
+		}
+		properties.put(Constants.OBJECTCLASS, new String[] { className });
+		properties.put(Constants.SERVICE_ID, Long.valueOf(nextServiceId.getAndIncrement()));
+
+		Registration registration = new Registration(service, properties);
+		registrations.add(registration);
+		fire(ServiceEvent.REGISTERED, registration.reference);
+		return registration;
+	}
+
+	private void fire(int type, ServiceReference reference)
+	{
+		ServiceEvent event = new ServiceEvent(type, reference);
+		for (Map.Entry<ServiceListener, Filter[]> entry : listeners.entrySet())
+		{
+			Filter filter = entry.getValue()[0];
+			if (filter == null || filter.match(reference))
+			{
+				entry.getKey().serviceChanged(event);
+			}
+		}
+	}
+
+	private ServiceReference[] getServiceReferences(String className, String filter)
+		throws InvalidSyntaxException
+	{
+		queries.incrementAndGet();
+		Filter f = filter == null ? null : FrameworkUtil.createFilter(filter);
+		List<ServiceReference> references = new ArrayList<ServiceReference>();
+		for (Registration registration : registrations)
+		{
+			String[] objectClass = (String[])registration.properties.get(Constants.OBJECTCLASS);
+			if ((className == null || Arrays.asList(objectClass).contains(className)) &&
+				(f == null || f.match(registration.reference)))
+			{
+				references.add(registration.reference);
+			}
+		}
+		return references.isEmpty() ? null
+			: references.toArray(new ServiceReference[references.size()]);
+	}
+
+	private Object invokeBundleContext(Object proxy, Method method, Object[] args)
+		throws Exception
+	{
+		String name = method.getName();
+		if (name.equals("addServiceListener"))
+		{
+			String filter = args.length > 1 ? (String)args[1] : null;
+			listeners.put((ServiceListener)args[0], new Filter[] { filter == null ? null
+				: FrameworkUtil.createFilter(filter) });
+			return null;
+		}
+		if (name.equals("removeServiceListener"))
+		{
+			listeners.remove(args[0]);
+			return null;
+		}
+		if (name.equals("addBundleListener"))
+		{
+			bundleListeners.add((BundleListener)args[0]);
+			return null;
+		}
+		if (name.equals("removeBundleListener"))
+		{
+			bundleListeners.remove(args[0]);
+			return null;
+		}
+		if (name.equals("getBundle"))
+		{
+			return bundle;
+		}
+		if (name.equals("getServiceReferences") || name.equals("getAllServiceReferences"))
+		{
+			return getServiceReferences((String)args[0], (String)args[1]);
+		}
+		if (name.equals("getServiceReference"))
+		{
+			ServiceReference[] references = getServiceReferences((String)args[0], null);
+			return references == null ? null : references[0];
+		}
+		if (name.equals("getService"))
+		{
+			gets.incrementAndGet();
+			for (Registration registration : registrations)
+			{
+				if (registration.reference == args[0])
+				{
+					return registration.service;
+				}
+			}
+			return null;
+		}
+		if (name.equals("ungetService"))
+		{
+			return Boolean.TRUE;
+		}
+		if (name.equals("createFilter"))
+		{
+			return FrameworkUtil.createFilter((String)args[0]);
+		}
+		if (name.equals("equals"))
+		{
+			return Boolean.valueOf(proxy == args[0]);
+		}
+		if (name.equals("hashCode"))
+		{
+			return Integer.valueOf(System.identityHashCode(proxy));
+		}
+		if (name.equals("toString"))
+		{
+			return "ServiceRegistryStandIn";
+		}
+		throw new UnsupportedOperationException(name);
+	}
+
+	/**
+	 * A registered service.
+	 */
+	public final class Registration
+	{
+		private final Object service;
+
+		private final Hashtable<String, Object> properties;
+
+		private final ServiceReference reference;
+
+		private Registration(Object service, Hashtable<String, Object> properties)
+		{
+			this.service = service;
+			this.properties = properties;
+			reference = (ServiceReference)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ServiceReference.class }, new InvocationHandler()
+				{
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						return invokeServiceReference(proxy, method, args);
+					}
+				});
+		}
+
+		public ServiceReference getReference()
+		{
+			return reference;
+		}
+
+		public void unregister()
+		{
+			fire(ServiceEvent.UNREGISTERING, reference);
+			registrations.remove(this);
+		}
+
+		private Object invokeServiceReference(Object proxy, Method method, Object[] args)
+		{
+			String name = method.getName();
+			if (name.equals("getProperty"))
+			{
+				return properties.get(args[0]);
+			}
+			if (name.equals("getPropertyKeys"))
+			{
+				return properties.keySet().toArray(new String[properties.size()]);
+			}
+			if (name.equals("isAssignableTo"))
+			{
+				return Boolean.TRUE;
+			}
+			if (name.equals("compareTo"))
+			{
+				return Integer.valueOf(compare(this, (ServiceReference)args[0]));
+			}
+			if (name.equals("equals"))
+			{
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if (name.equals("hashCode"))
+			{
+				return Integer.valueOf(System.identityHashCode(proxy));
+			}
+			if (name.equals("toString"))
+			{
+				return "ServiceReference" + properties;
+			}
+			// getBundle, getUsingBundles
+			return null;
+		}
+	}
+
+	/**
+	 * Orders the references like the framework does: the higher ranking wins, on a tie the lower
+	 * service id.
+	 */
+	private static int compare(Registration registration, ServiceReference other)
+	{
+		int ranking = ranking(registration.reference);
+		int otherRanking = ranking(other);
+		if (ranking != otherRanking)
+		{
+			return ranking < otherRanking ? -1 : 1;
+		}
+		long id = ((Long)registration.properties.get(Constants.SERVICE_ID)).longValue();
+		long otherId = ((Long)other.getProperty(Constants.SERVICE_ID)).longValue();
+		return id == otherId ? 0 : id > otherId ? -1 : 1;
+	}
+
+	private static int ranking(ServiceReference reference)
+	{
+		Object ranking = reference.getProperty(Constants.SERVICE_RANKING);
+		return ranking instanceof Integer ? ((Integer)ranking).intValue() : 0;
+	}
+}
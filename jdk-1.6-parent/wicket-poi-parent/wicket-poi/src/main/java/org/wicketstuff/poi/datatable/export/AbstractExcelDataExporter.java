@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.List;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -35,19 +36,32 @@ import org.apache.wicket.extensions.markup.html.repeater.data.table.export.IExpo
 import org.apache.wicket.markup.repeater.data.IDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.lang.Args;
 
 /**
  * An abstract {@link IDataExporter} that exports to a POI {@link Workbook}. This has an abstract factory method to create a new
  * {@link Workbook}. This can be overridden to provide either a {@link HSSFWorkbook} or a {@link XSSFWorkbook}.
+ * <p>
+ * The rows are read from the {@link IDataProvider} in chunks of {@link #getChunkSize()} rows, and the cell style of each
+ * column is created once (see {@link #createCellStyle(IExportableColumn, int, Workbook)}) and shared by all of the cells
+ * of that column.
  *
  * @author Jesse Long
  * @see ExcelDataExporter
  * @see OOXMLDataExporter
+ * @see StreamingOOXMLDataExporter
  */
 public abstract class AbstractExcelDataExporter
 	extends AbstractDataExporter
 {
 
+	/**
+	 * The default number of rows read from the {@link IDataProvider} at a time.
+	 */
+	public static final long DEFAULT_CHUNK_SIZE = 1000;
+
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+
 	/**
 	 * Creates a new instance.
 	 *
@@ -68,6 +82,39 @@ public abstract class AbstractExcelDataExporter
 	 */
 	protected abstract Workbook createWorkbook();
 
+	/**
+	 * Releases any resources held by the workbook once it has been written, or the export failed. This does nothing by
+	 * default.
+	 *
+	 * @param workbook The {@link Workbook} created by {@link #createWorkbook()}.
+	 */
+	protected void disposeWorkbook(Workbook workbook)
+	{
+	}
+
+	/**
+	 * Returns the number of rows read from the {@link IDataProvider} at a time.
+	 *
+	 * @return the number of rows read from the {@link IDataProvider} at a time.
+	 */
+	public long getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the number of rows read from the {@link IDataProvider} at a time.
+	 *
+	 * @param chunkSize The number of rows read from the {@link IDataProvider} at a time, must be positive.
+	 * @return {@code this}, for chaining.
+	 */
+	public AbstractExcelDataExporter setChunkSize(long chunkSize)
+	{
+		Args.isTrue(chunkSize > 0, "chunkSize must be positive");
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
 	/**
 	 * Exports data to a Excel {@link Workbook}.
 	 *
@@ -83,6 +130,20 @@ public abstract class AbstractExcelDataExporter
 	{
 		Workbook workbook = createWorkbook();
 
+		try
+		{
+			populateSheet(dataProvider, columns, workbook);
+
+			workbook.write(outputStream);
+		}
+		finally
+		{
+			disposeWorkbook(workbook);
+		}
+	}
+
+	private <T> void populateSheet(IDataProvider<T> dataProvider, List<IExportableColumn<T, ?, ?>> columns, Workbook workbook)
+	{
 		Sheet sheet = workbook.createSheet();
 
 		int rowNumber = 0;
@@ -108,26 +169,57 @@ public abstract class AbstractExcelDataExporter
 			columnNumber++;
 		}
 
-		Iterator<? extends T> it = dataProvider.iterator(0, dataProvider.size());
-		while (it.hasNext())
+		CellStyle[] columnStyles = new CellStyle[columns.size()];
+
+		columnNumber = 0;
+		for (IExportableColumn<T, ?, ?> column : columns)
 		{
-			T rowObject = it.next();
-			IModel<T> rowModel = dataProvider.model(rowObject);
+			columnStyles[columnNumber] = createCellStyle(column, columnNumber, workbook);
+			columnNumber++;
+		}
 
-			row = sheet.createRow(rowNumber);
-			rowNumber++;
+		long size = dataProvider.size();
 
-			columnNumber = 0;
-			for (IExportableColumn<T, ?, ?> column : columns)
+		for (long first = 0; first < size; first += chunkSize)
+		{
+			Iterator<? extends T> it = dataProvider.iterator(first, Math.min(chunkSize, size - first));
+			while (it.hasNext())
 			{
-				Cell cell = row.createCell(columnNumber);
-				// rowNumber - 1 because 
-				populateCell(cell, rowModel, column, rowNumber - 1, columnNumber, workbook);
-				columnNumber++;
+				T rowObject = it.next();
+				IModel<T> rowModel = dataProvider.model(rowObject);
+
+				row = sheet.createRow(rowNumber);
+				rowNumber++;
+
+				columnNumber = 0;
+				for (IExportableColumn<T, ?, ?> column : columns)
+				{
+					Cell cell = row.createCell(columnNumber);
+					if (columnStyles[columnNumber] != null)
+					{
+						cell.setCellStyle(columnStyles[columnNumber]);
+					}
+					// rowNumber - 1 because 
+					populateCell(cell, rowModel, column, rowNumber - 1, columnNumber, workbook);
+					columnNumber++;
+				}
 			}
 		}
+	}
 
-		workbook.write(outputStream);
+	/**
+	 * Creates the {@link CellStyle} shared by all of the data cells of a column. This is called once per column before any
+	 * rows are exported, so that large exports do not run out of cell styles. By default this returns {@code null}, meaning
+	 * that the cells keep the default style.
+	 *
+	 * @param column The {@link IExportableColumn} for which the style is created.
+	 * @param columnIndex The zero based index of the column.
+	 * @param workbook The {@link Workbook} in which the style should be created.
+	 * @return the {@link CellStyle} of the data cells of the column, or {@code null}.
+	 */
+	protected CellStyle createCellStyle(IExportableColumn<?, ?, ?> column, int columnIndex, Workbook workbook)
+	{
+		return null;
 	}
 
 	/**
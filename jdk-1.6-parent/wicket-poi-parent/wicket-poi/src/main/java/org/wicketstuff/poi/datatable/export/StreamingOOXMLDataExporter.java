@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.poi.datatable.export;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.export.IDataExporter;
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * An {@link IDataExporter} which exports data in the Office Open XML Spreadsheet format (xlsx), like
+ * {@link OOXMLDataExporter}, but keeps only a window of the most recent rows in memory. Older rows are flushed to a
+ * temporary file, which is deleted once the spreadsheet has been written. Use this exporter for large data sets.
+ * <p>
+ * Because the flushed rows can not be accessed anymore, overridden {@code populateCell} methods must only use the cell
+ * that they are given.
+ *
+ * @see SXSSFWorkbook
+ */
+public class StreamingOOXMLDataExporter
+	extends OOXMLDataExporter
+{
+
+	/**
+	 * The default number of rows kept in memory.
+	 */
+	public static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = 100;
+
+	private int rowAccessWindowSize = DEFAULT_ROW_ACCESS_WINDOW_SIZE;
+
+	private boolean compressTempFiles = true;
+
+	/**
+	 * Creates a new instance. This sets the default format name, MIME type and file name extensions. These can be changed by
+	 * calling the relevant setters.
+	 */
+	public StreamingOOXMLDataExporter()
+	{
+		super();
+	}
+
+	/**
+	 * Returns the number of rows kept in memory.
+	 *
+	 * @return the number of rows kept in memory.
+	 */
+	public int getRowAccessWindowSize()
+	{
+		return rowAccessWindowSize;
+	}
+
+	/**
+	 * Sets the number of rows kept in memory, the older rows are flushed to a temporary file.
+	 *
+	 * @param rowAccessWindowSize The number of rows kept in memory, must be positive.
+	 * @return {@code this}, for chaining.
+	 */
+	public StreamingOOXMLDataExporter setRowAccessWindowSize(int rowAccessWindowSize)
+	{
+		Args.isTrue(rowAccessWindowSize > 0, "rowAccessWindowSize must be positive");
+		this.rowAccessWindowSize = rowAccessWindowSize;
+		return this;
+	}
+
+	/**
+	 * Returns whether the temporary files are gzip compressed.
+	 *
+	 * @return {@code true} if the temporary files are gzip compressed.
+	 */
+	public boolean isCompressTempFiles()
+	{
+		return compressTempFiles;
+	}
+
+	/**
+	 * Sets whether the temporary files are gzip compressed. Compressing them uses less disk space, at the cost of some CPU
+	 * time.
+	 *
+	 * @param compressTempFiles {@code true} to compress the temporary files.
+	 * @return {@code this}, for chaining.
+	 */
+	public StreamingOOXMLDataExporter setCompressTempFiles(boolean compressTempFiles)
+	{
+		this.compressTempFiles = compressTempFiles;
+		return this;
+	}
+
+	/**
+	 * Returns a new {@link SXSSFWorkbook}.
+	 *
+	 * @return A new {@link SXSSFWorkbook}.
+	 */
+	@Override
+	protected Workbook createWorkbook()
+	{
+		SXSSFWorkbook workbook = new SXSSFWorkbook(rowAccessWindowSize);
+		workbook.setCompressTempFiles(compressTempFiles);
+		return workbook;
+	}
+
+	/**
+	 * Deletes the temporary files of the {@link SXSSFWorkbook}.
+	 *
+	 * @param workbook The {@link SXSSFWorkbook} created by {@link #createWorkbook()}.
+	 */
+	@Override
+	protected void disposeWorkbook(Workbook workbook)
+	{
+		((SXSSFWorkbook) workbook).dispose();
+	}
+}
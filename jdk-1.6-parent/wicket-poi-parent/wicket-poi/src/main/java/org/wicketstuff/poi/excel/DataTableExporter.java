@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.poi.excel;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.wicket.Component;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.DataTable;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.export.IExportableColumn;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+
+/**
+ * Exports a {@link DataTable} whose columns are all {@link IExportableColumn}s: a header row with
+ * the column display models followed by a row for each item of the data provider. Toolbars other
+ * than the headers are not exported.
+ */
+public class DataTableExporter implements DirectTableExporter
+{
+	/**
+	 * The number of rows read from the data provider at a time.
+	 */
+	private static final long CHUNK_SIZE = 1000;
+
+	public boolean canExport(Component tableComponent)
+	{
+		if (tableComponent instanceof DataTable<?, ?> == false)
+		{
+			return false;
+		}
+		for (IColumn<?, ?> column : ((DataTable<?, ?>)tableComponent).getColumns())
+		{
+			if (column instanceof IExportableColumn<?, ?, ?> == false)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void export(Component tableComponent, Sheet sheet)
+	{
+		export((DataTable<?, ?>)tableComponent, sheet);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void export(DataTable<T, ?> table, Sheet sheet)
+	{
+		List<? extends IColumn<T, ?>> columns = table.getColumns();
+		int rowNumber = sheet.getPhysicalNumberOfRows() == 0 ? 0 : sheet.getLastRowNum() + 1;
+
+		Row row = sheet.createRow(rowNumber++);
+		for (int i = 0; i < columns.size(); i++)
+		{
+			IModel<String> displayModel = ((IExportableColumn<T, ?, ?>)columns.get(i))
+				.getDisplayModel();
+			if (displayModel != null)
+			{
+				GeneralPurposeExporter.setCellValue(row.createCell(i), displayModel.getObject());
+			}
+		}
+
+		IDataProvider<T> dataProvider = table.getDataProvider();
+		long size = dataProvider.size();
+		for (long first = 0; first < size; first += CHUNK_SIZE)
+		{
+			Iterator<? extends T> items = dataProvider.iterator(first,
+				Math.min(CHUNK_SIZE, size - first));
+			while (items.hasNext())
+			{
+				IModel<T> rowModel = dataProvider.model(items.next());
+				row = sheet.createRow(rowNumber++);
+				for (int i = 0; i < columns.size(); i++)
+				{
+					IModel<?> dataModel = ((IExportableColumn<T, ?, ?>)columns.get(i))
+						.getDataModel(rowModel);
+					if (dataModel != null)
+					{
+						Cell cell = row.createCell(i);
+						GeneralPurposeExporter.setCellValue(cell, dataModel.getObject());
+						dataModel.detach();
+					}
+				}
+				rowModel.detach();
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.poi.excel;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.wicket.Component;
+
+/**
+ * Exports a table component straight from its data and columns, without rendering it and parsing
+ * the markup. Used by {@link TableComponentAsXlsHandler} for the components it supports, the
+ * {@link TableParser} remains the fallback for any other markup.
+ * 
+ * @see DataTableExporter
+ */
+public interface DirectTableExporter
+{
+	/**
+	 * @param tableComponent
+	 *            the table component to be exported
+	 * @return true if this exporter can export the component
+	 */
+	public boolean canExport(Component tableComponent);
+
+	/**
+	 * Export all of the table data (not only the current page) to the sheet, after its last row.
+	 * 
+	 * @param tableComponent
+	 *            the table component to be exported
+	 * @param sheet
+	 *            the target sheet
+	 */
+	public void export(Component tableComponent, Sheet sheet);
+}
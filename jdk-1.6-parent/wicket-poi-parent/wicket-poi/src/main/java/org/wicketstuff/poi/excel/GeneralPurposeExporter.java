@@ -55,38 +55,7 @@ public class GeneralPurposeExporter implements CellExporter
 		{
 			Component firstMostNestedComponent = gridComponent.getPage().get(
 				possibleComponentReference.toString());
-			Object modelValue = firstMostNestedComponent.getDefaultModelObject();
-			if (modelValue != null)
-			{
-				if (modelValue instanceof Number)
-				{
-					cell.setCellValue(((Number)modelValue).doubleValue());
-				}
-				else if (modelValue instanceof CharSequence)
-				{
-					cell.setCellValue(modelValue.toString());
-				}
-				else if (modelValue instanceof CharSequence)
-				{
-					cell.setCellValue(modelValue.toString());
-				}
-				else if (modelValue instanceof Boolean)
-				{
-					cell.setCellValue((Boolean)modelValue);
-				}
-				else if (modelValue instanceof Calendar)
-				{
-					cell.setCellValue((Calendar)modelValue);
-				}
-				else if (modelValue instanceof Date)
-				{
-					cell.setCellValue((Date)modelValue);
-				}
-				else
-				{
-					cell.setCellValue(modelValue.toString());
-				}
-			}
+			setCellValue(cell, firstMostNestedComponent.getDefaultModelObject());
 		}
 		else
 		{
@@ -97,4 +66,42 @@ public class GeneralPurposeExporter implements CellExporter
 			cell.setCellValue(value);
 		}
 	}
+
+	/**
+	 * Set a model value in the cell, using the matching cell type if possible.
+	 * 
+	 * @param cell
+	 * @param modelValue
+	 *            can be null, in which case the cell is left blank
+	 */
+	static void setCellValue(Cell cell, Object modelValue)
+	{
+		if (modelValue != null)
+		{
+			if (modelValue instanceof Number)
+			{
+				cell.setCellValue(((Number)modelValue).doubleValue());
+			}
+			else if (modelValue instanceof CharSequence)
+			{
+				cell.setCellValue(modelValue.toString());
+			}
+			else if (modelValue instanceof Boolean)
+			{
+				cell.setCellValue((Boolean)modelValue);
+			}
+			else if (modelValue instanceof Calendar)
+			{
+				cell.setCellValue((Calendar)modelValue);
+			}
+			else if (modelValue instanceof Date)
+			{
+				cell.setCellValue((Date)modelValue);
+			}
+			else
+			{
+				cell.setCellValue(modelValue.toString());
+			}
+		}
+	}
 }
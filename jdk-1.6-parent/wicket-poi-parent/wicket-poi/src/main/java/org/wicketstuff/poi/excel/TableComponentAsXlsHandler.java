@@ -16,6 +16,9 @@
  */
 package org.wicketstuff.poi.excel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.wicket.Component;
@@ -40,6 +43,11 @@ import org.apache.wicket.request.resource.ResourceStreamResource;
  * RequestCycle.get().scheduleRequestHandlerAfterCurrent(handler);<br />
  * } 
  * </code>
+ * <p>
+ * Components supported by one of the {@link DirectTableExporter}s are exported straight from their
+ * data, any other component is rendered and its markup parsed by the {@link TableParser}. As long as no
+ * custom {@link CellExporter} is set, a {@link DataTableExporter} is tried after the added ones.
+ * </p>
  * 
  * @author Pedro Santos
  */
@@ -48,6 +56,10 @@ public class TableComponentAsXlsHandler implements IRequestHandler
 	private Component tableComponent;
 	private String filename;
 	private CellExporter cellExporter = new GeneralPurposeExporter();
+	private boolean customCellExporter;
+	private boolean parseMarkupOnly;
+	private final List<DirectTableExporter> directExporters = new ArrayList<DirectTableExporter>();
+	private final DataTableExporter dataTableExporter = new DataTableExporter();
 
 	/**
 	 * @param tableComponent
@@ -64,21 +76,30 @@ public class TableComponentAsXlsHandler implements IRequestHandler
 	{
 		try
 		{
-			TableParser parser = new TableParser(newSheet(), cellExporter);
-			if (tableComponent instanceof IPageable)
+			Sheet sheet = newSheet();
+			DirectTableExporter directExporter = findDirectExporter();
+			if (directExporter != null)
 			{
-				IPageable pageable = (IPageable)tableComponent;
-				for (int i = 0; i < pageable.getPageCount(); i++)
-				{
-					pageable.setCurrentPage(i);
-					parser.parse(tableComponent);
-				}
+				directExporter.export(tableComponent, sheet);
 			}
 			else
 			{
-				parser.parse(tableComponent);
+				TableParser parser = new TableParser(sheet, cellExporter);
+				if (tableComponent instanceof IPageable)
+				{
+					IPageable pageable = (IPageable)tableComponent;
+					for (int i = 0; i < pageable.getPageCount(); i++)
+					{
+						pageable.setCurrentPage(i);
+						parser.parse(tableComponent);
+					}
+				}
+				else
+				{
+					parser.parse(tableComponent);
+				}
 			}
-			XlsStream xlsStream = new XlsStream(parser.getSheet().getWorkbook());
+			XlsStream xlsStream = new XlsStream(sheet.getWorkbook());
 			ResourceStreamResource resource = new ResourceStreamResource(xlsStream);
 			resource.setFileName(filename);
 			resource.setContentDisposition(ContentDisposition.ATTACHMENT);
@@ -109,7 +130,8 @@ public class TableComponentAsXlsHandler implements IRequestHandler
 
 	/**
 	 * Set the exporter strategy to be used by this handler. The default is
-	 * {@link GeneralPurposeExporter}
+	 * {@link GeneralPurposeExporter}. Setting one disables the default {@link DataTableExporter},
+	 * which does not know about cell exporters, so the markup of data tables is parsed again.
 	 * 
 	 * @see CellExporter
 	 * @param cellExporter
@@ -117,6 +139,54 @@ public class TableComponentAsXlsHandler implements IRequestHandler
 	public void setCellExporter(CellExporter cellExporter)
 	{
 		this.cellExporter = cellExporter;
+		customCellExporter = true;
+	}
+
+	/**
+	 * Add an exporter for components that can be exported without parsing their markup, f.i. for an
+	 * other grid component. It is tried before the ones added earlier.
+	 * 
+	 * @param directExporter
+	 */
+	public void addDirectExporter(DirectTableExporter directExporter)
+	{
+		directExporters.add(0, directExporter);
+	}
+
+	/**
+	 * Whether to always render the table component and parse its markup, even if it could be
+	 * exported directly. Useful if the markup contains more than the table data, like toolbars. The
+	 * default is <code>false</code>.
+	 * 
+	 * @param parseMarkupOnly
+	 */
+	public void setParseMarkupOnly(boolean parseMarkupOnly)
+	{
+		this.parseMarkupOnly = parseMarkupOnly;
+	}
+
+	/**
+	 * @return the exporter used for the table component, or <code>null</code> if its markup is
+	 *         parsed
+	 */
+	DirectTableExporter findDirectExporter()
+	{
+		if (parseMarkupOnly)
+		{
+			return null;
+		}
+		for (DirectTableExporter directExporter : directExporters)
+		{
+			if (directExporter.canExport(tableComponent))
+			{
+				return directExporter;
+			}
+		}
+		if (!customCellExporter && dataTableExporter.canExport(tableComponent))
+		{
+			return dataTableExporter;
+		}
+		return null;
 	}
 
 }
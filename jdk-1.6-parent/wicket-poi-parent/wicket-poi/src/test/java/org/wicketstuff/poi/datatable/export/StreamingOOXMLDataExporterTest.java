@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.poi.datatable.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.PropertyColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.export.IExportableColumn;
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+
+
+public class StreamingOOXMLDataExporterTest extends TestCase
+{
+	private WicketTester tester;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		tester = new WicketTester();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		tester.destroy();
+	}
+
+	public void testExportInChunks() throws Exception
+	{
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 1050; i++)
+		{
+			data.add(i);
+		}
+
+		final List<Long> pages = new ArrayList<Long>();
+		ListDataProvider<Integer> dataProvider = new ListDataProvider<Integer>(data)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Iterator<Integer> iterator(long first, long count)
+			{
+				pages.add(first);
+				return super.iterator(first, count);
+			}
+		};
+
+		List<IExportableColumn<Integer, ?, ?>> columns = new ArrayList<IExportableColumn<Integer, ?, ?>>();
+		columns.add(new PropertyColumn<Integer, String>(Model.of("value"), "intValue"));
+
+		StreamingOOXMLDataExporter exporter = new StreamingOOXMLDataExporter();
+		exporter.setRowAccessWindowSize(10);
+		exporter.setChunkSize(500);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.exportData(dataProvider, columns, out);
+
+		assertEquals(3, pages.size());
+		assertEquals(Long.valueOf(1000), pages.get(2));
+
+		Sheet sheet = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray())).getSheetAt(0);
+		assertEquals(1050, sheet.getLastRowNum());
+		assertEquals("value", sheet.getRow(0).getCell(0).getStringCellValue());
+		assertEquals(0d, sheet.getRow(1).getCell(0).getNumericCellValue());
+		assertEquals(1049d, sheet.getRow(1050).getCell(0).getNumericCellValue());
+	}
+}
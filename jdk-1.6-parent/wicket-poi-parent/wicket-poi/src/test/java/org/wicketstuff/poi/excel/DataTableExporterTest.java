@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.poi.excel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.AbstractColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.grid.ICellPopulator;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.DataTable;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.PropertyColumn;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.tester.WicketTester;
+
+public class DataTableExporterTest extends TestCase
+{
+	private WicketTester tester;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		tester = new WicketTester();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		tester.destroy();
+	}
+
+	private static DataTable<Integer, String> newTable(List<IColumn<Integer, String>> columns)
+	{
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 2500; i++)
+		{
+			data.add(i);
+		}
+		return new DataTable<Integer, String>("table", columns, new ListDataProvider<Integer>(data),
+			10);
+	}
+
+	public void testExportAllPages()
+	{
+		List<IColumn<Integer, String>> columns = new ArrayList<IColumn<Integer, String>>();
+		columns.add(new PropertyColumn<Integer, String>(Model.of("value"), "intValue"));
+		columns.add(new PropertyColumn<Integer, String>(Model.of("type"), "class.simpleName"));
+		DataTable<Integer, String> table = newTable(columns);
+
+		DataTableExporter exporter = new DataTableExporter();
+		assertTrue(exporter.canExport(table));
+
+		Sheet sheet = new HSSFWorkbook().createSheet();
+		exporter.export(table, sheet);
+
+		assertEquals(2500, sheet.getLastRowNum());
+		assertEquals("value", sheet.getRow(0).getCell(0).getStringCellValue());
+		assertEquals("type", sheet.getRow(0).getCell(1).getStringCellValue());
+		assertEquals(0d, sheet.getRow(1).getCell(0).getNumericCellValue());
+		assertEquals(2499d, sheet.getRow(2500).getCell(0).getNumericCellValue());
+		assertEquals("Integer", sheet.getRow(2500).getCell(1).getStringCellValue());
+	}
+
+	public void testNotExportableColumn()
+	{
+		List<IColumn<Integer, String>> columns = new ArrayList<IColumn<Integer, String>>();
+		columns.add(new AbstractColumn<Integer, String>(Model.of("value"))
+		{
+			private static final long serialVersionUID = 1L;
+
+			public void populateItem(Item<ICellPopulator<Integer>> cellItem, String componentId,
+				IModel<Integer> rowModel)
+			{
+			}
+		});
+
+		assertFalse(new DataTableExporter().canExport(newTable(columns)));
+	}
+
+	public void testHandlerExportsDirectly()
+	{
+		TableComponentAsXlsHandler handler = new TableComponentAsXlsHandler(newPropertyTable(),
+			"table.xls");
+		assertTrue(handler.findDirectExporter() instanceof DataTableExporter);
+	}
+
+	public void testHandlerParsesMarkupForCustomCellExporter()
+	{
+		TableComponentAsXlsHandler handler = new TableComponentAsXlsHandler(newPropertyTable(),
+			"table.xls");
+		handler.setCellExporter(new GeneralPurposeExporter());
+		assertNull(handler.findDirectExporter());
+	}
+
+	public void testHandlerParseMarkupOnly()
+	{
+		TableComponentAsXlsHandler handler = new TableComponentAsXlsHandler(newPropertyTable(),
+			"table.xls");
+		handler.setParseMarkupOnly(true);
+		assertNull(handler.findDirectExporter());
+		handler.setParseMarkupOnly(false);
+		assertNotNull(handler.findDirectExporter());
+	}
+
+	private static DataTable<Integer, String> newPropertyTable()
+	{
+		List<IColumn<Integer, String>> columns = new ArrayList<IColumn<Integer, String>>();
+		columns.add(new PropertyColumn<Integer, String>(Model.of("value"), "intValue"));
+		return newTable(columns);
+	}
+}
@@ -18,7 +18,6 @@ package org.wicketstuff.security.hive;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -43,6 +42,12 @@ public class BasicHive implements Hive
 	 */
 	private ManyToManyMap<Permission, Principal> principals;
 
+	/**
+	 * Groups the permissions in {@link #principals} so implies checks can skip permissions that can
+	 * never match.
+	 */
+	private final PermissionIndex index = new PermissionIndex();
+
 	/**
 	 * indicates if permissions and or principals are accepted by the hive.
 	 */
@@ -103,7 +108,7 @@ public class BasicHive implements Hive
 		boolean debug = log.isDebugEnabled();
 		for (Permission next : permissions)
 		{
-			principals.add(next, principal);
+			addMapping(next, principal);
 			if (debug)
 				log.debug("Adding " + next + " to " + principal);
 		}
@@ -129,11 +134,18 @@ public class BasicHive implements Hive
 			throw new IllegalArgumentException("A principal is required.");
 		if (permission == null)
 			throw new IllegalArgumentException("A permission is required.");
-		principals.add(permission, principal);
+		addMapping(permission, principal);
 		if (log.isDebugEnabled())
 			log.debug("Adding " + permission + " to " + principal);
 	}
 
+	private void addMapping(Permission permission, Principal principal)
+	{
+		if (!principals.containsLeft(permission))
+			index.add(permission);
+		principals.add(permission, principal);
+	}
+
 	/**
 	 * @see org.wicketstuff.security.hive.Hive#containsPrincipal(org.wicketstuff.security.hive.authorization.Principal)
 	 */
@@ -195,11 +207,10 @@ public class BasicHive implements Hive
 			cacheResult(subject, permission, true);
 			return true;
 		}
-		// permission has no exact match, perform an implies check
-		Iterator<Permission> it = principals.leftIterator();
-		while (it.hasNext())
+		// permission has no exact match, perform an implies check on all permissions that might
+		// imply it
+		for (Permission possibleMatch : index.getCandidates(permission))
 		{
-			Permission possibleMatch = it.next();
 			if (!possibleMatch.implies(permission))
 				continue;
 			if (hasPrincipal(subject, principals.getRight(possibleMatch)))
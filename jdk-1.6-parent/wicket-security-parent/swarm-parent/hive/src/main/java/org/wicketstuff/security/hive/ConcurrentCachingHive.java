@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.wicketstuff.security.hive.authentication.Subject;
+import org.wicketstuff.security.hive.authorization.Permission;
+
+/**
+ * A thread safe caching mechanism on top of {@link BasicHive}. Results are kept in a number of
+ * segments, each guarded by its own lock, so concurrent checks rarely wait for each other. Every
+ * segment evicts its least recently used results once the cache reaches its maximum size, and
+ * results older than the time to live are never returned.
+ * 
+ * Subjects are replaced by a new instance on every login or logoff, so results of old subjects are
+ * never hit again. The cache only holds weak references to the subjects, results of a subject are
+ * dropped once it is garbage collected, f.i. after its session expired. Call
+ * {@link #clearCache(Subject)} to drop them immediately. Statistics are available through JMX by
+ * registering this hive with an {@link javax.management.MBeanServer}.
+ */
+public class ConcurrentCachingHive extends BasicHive implements ConcurrentCachingHiveMBean
+{
+	/**
+	 * Default maximum number of cached results.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	/**
+	 * Default time to live of a cached result: 10 minutes.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(10);
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments;
+
+	private final int maximumSize;
+
+	private final long timeToLive;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong expirations = new AtomicLong();
+
+	/**
+	 * Construct a hive caching at most {@link #DEFAULT_MAXIMUM_SIZE} results for
+	 * {@link #DEFAULT_TIME_TO_LIVE} milliseconds.
+	 */
+	public ConcurrentCachingHive()
+	{
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param maximumSize
+	 *            the maximum number of cached results
+	 * @param timeToLive
+	 *            the number of milliseconds a result is cached, 0 means forever
+	 * @throws IllegalArgumentException
+	 *             if maximumSize is smaller than 1 or timeToLive is negative
+	 */
+	public ConcurrentCachingHive(int maximumSize, long timeToLive)
+	{
+		if (maximumSize < 1)
+			throw new IllegalArgumentException("The maximum size must be at least 1.");
+		if (timeToLive < 0)
+			throw new IllegalArgumentException("The time to live must not be negative.");
+		this.maximumSize = maximumSize;
+		this.timeToLive = timeToLive;
+		int segmentCount = Math.min(SEGMENTS, Integer.highestOneBit(maximumSize));
+		int segmentSize = (maximumSize + segmentCount - 1) / segmentCount;
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment(segmentSize);
+	}
+
+	@Override
+	protected Boolean cacheLookUp(Subject subject, Permission permission)
+	{
+		if (permission == null)
+			return null;
+		CacheKey key = new CacheKey(subject, permission);
+		Boolean result = segmentFor(key).get(key, currentTime());
+		if (result == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return result;
+	}
+
+	@Override
+	protected void cacheResult(Subject subject, Permission permission, boolean result)
+	{
+		if (permission == null)
+			return;
+		CacheKey key = new CacheKey(subject, permission);
+		long expires = timeToLive == 0 ? Long.MAX_VALUE : currentTime() + timeToLive;
+		Segment segment = segmentFor(key);
+		segment.put(key.weak(segment.staleSubjects), new CacheValue(result, expires));
+	}
+
+	/**
+	 * Removes all cached results of a subject, typically called after the subject logged off.
+	 * 
+	 * @param subject
+	 *            the subject, null for results of unauthenticated checks
+	 */
+	public void clearCache(Subject subject)
+	{
+		for (Segment segment : segments)
+			segment.removeSubject(subject);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#clearCache()
+	 */
+	public void clearCache()
+	{
+		for (Segment segment : segments)
+			segment.clear();
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#resetStatistics()
+	 */
+	public void resetStatistics()
+	{
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		expirations.set(0);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getHitCount()
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getMissCount()
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getEvictionCount()
+	 */
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getExpirationCount()
+	 */
+	public long getExpirationCount()
+	{
+		return expirations.get();
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getSize()
+	 */
+	public int getSize()
+	{
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getMaximumSize()
+	 */
+	public int getMaximumSize()
+	{
+		return maximumSize;
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.ConcurrentCachingHiveMBean#getTimeToLive()
+	 */
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+
+	/**
+	 * The current time in milliseconds, used to expire results.
+	 * 
+	 * @return the current time
+	 */
+	protected long currentTime()
+	{
+		return System.currentTimeMillis();
+	}
+
+	private Segment segmentFor(CacheKey key)
+	{
+		int hash = key.hashCode();
+		// spread the bits, permissions often have poor hashcodes in the lower bits
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	/**
+	 * Part of the cache with its own lock and least recently used order.
+	 */
+	private final class Segment
+	{
+		private final LinkedHashMap<CacheKey, CacheValue> entries;
+
+		private final ReferenceQueue<Subject> staleSubjects = new ReferenceQueue<Subject>();
+
+		public Segment(final int maximumSize)
+		{
+			entries = new LinkedHashMap<CacheKey, CacheValue>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheValue> eldest)
+				{
+					if (size() > maximumSize)
+					{
+						evictions.incrementAndGet();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		public synchronized Boolean get(CacheKey key, long now)
+		{
+			removeStaleEntries();
+			CacheValue value = entries.get(key);
+			if (value == null)
+				return null;
+			if (value.expires <= now)
+			{
+				entries.remove(key);
+				expirations.incrementAndGet();
+				return null;
+			}
+			return Boolean.valueOf(value.result);
+		}
+
+		public synchronized void put(CacheKey key, CacheValue value)
+		{
+			removeStaleEntries();
+			entries.put(key, value);
+		}
+
+		public synchronized void removeSubject(Subject subject)
+		{
+			removeStaleEntries();
+			Iterator<CacheKey> it = entries.keySet().iterator();
+			while (it.hasNext())
+			{
+				if (it.next().hasSubject(subject))
+					it.remove();
+			}
+		}
+
+		public synchronized void clear()
+		{
+			entries.clear();
+		}
+
+		public synchronized int size()
+		{
+			removeStaleEntries();
+			return entries.size();
+		}
+
+		/**
+		 * Removes the results of subjects which were garbage collected.
+		 */
+		private void removeStaleEntries()
+		{
+			SubjectReference reference;
+			while ((reference = (SubjectReference)staleSubjects.poll()) != null)
+				entries.remove(reference.key);
+		}
+	}
+
+	/**
+	 * Subject and permission combination. Keys used for look ups hold the subject itself, keys
+	 * stored in the cache only a weak reference to it.
+	 */
+	private static final class CacheKey
+	{
+		private final Subject subject;
+
+		private final SubjectReference subjectReference;
+
+		private final Permission permission;
+
+		private final int hash;
+
+		public CacheKey(Subject subject, Permission permission)
+		{
+			this(subject, null, permission,
+				31 * (subject == null ? 0 : subject.hashCode()) + permission.hashCode());
+		}
+
+		private CacheKey(Subject subject, SubjectReference subjectReference,
+			Permission permission, int hash)
+		{
+			this.subject = subject;
+			this.subjectReference = subjectReference;
+			this.permission = permission;
+			this.hash = hash;
+		}
+
+		/**
+		 * @param queue
+		 *            the queue the reference is enqueued in once the subject is garbage collected
+		 * @return a key for storing in the cache
+		 */
+		public CacheKey weak(ReferenceQueue<Subject> queue)
+		{
+			if (subject == null)
+				return this;
+			SubjectReference reference = new SubjectReference(subject, queue);
+			CacheKey key = new CacheKey(null, reference, permission, hash);
+			reference.key = key;
+			return key;
+		}
+
+		public boolean hasSubject(Subject other)
+		{
+			if (subjectReference == null)
+				return subject == null ? other == null : subject.equals(other);
+			Subject referent = subjectReference.get();
+			// a garbage collected subject does not equal any other
+			return referent != null && referent.equals(other);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj == this)
+				return true;
+			if (obj instanceof CacheKey)
+			{
+				CacheKey other = (CacheKey)obj;
+				if (hash != other.hash || !permission.equals(other.permission))
+					return false;
+				if (subjectReference == null)
+					return other.hasSubject(subject);
+				Subject referent = subjectReference.get();
+				return referent != null && other.hasSubject(referent);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Weak reference to the subject of a stored key, which knows its key to remove it from the
+	 * cache.
+	 */
+	private static final class SubjectReference extends WeakReference<Subject>
+	{
+		private CacheKey key;
+
+		public SubjectReference(Subject subject, ReferenceQueue<Subject> queue)
+		{
+			super(subject, queue);
+		}
+	}
+
+	/**
+	 * Cached result with the time it expires.
+	 */
+	private static final class CacheValue
+	{
+		private final boolean result;
+
+		private final long expires;
+
+		public CacheValue(boolean result, long expires)
+		{
+			this.result = result;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive;
+
+/**
+ * JMX view of the cache of a {@link ConcurrentCachingHive}.
+ */
+public interface ConcurrentCachingHiveMBean
+{
+	/**
+	 * @return number of permission checks answered by the cache
+	 */
+	public long getHitCount();
+
+	/**
+	 * @return number of permission checks that had to be evaluated by the hive
+	 */
+	public long getMissCount();
+
+	/**
+	 * @return number of results removed from the cache to make room for new ones
+	 */
+	public long getEvictionCount();
+
+	/**
+	 * @return number of results removed from the cache because they were too old
+	 */
+	public long getExpirationCount();
+
+	/**
+	 * @return number of results currently cached
+	 */
+	public int getSize();
+
+	/**
+	 * @return the maximum number of cached results
+	 */
+	public int getMaximumSize();
+
+	/**
+	 * @return the number of milliseconds a result is cached, 0 means forever
+	 */
+	public long getTimeToLive();
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void clearCache();
+
+	/**
+	 * Sets the hit, miss, eviction and expiration counters back to 0.
+	 */
+	public void resetStatistics();
+}
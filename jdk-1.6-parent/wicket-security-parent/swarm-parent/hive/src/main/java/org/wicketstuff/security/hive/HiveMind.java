@@ -88,7 +88,8 @@ public class HiveMind
 	}
 
 	/**
-	 * Removes the registration of a single Hive.
+	 * Removes the registration of a single Hive. Cached results of a {@link ConcurrentCachingHive}
+	 * are dropped, so a reloaded policy never mixes with results of the old one.
 	 * 
 	 * @param queen
 	 *            the key the Hive is registered with
@@ -96,6 +97,13 @@ public class HiveMind
 	 */
 	public static Hive unregisterHive(Object queen)
 	{
-		return INSTANCE.hiveCollection.remove(queen);
+		Hive hive;
+		synchronized (INSTANCE.hiveCollection)
+		{
+			hive = INSTANCE.hiveCollection.remove(queen);
+		}
+		if (hive instanceof ConcurrentCachingHive)
+			((ConcurrentCachingHive)hive).clearCache();
+		return hive;
 	}
 }
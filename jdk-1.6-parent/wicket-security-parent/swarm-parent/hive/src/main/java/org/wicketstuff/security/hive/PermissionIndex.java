@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
+import org.wicketstuff.security.hive.authorization.Permission;
+
+/**
+ * Groups permissions by their {@link ImplicationScope} and name, so a hive only has to ask the
+ * permissions that could possibly imply a permission instead of every permission it contains.
+ * Permissions with the scope {@link ImplicationScope#ANY} are always candidates. This index is not
+ * thread safe, like the rest of the hive it is only modified while the hive is being built.
+ */
+final class PermissionIndex
+{
+	/**
+	 * permissions that only imply permissions with the same name
+	 */
+	private final Map<String, List<Permission>> byName = new HashMap<String, List<Permission>>();
+
+	/**
+	 * permissions that imply permissions starting with their name
+	 */
+	private final Map<String, List<Permission>> byPrefix = new HashMap<String, List<Permission>>();
+
+	/**
+	 * lengths of all the keys in {@link #byPrefix}, so only existing prefixes have to be looked up
+	 */
+	private final SortedSet<Integer> prefixLengths = new TreeSet<Integer>();
+
+	/**
+	 * permissions that might imply anything
+	 */
+	private final List<Permission> unscoped = new ArrayList<Permission>();
+
+	/**
+	 * Adds a permission to the index. Each permission should only be added once.
+	 * 
+	 * @param permission
+	 */
+	public void add(Permission permission)
+	{
+		ImplicationScope scope = permission.getImplicationScope();
+		String name = permission.getName();
+		if (scope == ImplicationScope.NAME && name != null)
+			add(byName, name, permission);
+		else if (scope == ImplicationScope.NAME_PREFIX && name != null)
+		{
+			add(byPrefix, name, permission);
+			prefixLengths.add(Integer.valueOf(name.length()));
+		}
+		else
+			unscoped.add(permission);
+	}
+
+	private static void add(Map<String, List<Permission>> map, String key, Permission permission)
+	{
+		List<Permission> list = map.get(key);
+		if (list == null)
+		{
+			list = new ArrayList<Permission>(2);
+			map.put(key, list);
+		}
+		list.add(permission);
+	}
+
+	/**
+	 * Returns all permissions that might imply the specified permission. Each of them still has to
+	 * be checked with {@link Permission#implies(Permission)}.
+	 * 
+	 * @param permission
+	 *            the permission being checked
+	 * @return the candidates, never null
+	 */
+	public List<Permission> getCandidates(Permission permission)
+	{
+		String name = permission.getName();
+		if (name == null)
+			return unscoped;
+		List<Permission> named = byName.get(name);
+		if (named == null && prefixLengths.isEmpty())
+			return unscoped;
+		List<Permission> candidates = new ArrayList<Permission>();
+		candidates.addAll(unscoped);
+		if (named != null)
+			candidates.addAll(named);
+		for (Integer length : prefixLengths)
+		{
+			if (length.intValue() > name.length())
+				break;
+			List<Permission> prefixed = byPrefix.get(name.substring(0, length.intValue()));
+			if (prefixed != null)
+				candidates.addAll(prefixed);
+		}
+		return candidates;
+	}
+}
@@ -30,7 +30,10 @@ import org.wicketstuff.security.hive.authorization.Permission;
  * how long it takes after a user logs off to clear the cached results.
  * 
  * @author marrink
+ * @deprecated the cache is not bounded and not safe for concurrent use, use
+ *             {@link ConcurrentCachingHive} instead
  */
+@Deprecated
 public class SimpleCachingHive extends BasicHive
 {
 	private final WeakHashMap<Subject, Map<Permission, Boolean>> cache;
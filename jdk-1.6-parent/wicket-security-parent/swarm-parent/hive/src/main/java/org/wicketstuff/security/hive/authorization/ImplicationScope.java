@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive.authorization;
+
+/**
+ * Describes which permissions a {@link Permission} can possibly imply, judged by their name only.
+ * Hives use this to index their permissions so not every permission has to be asked if it
+ * implies a permission that is being checked. The scope may be wider than the real implies logic
+ * but never narrower.
+ * 
+ * @see Permission#getImplicationScope()
+ */
+public enum ImplicationScope
+{
+	/**
+	 * Only permissions with exactly the same name can be implied.
+	 */
+	NAME,
+	/**
+	 * Only permissions whose name starts with the name of this permission can be implied.
+	 */
+	NAME_PREFIX,
+	/**
+	 * Any permission might be implied, regardless of its name.
+	 */
+	ANY;
+}
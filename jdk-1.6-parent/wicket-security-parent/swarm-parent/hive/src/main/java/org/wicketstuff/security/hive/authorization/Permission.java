@@ -78,6 +78,19 @@ public abstract class Permission implements Serializable
 	 */
 	public abstract boolean implies(Permission permission);
 
+	/**
+	 * Tells a hive which permissions this permission can imply, so it can skip the implies check
+	 * for permissions that can never match. Subclasses overriding this method must make sure that
+	 * {@link #implies(Permission)} never returns true for a permission outside the returned scope.
+	 * By default any permission might be implied.
+	 * 
+	 * @return the scope of permissions this permission might imply, never null
+	 */
+	public ImplicationScope getImplicationScope()
+	{
+		return ImplicationScope.ANY;
+	}
+
 	/**
 	 * Checks two Permission objects for equality.
 	 * <P>
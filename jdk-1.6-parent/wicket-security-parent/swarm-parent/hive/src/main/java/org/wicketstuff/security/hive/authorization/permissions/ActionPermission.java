@@ -18,6 +18,7 @@ package org.wicketstuff.security.hive.authorization.permissions;
 
 import org.wicketstuff.security.actions.Inherit;
 import org.wicketstuff.security.actions.WaspAction;
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
 import org.wicketstuff.security.hive.authorization.Permission;
 import org.wicketstuff.security.hive.config.HiveFactory;
 
@@ -108,6 +109,48 @@ public class ActionPermission extends Permission
 		return false;
 	}
 
+	/**
+	 * Permissions with the inherit action imply permissions whose name starts with this name, others
+	 * only imply permissions with the same name. Subclasses overriding {@link #implies(Permission)}
+	 * fall back to {@link ImplicationScope#ANY} unless they override this method as well.
+	 * 
+	 * @see Permission#getImplicationScope()
+	 */
+	@Override
+	public ImplicationScope getImplicationScope()
+	{
+		return getImplicationScope(ActionPermission.class);
+	}
+
+	/**
+	 * Returns the name based scope of {@link ActionPermission#implies(Permission)}, but only if the
+	 * implies logic of this permission is still the one declared by the specified class. Subclasses
+	 * that only narrow down {@link #implies(Permission)} can use this to keep being indexed.
+	 * 
+	 * @param impliesOwner
+	 *            the class whose implementation of {@link #implies(Permission)} has been verified
+	 *            to stay within the name based scope
+	 * @return {@link ImplicationScope#NAME} or {@link ImplicationScope#NAME_PREFIX} if the implies
+	 *         logic was not changed by another subclass, {@link ImplicationScope#ANY} otherwise
+	 */
+	protected final ImplicationScope getImplicationScope(
+		Class<? extends ActionPermission> impliesOwner)
+	{
+		try
+		{
+			if (!impliesOwner.equals(getClass().getMethod("implies", Permission.class)
+				.getDeclaringClass()))
+				return ImplicationScope.ANY;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return ImplicationScope.ANY;
+		}
+		if (actions.implies(actions.getActionFactory().getAction(Inherit.class)))
+			return ImplicationScope.NAME_PREFIX;
+		return ImplicationScope.NAME;
+	}
+
 	/**
 	 * ActionPermissions are only equal if they have the same class, name and actions.
 	 * 
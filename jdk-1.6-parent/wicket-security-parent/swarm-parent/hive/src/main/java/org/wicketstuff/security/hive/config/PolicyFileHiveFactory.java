@@ -36,8 +36,8 @@ import org.slf4j.LoggerFactory;
 import org.wicketstuff.security.actions.ActionFactory;
 import org.wicketstuff.security.actions.WaspAction;
 import org.wicketstuff.security.hive.BasicHive;
+import org.wicketstuff.security.hive.ConcurrentCachingHive;
 import org.wicketstuff.security.hive.Hive;
-import org.wicketstuff.security.hive.SimpleCachingHive;
 import org.wicketstuff.security.hive.authorization.EverybodyPrincipal;
 import org.wicketstuff.security.hive.authorization.Permission;
 import org.wicketstuff.security.hive.authorization.Principal;
@@ -322,14 +322,14 @@ public class PolicyFileHiveFactory implements HiveFactory
 	/**
 	 * Changeable by subclasses to return there own hive subclass. Note that the actual filling with
 	 * content happens in {@link #createHive()}. Default implementation return either a
-	 * {@link SimpleCachingHive} or a {@link BasicHive} depending on {@link #isUsingHiveCache()}
+	 * {@link ConcurrentCachingHive} or a {@link BasicHive} depending on {@link #isUsingHiveCache()}
 	 * 
 	 * @return {@link BasicHive} subclass.
 	 */
 	protected BasicHive constructHive()
 	{
 		if (isUsingHiveCache())
-			return new SimpleCachingHive();
+			return new ConcurrentCachingHive();
 		return new BasicHive();
 	}
 
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive;
+
+import java.util.Collections;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.wicketstuff.security.hive.authentication.Subject;
+import org.wicketstuff.security.hive.authorization.EverybodyPrincipal;
+import org.wicketstuff.security.hive.authorization.Principal;
+import org.wicketstuff.security.hive.authorization.SimplePrincipal;
+import org.wicketstuff.security.hive.authorization.TestPermission;
+
+/**
+ * Test the cache of the {@link ConcurrentCachingHive}.
+ */
+public class ConcurrentCachingHiveTest extends TestCase
+{
+	private long time = 1000;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param name
+	 */
+	public ConcurrentCachingHiveTest(String name)
+	{
+		super(name);
+	}
+
+	private ConcurrentCachingHive createHive(int maximumSize, long timeToLive)
+	{
+		ConcurrentCachingHive hive = new ConcurrentCachingHive(maximumSize, timeToLive)
+		{
+			@Override
+			protected long currentTime()
+			{
+				return time;
+			}
+		};
+		hive.addPermission(new EverybodyPrincipal(), new TestPermission("foobar"));
+		hive.addPermission(new SimplePrincipal("admin"), new TestPermission("admin"));
+		hive.lock();
+		return hive;
+	}
+
+	/**
+	 * Test hits and misses.
+	 */
+	public void testHitsAndMisses()
+	{
+		ConcurrentCachingHive hive = createHive(100, 0);
+		assertTrue(hive.hasPermission(null, new TestPermission("foobar")));
+		assertTrue(hive.hasPermission(null, new TestPermission("foobar")));
+		assertFalse(hive.hasPermission(null, new TestPermission("admin")));
+		assertFalse(hive.hasPermission(null, new TestPermission("admin")));
+		assertEquals(2, hive.getMissCount());
+		assertEquals(2, hive.getHitCount());
+		assertEquals(2, hive.getSize());
+		hive.resetStatistics();
+		assertEquals(0, hive.getHitCount());
+		hive.clearCache();
+		assertEquals(0, hive.getSize());
+	}
+
+	/**
+	 * Test the cache does not grow beyond its maximum size.
+	 */
+	public void testEviction()
+	{
+		ConcurrentCachingHive hive = createHive(16, 0);
+		for (int i = 0; i < 100; i++)
+			assertFalse(hive.hasPermission(null, new TestPermission("test" + i)));
+		assertTrue(hive.getSize() <= 16);
+		assertEquals(100 - hive.getSize(), hive.getEvictionCount());
+	}
+
+	/**
+	 * Test results are not used after their time to live.
+	 */
+	public void testExpiration()
+	{
+		ConcurrentCachingHive hive = createHive(100, 50);
+		assertTrue(hive.hasPermission(null, new TestPermission("foobar")));
+		time += 49;
+		assertTrue(hive.hasPermission(null, new TestPermission("foobar")));
+		assertEquals(1, hive.getHitCount());
+		time += 1;
+		assertTrue(hive.hasPermission(null, new TestPermission("foobar")));
+		assertEquals(1, hive.getHitCount());
+		assertEquals(1, hive.getExpirationCount());
+	}
+
+	/**
+	 * Test results of a single subject can be removed.
+	 */
+	public void testClearSubject()
+	{
+		ConcurrentCachingHive hive = createHive(100, 0);
+		Subject admin = new TestSubject(new SimplePrincipal("admin"));
+		assertTrue(hive.hasPermission(admin, new TestPermission("admin")));
+		assertFalse(hive.hasPermission(null, new TestPermission("admin")));
+		assertEquals(2, hive.getSize());
+		hive.clearCache(admin);
+		assertEquals(1, hive.getSize());
+		assertTrue(hive.hasPermission(admin, new TestPermission("admin")));
+		assertEquals(0, hive.getHitCount());
+	}
+
+	/**
+	 * Test results of subjects which are no longer used, f.i. of expired sessions, are dropped.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void testGarbageCollectedSubject() throws InterruptedException
+	{
+		ConcurrentCachingHive hive = createHive(100, 0);
+		Subject admin = new TestSubject(new SimplePrincipal("admin"));
+		assertTrue(hive.hasPermission(admin, new TestPermission("admin")));
+		assertTrue(hive.hasPermission(admin, new TestPermission("admin")));
+		assertFalse(hive.hasPermission(null, new TestPermission("admin")));
+		assertEquals(1, hive.getHitCount());
+		assertEquals(2, hive.getSize());
+
+		admin = null;
+		for (int i = 0; i < 50 && hive.getSize() > 1; i++)
+		{
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(1, hive.getSize());
+	}
+
+	/**
+	 * Subject with a single principal.
+	 */
+	private static class TestSubject implements Subject
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Set<Principal> principals;
+
+		public TestSubject(Principal principal)
+		{
+			principals = Collections.singleton(principal);
+		}
+
+		public Set<Principal> getPrincipals()
+		{
+			return principals;
+		}
+
+		public boolean isReadOnly()
+		{
+			return true;
+		}
+
+		public void setReadOnly()
+		{
+		}
+	}
+}
@@ -23,11 +23,19 @@ import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.wicketstuff.security.actions.ActionFactory;
+import org.wicketstuff.security.actions.Actions;
+import org.wicketstuff.security.actions.WaspAction;
+import org.wicketstuff.security.hive.authentication.Subject;
 import org.wicketstuff.security.hive.authorization.EverybodyPrincipal;
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
 import org.wicketstuff.security.hive.authorization.Permission;
 import org.wicketstuff.security.hive.authorization.Principal;
 import org.wicketstuff.security.hive.authorization.SimplePrincipal;
 import org.wicketstuff.security.hive.authorization.TestPermission;
+import org.wicketstuff.security.hive.authorization.permissions.ActionPermission;
+import org.wicketstuff.security.hive.authorization.permissions.AllPermissions;
+import org.wicketstuff.security.hive.config.TestActionFactory;
 
 /**
  * Test hive operations.
@@ -133,6 +141,60 @@ public class HiveTest extends TestCase
 		assertTrue(hive.hasPermission(null, new TestPermission("test")));
 	}
 
+	/**
+	 * Checks that the permission index still finds all permissions that imply a permission.
+	 * 
+	 * @see BasicHive#hasPermission(org.wicketstuff.security.hive.authentication.Subject,
+	 *      org.wicketstuff.security.hive.authorization.Permission)
+	 */
+	public void testHasPermissionIndexed()
+	{
+		String key = "HIVE_TEST";
+		new TestActionFactory(key);
+		try
+		{
+			ActionFactory factory = Actions.getActionFactory(key);
+			BasicHive hive = new BasicHive();
+			for (int i = 0; i < 100; i++)
+				hive.addPermission(new EverybodyPrincipal(), new TestActionPermission("page" + i,
+					factory.getAction("render")));
+			hive.addPermission(new EverybodyPrincipal(), new TestActionPermission("panel",
+				factory.getAction("inherit, render")));
+			hive.addPermission(new SimplePrincipal("admin"), new AllPermissions("all", factory));
+			hive.addPermission(new EverybodyPrincipal(), new TestPermission("test", "read, write"));
+
+			assertEquals(ImplicationScope.NAME,
+				new TestActionPermission("page1", factory.getAction("render")).getImplicationScope());
+			assertEquals(ImplicationScope.NAME_PREFIX, new TestActionPermission("panel",
+				factory.getAction("inherit, render")).getImplicationScope());
+			assertEquals(ImplicationScope.ANY,
+				new AllPermissions("all", factory).getImplicationScope());
+
+			assertTrue(hive.hasPermission(null, new TestActionPermission("page42",
+				factory.getAction("render"))));
+			assertTrue(hive.hasPermission(null, new TestActionPermission("page42",
+				factory.getAction("access"))));
+			assertFalse(hive.hasPermission(null, new TestActionPermission("page42",
+				factory.getAction("enable"))));
+			assertFalse(hive.hasPermission(null, new TestActionPermission("page100",
+				factory.getAction("render"))));
+			assertTrue(hive.hasPermission(null, new TestActionPermission("panel:label",
+				factory.getAction("render"))));
+			assertFalse(hive.hasPermission(null, new TestActionPermission("pane",
+				factory.getAction("render"))));
+			assertTrue(hive.hasPermission(null, new TestPermission("test", "read")));
+
+			Subject admin = new TestSubject(new SimplePrincipal("admin"));
+			assertTrue(hive.hasPermission(admin, new TestActionPermission("page100",
+				factory.getAction("enable"))));
+			assertTrue(hive.hasPermission(admin, new TestPermission("foo")));
+		}
+		finally
+		{
+			Actions.unregisterActionFactory(key);
+		}
+	}
+
 	/**
 	 * @see BasicHive#getPrincipals(org.wicketstuff.security.hive.authorization.Permission)
 	 */
@@ -172,4 +234,46 @@ public class HiveTest extends TestCase
 		assertTrue(permissions.contains(new TestPermission("foobar")));
 
 	}
+
+	/**
+	 * ActionPermission with a public constructor.
+	 */
+	private static class TestActionPermission extends ActionPermission
+	{
+		private static final long serialVersionUID = 1L;
+
+		public TestActionPermission(String name, WaspAction actions)
+		{
+			super(name, actions);
+		}
+	}
+
+	/**
+	 * Subject with a single principal.
+	 */
+	private static class TestSubject implements Subject
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Set<Principal> principals;
+
+		public TestSubject(Principal principal)
+		{
+			principals = Collections.singleton(principal);
+		}
+
+		public Set<Principal> getPrincipals()
+		{
+			return principals;
+		}
+
+		public boolean isReadOnly()
+		{
+			return true;
+		}
+
+		public void setReadOnly()
+		{
+		}
+	}
 }
@@ -24,6 +24,7 @@ import org.apache.wicket.Component;
 import org.wicketstuff.security.actions.Inherit;
 import org.wicketstuff.security.actions.WaspAction;
 import org.wicketstuff.security.components.SecureComponentHelper;
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
 import org.wicketstuff.security.hive.authorization.Permission;
 
 /**
@@ -98,6 +99,21 @@ public class ComponentPermission extends ActionPermission
 		return false;
 	}
 
+	/**
+	 * Permissions with the inherit action might imply components in other containers, so they are
+	 * never limited to a name. Without the inherit action only the exact same component alias is
+	 * implied.
+	 * 
+	 * @see ActionPermission#getImplicationScope()
+	 */
+	@Override
+	public ImplicationScope getImplicationScope()
+	{
+		if (getAction().implies(getAction().getActionFactory().getAction(Inherit.class)))
+			return ImplicationScope.ANY;
+		return getImplicationScope(ComponentPermission.class);
+	}
+
 	private boolean impliesHierarchy(ComponentPermission other)
 	{
 		if (other == null)
@@ -18,6 +18,7 @@ package org.wicketstuff.security.hive.authorization.permissions;
 
 import org.apache.wicket.Component;
 import org.wicketstuff.security.actions.WaspAction;
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
 
 /**
  * Same as {@link ComponentPermission}, but also gives permission for subclasses of the component
@@ -39,6 +40,15 @@ public class ComponentSubclassPermission extends ComponentPermission
 		super(componentAlias, actions);
 	}
 
+	/**
+	 * The first part of the alias may be a subclass, so the name says nothing about what is implied.
+	 */
+	@Override
+	public ImplicationScope getImplicationScope()
+	{
+		return ImplicationScope.ANY;
+	}
+
 	@Override
 	protected boolean equals(String[] path1, String[] path2)
 	{
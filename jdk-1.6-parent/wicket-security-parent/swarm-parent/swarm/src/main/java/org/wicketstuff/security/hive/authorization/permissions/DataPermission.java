@@ -18,6 +18,7 @@ package org.wicketstuff.security.hive.authorization.permissions;
 
 import org.apache.wicket.Component;
 import org.wicketstuff.security.actions.WaspAction;
+import org.wicketstuff.security.hive.authorization.ImplicationScope;
 import org.wicketstuff.security.hive.authorization.Permission;
 import org.wicketstuff.security.swarm.models.SwarmModel;
 
@@ -68,6 +69,15 @@ public class DataPermission extends ActionPermission
 		return (permission instanceof DataPermission) && super.implies(permission);
 	}
 
+	/**
+	 * @see ActionPermission#getImplicationScope()
+	 */
+	@Override
+	public ImplicationScope getImplicationScope()
+	{
+		return getImplicationScope(DataPermission.class);
+	}
+
 	/**
 	 * 
 	 * @see org.wicketstuff.security.hive.authorization.permissions.ActionPermission#equals(java.lang.Object)
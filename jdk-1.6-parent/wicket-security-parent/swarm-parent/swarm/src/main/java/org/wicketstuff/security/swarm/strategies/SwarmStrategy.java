@@ -23,6 +23,7 @@ import org.wicketstuff.security.actions.WaspAction;
 import org.wicketstuff.security.authentication.LoginException;
 import org.wicketstuff.security.components.ISecureComponent;
 import org.wicketstuff.security.components.ISecurePage;
+import org.wicketstuff.security.hive.ConcurrentCachingHive;
 import org.wicketstuff.security.hive.Hive;
 import org.wicketstuff.security.hive.HiveMind;
 import org.wicketstuff.security.hive.authentication.LoginContainer;
@@ -176,7 +177,13 @@ public class SwarmStrategy extends AbstractSwarmStrategy
 	{
 		if (context instanceof LoginContext)
 		{
-			return loginContainer.logoff((LoginContext)context);
+			Subject subject = loginContainer.getSubject();
+			if (!loginContainer.logoff((LoginContext)context))
+				return false;
+			Hive hive = HiveMind.getHive(hiveQueen);
+			if (subject != null && hive instanceof ConcurrentCachingHive)
+				((ConcurrentCachingHive)hive).clearCache(subject);
+			return true;
 		}
 		throw new SecurityException("Unable to process logoff with context: " + context);
 	}
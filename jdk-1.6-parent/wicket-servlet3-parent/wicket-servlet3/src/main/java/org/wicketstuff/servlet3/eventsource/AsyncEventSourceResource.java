@@ -0,0 +1,95 @@
+package org.wicketstuff.servlet3.eventsource;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.servlet3.WicketFilter3;
+
+/**
+ * An {@link IResource} that supports the response protocol of Server Side Events without holding
+ * a container thread per client. The request is put in asynchronous mode and the connection is
+ * handed to an {@link EventSourceBroadcaster}, which writes the events with its own threads.
+ * <p>
+ * The Wicket filter (f.i. a {@link WicketFilter3}) must be declared with
+ * {@code asyncSupported = true}, either in its {@code @WebFilter} annotation or with
+ * {@code <async-supported>} in web.xml.
+ */
+public class AsyncEventSourceResource implements IResource
+{
+	private static final long serialVersionUID = 1L;
+
+	private final EventSourceBroadcaster broadcaster;
+
+	/**
+	 * @param broadcaster
+	 *            the broadcaster the connections are added to
+	 */
+	public AsyncEventSourceResource(EventSourceBroadcaster broadcaster)
+	{
+		this.broadcaster = Args.notNull(broadcaster, "broadcaster");
+	}
+
+	public final void respond(final Attributes attributes)
+	{
+		HttpServletRequest request = (HttpServletRequest)attributes.getRequest()
+			.getContainerRequest();
+		HttpServletResponse response = (HttpServletResponse)attributes.getResponse()
+			.getContainerResponse();
+
+		if (!request.isAsyncSupported())
+		{
+			throw new WicketRuntimeException(
+				"Asynchronous requests are not supported, declare the Wicket filter with asyncSupported = true");
+		}
+
+		try
+		{
+			response.setCharacterEncoding("UTF-8");
+			response.setContentType("text/event-stream");
+			response.setHeader("Cache-Control", "no-cache");
+
+			AsyncContext asyncContext = request.startAsync();
+			// the connection stays open until the client or the broadcaster closes it
+			asyncContext.setTimeout(0);
+
+			EventSourceConnection connection = new EventSourceConnection(broadcaster,
+				asyncContext, response.getOutputStream(), attributes.getParameters(),
+				request.getHeader("Last-Event-ID"));
+
+			onConnect(connection);
+			broadcaster.add(connection);
+		}
+		catch (IOException iox)
+		{
+			throw new WicketRuntimeException("An error occurred while getting servlet's response",
+				iox);
+		}
+	}
+
+	/**
+	 * A callback method which is called when an EventSource connects, before the connection is
+	 * added to the broadcaster. Use it to send the initial frames (f.i.
+	 * {@link EventSourceFrame#retry(org.apache.wicket.util.time.Duration)} or the events missed
+	 * since {@link EventSourceConnection#getLastEventId()}) to this connection.
+	 * 
+	 * @param connection
+	 *            the new connection
+	 */
+	protected void onConnect(final EventSourceConnection connection)
+	{
+	}
+
+	/**
+	 * @return the broadcaster the connections are added to
+	 */
+	public final EventSourceBroadcaster getBroadcaster()
+	{
+		return broadcaster;
+	}
+}
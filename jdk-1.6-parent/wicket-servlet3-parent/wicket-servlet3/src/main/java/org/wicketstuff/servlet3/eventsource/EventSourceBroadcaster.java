@@ -0,0 +1,309 @@
+package org.wicketstuff.servlet3.eventsource;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * Fans out {@link EventSourceFrame}s to the {@link EventSourceConnection}s opened through one or
+ * more {@link AsyncEventSourceResource}s. The frames are written by a thread pool, the
+ * connections don't hold a container thread.
+ * <p>
+ * The writes are blocking, a client which stops reading holds a writer thread until it is evicted
+ * after the {@link #getWriteTimeout() write timeout}, and the other connections wait for a writer
+ * thread meanwhile. Size the pool for the number of clients which may stall at the same time,
+ * {@value #DEFAULT_THREADS} threads by default.
+ * <p>
+ * Every {@link #getHeartbeatInterval() heartbeat interval} a comment is sent to all of the
+ * connections, which keeps proxies from closing idle connections and makes writes to clients
+ * which went away fail. At the same time the connections which have been blocked in a write for
+ * longer than the write timeout are evicted. The heartbeat runs on a timer thread of its own, so
+ * it keeps evicting while all of the writer threads are blocked. A connection is evicted straight
+ * away when more than {@link #getMaxQueuedBytes() max queued bytes} are waiting to be written to
+ * it.
+ * <p>
+ * Create one broadcaster (f.i. in {@code Application#init()}) and {@link #shutdown()} it in
+ * {@code Application#onDestroy()}.
+ */
+public class EventSourceBroadcaster
+{
+	/**
+	 * The number of writer threads of a broadcaster created with the default constructor.
+	 */
+	public static final int DEFAULT_THREADS = 8;
+
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+
+	private final int pool = poolNumber.incrementAndGet();
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final ScheduledExecutorService timer;
+	private final Set<EventSourceConnection> connections = Collections.newSetFromMap(new ConcurrentHashMap<EventSourceConnection, Boolean>());
+	private final AtomicLong evictedCount = new AtomicLong();
+
+	private volatile Duration heartbeatInterval = Duration.seconds(15);
+	private volatile Duration writeTimeout = Duration.seconds(30);
+	private volatile long maxQueuedBytes = 256 * 1024;
+
+	private ScheduledFuture<?> heartbeat;
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a broadcaster with a pool of {@value #DEFAULT_THREADS} writer threads.
+	 */
+	public EventSourceBroadcaster()
+	{
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * Creates a broadcaster with its own pool of daemon threads.
+	 * 
+	 * @param threads
+	 *            the number of threads writing to the connections
+	 */
+	public EventSourceBroadcaster(int threads)
+	{
+		this(null, threads);
+	}
+
+	/**
+	 * Creates a broadcaster which writes to the connections with the given executor. The executor
+	 * is not shut down by {@link #shutdown()}. The heartbeat runs on a timer thread of the
+	 * broadcaster.
+	 * 
+	 * @param executor
+	 *            the executor
+	 */
+	public EventSourceBroadcaster(ExecutorService executor)
+	{
+		this(Args.notNull(executor, "executor"), 0);
+	}
+
+	private EventSourceBroadcaster(ExecutorService executor, int threads)
+	{
+		ownExecutor = executor == null;
+		if (ownExecutor)
+		{
+			Args.isTrue(threads > 0, "threads must be positive");
+			executor = Executors.newFixedThreadPool(threads, newThreadFactory("writer"));
+		}
+		this.executor = executor;
+		timer = Executors.newSingleThreadScheduledExecutor(newThreadFactory("timer"));
+		scheduleHeartbeat();
+	}
+
+	private ThreadFactory newThreadFactory(final String kind)
+	{
+		return new ThreadFactory()
+		{
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "EventSourceBroadcaster-" + pool + "-" + kind +
+					"-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	private synchronized void scheduleHeartbeat()
+	{
+		if (heartbeat != null)
+		{
+			heartbeat.cancel(false);
+		}
+		long interval = heartbeatInterval.getMilliseconds();
+		heartbeat = timer.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				heartbeat();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private void heartbeat()
+	{
+		long now = System.currentTimeMillis();
+		long timeout = writeTimeout.getMilliseconds();
+		for (EventSourceConnection connection : connections)
+		{
+			connection.checkWriteTimeout(now, timeout);
+			connection.send(EventSourceFrame.HEARTBEAT);
+		}
+	}
+
+	/**
+	 * Sends the frame to all of the open connections.
+	 * 
+	 * @param frame
+	 *            the frame
+	 */
+	public void broadcast(EventSourceFrame frame)
+	{
+		Args.notNull(frame, "frame");
+		for (EventSourceConnection connection : connections)
+		{
+			connection.send(frame);
+		}
+	}
+
+	/**
+	 * Sends an event to all of the open connections.
+	 * 
+	 * @param eventName
+	 *            the name of the event, or {@code null} for the default "message" event
+	 * @param data
+	 *            the data of the event
+	 */
+	public void broadcast(String eventName, String data)
+	{
+		broadcast(EventSourceFrame.event(eventName, null, data));
+	}
+
+	void add(EventSourceConnection connection)
+	{
+		connections.add(connection);
+		if (stopped)
+		{
+			connection.close();
+		}
+		// a connection closed before it was added (f.i. in onConnect()) already removed itself
+		if (connection.isClosed())
+		{
+			connections.remove(connection);
+		}
+	}
+
+	void remove(EventSourceConnection connection)
+	{
+		connections.remove(connection);
+	}
+
+	void evicted(EventSourceConnection connection)
+	{
+		evictedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return {@code false} if the task was rejected because the broadcaster has been shut down
+	 */
+	boolean execute(Runnable task)
+	{
+		try
+		{
+			executor.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException rex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Closes all of the connections and stops the threads of the broadcaster.
+	 */
+	public void shutdown()
+	{
+		stopped = true;
+		synchronized (this)
+		{
+			heartbeat.cancel(false);
+		}
+		timer.shutdown();
+		for (EventSourceConnection connection : connections)
+		{
+			connection.close();
+		}
+		if (ownExecutor)
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return the number of open connections
+	 */
+	public int getConnectionCount()
+	{
+		return connections.size();
+	}
+
+	/**
+	 * @return the number of connections evicted because they did not keep up
+	 */
+	public long getEvictedCount()
+	{
+		return evictedCount.get();
+	}
+
+	public Duration getHeartbeatInterval()
+	{
+		return heartbeatInterval;
+	}
+
+	/**
+	 * @param heartbeatInterval
+	 *            how often the heartbeat is sent, 15 seconds by default
+	 * @return {@code this} object, for chaining
+	 */
+	public EventSourceBroadcaster setHeartbeatInterval(Duration heartbeatInterval)
+	{
+		Args.notNull(heartbeatInterval, "heartbeatInterval");
+		Args.isTrue(heartbeatInterval.getMilliseconds() > 0, "heartbeatInterval must be positive");
+		this.heartbeatInterval = heartbeatInterval;
+		scheduleHeartbeat();
+		return this;
+	}
+
+	public Duration getWriteTimeout()
+	{
+		return writeTimeout;
+	}
+
+	/**
+	 * @param writeTimeout
+	 *            how long a write may block before the connection is evicted, 30 seconds by
+	 *            default. It is checked with each heartbeat.
+	 * @return {@code this} object, for chaining
+	 */
+	public EventSourceBroadcaster setWriteTimeout(Duration writeTimeout)
+	{
+		this.writeTimeout = Args.notNull(writeTimeout, "writeTimeout");
+		return this;
+	}
+
+	public long getMaxQueuedBytes()
+	{
+		return maxQueuedBytes;
+	}
+
+	/**
+	 * @param maxQueuedBytes
+	 *            how many bytes may wait to be written to a connection before it is evicted, 256 KB
+	 *            by default
+	 * @return {@code this} object, for chaining
+	 */
+	public EventSourceBroadcaster setMaxQueuedBytes(long maxQueuedBytes)
+	{
+		Args.isTrue(maxQueuedBytes > 0, "maxQueuedBytes must be positive");
+		this.maxQueuedBytes = maxQueuedBytes;
+		return this;
+	}
+}
@@ -0,0 +1,230 @@
+package org.wicketstuff.servlet3.eventsource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An EventSource client connected through an {@link AsyncContext}. The frames sent to it are
+ * queued and written by the thread pool of its {@link EventSourceBroadcaster}, so no container
+ * thread is held while the connection is open.
+ * <p>
+ * A client which does not keep up is evicted: when its queued frames exceed
+ * {@link EventSourceBroadcaster#getMaxQueuedBytes()} or a write to it takes longer than
+ * {@link EventSourceBroadcaster#getWriteTimeout()}.
+ */
+public class EventSourceConnection
+{
+	private static final Logger log = LoggerFactory.getLogger(EventSourceConnection.class);
+
+	private final EventSourceBroadcaster broadcaster;
+	private final AsyncContext asyncContext;
+	private final OutputStream out;
+	private final PageParameters parameters;
+	private final String lastEventId;
+
+	private final Queue<EventSourceFrame> queue = new ConcurrentLinkedQueue<EventSourceFrame>();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/** when the current write started, 0 when no write is in progress */
+	private volatile long writeStartedAt;
+
+	private final Runnable drainTask = new Runnable()
+	{
+		public void run()
+		{
+			drain();
+		}
+	};
+
+	EventSourceConnection(EventSourceBroadcaster broadcaster, AsyncContext asyncContext,
+		OutputStream out, PageParameters parameters, String lastEventId)
+	{
+		this.broadcaster = broadcaster;
+		this.asyncContext = asyncContext;
+		this.out = out;
+		this.parameters = parameters;
+		this.lastEventId = lastEventId;
+
+		asyncContext.addListener(new AsyncListener()
+		{
+			public void onComplete(AsyncEvent event)
+			{
+				close();
+			}
+
+			public void onTimeout(AsyncEvent event)
+			{
+				close();
+			}
+
+			public void onError(AsyncEvent event)
+			{
+				close();
+			}
+
+			public void onStartAsync(AsyncEvent event)
+			{
+			}
+		});
+	}
+
+	/**
+	 * Queues a frame for this connection only.
+	 * 
+	 * @param frame
+	 *            the frame to send
+	 */
+	public void send(EventSourceFrame frame)
+	{
+		if (closed.get())
+		{
+			return;
+		}
+		if (queuedBytes.addAndGet(frame.length()) > broadcaster.getMaxQueuedBytes())
+		{
+			evict("its queue is full");
+			return;
+		}
+		queue.offer(frame);
+		if (draining.compareAndSet(false, true) && !broadcaster.execute(drainTask))
+		{
+			// the broadcaster has been shut down
+			close();
+		}
+	}
+
+	/**
+	 * Writes the queued frames and flushes them once. Only one thread drains at a time, a frame
+	 * queued while the queue is being drained is picked up by the same run.
+	 */
+	private void drain()
+	{
+		try
+		{
+			do
+			{
+				EventSourceFrame frame;
+				while (!closed.get() && (frame = queue.poll()) != null)
+				{
+					writeStartedAt = System.currentTimeMillis();
+					out.write(frame.getBytes());
+					queuedBytes.addAndGet(-frame.length());
+				}
+				if (!closed.get())
+				{
+					writeStartedAt = System.currentTimeMillis();
+					out.flush();
+				}
+				writeStartedAt = 0;
+				draining.set(false);
+			}
+			while (!queue.isEmpty() && !closed.get() && draining.compareAndSet(false, true));
+		}
+		catch (IOException iox)
+		{
+			writeStartedAt = 0;
+			// log as debug because the connection may be closed anytime from the
+			// client side without notifying the server side
+			log.debug("An error occurred while writing the response", iox);
+			close();
+		}
+		catch (RuntimeException rx)
+		{
+			writeStartedAt = 0;
+			log.debug("An error occurred while writing the response", rx);
+			close();
+		}
+	}
+
+	/**
+	 * Evicts the connection when a write has been blocked for longer than the write timeout.
+	 */
+	void checkWriteTimeout(long now, long writeTimeout)
+	{
+		long startedAt = writeStartedAt;
+		if (startedAt != 0 && now - startedAt > writeTimeout)
+		{
+			evict("a write has been blocked for " + (now - startedAt) + " ms");
+		}
+	}
+
+	private void evict(String reason)
+	{
+		if (!closed.get())
+		{
+			log.debug("Evicting slow EventSource client, {}", reason);
+			broadcaster.evicted(this);
+			close();
+		}
+	}
+
+	/**
+	 * Closes the connection to the client.
+	 */
+	public void close()
+	{
+		if (closed.compareAndSet(false, true))
+		{
+			broadcaster.remove(this);
+			queue.clear();
+			queuedBytes.set(0);
+			try
+			{
+				asyncContext.complete();
+			}
+			catch (IllegalStateException isx)
+			{
+				// already completed by the container
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the connection to the client is closed.
+	 * 
+	 * @return {@code true} if the connection is closed, {@code false} otherwise
+	 */
+	public boolean isClosed()
+	{
+		return closed.get();
+	}
+
+	/**
+	 * @return the number of bytes queued and not written yet
+	 */
+	public long getQueuedBytes()
+	{
+		return queuedBytes.get();
+	}
+
+	/**
+	 * @return the request parameters sent by the client when making the connection
+	 */
+	public PageParameters getParameters()
+	{
+		return parameters;
+	}
+
+	/**
+	 * @return the value of the {@code Last-Event-ID} header sent by a reconnecting client, or
+	 *         {@code null}
+	 */
+	public String getLastEventId()
+	{
+		return lastEventId;
+	}
+}
@@ -0,0 +1,143 @@
+package org.wicketstuff.servlet3.eventsource;
+
+import java.nio.charset.Charset;
+
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * A complete Server Sent Events message, encoded as UTF-8 once when it is created so that it can
+ * be written as is to any number of connections.
+ */
+public final class EventSourceFrame
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * An empty comment, sent as heartbeat to keep idle connections open and detect closed ones.
+	 */
+	public static final EventSourceFrame HEARTBEAT = new EventSourceFrame(":\n\n");
+
+	private final byte[] bytes;
+
+	private EventSourceFrame(String frame)
+	{
+		bytes = frame.getBytes(UTF8);
+	}
+
+	/**
+	 * Creates a data message.
+	 * 
+	 * @param data
+	 *            the data, each line is sent in its own {@code data} field
+	 * @return the frame
+	 */
+	public static EventSourceFrame data(String data)
+	{
+		return event(null, null, data);
+	}
+
+	/**
+	 * Creates a message of the given event.
+	 * 
+	 * @param eventName
+	 *            the name of the event, or {@code null} for the default "message" event, may not
+	 *            contain line breaks
+	 * @param id
+	 *            the id of the event, or {@code null}, may not contain line breaks
+	 * @param data
+	 *            the data, each line (ended by CRLF, CR or LF like the client splits it) is sent
+	 *            in its own {@code data} field
+	 * @return the frame
+	 */
+	public static EventSourceFrame event(String eventName, String id, String data)
+	{
+		Args.notNull(data, "data");
+		checkSingleLine(eventName, "eventName");
+		checkSingleLine(id, "id");
+
+		StringBuilder frame = new StringBuilder(data.length() + 32);
+		if (eventName != null)
+		{
+			frame.append("event: ").append(eventName).append('\n');
+		}
+		if (id != null)
+		{
+			frame.append("id: ").append(id).append('\n');
+		}
+		int start = 0;
+		for (int i = 0; i < data.length(); i++)
+		{
+			char c = data.charAt(i);
+			if (c == '\r' || c == '\n')
+			{
+				frame.append("data: ").append(data, start, i).append('\n');
+				if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n')
+				{
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		frame.append("data: ").append(data, start, data.length()).append("\n\n");
+		return new EventSourceFrame(frame.toString());
+	}
+
+	/**
+	 * Creates a {@code retry} message.
+	 * 
+	 * @param retryTimeout
+	 *            how long the client waits before it reconnects
+	 * @return the frame
+	 */
+	public static EventSourceFrame retry(Duration retryTimeout)
+	{
+		Args.notNull(retryTimeout, "retryTimeout");
+		return new EventSourceFrame("retry: " + retryTimeout.getMilliseconds() + "\n\n");
+	}
+
+	/**
+	 * Creates a comment, which is ignored by the client.
+	 * 
+	 * @param comment
+	 *            the comment, may not contain line breaks
+	 * @return the frame
+	 */
+	public static EventSourceFrame comment(String comment)
+	{
+		Args.notNull(comment, "comment");
+		checkSingleLine(comment, "comment");
+		return new EventSourceFrame(": " + comment + "\n\n");
+	}
+
+	/**
+	 * A line break would end the field early and let the rest be read as fields of their own.
+	 */
+	private static void checkSingleLine(String value, String name)
+	{
+		if (value != null && (value.indexOf('\r') != -1 || value.indexOf('\n') != -1))
+		{
+			throw new IllegalArgumentException("Argument '" + name +
+				"' may not contain line breaks.");
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the encoded frame
+	 */
+	public int length()
+	{
+		return bytes.length;
+	}
+
+	byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(bytes, UTF8);
+	}
+}
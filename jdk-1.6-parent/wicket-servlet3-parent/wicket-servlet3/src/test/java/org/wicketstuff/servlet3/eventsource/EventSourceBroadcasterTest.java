@@ -0,0 +1,268 @@
+package org.wicketstuff.servlet3.eventsource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+
+import junit.framework.TestCase;
+
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * Tests the frames and the fan out of the {@link EventSourceBroadcaster}.
+ */
+public class EventSourceBroadcasterTest extends TestCase
+{
+	private EventSourceBroadcaster broadcaster;
+
+	@Override
+	protected void setUp()
+	{
+		broadcaster = new EventSourceBroadcaster(1);
+	}
+
+	@Override
+	protected void tearDown()
+	{
+		broadcaster.shutdown();
+	}
+
+	/**
+	 * Multi line data is sent in several data fields.
+	 */
+	public void testFrame()
+	{
+		assertEquals("event: update\nid: 7\ndata: first\ndata: second\n\n",
+			EventSourceFrame.event("update", "7", "first\nsecond").toString());
+		assertEquals("data: é\n\n", EventSourceFrame.data("é").toString());
+		assertEquals(10, EventSourceFrame.data("é").length());
+	}
+
+	/**
+	 * CRLF, CR and LF all end a line, like the client splits the stream.
+	 */
+	public void testFrameLineBreaks()
+	{
+		assertEquals("data: a\ndata: b\ndata: c\ndata: \ndata: d\ndata: \n\n",
+			EventSourceFrame.data("a\r\nb\rc\n\rd\r").toString());
+	}
+
+	/**
+	 * Line breaks in single line fields could inject fields or events.
+	 */
+	public void testFieldsRejectLineBreaks()
+	{
+		String[] values = { "a\nb", "a\rb", "a\r\nb" };
+		for (String value : values)
+		{
+			try
+			{
+				EventSourceFrame.event(value, null, "data");
+				fail("eventName " + value);
+			}
+			catch (IllegalArgumentException expected)
+			{
+			}
+			try
+			{
+				EventSourceFrame.event(null, value, "data");
+				fail("id " + value);
+			}
+			catch (IllegalArgumentException expected)
+			{
+			}
+			try
+			{
+				EventSourceFrame.comment(value);
+				fail("comment " + value);
+			}
+			catch (IllegalArgumentException expected)
+			{
+			}
+		}
+	}
+
+	/**
+	 * All of the connections get the broadcast frames, in order.
+	 * 
+	 * @throws Exception
+	 */
+	public void testBroadcast() throws Exception
+	{
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		connect(first);
+		connect(second);
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+		{
+			EventSourceFrame frame = EventSourceFrame.data("event " + i);
+			expected.append(frame);
+			broadcaster.broadcast(frame);
+		}
+
+		waitFor(first, expected.length());
+		waitFor(second, expected.length());
+		assertEquals(expected.toString(), first.toString("UTF-8"));
+		assertEquals(expected.toString(), second.toString("UTF-8"));
+		assertEquals(2, broadcaster.getConnectionCount());
+	}
+
+	/**
+	 * A client which does not read is evicted once its queue is full, the others are not held up.
+	 * 
+	 * @throws Exception
+	 */
+	public void testSlowClientIsEvicted() throws Exception
+	{
+		broadcaster.setMaxQueuedBytes(1024);
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		OutputStream slow = new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				blocked.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException("interrupted");
+				}
+			}
+		};
+
+		boolean[] completed = new boolean[1];
+		EventSourceConnection slowConnection = connect(slow, completed);
+		slowConnection.send(EventSourceFrame.data("blocks the only thread"));
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+		for (int i = 0; i < 100 && !slowConnection.isClosed(); i++)
+		{
+			broadcaster.broadcast(EventSourceFrame.data("event " + i));
+		}
+
+		assertTrue(slowConnection.isClosed());
+		assertTrue(completed[0]);
+		assertEquals(1, broadcaster.getEvictedCount());
+		assertEquals(0, broadcaster.getConnectionCount());
+
+		release.countDown();
+	}
+
+	/**
+	 * A write blocked for longer than the write timeout is evicted by the heartbeat, even though
+	 * it holds the only writer thread.
+	 * 
+	 * @throws Exception
+	 */
+	public void testBlockedWriteIsEvictedByHeartbeat() throws Exception
+	{
+		broadcaster.setWriteTimeout(Duration.milliseconds(50));
+		broadcaster.setHeartbeatInterval(Duration.milliseconds(20));
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		OutputStream stalled = new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				blocked.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{
+					throw new IOException("interrupted");
+				}
+			}
+		};
+
+		try
+		{
+			EventSourceConnection stalledConnection = connect(stalled);
+			stalledConnection.send(EventSourceFrame.data("blocks the only thread"));
+			assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+			long end = System.currentTimeMillis() + 5000;
+			while (!stalledConnection.isClosed() && System.currentTimeMillis() < end)
+			{
+				Thread.sleep(10);
+			}
+			assertTrue(stalledConnection.isClosed());
+			assertEquals(1, broadcaster.getEvictedCount());
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+
+	/**
+	 * A connection closed in {@code onConnect()}, before it is added, is not kept by the
+	 * broadcaster.
+	 */
+	public void testConnectionClosedBeforeAddIsNotKept()
+	{
+		boolean[] completed = new boolean[1];
+		EventSourceConnection connection = newConnection(new ByteArrayOutputStream(), completed);
+		connection.close();
+		broadcaster.add(connection);
+
+		assertTrue(completed[0]);
+		assertEquals(0, broadcaster.getConnectionCount());
+	}
+
+	private EventSourceConnection connect(OutputStream out)
+	{
+		return connect(out, new boolean[1]);
+	}
+
+	private EventSourceConnection connect(OutputStream out, final boolean[] completed)
+	{
+		EventSourceConnection connection = newConnection(out, completed);
+		broadcaster.add(connection);
+		return connection;
+	}
+
+	private EventSourceConnection newConnection(OutputStream out, final boolean[] completed)
+	{
+		AsyncContext asyncContext = (AsyncContext)Proxy.newProxyInstance(
+			getClass().getClassLoader(), new Class<?>[] { AsyncContext.class },
+			new InvocationHandler()
+			{
+				public Object invoke(Object proxy, Method method, Object[] args)
+				{
+					if (method.getName().equals("complete"))
+					{
+						completed[0] = true;
+					}
+					return null;
+				}
+			});
+		return new EventSourceConnection(broadcaster, asyncContext, out, null, null);
+	}
+
+	private static void waitFor(ByteArrayOutputStream out, int length) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + 5000;
+		while (out.size() < length && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10);
+		}
+	}
+}